@@ -22,7 +22,10 @@ import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
 import com.scvngr.levelup.core.annotation.model.NonWrappable;
 import com.scvngr.levelup.core.annotation.model.RequiredField;
 import com.scvngr.levelup.core.model.MonetaryValue;
+import com.scvngr.levelup.core.net.ByteArrayRequestBody;
 import com.scvngr.levelup.core.net.JsonElementRequestBody;
+import com.scvngr.levelup.core.net.ModelDecoder;
+import com.scvngr.levelup.core.net.RequestUtils;
 import com.scvngr.levelup.core.util.NullUtils;
 
 import com.google.gson.FieldNamingPolicy;
@@ -42,7 +45,9 @@ import com.google.gson.stream.JsonWriter;
 
 import net.jcip.annotations.NotThreadSafe;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -205,6 +210,57 @@ public class GsonModelFactory<T> {
         return fromList(NullUtils.nonNullContract(root.getAsJsonArray()));
     }
 
+    /**
+     * @return a decoder that reads a single model from a response body as it streams in. The
+     *         decoder may be used from any thread.
+     */
+    @NonNull
+    public final ModelDecoder<T> newDecoder() {
+        final TypeAdapter<T> adapter = NullUtils.nonNullContract(mGson.getAdapter(mType));
+
+        return new ModelDecoder<T>() {
+            @Override
+            @NonNull
+            public T decode(@NonNull final JsonReader reader) throws IOException {
+                final T model = adapter.read(reader);
+
+                if (null == model) {
+                    throw new JsonSyntaxException("JSON data must be a JSON object, not null.");
+                }
+
+                return model;
+            }
+        };
+    }
+
+    /**
+     * @return a decoder that reads a list of models from a response body as it streams in,
+     *         without building the whole JSON array first. The decoder may be used from any
+     *         thread.
+     */
+    @NonNull
+    public final ModelDecoder<List<T>> newListDecoder() {
+        final ModelDecoder<T> elementDecoder = newDecoder();
+
+        return new ModelDecoder<List<T>>() {
+            @Override
+            @NonNull
+            public List<T> decode(@NonNull final JsonReader reader) throws IOException {
+                final List<T> objectList = new ArrayList<T>();
+
+                reader.beginArray();
+
+                while (reader.hasNext()) {
+                    objectList.add(elementDecoder.decode(reader));
+                }
+
+                reader.endArray();
+
+                return objectList;
+            }
+        };
+    }
+
     /**
      * @param model the model to serialize as JSON.
      * @return a string representation of the given {@code model}.
@@ -236,6 +292,37 @@ public class GsonModelFactory<T> {
         return new JsonElementRequestBody(mGson, NullUtils.nonNullContract(mGson.toJsonTree(model)));
     }
 
+    /**
+     * Serializes a model instance to JSON in a {@link com.scvngr.levelup.core.net.RequestBody}.
+     * Unlike {@link #toRequestSerializer}, the model is written straight to UTF-8 bytes without
+     * building a {@link JsonElement} tree or a {@link String} along the way, so the body is
+     * encoded and measured only once.
+     *
+     * @param model the model to serialize as JSON.
+     * @return The JSON representation of the model in a
+     *         {@link com.scvngr.levelup.core.net.RequestBody}.
+     */
+    @NonNull
+    public final ByteArrayRequestBody toRequestBody(@NonNull final T model) {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try {
+            final JsonWriter writer = new JsonWriter(new OutputStreamWriter(buffer, "UTF-8"));
+
+            try {
+                mGson.toJson(model, mType, writer);
+            } finally {
+                writer.close();
+            }
+        } catch (final IOException e) {
+            // Writing to memory doesn't fail.
+            throw new RuntimeException("Error serializing model", e);
+        }
+
+        return new ByteArrayRequestBody(NullUtils.nonNullContract(buffer.toByteArray()),
+                RequestUtils.HEADER_CONTENT_TYPE_JSON);
+    }
+
     /**
      * Parse an instance of the model from a {@link JsonObject}.
      *
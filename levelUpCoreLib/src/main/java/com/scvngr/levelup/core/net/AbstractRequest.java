@@ -89,6 +89,14 @@ public abstract class AbstractRequest implements Parcelable {
     @NonNull
     private final Map<String, String> mQueryParams;
 
+    /**
+     * The final URL, if it was built ahead of time by a {@link RequestTemplate}. This isn't
+     * parceled, so a request restored from a parcel builds its URL on each call to
+     * {@link #getUrl(Context)}.
+     */
+    @Nullable
+    private final URL mCompiledUrl;
+
     /**
      * Create a new {@link AbstractRequest}.
      * <p>
@@ -130,6 +138,29 @@ public abstract class AbstractRequest implements Parcelable {
 
         mUrlString = url;
         mMethod = method;
+        mCompiledUrl = null;
+
+        checkRep();
+    }
+
+    /**
+     * Create a new {@link AbstractRequest} from the parts built by a {@link RequestTemplate}. The
+     * maps are not copied, so they must already be unmodifiable.
+     *
+     * @param method the {@code HttpMethod} of the request type.
+     * @param url the URL to request, without the query string.
+     * @param requestHeaders the unmodifiable headers to add to the request.
+     * @param queryParams the unmodifiable query string parameters.
+     * @param compiledUrl the final URL, including the query string.
+     */
+    /* package */AbstractRequest(@NonNull final HttpMethod method, @NonNull final String url,
+            @NonNull final Map<String, String> requestHeaders,
+            @NonNull final Map<String, String> queryParams, @NonNull final URL compiledUrl) {
+        mMethod = method;
+        mUrlString = url;
+        mRequestHeaders = requestHeaders;
+        mQueryParams = queryParams;
+        mCompiledUrl = compiledUrl;
 
         checkRep();
     }
@@ -206,6 +237,7 @@ public abstract class AbstractRequest implements Parcelable {
         final Map<String, String> query = new HashMap<String, String>();
         in.readMap(query, HashMap.class.getClassLoader());
         mQueryParams = NullUtils.nonNullContract(Collections.unmodifiableMap(query));
+        mCompiledUrl = null;
 
         checkRep();
     }
@@ -291,6 +323,10 @@ public abstract class AbstractRequest implements Parcelable {
      */
     @NonNull
     public final URL getUrl(@NonNull final Context context) throws BadRequestException {
+        if (null != mCompiledUrl) {
+            return mCompiledUrl;
+        }
+
         URL url = null;
         final Map<String, String> queryParams = getQueryParams(context);
         final Uri.Builder builder = Uri.parse(getUrlString(context)).buildUpon();
@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>
+ * Sends one request per key with a bounded number in flight at once, rather than one after
+ * another. This suits screens that load something for each row, such as the loyalty of each
+ * merchant ({@link com.scvngr.levelup.core.net.request.factory.LoyaltyRequestFactory}), the web
+ * links of each location
+ * ({@link com.scvngr.levelup.core.net.request.factory.WebLinkRequestFactory}) or the credit
+ * available at each location
+ * ({@link com.scvngr.levelup.core.net.request.factory.LocationCreditRequestFactory}).
+ * </p>
+ * <p>
+ * Each response is delivered to {@link BatchCallback#onResponse} as soon as it arrives, in whatever
+ * order the server answers. Once every request has been answered,
+ * {@link BatchCallback#onComplete} receives a {@link BatchResult} listing which keys failed. A
+ * failed request does not stop the others from being sent.
+ * </p>
+ * <p>
+ * Requests are sent with {@link LevelUpConnection#sendAsync(AbstractRequest)}, so they are
+ * queued at the connection's {@link LevelUpConnection#getPriority() priority} and share the
+ * {@link NetworkExecutor} with the rest of the app.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class BatchSender {
+
+    @NonNull
+    private final LevelUpConnection mConnection;
+
+    private final int mMaxParallelism;
+
+    /**
+     * Creates a sender that keeps up to {@link NetworkExecutor}'s pool size in flight.
+     *
+     * @param connection the connection to send requests with.
+     */
+    public BatchSender(@NonNull final LevelUpConnection connection) {
+        this(connection, NetworkExecutor.POOL_SIZE);
+    }
+
+    /**
+     * @param connection the connection to send requests with.
+     * @param maxParallelism the maximum number of requests of a batch in flight at once.
+     */
+    public BatchSender(@NonNull final LevelUpConnection connection, final int maxParallelism) {
+        if (1 > maxParallelism) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+
+        mConnection = connection;
+        mMaxParallelism = maxParallelism;
+    }
+
+    /**
+     * Sends a request for each key and delivers the callbacks on {@code looper}.
+     *
+     * @param <K> the type of the keys.
+     * @param keys the keys to send requests for. Each key should appear once.
+     * @param builder builds the request for a key.
+     * @param callback the callback to deliver responses to.
+     * @param looper the {@link Looper} to call {@code callback} on, usually
+     *        {@link Looper#getMainLooper()}.
+     * @return a {@link Future} for the result of the batch. Cancelling it cancels the requests that
+     *         haven't been answered yet and prevents any further callbacks.
+     */
+    @NonNull
+    public <K> Future<BatchResult<K>> send(@NonNull final Collection<K> keys,
+            @NonNull final RequestBuilder<K> builder, @NonNull final BatchCallback<K> callback,
+            @NonNull final Looper looper) {
+        return send(keys, builder, callback, NetworkExecutor.forLooper(looper));
+    }
+
+    /**
+     * Sends a request for each key and delivers the callbacks using {@code callbackExecutor}.
+     *
+     * @param <K> the type of the keys.
+     * @param keys the keys to send requests for. Each key should appear once.
+     * @param builder builds the request for a key. This is called on the calling thread and on
+     *        network threads.
+     * @param callback the callback to deliver responses to or null.
+     * @param callbackExecutor the {@link Executor} to call {@code callback} on or null to call it
+     *        on the network threads. {@link BatchCallback#onComplete} is only guaranteed to follow
+     *        the last {@link BatchCallback#onResponse} if this runs commands in order.
+     * @return a {@link Future} for the result of the batch. Cancelling it cancels the requests that
+     *         haven't been answered yet and prevents any further callbacks.
+     */
+    @NonNull
+    public <K> Future<BatchResult<K>> send(@NonNull final Collection<K> keys,
+            @NonNull final RequestBuilder<K> builder, @Nullable final BatchCallback<K> callback,
+            @Nullable final Executor callbackExecutor) {
+        final Batch<K> batch =
+                new Batch<K>(mConnection, new ArrayList<K>(keys), builder, callback,
+                        callbackExecutor, new LinkedHashMap<K, LevelUpResponse>());
+        batch.start(mMaxParallelism);
+
+        return batch;
+    }
+
+    /**
+     * Builds the request for a key of a batch.
+     *
+     * @param <K> the type of the keys.
+     */
+    public interface RequestBuilder<K> {
+
+        /**
+         * @param key the key.
+         * @return the request for {@code key}.
+         */
+        @NonNull
+        AbstractRequest buildRequest(@NonNull K key);
+    }
+
+    /**
+     * Receives the responses of a batch as they arrive. Neither method is called if the batch was
+     * cancelled.
+     *
+     * @param <K> the type of the keys.
+     */
+    public interface BatchCallback<K> {
+
+        /**
+         * Called when the response for a key has been received. This isn't called for keys whose
+         * request couldn't be built; they are listed in {@link BatchResult#getFailedKeys()}.
+         *
+         * @param key the key.
+         * @param request the request that was sent for {@code key}.
+         * @param response the response to {@code request}.
+         */
+        void onResponse(@NonNull K key, @NonNull AbstractRequest request,
+                @NonNull LevelUpResponse response);
+
+        /**
+         * Called when every request in the batch has been answered.
+         *
+         * @param result the result of the batch.
+         */
+        void onComplete(@NonNull BatchResult<K> result);
+    }
+
+    /**
+     * The responses of a completed batch.
+     *
+     * @param <K> the type of the keys.
+     */
+    @Immutable
+    public static final class BatchResult<K> {
+
+        @NonNull
+        private final Map<K, LevelUpResponse> mResponses;
+
+        @NonNull
+        private final List<K> mFailedKeys;
+
+        /**
+         * @param responses the responses by key, in the order they arrived.
+         */
+        /* package */BatchResult(@NonNull final Map<K, LevelUpResponse> responses) {
+            final List<K> failedKeys = new ArrayList<K>();
+
+            for (final Map.Entry<K, LevelUpResponse> entry : responses.entrySet()) {
+                if (LevelUpStatus.OK != entry.getValue().getStatus()) {
+                    failedKeys.add(entry.getKey());
+                }
+            }
+
+            mResponses = NullUtils.nonNullContract(Collections.unmodifiableMap(responses));
+            mFailedKeys = NullUtils.nonNullContract(Collections.unmodifiableList(failedKeys));
+        }
+
+        /**
+         * @return the responses by key, in the order they arrived.
+         */
+        @NonNull
+        public Map<K, LevelUpResponse> getResponses() {
+            return mResponses;
+        }
+
+        /**
+         * @return the keys whose responses did not have the status {@link LevelUpStatus#OK}.
+         */
+        @NonNull
+        public List<K> getFailedKeys() {
+            return mFailedKeys;
+        }
+
+        /**
+         * @return true if every response had the status {@link LevelUpStatus#OK}.
+         */
+        public boolean isSuccessful() {
+            return mFailedKeys.isEmpty();
+        }
+    }
+
+    /**
+     * A batch in progress, which completes when its last response arrives.
+     *
+     * @param <K> the type of the keys.
+     */
+    private static final class Batch<K> extends FutureTask<BatchResult<K>> {
+
+        @NonNull
+        private final LevelUpConnection mConnection;
+
+        @NonNull
+        private final RequestBuilder<K> mBuilder;
+
+        @Nullable
+        private final BatchCallback<K> mCallback;
+
+        @Nullable
+        private final Executor mCallbackExecutor;
+
+        @NonNull
+        @GuardedBy("mResponses")
+        private final Iterator<K> mKeys;
+
+        @NonNull
+        @GuardedBy("mResponses")
+        private final Map<K, LevelUpResponse> mResponses;
+
+        /**
+         * The sends that haven't responded yet, by key.
+         */
+        @NonNull
+        @GuardedBy("mResponses")
+        private final Map<K, Future<LevelUpResponse>> mSent =
+                new HashMap<K, Future<LevelUpResponse>>();
+
+        @GuardedBy("mResponses")
+        private int mRemaining;
+
+        /**
+         * @param connection the connection to send requests with.
+         * @param keys the keys to send requests for.
+         * @param builder builds the request for a key.
+         * @param callback the callback to deliver responses to or null.
+         * @param callbackExecutor the executor to deliver on or null to deliver on the network
+         *        threads.
+         * @param responses the map to collect responses in.
+         */
+        public Batch(@NonNull final LevelUpConnection connection, @NonNull final List<K> keys,
+                @NonNull final RequestBuilder<K> builder, @Nullable final BatchCallback<K> callback,
+                @Nullable final Executor callbackExecutor,
+                @NonNull final Map<K, LevelUpResponse> responses) {
+            super(new Callable<BatchResult<K>>() {
+                @Override
+                public BatchResult<K> call() {
+                    synchronized (responses) {
+                        return new BatchResult<K>(new LinkedHashMap<K, LevelUpResponse>(
+                                responses));
+                    }
+                }
+            });
+
+            mConnection = connection;
+            mBuilder = builder;
+            mCallback = callback;
+            mCallbackExecutor = callbackExecutor;
+            mKeys = NullUtils.nonNullContract(keys.iterator());
+            mResponses = responses;
+            mRemaining = keys.size();
+        }
+
+        /**
+         * Sends the first requests.
+         *
+         * @param maxParallelism the number of requests to keep in flight.
+         */
+        public void start(final int maxParallelism) {
+            final boolean isEmpty;
+
+            synchronized (mResponses) {
+                isEmpty = 0 == mRemaining;
+            }
+
+            if (isEmpty) {
+                run();
+                return;
+            }
+
+            for (int i = 0; i < maxParallelism; i++) {
+                sendNext();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                synchronized (mResponses) {
+                    for (final Future<LevelUpResponse> future : mSent.values()) {
+                        future.cancel(true);
+                    }
+                }
+
+                return;
+            }
+
+            if (null != mCallback) {
+                deliver(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isCancelled()) {
+                            try {
+                                mCallback.onComplete(NullUtils.nonNullContract(get()));
+                            } catch (final Exception e) {
+                                throw new RuntimeException("Error completing batch", e);
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Sends the request for the next key, if there is one. Keys whose request can't be built
+         * fail without being sent, and the key after them is tried instead.
+         */
+        private void sendNext() {
+            while (true) {
+                final K key;
+
+                synchronized (mResponses) {
+                    if (isDone() || !mKeys.hasNext()) {
+                        return;
+                    }
+
+                    key = NullUtils.nonNullContract(mKeys.next());
+                }
+
+                final AbstractRequest request;
+
+                try {
+                    request = mBuilder.buildRequest(key);
+                } catch (final RuntimeException e) {
+                    // Throwing here would leave the batch waiting for a response that never
+                    // comes.
+                    LogManager.e("Unable to build batch request", e);
+                    onFailed(key, new LevelUpResponse(new StreamingResponse(e)));
+                    continue;
+                }
+
+                final Future<LevelUpResponse> future =
+                        mConnection.sendAsync(request, new ResponseCallback() {
+                            @Override
+                            public void onResponse(@NonNull final AbstractRequest sent,
+                                    @NonNull final LevelUpResponse response) {
+                                onSent(key, sent, response);
+                            }
+                        }, (Executor) null);
+                final boolean isCancelled;
+
+                synchronized (mResponses) {
+                    // Checked under the lock done() takes, so the request is either cancelled by
+                    // it or here.
+                    isCancelled = isCancelled();
+
+                    // A request that has already responded was removed by onSent() before it was
+                    // added.
+                    if (!isCancelled && !future.isDone()) {
+                        mSent.put(key, future);
+                    }
+                }
+
+                if (isCancelled) {
+                    future.cancel(true);
+                }
+
+                return;
+            }
+        }
+
+        /**
+         * Records the failure of a key whose request couldn't be built.
+         *
+         * @param key the key.
+         * @param response the failed response to record for {@code key}.
+         */
+        private void onFailed(@NonNull final K key, @NonNull final LevelUpResponse response) {
+            final boolean isLast;
+
+            synchronized (mResponses) {
+                mResponses.put(key, response);
+                isLast = 0 == --mRemaining;
+            }
+
+            if (isLast) {
+                run();
+            }
+        }
+
+        /**
+         * Records a response, delivers it and keeps the batch going.
+         *
+         * @param key the key the request was sent for.
+         * @param request the request.
+         * @param response the response to {@code request}.
+         */
+        private void onSent(@NonNull final K key, @NonNull final AbstractRequest request,
+                @NonNull final LevelUpResponse response) {
+            synchronized (mResponses) {
+                mSent.remove(key);
+                mResponses.put(key, response);
+            }
+
+            if (null != mCallback) {
+                deliver(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isCancelled()) {
+                            mCallback.onResponse(key, request, response);
+                        }
+                    }
+                });
+            }
+
+            sendNext();
+
+            final boolean isLast;
+
+            synchronized (mResponses) {
+                isLast = 0 == --mRemaining;
+            }
+
+            if (isLast) {
+                run();
+            }
+        }
+
+        /**
+         * @param delivery the callback to run on the callback executor.
+         */
+        private void deliver(@NonNull final Runnable delivery) {
+            if (null == mCallbackExecutor) {
+                delivery.run();
+            } else {
+                mCallbackExecutor.execute(delivery);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.scvngr.levelup.core.BuildConfig;
 import com.scvngr.levelup.core.annotation.LevelUpApi;
 import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
 import com.scvngr.levelup.core.annotation.VisibleForTesting;
@@ -25,10 +26,13 @@ import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
 import com.scvngr.levelup.core.util.LogManager;
 import com.scvngr.levelup.core.util.NullUtils;
 
-import java.io.BufferedReader;
+import net.jcip.annotations.GuardedBy;
+
+import org.apache.http.protocol.HTTP;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -71,10 +75,17 @@ public class BufferedResponse extends AbstractResponse<String> implements Parcel
     /* package */static final int READ_BUFFER_SIZE_BYTES = 4096;
 
     /**
-     * Data represented in the response.
+     * The body as received, if it hasn't been decoded into {@link #mData} yet.
      */
-    @NonNull
-    private final String mData;
+    @Nullable
+    @GuardedBy("this")
+    private byte[] mBytes;
+
+    /**
+     * Data represented in the response, or null until {@link #mBytes} is decoded.
+     */
+    @Nullable
+    private volatile String mData;
 
     /**
      * Error representing and error that occurred during the reading of the response.
@@ -86,6 +97,7 @@ public class BufferedResponse extends AbstractResponse<String> implements Parcel
      * @param data the string data (typically JSON) from the response from the server.
      */
     public BufferedResponse(@NonNull final String data) {
+        mBytes = null;
         mData = data;
         mReadError = null;
     }
@@ -97,6 +109,7 @@ public class BufferedResponse extends AbstractResponse<String> implements Parcel
      */
     public BufferedResponse(@NonNull final Parcel in) {
         super(in.readInt(), (Exception) in.readSerializable());
+        mBytes = null;
         mData = in.readString();
         mReadError = (Exception) in.readSerializable();
     }
@@ -107,15 +120,17 @@ public class BufferedResponse extends AbstractResponse<String> implements Parcel
     @VisibleForTesting(visibility = Visibility.PRIVATE)
     /* package */BufferedResponse(@NonNull final InputStream data) {
         Exception error = null;
-        StringBuilder builder = null;
+        byte[] bytes;
+
         try {
-            builder = readStream(data);
+            bytes = readBytes(data, -1);
         } catch (final IOException e) {
-            builder = new StringBuilder();
+            bytes = new byte[0];
             error = e;
         }
 
-        mData = builder.toString();
+        mBytes = bytes;
+        mData = null;
         mReadError = error;
     }
 
@@ -132,6 +147,7 @@ public class BufferedResponse extends AbstractResponse<String> implements Parcel
             @Nullable final Map<String, List<String>> headers, @Nullable final Exception error) {
         super(statusCode, headers, error);
         mReadError = null;
+        mBytes = null;
         mData = data;
     }
 
@@ -145,27 +161,47 @@ public class BufferedResponse extends AbstractResponse<String> implements Parcel
     /* package */BufferedResponse(@NonNull final StreamingResponse response) {
         super(response.getHttpStatusCode(), response.getHttpHeaders(), response.getError());
         Exception error = null;
-        StringBuilder builder = null;
+        byte[] bytes = null;
 
         try {
             final InputStream data = response.getData();
 
             if (null != data) {
-                builder = readStream(data);
+                bytes = readBytes(data, getExpectedLength(response));
             }
         } catch (final IOException e) {
             error = e;
         }
 
-        mData = (null == builder) ? "" : NullUtils.nonNullContract(builder.toString());
+        mBytes = (null == bytes) ? new byte[0] : bytes;
+        mData = null;
         mReadError = error;
         response.close();
     }
 
+    /**
+     * @return the body of the response. The body is kept as UTF-8 bytes until this is first
+     *         called.
+     */
     @Override
     @Nullable
     public String getData() {
-        return mData;
+        String data = mData;
+
+        if (null == data) {
+            synchronized (this) {
+                data = mData;
+
+                if (null == data) {
+                    data = decode(NullUtils.nonNullContract(mBytes));
+                    mData = data;
+                    // The string is kept from now on, so the bytes are no longer needed.
+                    mBytes = null;
+                }
+            }
+        }
+
+        return data;
     }
 
     /**
@@ -196,41 +232,142 @@ public class BufferedResponse extends AbstractResponse<String> implements Parcel
     @VisibleForTesting(visibility = Visibility.PRIVATE)
     /* package */static StringBuilder readStream(@NonNull final InputStream data)
             throws IOException {
-        final StringBuilder builder = new StringBuilder();
+        return new StringBuilder(decode(readBytes(data, -1)));
+    }
+
+    /**
+     * Reads the contents of the input stream and closes it. When the length of the body is known,
+     * it is read straight into an array of that size. Otherwise it is read into a buffer from the
+     * {@link ResponseBufferPool} and copied out once at the end.
+     *
+     * @param data the {@link InputStream} containing the response data.
+     * @param expectedLength the length of the body if known (from {@code Content-Length}), or -1.
+     *        A wrong length costs an extra copy but is otherwise harmless.
+     * @return the data read.
+     * @throws IOException if an error occurs during the reading of the stream.
+     */
+    @NonNull
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static byte[] readBytes(@NonNull final InputStream data, final int expectedLength)
+            throws IOException {
+        if (MAX_DATA_SIZE_BYTES < expectedLength) {
+            data.close();
+            throw new ResponseTooLargeException();
+        }
 
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(data, "utf-8"));
-        final char[] chars = new char[READ_BUFFER_SIZE_BYTES];
-        int size = 0;
+        byte[] buffer =
+                0 <= expectedLength ? new byte[expectedLength] : ResponseBufferPool.obtain();
+        int length = 0;
 
         try {
             while (true) {
-                final int read = reader.read(chars);
+                if (length == buffer.length) {
+                    // Check whether the body has ended before making room for more.
+                    final int next = data.read();
+
+                    if (-1 == next) {
+                        break;
+                    }
+
+                    buffer = grow(buffer, length);
+                    buffer[length++] = (byte) next;
+                }
+
+                final int read = data.read(buffer, length, buffer.length - length);
+
                 if (-1 == read) {
                     break;
                 }
 
-                size += read;
+                length += read;
 
-                if (MAX_DATA_SIZE_BYTES < size) {
+                if (MAX_DATA_SIZE_BYTES < length) {
                     throw new ResponseTooLargeException();
                 }
-
-                // Only append the number of characters read (no extra junk)
-                builder.append(chars, 0, read);
             }
         } finally {
-            reader.close();
+            data.close();
+        }
+
+        if (BuildConfig.DEBUG) {
+            LogManager.v("Response is %s", decode(buffer, length));
+        }
+
+        if (length == buffer.length) {
+            return buffer;
+        }
+
+        final byte[] bytes = new byte[length];
+        System.arraycopy(buffer, 0, bytes, 0, length);
+        ResponseBufferPool.recycle(buffer);
+
+        return bytes;
+    }
+
+    /**
+     * @param response the response being read.
+     * @return the length of the body from its {@code Content-Length}, or -1 if that is missing or
+     *         describes the body before a {@code Content-Encoding} was decoded.
+     */
+    /* package */static int getExpectedLength(@NonNull final StreamingResponse response) {
+        final String contentLength = response.getHttpHeader(HTTP.CONTENT_LEN);
+
+        if (null == contentLength
+                || null != response.getHttpHeader(RequestUtils.HEADER_CONTENT_ENCODING)) {
+            return -1;
+        }
+
+        try {
+            return Math.max(-1, Integer.parseInt(contentLength.trim()));
+        } catch (final NumberFormatException e) {
+            return -1;
         }
+    }
+
+    /**
+     * @param buffer a full buffer.
+     * @param length the number of bytes in {@code buffer}.
+     * @return a larger buffer holding the same bytes. {@code buffer} has been recycled.
+     */
+    @NonNull
+    private static byte[] grow(@NonNull final byte[] buffer, final int length) {
+        final int newLength =
+                Math.min(Math.max(length * 2, READ_BUFFER_SIZE_BYTES), MAX_DATA_SIZE_BYTES + 1);
+        final byte[] grown = new byte[newLength];
+        System.arraycopy(buffer, 0, grown, 0, length);
+        ResponseBufferPool.recycle(buffer);
+
+        return grown;
+    }
 
-        LogManager.v("Response is %s", builder);
+    /**
+     * @param bytes UTF-8 bytes.
+     * @return the decoded string.
+     */
+    @NonNull
+    private static String decode(@NonNull final byte[] bytes) {
+        return decode(bytes, bytes.length);
+    }
 
-        return builder;
+    /**
+     * @param bytes UTF-8 bytes.
+     * @param length the number of bytes to decode.
+     * @return the decoded string.
+     */
+    @NonNull
+    private static String decode(@NonNull final byte[] bytes, final int length) {
+        try {
+            return new String(bytes, 0, length, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            // This is pretty much impossible.
+            throw new RuntimeException("The unthinkable happened: there is no UTF-8", e);
+        }
     }
 
     @Override
     public String toString() {
         return String.format(Locale.US,
-                "BufferedResponse [mData=%s, AbstractResponse=%s]", mData, super.toString());
+                "BufferedResponse [mData=%s, AbstractResponse=%s]", getData(), super.toString());
     }
 
     @Override
@@ -242,7 +379,7 @@ public class BufferedResponse extends AbstractResponse<String> implements Parcel
     public void writeToParcel(final Parcel dest, final int flags) {
         dest.writeInt(getHttpStatusCode());
         dest.writeSerializable(super.getError());
-        dest.writeString(mData);
+        dest.writeString(getData());
         dest.writeSerializable(mReadError);
     }
 
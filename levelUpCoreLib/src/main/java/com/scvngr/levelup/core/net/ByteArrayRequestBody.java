@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A {@link RequestBody} that holds content that has already been encoded, so that it is written
+ * and measured without any further work. Use this for bodies that are serialized straight to
+ * bytes, such as those from
+ * {@link com.scvngr.levelup.core.model.factory.json.GsonModelFactory#toRequestBody(Object)}.
+ * </p>
+ * <p>
+ * The array passed in is not copied and must not be modified afterwards.
+ * </p>
+ */
+@Immutable
+@ThreadSafe
+@LevelUpApi(contract = LevelUpApi.Contract.DRAFT)
+public final class ByteArrayRequestBody implements RequestBody {
+
+    /**
+     * {@link android.os.Parcelable} creator.
+     */
+    public static final Creator<ByteArrayRequestBody> CREATOR =
+            new Creator<ByteArrayRequestBody>() {
+
+                @Override
+                public ByteArrayRequestBody[] newArray(final int size) {
+                    return new ByteArrayRequestBody[size];
+                }
+
+                @Override
+                public ByteArrayRequestBody createFromParcel(final Parcel source) {
+                    return new ByteArrayRequestBody(NullUtils.nonNullContract(source));
+                }
+            };
+
+    @NonNull
+    private final byte[] mBody;
+
+    @NonNull
+    private final String mContentType;
+
+    /**
+     * @param body the encoded body.
+     * @param contentType the MIME type of {@code body}.
+     */
+    public ByteArrayRequestBody(@NonNull final byte[] body, @NonNull final String contentType) {
+        mBody = body;
+        mContentType = contentType;
+    }
+
+    /**
+     * @param source parcel to restore from.
+     */
+    public ByteArrayRequestBody(@NonNull final Parcel source) {
+        mBody = NullUtils.nonNullContract(source.createByteArray());
+        mContentType = NullUtils.nonNullContract(source.readString());
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        dest.writeByteArray(mBody);
+        dest.writeString(mContentType);
+    }
+
+    @Override
+    public void writeToOutputStream(@NonNull final Context context,
+            @NonNull final OutputStream outputStream) throws IOException {
+        try {
+            outputStream.write(mBody);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    @Override
+    public int getContentLength() {
+        return mBody.length;
+    }
+
+    @Override
+    @NonNull
+    public String getContentType() {
+        return mContentType;
+    }
+
+    @Override
+    @Nullable
+    public String getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(mBody);
+        result = prime * result + mContentType.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final ByteArrayRequestBody other = (ByteArrayRequestBody) obj;
+        return mContentType.equals(other.mContentType) && Arrays.equals(mBody, other.mBody);
+    }
+
+    /**
+     * @return the body decoded as UTF-8.
+     */
+    @Override
+    @NonNull
+    public String toString() {
+        try {
+            return new String(mBody, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            // This is pretty much impossible.
+            throw new RuntimeException("The unthinkable happened: there is no UTF-8", e);
+        }
+    }
+}
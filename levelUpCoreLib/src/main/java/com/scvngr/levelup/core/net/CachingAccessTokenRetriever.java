@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.model.AccessToken;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>
+ * An {@link AccessTokenRetriever} that keeps the {@link AccessToken} of another retriever in
+ * memory, so that reading it from storage happens once rather than every time the headers of a
+ * request are built. When several requests need the token while it is being read, they all wait
+ * for that one read rather than each reading it again.
+ * </p>
+ * <p>
+ * The token is kept until {@link LevelUpConnection} gets a response with
+ * {@link LevelUpStatus#LOGIN_REQUIRED} for a request that used it, or until {@link #invalidate()}
+ * is called, which the app should do when the user logs in or out. A null token is never kept, so
+ * a user who logs in is seen right away.
+ * </p>
+ * <p>
+ * All instances that wrap equal retrievers share the same token, including instances recreated
+ * from a {@link Parcel}.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class CachingAccessTokenRetriever implements AccessTokenRetriever {
+
+    /**
+     * Implements the {@link android.os.Parcelable} interface.
+     */
+    @NonNull
+    public static final Creator<CachingAccessTokenRetriever> CREATOR =
+            new Creator<CachingAccessTokenRetriever>() {
+
+                @Override
+                public CachingAccessTokenRetriever createFromParcel(final Parcel in) {
+                    final AccessTokenRetriever retriever =
+                            in.readParcelable(CachingAccessTokenRetriever.class.getClassLoader());
+
+                    return new CachingAccessTokenRetriever(NullUtils.nonNullContract(retriever));
+                }
+
+                @Override
+                public CachingAccessTokenRetriever[] newArray(final int size) {
+                    return new CachingAccessTokenRetriever[size];
+                }
+            };
+
+    /**
+     * The token of each wrapped retriever. The keys are weak, so an entry goes away once no
+     * instance wraps its retriever.
+     */
+    @NonNull
+    @GuardedBy("TOKENS")
+    private static final Map<AccessTokenRetriever, CachedToken> TOKENS =
+            new WeakHashMap<AccessTokenRetriever, CachedToken>();
+
+    @NonNull
+    private final AccessTokenRetriever mRetriever;
+
+    @NonNull
+    private final CachedToken mToken;
+
+    /**
+     * @param retriever the retriever to read the token from.
+     */
+    public CachingAccessTokenRetriever(@NonNull final AccessTokenRetriever retriever) {
+        mRetriever = retriever;
+        mToken = getCachedToken(retriever);
+    }
+
+    /**
+     * @param retriever the wrapped retriever.
+     * @return the token shared by instances that wrap {@code retriever}.
+     */
+    @NonNull
+    private static CachedToken getCachedToken(@NonNull final AccessTokenRetriever retriever) {
+        synchronized (TOKENS) {
+            CachedToken token = TOKENS.get(retriever);
+
+            if (null == token) {
+                token = new CachedToken();
+                TOKENS.put(retriever, token);
+            }
+
+            return token;
+        }
+    }
+
+    @Override
+    @Nullable
+    public AccessToken getAccessToken(@NonNull final Context context) {
+        return mToken.get(context, mRetriever);
+    }
+
+    /**
+     * Drops the token, so the next request reads it from the wrapped retriever again.
+     */
+    public void invalidate() {
+        mToken.invalidate();
+    }
+
+    /**
+     * @return the wrapped retriever.
+     */
+    @NonNull
+    public AccessTokenRetriever getRetriever() {
+        return mRetriever;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        dest.writeParcelable(mRetriever, flags);
+    }
+
+    @Override
+    public int hashCode() {
+        return mRetriever.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof CachingAccessTokenRetriever)) {
+            return false;
+        }
+
+        return mRetriever.equals(((CachingAccessTokenRetriever) obj).mRetriever);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "CachingAccessTokenRetriever [mRetriever=%s]", mRetriever);
+    }
+
+    /**
+     * The token read from a retriever, and whether it is being read.
+     */
+    @ThreadSafe
+    private static final class CachedToken {
+
+        /**
+         * The token, or null if it hasn't been read or has been invalidated.
+         */
+        @Nullable
+        @GuardedBy("this")
+        private AccessToken mToken;
+
+        /**
+         * Whether a thread is reading the token from the retriever.
+         */
+        @GuardedBy("this")
+        private boolean mIsReading;
+
+        /**
+         * Incremented by {@link #invalidate()}, so that a read that started before the token was
+         * invalidated doesn't store what may be the invalidated token.
+         */
+        @GuardedBy("this")
+        private int mGeneration;
+
+        /**
+         * @param context the Application context.
+         * @param retriever the retriever to read the token from if it isn't cached.
+         * @return the token.
+         */
+        @Nullable
+        public AccessToken get(@NonNull final Context context,
+                @NonNull final AccessTokenRetriever retriever) {
+            final int generation;
+
+            synchronized (this) {
+                while (null == mToken && mIsReading) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+
+                if (null != mToken) {
+                    return mToken;
+                }
+
+                // If interrupted while waiting, read the token without taking over the read in
+                // progress.
+                generation = mIsReading ? -1 : mGeneration;
+                mIsReading = true;
+            }
+
+            if (-1 == generation) {
+                return retriever.getAccessToken(context);
+            }
+
+            AccessToken token = null;
+
+            try {
+                token = retriever.getAccessToken(context);
+            } finally {
+                synchronized (this) {
+                    if (generation == mGeneration) {
+                        mToken = token;
+                    }
+
+                    mIsReading = false;
+                    notifyAll();
+                }
+            }
+
+            return token;
+        }
+
+        /**
+         * Drops the token.
+         */
+        public synchronized void invalidate() {
+            mToken = null;
+            // Stays non-negative, since -1 marks a read that doesn't store its token.
+            mGeneration = (mGeneration + 1) & Integer.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.util.LogManager;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * For Testing: an {@link Interceptor} that answers requests with pre-made responses instead of
+ * passing them on to the network. A response set for a URL is returned once; a response set for
+ * any URL is returned for every request that has no response of its own.
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class CannedResponseInterceptor implements Interceptor {
+
+    /**
+     * Pre-made responses by the URL they are returned for, where the null key matches any URL.
+     */
+    @NonNull
+    @GuardedBy("mResponses")
+    private final Map<String, LevelUpResponse> mResponses = new HashMap<String, LevelUpResponse>();
+
+    /**
+     * Sets the next response to return for the URL passed.
+     *
+     * @param url the URL that this response should be returned for (null sets the response for any
+     *        request).
+     * @param response the next response to return (null clears the response).
+     */
+    public void setResponse(@Nullable final String url, @Nullable final LevelUpResponse response) {
+        synchronized (mResponses) {
+            if (null == response) {
+                mResponses.remove(url);
+            } else {
+                mResponses.put(url, response);
+            }
+        }
+    }
+
+    /**
+     * @param url the URL of the request, or null.
+     * @return the response that will be returned for {@code url}, or null if the request will be
+     *         passed on.
+     */
+    @Nullable
+    public LevelUpResponse getResponse(@Nullable final String url) {
+        synchronized (mResponses) {
+            final LevelUpResponse response = mResponses.get(url);
+
+            return null != response ? response : mResponses.get(null);
+        }
+    }
+
+    @Override
+    @NonNull
+    public LevelUpResponse intercept(@NonNull final Chain chain) {
+        final AbstractRequest request = chain.getRequest();
+        LevelUpResponse response = null;
+
+        try {
+            final String url = request.getUrlString(chain.getContext());
+
+            synchronized (mResponses) {
+                response = mResponses.remove(url);
+
+                if (null == response) {
+                    response = mResponses.get(null);
+                }
+            }
+        } catch (final BadRequestException e) {
+            LogManager.e("BadRequestException", e);
+        }
+
+        if (null == response) {
+            return chain.proceed(request);
+        }
+
+        LogManager.d("Returning canned response instead of performing network operation");
+
+        return response;
+    }
+}
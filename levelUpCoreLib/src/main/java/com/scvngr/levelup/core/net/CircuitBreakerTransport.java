@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A {@link Transport} that stops sending requests to an endpoint while it is failing, so that
+ * callers fail fast instead of each waiting for a socket timeout.
+ * </p>
+ * <p>
+ * Each endpoint has its own circuit. Requests belong to the endpoint returned by
+ * {@link RequestUtils#getEndpointTemplate(java.net.URL)}, so that requests for different resources
+ * of the same endpoint (such as {@code /v15/users/1} and {@code /v15/users/2}) share a circuit.
+ * After {@code failureThreshold} consecutive failures (network errors or 5xx responses) the
+ * circuit opens and requests to the endpoint immediately get a response with a
+ * {@link CircuitOpenException}, which maps to {@link LevelUpStatus#ERROR_NETWORK}. Once
+ * {@code openDurationMillis} have passed, a single trial request is let through; if it succeeds
+ * the circuit closes, otherwise it opens again.
+ * </p>
+ * <p>
+ * Install it by wrapping another transport:
+ * </p>
+ *
+ * <pre>
+ * LevelUpConnection.setDefaultTransport(new CircuitBreakerTransport(
+ *         new ConcurrencyLimitingTransport(new HttpUrlConnectionTransport())));
+ * </pre>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class CircuitBreakerTransport implements Transport {
+
+    /**
+     * The default number of consecutive failures that opens a circuit.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * The default time a circuit stays open before a trial request is let through.
+     */
+    public static final long DEFAULT_OPEN_DURATION_MILLIS = 30 * 1000;
+
+    /**
+     * The maximum number of endpoints whose circuits are tracked. The least recently used circuit
+     * is forgotten beyond this.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final int MAX_CIRCUITS = 128;
+
+    @NonNull
+    private final Transport mDelegate;
+
+    private final int mFailureThreshold;
+
+    private final long mOpenDurationMillis;
+
+    @NonNull
+    @GuardedBy("mCircuits")
+    private final Map<String, Circuit> mCircuits = new LinkedHashMap<String, Circuit>(16, 0.75f,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Circuit> eldest) {
+            return size() > MAX_CIRCUITS;
+        }
+    };
+
+    /**
+     * Creates a circuit breaker with the default limits.
+     *
+     * @param delegate the transport to send requests over.
+     */
+    public CircuitBreakerTransport(@NonNull final Transport delegate) {
+        this(delegate, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION_MILLIS);
+    }
+
+    /**
+     * @param delegate the transport to send requests over.
+     * @param failureThreshold the number of consecutive failures that opens a circuit.
+     * @param openDurationMillis the time a circuit stays open before a trial request is let
+     *        through.
+     */
+    public CircuitBreakerTransport(@NonNull final Transport delegate, final int failureThreshold,
+            final long openDurationMillis) {
+        if (1 > failureThreshold || 0 > openDurationMillis) {
+            throw new IllegalArgumentException("Invalid circuit breaker limits");
+        }
+
+        mDelegate = delegate;
+        mFailureThreshold = failureThreshold;
+        mOpenDurationMillis = openDurationMillis;
+    }
+
+    @Override
+    @NonNull
+    public StreamingResponse send(@NonNull final Context context,
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
+        final String endpoint;
+
+        try {
+            endpoint = RequestUtils.getEndpointTemplate(request.getUrl(context));
+        } catch (final BadRequestException e) {
+            // The delegate reports the bad request.
+            return mDelegate.send(context, request, additionalHeaders, listener, handle);
+        }
+
+        final Circuit circuit = getCircuit(endpoint);
+
+        if (!circuit.tryAcquire(SystemClock.elapsedRealtime())) {
+            LogManager.v("Circuit open for %s", endpoint);
+            return new StreamingResponse(new CircuitOpenException(endpoint));
+        }
+
+        final StreamingResponse response =
+                mDelegate.send(context, request, additionalHeaders, listener, handle);
+
+        if (null != handle && handle.isCancelled()) {
+            // A cancelled send says nothing about the health of the endpoint.
+            circuit.onCancelled();
+        } else if (isFailure(response)) {
+            circuit.onFailure(SystemClock.elapsedRealtime());
+        } else {
+            circuit.onSuccess();
+        }
+
+        return response;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return mDelegate.getMaxConnections();
+    }
+
+    /**
+     * @param endpoint an endpoint, as returned by
+     *        {@link RequestUtils#getEndpointTemplate(java.net.URL)}.
+     * @return true if requests to {@code endpoint} are currently being rejected.
+     */
+    public boolean isOpen(@NonNull final String endpoint) {
+        return getCircuit(endpoint).isOpen(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @param response a response from a transport.
+     * @return true if the response indicates that the server or the network is unhealthy.
+     */
+    /* package */static boolean isFailure(@NonNull final StreamingResponse response) {
+        final Exception error = response.getError();
+
+        if (null != error) {
+            return !(error instanceof BadRequestException)
+                    && !(error instanceof CircuitOpenException);
+        }
+
+        return HttpURLConnection.HTTP_INTERNAL_ERROR <= response.getHttpStatusCode();
+    }
+
+    /**
+     * @param endpoint an endpoint, as returned by
+     *        {@link RequestUtils#getEndpointTemplate(java.net.URL)}.
+     * @return the circuit for {@code endpoint}.
+     */
+    @NonNull
+    private Circuit getCircuit(@NonNull final String endpoint) {
+        synchronized (mCircuits) {
+            Circuit circuit = mCircuits.get(endpoint);
+
+            if (null == circuit) {
+                circuit = new Circuit();
+                mCircuits.put(endpoint, circuit);
+            }
+
+            return circuit;
+        }
+    }
+
+    /**
+     * The state of the circuit for one endpoint.
+     */
+    @ThreadSafe
+    private final class Circuit {
+
+        @GuardedBy("this")
+        private int mConsecutiveFailures = 0;
+
+        /**
+         * When the circuit opened, or -1 if it is closed.
+         */
+        @GuardedBy("this")
+        private long mOpenedAtMillis = -1;
+
+        @GuardedBy("this")
+        private boolean mIsTrialInFlight = false;
+
+        /**
+         * @param nowMillis the current time.
+         * @return true if a request may be sent.
+         */
+        public synchronized boolean tryAcquire(final long nowMillis) {
+            if (-1 == mOpenedAtMillis) {
+                return true;
+            }
+
+            if (nowMillis - mOpenedAtMillis < mOpenDurationMillis || mIsTrialInFlight) {
+                return false;
+            }
+
+            mIsTrialInFlight = true;
+
+            return true;
+        }
+
+        /**
+         * Records a successful request, closing the circuit.
+         */
+        public synchronized void onSuccess() {
+            mConsecutiveFailures = 0;
+            mOpenedAtMillis = -1;
+            mIsTrialInFlight = false;
+        }
+
+        /**
+         * Records a request that was cancelled, which lets another trial request through.
+         */
+        public synchronized void onCancelled() {
+            mIsTrialInFlight = false;
+        }
+
+        /**
+         * Records a failed request, opening the circuit if the threshold is reached or the trial
+         * request failed.
+         *
+         * @param nowMillis the current time.
+         */
+        public synchronized void onFailure(final long nowMillis) {
+            mConsecutiveFailures++;
+
+            if (mIsTrialInFlight || mConsecutiveFailures >= mFailureThreshold) {
+                mOpenedAtMillis = nowMillis;
+            }
+
+            mIsTrialInFlight = false;
+        }
+
+        /**
+         * @param nowMillis the current time.
+         * @return true if requests are being rejected.
+         */
+        public synchronized boolean isOpen(final long nowMillis) {
+            return -1 != mOpenedAtMillis
+                    && (nowMillis - mOpenedAtMillis < mOpenDurationMillis || mIsTrialInFlight);
+        }
+    }
+
+    /**
+     * The error in responses to requests that were rejected because their endpoint's circuit is
+     * open.
+     */
+    public static final class CircuitOpenException extends IOException {
+
+        /**
+         * Implements the {@link java.io.Serializable} interface.
+         */
+        private static final long serialVersionUID = -2283466337431380418L;
+
+        /**
+         * @param endpoint the endpoint whose circuit is open.
+         */
+        public CircuitOpenException(@NonNull final String endpoint) {
+            super(NullUtils.format("Circuit open for %s", endpoint));
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A {@link Transport} that limits the number of requests in flight to each host, adapting the
+ * limit to how the host is coping (additive increase, multiplicative decrease).
+ * </p>
+ * <p>
+ * Each host starts with a limit of {@link Transport#getMaxConnections()} of the wrapped transport.
+ * Every request that succeeds without its latency rising above {@link #LATENCY_TOLERANCE} times
+ * the lowest latency recently seen for its endpoint raises the limit by {@code 1 / limit}, up to
+ * that maximum. Every failure or slow response halves it, down to one. Latency is compared per
+ * endpoint (see {@link RequestUtils#getEndpointTemplate(java.net.URL)}), since a slow search is
+ * not a sign of congestion just because a simple lookup on the same host is fast.
+ * </p>
+ * <p>
+ * A request stays in flight until its response is closed or its body has been read to the end or
+ * failed, since the connection is busy until then. Requests beyond the limit wait for one in
+ * flight to finish, so that a struggling server gets fewer parallel requests instead of a growing
+ * pile of them. A waiting request gives up as soon as its {@link RequestHandle} is cancelled or its
+ * deadline passes.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class ConcurrencyLimitingTransport implements Transport {
+
+    /**
+     * Latency above this multiple of the lowest recent latency counts as congestion.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * The factor the limit is multiplied by on congestion.
+     */
+    private static final double BACKOFF_RATIO = 0.5;
+
+    /**
+     * The number of samples after which the lowest latency is re-measured, so that the baseline
+     * follows changes in network conditions.
+     */
+    private static final int MIN_LATENCY_WINDOW = 100;
+
+    /**
+     * The maximum number of endpoints of a host whose latency is tracked. The least recently used
+     * endpoint is forgotten beyond this.
+     */
+    private static final int MAX_ENDPOINTS = 64;
+
+    @NonNull
+    private final Transport mDelegate;
+
+    @NonNull
+    @GuardedBy("mLimits")
+    private final Map<String, HostLimit> mLimits = new HashMap<String, HostLimit>();
+
+    /**
+     * @param delegate the transport to send requests over.
+     */
+    public ConcurrencyLimitingTransport(@NonNull final Transport delegate) {
+        mDelegate = delegate;
+    }
+
+    @Override
+    @NonNull
+    public StreamingResponse send(@NonNull final Context context,
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
+        final String host;
+        final String endpoint;
+
+        try {
+            final URL url = request.getUrl(context);
+            host = NullUtils.nonNullContract(url.getHost());
+            endpoint = RequestUtils.getEndpointTemplate(url);
+        } catch (final BadRequestException e) {
+            // The delegate reports the bad request.
+            return mDelegate.send(context, request, additionalHeaders, listener, handle);
+        }
+
+        final HostLimit limit = getHostLimit(host);
+
+        try {
+            limit.acquire(handle);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return new StreamingResponse(new InterruptedIOException(
+                    "Interrupted while waiting to send request"));
+        } catch (final InterruptedIOException e) {
+            return new StreamingResponse(e);
+        }
+
+        final long startNanos = System.nanoTime();
+        StreamingResponse response = null;
+
+        try {
+            response = mDelegate.send(context, request, additionalHeaders, listener, handle);
+        } finally {
+            final long latencyNanos = System.nanoTime() - startNanos;
+            final boolean isFailure =
+                    null == response
+                            || (CircuitBreakerTransport.isFailure(response)
+                                    && (null == handle || !handle.isCancelled()));
+
+            if (null == response || null == response.getData()) {
+                limit.release(endpoint, latencyNanos, isFailure);
+            } else {
+                // The connection is busy until the body has been read or the response closed.
+                response.setCloseAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        limit.release(endpoint, latencyNanos, isFailure);
+                    }
+                });
+            }
+        }
+
+        return response;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return mDelegate.getMaxConnections();
+    }
+
+    /**
+     * @param host the host name.
+     * @return the current limit on requests in flight to {@code host}.
+     */
+    public int getLimit(@NonNull final String host) {
+        return getHostLimit(host).getLimit();
+    }
+
+    /**
+     * @param host the host name.
+     * @return the limit for {@code host}.
+     */
+    @NonNull
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */HostLimit getHostLimit(@NonNull final String host) {
+        synchronized (mLimits) {
+            HostLimit limit = mLimits.get(host);
+
+            if (null == limit) {
+                limit = new HostLimit(Math.max(1, mDelegate.getMaxConnections()));
+                mLimits.put(host, limit);
+            }
+
+            return limit;
+        }
+    }
+
+    /**
+     * The adaptive limit for one host.
+     */
+    @ThreadSafe
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final class HostLimit {
+
+        private final int mMaxLimit;
+
+        @GuardedBy("this")
+        private double mLimit;
+
+        @GuardedBy("this")
+        private int mInFlight = 0;
+
+        /**
+         * The recent latencies of each endpoint of the host.
+         */
+        @NonNull
+        @GuardedBy("this")
+        private final Map<String, LatencyBaseline> mBaselines =
+                new LinkedHashMap<String, LatencyBaseline>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<String, LatencyBaseline> eldest) {
+                        return size() > MAX_ENDPOINTS;
+                    }
+                };
+
+        /**
+         * Wakes the threads waiting in {@link #acquire}, so that a cancelled one can give up.
+         */
+        @NonNull
+        private final Runnable mWakeUp = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (HostLimit.this) {
+                    HostLimit.this.notifyAll();
+                }
+            }
+        };
+
+        /**
+         * @param maxLimit the initial and maximum limit.
+         */
+        /* package */HostLimit(final int maxLimit) {
+            mMaxLimit = maxLimit;
+            mLimit = maxLimit;
+        }
+
+        /**
+         * Waits until a request may be sent, or until {@code handle} is done.
+         *
+         * @param handle the timeouts and cancellation of the send, or null to wait for as long as
+         *        it takes.
+         * @throws InterruptedException if the thread is interrupted while waiting.
+         * @throws InterruptedIOException if {@code handle} is done before the request may be sent.
+         */
+        public void acquire(@Nullable final RequestHandle handle) throws InterruptedException,
+                InterruptedIOException {
+            if (null == handle) {
+                acquireSlot(null);
+                return;
+            }
+
+            // Cancelling wakes the thread so that it gives up right away.
+            handle.setOnCancelListener(mWakeUp);
+
+            try {
+                acquireSlot(handle);
+            } finally {
+                handle.setOnCancelListener(null);
+            }
+        }
+
+        /**
+         * @param handle the timeouts and cancellation of the send, or null.
+         * @throws InterruptedException if the thread is interrupted while waiting.
+         * @throws InterruptedIOException if {@code handle} is done before the request may be sent.
+         */
+        private synchronized void acquireSlot(@Nullable final RequestHandle handle)
+                throws InterruptedException, InterruptedIOException {
+            while (true) {
+                if (null != handle && handle.isDone()) {
+                    throw handle.newDoneError();
+                }
+
+                if (mInFlight < getLimit()) {
+                    break;
+                }
+
+                wait(null == handle ? 0 : handle.getWaitMillis());
+            }
+
+            mInFlight++;
+        }
+
+        /**
+         * Records the outcome of a request and adjusts the limit.
+         *
+         * @param endpoint the endpoint of the request.
+         * @param latencyNanos the time the request took to get a response.
+         * @param isFailure true if the request failed.
+         */
+        public synchronized void release(@NonNull final String endpoint,
+                final long latencyNanos, final boolean isFailure) {
+            mInFlight--;
+
+            LatencyBaseline baseline = mBaselines.get(endpoint);
+
+            if (null == baseline) {
+                baseline = new LatencyBaseline();
+                mBaselines.put(endpoint, baseline);
+            }
+
+            if (0 == baseline.mSampleCount++ % MIN_LATENCY_WINDOW) {
+                baseline.mMinLatencyNanos = Long.MAX_VALUE;
+            }
+
+            final boolean isSlow =
+                    Long.MAX_VALUE != baseline.mMinLatencyNanos
+                            && latencyNanos > baseline.mMinLatencyNanos * LATENCY_TOLERANCE;
+
+            if (!isFailure) {
+                baseline.mMinLatencyNanos = Math.min(baseline.mMinLatencyNanos, latencyNanos);
+            }
+
+            final int oldLimit = getLimit();
+
+            if (isFailure || isSlow) {
+                mLimit = Math.max(1, mLimit * BACKOFF_RATIO);
+            } else {
+                mLimit = Math.min(mMaxLimit, mLimit + 1 / mLimit);
+            }
+
+            if (oldLimit != getLimit()) {
+                LogManager.v("Concurrency limit changed from %d to %d", oldLimit, getLimit());
+            }
+
+            notifyAll();
+        }
+
+        /**
+         * @return the current limit.
+         */
+        public synchronized int getLimit() {
+            return (int) mLimit;
+        }
+
+        /**
+         * @return the number of requests in flight.
+         */
+        public synchronized int getInFlight() {
+            return mInFlight;
+        }
+    }
+
+    /**
+     * The lowest recent latency of one endpoint. Guarded by the {@link HostLimit} that holds it.
+     */
+    @NotThreadSafe
+    private static final class LatencyBaseline {
+
+        /* package */long mMinLatencyNanos = Long.MAX_VALUE;
+
+        /* package */int mSampleCount = 0;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stops reading a response body once its send is cancelled or its deadline has passed, so that a
+ * body that keeps trickling in can't be read past the deadline one short read at a time.
+ */
+@NotThreadSafe
+/* package */final class DeadlineInputStream extends FilterInputStream {
+
+    @NonNull
+    private final RequestHandle mHandle;
+
+    /**
+     * @param in the response body.
+     * @param handle the timeouts and cancellation of the send.
+     */
+    /* package */DeadlineInputStream(@NonNull final InputStream in,
+            @NonNull final RequestHandle handle) {
+        super(in);
+        mHandle = handle;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkNotDone();
+
+        return super.read();
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        checkNotDone();
+
+        return super.read(buffer, offset, length);
+    }
+
+    @Override
+    public long skip(final long byteCount) throws IOException {
+        checkNotDone();
+
+        return super.skip(byteCount);
+    }
+
+    /**
+     * @throws IOException if the send has been cancelled or its deadline has passed.
+     */
+    private void checkNotDone() throws IOException {
+        if (mHandle.isDone()) {
+            throw mHandle.newDoneError();
+        }
+    }
+}
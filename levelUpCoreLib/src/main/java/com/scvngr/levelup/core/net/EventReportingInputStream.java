@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a response body and reports
+ * {@link NetworkEventListener#responseBodyEnd} once, when the end of the body is reached or the
+ * stream is closed, whichever comes first.
+ */
+@NotThreadSafe
+/* package */final class EventReportingInputStream extends FilterInputStream {
+
+    @NonNull
+    private final AbstractRequest mRequest;
+
+    @NonNull
+    private final NetworkEventListener mListener;
+
+    private long mByteCount = 0;
+
+    private boolean mIsReported = false;
+
+    /**
+     * @param in the response body.
+     * @param request the request the response is for.
+     * @param listener the listener to report to.
+     */
+    /* package */EventReportingInputStream(@NonNull final InputStream in,
+            @NonNull final AbstractRequest request, @NonNull final NetworkEventListener listener) {
+        super(in);
+        mRequest = request;
+        mListener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int result = super.read();
+
+        if (-1 == result) {
+            reportEnd();
+        } else {
+            mByteCount++;
+        }
+
+        return result;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        final int count = super.read(buffer, offset, length);
+
+        if (-1 == count) {
+            reportEnd();
+        } else {
+            mByteCount += count;
+        }
+
+        return count;
+    }
+
+    @Override
+    public long skip(final long byteCount) throws IOException {
+        final long skipped = super.skip(byteCount);
+        mByteCount += skipped;
+
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Re-reading would count bytes twice.
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            reportEnd();
+        }
+    }
+
+    /**
+     * Reports the end of the body if it hasn't been reported yet.
+     */
+    /* package */void reportEnd() {
+        if (!mIsReported) {
+            mIsReported = true;
+            mListener.responseBodyEnd(mRequest, System.nanoTime(), mByteCount);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.net.CircuitBreakerTransport.CircuitOpenException;
+import com.scvngr.levelup.core.util.LogManager;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A {@link RetryPolicy} that retries transient failures with capped exponential backoff and full
+ * jitter: the n-th retry waits a random time between zero and
+ * {@code min(maxDelayMillis, baseDelayMillis * 2^n)}. A {@code Retry-After} header from the server
+ * is honored instead when it is within {@code maxDelayMillis}.
+ * </p>
+ * <p>
+ * Transient failures are network errors and HTTP 429, 502, 503 and 504 responses. They are only
+ * retried for idempotent methods (see {@link HttpMethod#isIdempotent()}), except for failures to
+ * connect, which the server can't have seen. Each request may be retried at most
+ * {@code maxRetries} times and wait at most {@code maxTotalDelayMillis} in total.
+ * </p>
+ * <p>
+ * The policy counts the attempts it sees so that the amount of retrying can be monitored.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    /**
+     * The default maximum number of retries per request.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    /**
+     * The default delay before the first retry.
+     */
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 250;
+
+    /**
+     * The default cap on the delay before any one retry.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 4000;
+
+    /**
+     * The default cap on the total delay for a request.
+     */
+    public static final long DEFAULT_MAX_TOTAL_DELAY_MILLIS = 8000;
+
+    /**
+     * HTTP status code for too many requests, which {@link HttpURLConnection} has no constant for.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Response header telling the client how long to wait before retrying.
+     */
+    @NonNull
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    /**
+     * Format of HTTP dates in headers.
+     */
+    @NonNull
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private final int mMaxRetries;
+
+    private final long mBaseDelayMillis;
+
+    private final long mMaxDelayMillis;
+
+    private final long mMaxTotalDelayMillis;
+
+    @NonNull
+    private final Random mRandom;
+
+    @NonNull
+    private final AtomicLong mAttemptCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mRetryCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mExhaustedCount = new AtomicLong();
+
+    /**
+     * Creates a policy with the default limits.
+     */
+    public ExponentialBackoffRetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS,
+                DEFAULT_MAX_TOTAL_DELAY_MILLIS);
+    }
+
+    /**
+     * @param maxRetries the maximum number of times to retry each request.
+     * @param baseDelayMillis the delay before the first retry, before jitter.
+     * @param maxDelayMillis the cap on the delay before any one retry.
+     * @param maxTotalDelayMillis the cap on the total delay for a request.
+     */
+    public ExponentialBackoffRetryPolicy(final int maxRetries, final long baseDelayMillis,
+            final long maxDelayMillis, final long maxTotalDelayMillis) {
+        this(maxRetries, baseDelayMillis, maxDelayMillis, maxTotalDelayMillis, new Random());
+    }
+
+    /**
+     * @param maxRetries the maximum number of times to retry each request.
+     * @param baseDelayMillis the delay before the first retry, before jitter.
+     * @param maxDelayMillis the cap on the delay before any one retry.
+     * @param maxTotalDelayMillis the cap on the total delay for a request.
+     * @param random the source of jitter.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */ExponentialBackoffRetryPolicy(final int maxRetries, final long baseDelayMillis,
+            final long maxDelayMillis, final long maxTotalDelayMillis,
+            @NonNull final Random random) {
+        if (0 > maxRetries || 0 > baseDelayMillis || baseDelayMillis > maxDelayMillis) {
+            throw new IllegalArgumentException("Invalid retry limits");
+        }
+
+        mMaxRetries = maxRetries;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mMaxTotalDelayMillis = maxTotalDelayMillis;
+        mRandom = random;
+    }
+
+    @Override
+    public long getRetryDelayMillis(@NonNull final AbstractRequest request,
+            @NonNull final AbstractResponse<?> response, @NonNull final LevelUpStatus status,
+            final int retryCount, final long totalDelayMillis) {
+        mAttemptCount.incrementAndGet();
+
+        if (!isRetryable(request.getMethod(), response, status)) {
+            return NO_RETRY;
+        }
+
+        if (retryCount >= mMaxRetries) {
+            mExhaustedCount.incrementAndGet();
+            return NO_RETRY;
+        }
+
+        long delay = parseRetryAfterMillis(response.getHttpHeader(HEADER_RETRY_AFTER),
+                System.currentTimeMillis());
+
+        if (NO_RETRY == delay) {
+            final long ceiling =
+                    Math.min(mMaxDelayMillis, mBaseDelayMillis << Math.min(retryCount, 30));
+            delay = (long) (mRandom.nextDouble() * (ceiling + 1));
+        }
+
+        if (delay > mMaxDelayMillis || totalDelayMillis + delay > mMaxTotalDelayMillis) {
+            mExhaustedCount.incrementAndGet();
+            return NO_RETRY;
+        }
+
+        mRetryCount.incrementAndGet();
+        LogManager.v("Retrying %s in %dms (retry %d)", request.getMethod(), delay, retryCount + 1);
+
+        return delay;
+    }
+
+    /**
+     * @return the number of attempts this policy has seen, including retries.
+     */
+    public long getAttemptCount() {
+        return mAttemptCount.get();
+    }
+
+    /**
+     * @return the number of retries this policy has allowed.
+     */
+    public long getRetryCount() {
+        return mRetryCount.get();
+    }
+
+    /**
+     * @return the number of transient failures that were not retried because a request's retry
+     *         budget was used up.
+     */
+    public long getExhaustedCount() {
+        return mExhaustedCount.get();
+    }
+
+    /**
+     * @param method the method of the request.
+     * @param response the response to the latest attempt.
+     * @param status the {@link LevelUpStatus} of {@code response}.
+     * @return true if the failure is transient and the request is safe to send again.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static boolean isRetryable(@NonNull final HttpMethod method,
+            @NonNull final AbstractResponse<?> response, @NonNull final LevelUpStatus status) {
+        if (LevelUpStatus.ERROR_NETWORK == status) {
+            final Exception error = response.getError();
+
+            if (error instanceof CircuitOpenException) {
+                // Retrying would only be rejected again.
+                return false;
+            }
+
+            // The server never saw requests that failed to connect.
+            return method.isIdempotent() || error instanceof ConnectException
+                    || error instanceof UnknownHostException;
+        }
+
+        if (!method.isIdempotent()) {
+            return false;
+        }
+
+        switch (response.getHttpStatusCode()) {
+            case HTTP_TOO_MANY_REQUESTS:
+            case HttpURLConnection.HTTP_BAD_GATEWAY:
+            case HttpURLConnection.HTTP_UNAVAILABLE:
+            case HttpURLConnection.HTTP_GATEWAY_TIMEOUT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param retryAfter the value of the {@code Retry-After} header, either a number of seconds or
+     *        an HTTP date. May be null.
+     * @param nowMillis the current wall time.
+     * @return the delay in milliseconds, or {@link #NO_RETRY} if the header is absent or invalid.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static long parseRetryAfterMillis(@Nullable final String retryAfter,
+            final long nowMillis) {
+        if (null == retryAfter) {
+            return NO_RETRY;
+        }
+
+        final String trimmed = retryAfter.trim();
+
+        try {
+            final long seconds = Long.parseLong(trimmed);
+
+            return 0 <= seconds ? seconds * 1000 : NO_RETRY;
+        } catch (final NumberFormatException e) {
+            // Try it as a date.
+        }
+
+        final SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        try {
+            return Math.max(0, format.parse(trimmed).getTime() - nowMillis);
+        } catch (final ParseException e) {
+            LogManager.w("Invalid Retry-After header: %s", retryAfter);
+            return NO_RETRY;
+        }
+    }
+}
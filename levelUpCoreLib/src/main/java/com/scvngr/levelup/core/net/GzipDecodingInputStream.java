@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decodes a gzip-encoded response body. The gzip header isn't read until the first read, so
+ * constructing this never blocks or fails, and an empty body (such as that of a
+ * {@code 304 Not Modified}) reads as empty rather than failing.
+ */
+@NotThreadSafe
+/* package */final class GzipDecodingInputStream extends InputStream {
+
+    @NonNull
+    private final InputStream mCompressed;
+
+    @Nullable
+    private InputStream mDecoded;
+
+    /**
+     * @param compressed the gzip-encoded stream.
+     */
+    /* package */GzipDecodingInputStream(@NonNull final InputStream compressed) {
+        mCompressed = compressed;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return getDecoded().read();
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        return getDecoded().read(buffer, offset, length);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return null == mDecoded ? 0 : mDecoded.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mCompressed.close();
+    }
+
+    /**
+     * @return the decoded stream, opening it if necessary.
+     * @throws IOException if the gzip header cannot be read.
+     */
+    @NonNull
+    private InputStream getDecoded() throws IOException {
+        if (null == mDecoded) {
+            final PushbackInputStream pushback = new PushbackInputStream(mCompressed, 1);
+            final int first = pushback.read();
+
+            if (-1 == first) {
+                mDecoded = pushback;
+            } else {
+                pushback.unread(first);
+                mDecoded = new GZIPInputStream(pushback, BufferedResponse.READ_BUFFER_SIZE_BYTES);
+            }
+        }
+
+        return mDecoded;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * A {@link RequestBody} that gzip-compresses another body. Requests with this body are sent with
+ * {@code Content-Encoding: gzip}.
+ * </p>
+ * <p>
+ * The body is compressed once, when this is constructed. This is worth doing only for large
+ * bodies, since compression costs CPU time and small bodies don't shrink much. The server must
+ * accept gzip-encoded requests for the endpoint.
+ * </p>
+ */
+@Immutable
+@ThreadSafe
+@LevelUpApi(contract = LevelUpApi.Contract.DRAFT)
+public final class GzipRequestBody implements RequestBody {
+
+    /**
+     * {@link android.os.Parcelable} creator.
+     */
+    public static final Creator<GzipRequestBody> CREATOR = new Creator<GzipRequestBody>() {
+
+        @Override
+        public GzipRequestBody[] newArray(final int size) {
+            return new GzipRequestBody[size];
+        }
+
+        @Override
+        public GzipRequestBody createFromParcel(final Parcel source) {
+            return new GzipRequestBody(NullUtils.nonNullContract(source));
+        }
+    };
+
+    /**
+     * The value of the {@code Content-Encoding} header for this body.
+     */
+    @NonNull
+    public static final String CONTENT_ENCODING_GZIP = "gzip";
+
+    @NonNull
+    private final byte[] mCompressed;
+
+    @NonNull
+    private final String mContentType;
+
+    /**
+     * @param context Application context.
+     * @param body the body to compress.
+     * @throws IOException if {@code body} cannot be written.
+     */
+    public GzipRequestBody(@NonNull final Context context, @NonNull final RequestBody body)
+            throws IOException {
+        final ByteArrayOutputStream buffer =
+                new ByteArrayOutputStream(Math.max(32, body.getContentLength() / 2));
+        final GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+
+        try {
+            body.writeToOutputStream(context, gzip);
+        } finally {
+            // Finishes the gzip trailer. Bodies may already have closed the stream.
+            gzip.close();
+        }
+
+        mCompressed = NullUtils.nonNullContract(buffer.toByteArray());
+        mContentType = body.getContentType();
+    }
+
+    /**
+     * @param source parcel to restore from.
+     */
+    public GzipRequestBody(@NonNull final Parcel source) {
+        mCompressed = NullUtils.nonNullContract(source.createByteArray());
+        mContentType = NullUtils.nonNullContract(source.readString());
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        dest.writeByteArray(mCompressed);
+        dest.writeString(mContentType);
+    }
+
+    @Override
+    public void writeToOutputStream(@NonNull final Context context,
+            @NonNull final OutputStream outputStream) throws IOException {
+        try {
+            outputStream.write(mCompressed);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * @return the length of the compressed body.
+     */
+    @Override
+    public int getContentLength() {
+        return mCompressed.length;
+    }
+
+    @Override
+    @NonNull
+    public String getContentType() {
+        return mContentType;
+    }
+
+    @Override
+    @NonNull
+    public String getContentEncoding() {
+        return CONTENT_ENCODING_GZIP;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(mCompressed);
+        result = prime * result + mContentType.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final GzipRequestBody other = (GzipRequestBody) obj;
+        return mContentType.equals(other.mContentType)
+                && Arrays.equals(mCompressed, other.mCompressed);
+    }
+
+    @Override
+    @NonNull
+    public String toString() {
+        return NullUtils.format("GzipRequestBody [mContentType=%s, length=%d]", mContentType,
+                mCompressed.length);
+    }
+}
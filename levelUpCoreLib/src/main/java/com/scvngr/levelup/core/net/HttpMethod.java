@@ -27,23 +27,40 @@ public enum HttpMethod {
      * GET request.
      */
     @NonNull
-    GET,
+    GET(true),
 
     /**
      * POST request.
      */
     @NonNull
-    POST,
+    POST(false),
 
     /**
      * PUT request.
      */
     @NonNull
-    PUT,
+    PUT(true),
 
     /**
      * DELETE request.
      */
     @NonNull
-    DELETE
+    DELETE(true);
+
+    private final boolean mIsIdempotent;
+
+    /**
+     * @param isIdempotent whether the method is idempotent.
+     */
+    private HttpMethod(final boolean isIdempotent) {
+        mIsIdempotent = isIdempotent;
+    }
+
+    /**
+     * @return true if sending a request with this method more than once has the same effect as
+     *         sending it once, so that it is safe to retry.
+     */
+    public boolean isIdempotent() {
+        return mIsIdempotent;
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.Map;
+
+/**
+ * The default {@link Transport}, which sends requests with {@link java.net.HttpURLConnection} via
+ * {@link NetworkConnection}.
+ */
+@Immutable
+@LevelUpApi(contract = Contract.DRAFT)
+public final class HttpUrlConnectionTransport implements Transport {
+
+    @Override
+    @NonNull
+    public StreamingResponse send(@NonNull final Context context,
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
+        return NetworkConnection.send(context, request, additionalHeaders, listener, handle);
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return NetworkConnection.MAX_POOLED_CONNECTIONS;
+    }
+}
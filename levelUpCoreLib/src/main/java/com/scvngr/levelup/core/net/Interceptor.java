@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+
+/**
+ * Observes, rewrites or answers the requests sent by a {@link LevelUpConnection}. Interceptors
+ * are called in the order they were added, and each one passes the request on to the next with
+ * {@link Chain#proceed(AbstractRequest)}; the last one passes it on to the network. An
+ * interceptor can rewrite the request before passing it on, return a response without passing it
+ * on at all, or record what went by.
+ * <p>
+ * Interceptors see buffered {@link LevelUpResponse}s, so a connection with interceptors buffers
+ * the responses it would otherwise stream or spool. Implementations must be thread-safe.
+ * </p>
+ *
+ * @see LevelUpConnection#addInterceptor(Interceptor)
+ */
+@LevelUpApi(contract = Contract.DRAFT)
+public interface Interceptor {
+
+    /**
+     * @param chain the request and the rest of the chain.
+     * @return the response to the request.
+     */
+    @NonNull
+    LevelUpResponse intercept(@NonNull Chain chain);
+
+    /**
+     * The part of the chain after an {@link Interceptor}.
+     */
+    @LevelUpApi(contract = Contract.DRAFT)
+    interface Chain {
+
+        /**
+         * @return the Application context of the connection.
+         */
+        @NonNull
+        Context getContext();
+
+        /**
+         * @return the request as passed on by the previous interceptor.
+         */
+        @NonNull
+        AbstractRequest getRequest();
+
+        /**
+         * @return the timeouts and cancellation of the send, or null if it has none.
+         */
+        @Nullable
+        RequestHandle getHandle();
+
+        /**
+         * Passes a request on to the next interceptor, or to the network if there are no more.
+         *
+         * @param request the request to send, which may be a rewritten {@link #getRequest()}.
+         * @return the response to {@code request}.
+         */
+        @NonNull
+        LevelUpResponse proceed(@NonNull AbstractRequest request);
+    }
+}
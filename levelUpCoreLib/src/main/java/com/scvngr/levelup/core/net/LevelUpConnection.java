@@ -14,21 +14,35 @@
 package com.scvngr.levelup.core.net;
 
 import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.scvngr.levelup.core.annotation.LevelUpApi;
 import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.SlowOperation;
 import com.scvngr.levelup.core.annotation.VisibleForTesting;
 import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
 import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
 import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
 
-import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class for interacting with the LevelUp web service API.
@@ -36,6 +50,12 @@ import java.util.Locale;
 @ThreadSafe
 @LevelUpApi(contract = Contract.DRAFT)
 public final class LevelUpConnection {
+    /**
+     * The interceptors of a connection that has none.
+     */
+    @NonNull
+    private static final Interceptor[] NO_INTERCEPTORS = new Interceptor[0];
+
     /**
      * Application context.
      */
@@ -43,38 +63,41 @@ public final class LevelUpConnection {
     private final Context mContext;
 
     /**
-     * For Testing: HashMap of the last request that was made with the key of the URL for the
-     * request.
+     * The interceptors that requests pass through, in order. This is replaced rather than
+     * modified, so that sending doesn't need a lock; it is empty unless interceptors are added.
      */
-    @GuardedBy("mRequestIntrinsicLock")
-    @Nullable
-    private final HashMap<String, AbstractRequest> mLastRequestMap =
-            new HashMap<String, AbstractRequest>();
+    @NonNull
+    private volatile Interceptor[] mInterceptors = NO_INTERCEPTORS;
 
     /**
-     * For Testing: HashMap of pre-made responses to use when the String key URL is requested.
+     * Intrinsic lock for replacing {@link #mInterceptors}.
      */
-    @GuardedBy("mResponseIntrinsicLock")
     @NonNull
-    private final HashMap<String, LevelUpResponse> mNextResponseMap =
-            new HashMap<String, LevelUpResponse>();
+    private final Object[] mInterceptorIntrinsicLock = new Object[0];
 
     /**
-     * Intrinsic lock for guarding {@link #mNextResponseMap}.
+     * For Testing: If false, if any network activity happens, an exception will be thrown.
      */
-    @NonNull
-    private final Object[] mResponseIntrinsicLock = new Object[0];
+    private static volatile boolean sIsNetworkEnabled = true;
 
     /**
-     * Intrinsic lock for guarding {@link #mLastRequestMap}.
+     * The minimum time between two calls to {@link #prewarm()} that open a connection. A pooled
+     * connection stays open for longer than this while it is idle.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final long PREWARM_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The {@link SystemClock#elapsedRealtime()} of the last prewarm that opened a connection.
      */
     @NonNull
-    private final Object[] mRequestIntrinsicLock = new Object[0];
+    private static final AtomicLong LAST_PREWARM_MILLIS = new AtomicLong(-PREWARM_INTERVAL_MILLIS);
 
     /**
-     * For Testing: If false, if any network activity happens, an exception will be thrown.
+     * Whether a prewarm is opening a connection.
      */
-    private static volatile boolean sIsNetworkEnabled = true;
+    @NonNull
+    private static final AtomicBoolean IS_PREWARMING = new AtomicBoolean(false);
 
     /**
      * For Testing: The next LevelUpConnection instance for {@link #newInstance(Context)}
@@ -83,6 +106,43 @@ public final class LevelUpConnection {
     @Nullable
     private static volatile LevelUpConnection sNextInstance;
 
+    /**
+     * Shares responses between equal requests in flight on any {@link LevelUpConnection}.
+     */
+    @NonNull
+    private static final RequestCoalescer COALESCER = new RequestCoalescer();
+
+    /**
+     * The transport that requests are sent over.
+     */
+    @NonNull
+    private static volatile Transport sDefaultTransport = new HttpUrlConnectionTransport();
+
+    /**
+     * The policy for retrying failed requests, or null to never retry.
+     */
+    @Nullable
+    private static volatile RetryPolicy sDefaultRetryPolicy = null;
+
+    /**
+     * Decides the order in which requests waiting for a connection to a host are sent, or null to
+     * send every request right away.
+     */
+    @Nullable
+    private static volatile RequestScheduler sDefaultScheduler = null;
+
+    /**
+     * The priority of requests sent by this connection.
+     */
+    @NonNull
+    private volatile RequestPriority mPriority = RequestPriority.NORMAL;
+
+    /**
+     * The listener for timing events of requests sent by this connection, or null.
+     */
+    @Nullable
+    private volatile NetworkEventListener mEventListener;
+
     /**
      * Clients should use {@link #newInstance(Context)}.
      *
@@ -129,37 +189,124 @@ public final class LevelUpConnection {
         sNextInstance = connection;
     }
 
+    /**
+     * Adds an interceptor to the end of the chain that requests sent by this connection pass
+     * through.
+     *
+     * @param interceptor the interceptor to add.
+     */
+    public void addInterceptor(@NonNull final Interceptor interceptor) {
+        synchronized (mInterceptorIntrinsicLock) {
+            final Interceptor[] interceptors = mInterceptors;
+            final Interceptor[] added = new Interceptor[interceptors.length + 1];
+            System.arraycopy(interceptors, 0, added, 0, interceptors.length);
+            added[interceptors.length] = interceptor;
+            mInterceptors = added;
+        }
+    }
+
+    /**
+     * Removes an interceptor from the chain that requests sent by this connection pass through.
+     * Requests already in the chain may still pass through it.
+     *
+     * @param interceptor the interceptor to remove.
+     * @return true if the interceptor was removed, false if it wasn't in the chain.
+     */
+    public boolean removeInterceptor(@NonNull final Interceptor interceptor) {
+        synchronized (mInterceptorIntrinsicLock) {
+            final Interceptor[] interceptors = mInterceptors;
+
+            for (int i = 0; i < interceptors.length; i++) {
+                if (interceptors[i] == interceptor) {
+                    final Interceptor[] removed = new Interceptor[interceptors.length - 1];
+                    System.arraycopy(interceptors, 0, removed, 0, i);
+                    System.arraycopy(interceptors, i + 1, removed, i, removed.length - i);
+                    mInterceptors = removed;
+
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Testing Helper: get the interceptor that records the requests sent by this connection,
+     * putting it at the start of the chain if it isn't there yet.
+     *
+     * @return the interceptor that records requests.
+     */
+    @NonNull
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */RequestRecordingInterceptor getRequestRecordingInterceptor() {
+        installTestInterceptors();
+
+        return NullUtils.nonNullContract(getInterceptor(RequestRecordingInterceptor.class));
+    }
+
+    /**
+     * Testing Helper: get the interceptor that returns pre-made responses to the requests sent by
+     * this connection, putting it at the start of the chain if it isn't there yet.
+     *
+     * @return the interceptor that returns pre-made responses.
+     */
+    @NonNull
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */CannedResponseInterceptor getCannedResponseInterceptor() {
+        installTestInterceptors();
+
+        return NullUtils.nonNullContract(getInterceptor(CannedResponseInterceptor.class));
+    }
+
+    /**
+     * Puts a {@link RequestRecordingInterceptor} followed by a {@link CannedResponseInterceptor}
+     * at the start of the chain, unless they are already there, so that every request is recorded
+     * whether or not it has a pre-made response.
+     */
+    private void installTestInterceptors() {
+        synchronized (mInterceptorIntrinsicLock) {
+            if (null != getInterceptor(RequestRecordingInterceptor.class)) {
+                return;
+            }
+
+            final Interceptor[] interceptors = mInterceptors;
+            final Interceptor[] installed = new Interceptor[interceptors.length + 2];
+            installed[0] = new RequestRecordingInterceptor();
+            installed[1] = new CannedResponseInterceptor();
+            System.arraycopy(interceptors, 0, installed, 2, interceptors.length);
+            mInterceptors = installed;
+        }
+    }
+
+    /**
+     * @param <T> the type of interceptor.
+     * @param type the class of the interceptor.
+     * @return the first interceptor in the chain that is a {@code type}, or null if there is none.
+     */
+    @Nullable
+    private <T extends Interceptor> T getInterceptor(@NonNull final Class<T> type) {
+        for (final Interceptor interceptor : mInterceptors) {
+            if (type.isInstance(interceptor)) {
+                return type.cast(interceptor);
+            }
+        }
+
+        return null;
+    }
+
     /**
      * @param url the URL of the request, if null will return any request in the map if there are
      *        any.
      * @throws AssertionError if a call is made with a null URL and there are multiple requests
-     *         cached in the map.
+     *         recorded.
      * @return the last request made for the URL passed.
+     * @see RequestRecordingInterceptor#getLastRequest(String)
      */
     @Nullable
     @VisibleForTesting(visibility = Visibility.PRIVATE)
     /* package */AbstractRequest getLastRequest(@Nullable final String url) {
-        synchronized (mRequestIntrinsicLock) {
-            LogManager.i("getLastRequest url=%s size=%d", url, mLastRequestMap.size());
-            AbstractRequest request = null;
-            String key = null;
-            if (null != url) {
-                key = url;
-            } else {
-                if (mLastRequestMap.size() > 1) {
-                    throw new AssertionError(
-                            "This method of getting last request is not supported if there are multiple requests being made");
-                }
-
-                if (mLastRequestMap.size() > 0) {
-                    key = mLastRequestMap.keySet().iterator().next();
-                }
-            }
-
-            request = mLastRequestMap.get(key);
-
-            return request;
-        }
+        return getRequestRecordingInterceptor().getLastRequest(url);
     }
 
     /**
@@ -171,9 +318,7 @@ public final class LevelUpConnection {
     @VisibleForTesting(visibility = Visibility.PRIVATE)
     /* package */void setLastRequest(@Nullable final String url,
             @Nullable final AbstractRequest request) {
-        synchronized (mRequestIntrinsicLock) {
-            mLastRequestMap.put(url, request);
-        }
+        getRequestRecordingInterceptor().setLastRequest(url, request);
     }
 
     /**
@@ -186,9 +331,7 @@ public final class LevelUpConnection {
     @VisibleForTesting(visibility = Visibility.PRIVATE)
     /* package */void setNextResponse(@Nullable final String url,
             @Nullable final LevelUpResponse nextResponse) {
-        synchronized (mResponseIntrinsicLock) {
-            mNextResponseMap.put(url, nextResponse);
-        }
+        getCannedResponseInterceptor().setResponse(url, nextResponse);
     }
 
     /**
@@ -197,19 +340,10 @@ public final class LevelUpConnection {
      * @param url the URL that this response should be returned for.
      * @return the response to return next.
      */
+    @Nullable
     @VisibleForTesting(visibility = Visibility.PRIVATE)
-    /* package */LevelUpResponse getNextResponse(@NonNull final String url) {
-        LevelUpResponse response = null;
-
-        synchronized (mResponseIntrinsicLock) {
-            response = mNextResponseMap.get(url);
-
-            if (null == response) {
-                response = mNextResponseMap.get(null);
-            }
-        }
-
-        return response;
+    /* package */LevelUpResponse getNextResponse(@Nullable final String url) {
+        return getCannedResponseInterceptor().getResponse(url);
     }
 
     /**
@@ -224,6 +358,161 @@ public final class LevelUpConnection {
         sIsNetworkEnabled = enabled;
     }
 
+    /**
+     * @return the coalescer shared by all {@link LevelUpConnection}s.
+     */
+    @NonNull
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static RequestCoalescer getCoalescer() {
+        return COALESCER;
+    }
+
+    /**
+     * Sets the {@link Transport} that all {@link LevelUpConnection}s send requests over. This
+     * should be called before any requests are sent, usually from
+     * {@link android.app.Application#onCreate()}.
+     *
+     * @param transport the transport to use, or null to restore the default
+     *        {@link HttpUrlConnectionTransport}.
+     */
+    public static void setDefaultTransport(@Nullable final Transport transport) {
+        sDefaultTransport = null != transport ? transport : new HttpUrlConnectionTransport();
+    }
+
+    /**
+     * @return the {@link Transport} that requests are sent over.
+     */
+    @NonNull
+    public static Transport getDefaultTransport() {
+        return sDefaultTransport;
+    }
+
+    /**
+     * Sets the {@link RetryPolicy} that all {@link LevelUpConnection}s use to retry failed
+     * requests, for example an {@link ExponentialBackoffRetryPolicy}. By default requests are
+     * never retried. The delay before a retry is waited out on the thread sending the request, so
+     * requests shouldn't be sent on the main thread once a policy is set.
+     *
+     * @param retryPolicy the policy to use, or null to never retry.
+     */
+    public static void setDefaultRetryPolicy(@Nullable final RetryPolicy retryPolicy) {
+        sDefaultRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return the {@link RetryPolicy} used to retry failed requests, or null if they are never
+     *         retried.
+     */
+    @Nullable
+    public static RetryPolicy getDefaultRetryPolicy() {
+        return sDefaultRetryPolicy;
+    }
+
+    /**
+     * Sets the {@link RequestScheduler} that limits the requests all {@link LevelUpConnection}s
+     * send to a host at once. By default there is none, and requests go straight to the
+     * {@link Transport}. A scheduler makes synchronous sends wait for a free slot, so set one only
+     * when requests are sent from background threads, for example
+     * {@code new RequestScheduler(NetworkExecutor.POOL_SIZE)} to match the pooled connections (see
+     * {@link Transport#getMaxConnections()}).
+     *
+     * @param scheduler the scheduler to use, or null to send every request right away.
+     */
+    public static void setDefaultScheduler(@Nullable final RequestScheduler scheduler) {
+        sDefaultScheduler = scheduler;
+    }
+
+    /**
+     * @return the {@link RequestScheduler} that limits the requests sent to a host at once, or
+     *         null if there is none.
+     */
+    @Nullable
+    public static RequestScheduler getDefaultScheduler() {
+        return sDefaultScheduler;
+    }
+
+    /**
+     * Sets the priority of the requests sent by this connection, which decides the order in which
+     * they are sent when they have to wait for a connection. The default is
+     * {@link RequestPriority#NORMAL}.
+     *
+     * @param priority the priority.
+     */
+    public void setPriority(@NonNull final RequestPriority priority) {
+        mPriority = priority;
+    }
+
+    /**
+     * @return the priority of the requests sent by this connection.
+     */
+    @NonNull
+    public RequestPriority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Sets the listener for timing events of the requests sent by this connection.
+     *
+     * @param listener the listener, or null to stop reporting events.
+     */
+    public void setEventListener(@Nullable final NetworkEventListener listener) {
+        mEventListener = listener;
+    }
+
+    /**
+     * @return the listener for timing events of the requests sent by this connection, or null.
+     */
+    @Nullable
+    public NetworkEventListener getEventListener() {
+        return mEventListener;
+    }
+
+    /**
+     * <p>
+     * Opens a connection to the LevelUp API server in the background, so that the next request
+     * doesn't wait for the DNS lookup and the TCP and TLS handshakes. Call this when the app
+     * starts, or when the user is about to do something that needs a quick response, such as
+     * opening the screen that fetches a payment token.
+     * </p>
+     * <p>
+     * The connection is kept in the pool of {@link java.net.HttpURLConnection}, which only the
+     * default {@link Transport} uses. A {@link Transport} set with
+     * {@link #setDefaultTransport(Transport)} keeps its own connections, so this doesn't warm them.
+     * Calls made while a prewarm is opening a connection, or within
+     * {@link #PREWARM_INTERVAL_MILLIS} of the last prewarm that opened one, do nothing, since the
+     * connection is still open.
+     * </p>
+     *
+     * @return true if a connection is being opened, false if this call did nothing.
+     */
+    public boolean prewarm() {
+        if (!sIsNetworkEnabled) {
+            return false;
+        }
+
+        if (SystemClock.elapsedRealtime() - LAST_PREWARM_MILLIS.get() < PREWARM_INTERVAL_MILLIS
+                || !IS_PREWARMING.compareAndSet(false, true)) {
+            return false;
+        }
+
+        final Context context = mContext;
+        NetworkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // A failed prewarm doesn't hold off the next one.
+                    if (NetworkConnection.prewarm(context)) {
+                        LAST_PREWARM_MILLIS.set(SystemClock.elapsedRealtime());
+                    }
+                } finally {
+                    IS_PREWARMING.set(false);
+                }
+            }
+        }, RequestPriority.NORMAL);
+
+        return true;
+    }
+
     /**
      * Performs the request. Will add the headers to the request and build the full URL.
      *
@@ -233,38 +522,835 @@ public final class LevelUpConnection {
     @VisibleForTesting(visibility = Visibility.PRIVATE)
     @NonNull
     public LevelUpResponse send(@NonNull final AbstractRequest request) {
-        LevelUpResponse response = null;
+        return send(request, (RequestHandle) null);
+    }
+
+    /**
+     * Performs the request with the timeouts and deadline of {@code handle}, stopping early if it
+     * is cancelled. An equal GET request already in flight is joined rather than sent again (see
+     * {@link RequestCoalescer}); cancelling a send that joined another only stops it waiting, and
+     * the sends that joined a cancelled send are sent again.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param handle the timeouts and cancellation of this send, or null to use the defaults.
+     * @return the parsed {@link LevelUpResponse} from the request. If the send was cancelled or
+     *         its deadline passed, the response has {@link LevelUpStatus#ERROR_NETWORK}.
+     */
+    @NonNull
+    @SlowOperation
+    public LevelUpResponse send(@NonNull final AbstractRequest request,
+            @Nullable final RequestHandle handle) {
+        final Interceptor[] interceptors = mInterceptors;
+        final LevelUpResponse response;
 
+        if (0 == interceptors.length) {
+            response = sendToNetwork(request, handle);
+        } else {
+            response = new InterceptorChain(interceptors, 0, request, handle).proceed(request);
+        }
+
+        onResponse(request, response.getStatus());
+
+        return response;
+    }
+
+    /**
+     * Drops the cached access token of a request that the server rejected because of it, so that
+     * the next request reads the token again.
+     *
+     * @param request the request that was sent.
+     * @param status the status of the response.
+     */
+    private static void onResponse(@NonNull final AbstractRequest request,
+            @NonNull final LevelUpStatus status) {
+        if (LevelUpStatus.LOGIN_REQUIRED == status && request instanceof LevelUpRequest) {
+            final AccessTokenRetriever retriever =
+                    ((LevelUpRequest) request).getAccessTokenRetriever();
+
+            if (retriever instanceof CachingAccessTokenRetriever) {
+                ((CachingAccessTokenRetriever) retriever).invalidate();
+            }
+        }
+    }
+
+    /**
+     * Performs the request at the end of the interceptor chain.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return the parsed {@link LevelUpResponse} from the request.
+     */
+    @NonNull
+    private LevelUpResponse sendToNetwork(@NonNull final AbstractRequest request,
+            @Nullable final RequestHandle handle) {
         String requestUrl = null;
-        LevelUpResponse nextResponse = null;
 
         try {
             requestUrl = request.getUrlString(mContext);
-            nextResponse = getNextResponse(requestUrl);
         } catch (final BadRequestException e) {
             LogManager.e("BadRequestException", e);
             // Don't need to do anything, since this URL is just for logging.
         }
 
-        // Set the last request for testing
-        setLastRequest(requestUrl, request);
+        LogManager.v("Requesting URL: %s %s", request.getMethod(), requestUrl);
+
+        if (!sIsNetworkEnabled) {
+            throw new RuntimeException(String.format(Locale.US,
+                    "Network Activity detected when it was explicitly disabled: %s", requestUrl));
+        }
+
+        final NetworkEventListener listener = mEventListener;
+
+        return COALESCER.send(request, handle, new Callable<LevelUpResponse>() {
+            @Override
+            public LevelUpResponse call() {
+                // Only run by the caller that leads the send, so this is the leader's handle.
+                return sendOverNetwork(request, listener, handle);
+            }
+        });
+    }
+
+    /**
+     * Performs the request and decodes the response body into a model as it is read from the
+     * network, without buffering the body as a {@link String} or building a JSON tree.
+     * <p>
+     * When a {@link LevelUpResponseCache} is installed, this connection has an
+     * {@link Interceptor}, or an equal request is already in flight, the body is buffered by
+     * {@link #send(AbstractRequest, RequestHandle)} and decoded from that instead, so that the
+     * request can share the in-flight send.
+     * </p>
+     *
+     * @param <T> the type of model in the response.
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param decoder decodes the body of a successful response.
+     * @return the decoded response.
+     */
+    @NonNull
+    @SlowOperation
+    public <T> ModelResponse<T> send(@NonNull final AbstractRequest request,
+            @NonNull final ModelDecoder<T> decoder) {
+        return send(request, decoder, null);
+    }
+
+    /**
+     * Performs the request like {@link #send(AbstractRequest, ModelDecoder)}, with the timeouts,
+     * deadline and cancellation of {@code handle}.
+     *
+     * @param <T> the type of model in the response.
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param decoder decodes the body of a successful response.
+     * @param handle the timeouts and cancellation of the send, or null to use the defaults.
+     * @return the decoded response.
+     */
+    @NonNull
+    @SlowOperation
+    public <T> ModelResponse<T> send(@NonNull final AbstractRequest request,
+            @NonNull final ModelDecoder<T> decoder, @Nullable final RequestHandle handle) {
+        if (!isStreamable(request)) {
+            return ModelResponse.decode(send(request, handle), decoder);
+        }
+
+        final NetworkEventListener listener = mEventListener;
+        final ModelResponse<T> response =
+                sendWithRetries(request, listener, handle, new Attempt<ModelResponse<T>>() {
+                    @Override
+                    @NonNull
+                    public ModelResponse<T> send() {
+                        return decodeOverTransport(request, decoder, listener, handle);
+                    }
+
+                    @Override
+                    @NonNull
+                    public LevelUpStatus getStatus(@NonNull final ModelResponse<T> attempted) {
+                        return attempted.getStatus();
+                    }
+                });
+
+        onResponse(request, response.getStatus());
+
+        return response;
+    }
+
+    /**
+     * Performs the request and keeps the body in memory only while it is small, writing larger
+     * bodies to a temporary file as they are read. Use this rather than
+     * {@link #send(AbstractRequest)} for responses that can be larger than a
+     * {@link BufferedResponse} can hold. The caller must call {@link SpooledResponse#close()} once
+     * it is done with the body.
+     * <p>
+     * When a {@link LevelUpResponseCache} is installed, this connection has an
+     * {@link Interceptor}, or an equal request is already in flight, the body is buffered by
+     * {@link #send(AbstractRequest, RequestHandle)} and spooled from that instead, so that the
+     * request can share the in-flight send.
+     * </p>
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @return the spooled response.
+     */
+    @NonNull
+    @SlowOperation
+    public SpooledResponse sendSpooled(@NonNull final AbstractRequest request) {
+        return sendSpooled(request, null);
+    }
+
+    /**
+     * Performs the request like {@link #sendSpooled(AbstractRequest)}, with the timeouts,
+     * deadline and cancellation of {@code handle}.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param handle the timeouts and cancellation of the send, or null to use the defaults.
+     * @return the spooled response.
+     */
+    @NonNull
+    @SlowOperation
+    public SpooledResponse sendSpooled(@NonNull final AbstractRequest request,
+            @Nullable final RequestHandle handle) {
+        if (!isStreamable(request)) {
+            return new SpooledResponse(send(request, handle));
+        }
+
+        final NetworkEventListener listener = mEventListener;
+        final SpooledResponse response =
+                sendWithRetries(request, listener, handle, new Attempt<SpooledResponse>() {
+                    @Override
+                    @NonNull
+                    public SpooledResponse send() {
+                        return spoolOverTransport(request, listener, handle);
+                    }
+
+                    @Override
+                    @NonNull
+                    public LevelUpStatus getStatus(@NonNull final SpooledResponse attempted) {
+                        return attempted.getStatus();
+                    }
+
+                    @Override
+                    public void discard(@NonNull final SpooledResponse attempted) {
+                        attempted.close();
+                    }
+                });
+
+        onResponse(request, response.getStatus());
+
+        return response;
+    }
+
+    /**
+     * Checks whether a request can be streamed from the {@link Transport} by
+     * {@link #send(AbstractRequest, ModelDecoder, RequestHandle)} or
+     * {@link #sendSpooled(AbstractRequest, RequestHandle)}, rather than buffered by
+     * {@link #send(AbstractRequest, RequestHandle)}.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @return true if the request should be streamed, false if it should be buffered because it
+     *         is invalid, it may be answered by the cache or an interceptor, or an equal request
+     *         is in flight that it can share.
+     */
+    private boolean isStreamable(@NonNull final AbstractRequest request) {
+        final String requestUrl;
+
+        try {
+            requestUrl = request.getUrlString(mContext);
+        } catch (final BadRequestException e) {
+            return false;
+        }
+
+        if (null != LevelUpResponseCache.getInstalled() || 0 != mInterceptors.length
+                || COALESCER.isInFlight(request)) {
+            return false;
+        }
 
         LogManager.v("Requesting URL: %s %s", request.getMethod(), requestUrl);
 
-        if (null != nextResponse) {
-            LogManager.d("Returning canned response instead of performing network operation");
-            // TESTING: If the client set a next response, use that instead.
-            response = nextResponse;
-            setNextResponse(requestUrl, null);
+        if (!sIsNetworkEnabled) {
+            throw new RuntimeException(String.format(Locale.US,
+                    "Network Activity detected when it was explicitly disabled: %s", requestUrl));
+        }
+
+        return true;
+    }
+
+    /**
+     * Performs the request over the network, retrying it according to the
+     * {@link #setDefaultRetryPolicy(RetryPolicy) retry policy}.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return the cached or newly received response.
+     */
+    @NonNull
+    private LevelUpResponse sendOverNetwork(@NonNull final AbstractRequest request,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
+        return sendWithRetries(request, listener, handle, new Attempt<LevelUpResponse>() {
+            @Override
+            @NonNull
+            public LevelUpResponse send() {
+                return sendOverNetworkOnce(request, listener, handle);
+            }
+
+            @Override
+            @NonNull
+            public LevelUpStatus getStatus(@NonNull final LevelUpResponse attempted) {
+                return attempted.getStatus();
+            }
+        });
+    }
+
+    /**
+     * Makes attempts at the request until one gets a response that the
+     * {@link #setDefaultRetryPolicy(RetryPolicy) retry policy} doesn't retry, reporting the call
+     * to {@code listener}.
+     *
+     * @param <R> the type of response.
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @param attempt makes a single attempt at the request.
+     * @return the response to the last attempt.
+     */
+    @NonNull
+    private static <R extends AbstractResponse<?>> R sendWithRetries(
+            @NonNull final AbstractRequest request,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle,
+            @NonNull final Attempt<R> attempt) {
+        if (null != listener) {
+            listener.callStart(request, System.nanoTime());
+        }
+
+        final RetryPolicy retryPolicy = sDefaultRetryPolicy;
+        int retryCount = 0;
+        long totalDelayMillis = 0;
+
+        while (true) {
+            final R response = attempt.send();
+            final LevelUpStatus status = attempt.getStatus(response);
+
+            if (null != listener) {
+                listener.parseEnd(request, System.nanoTime(), status);
+            }
+
+            final long delayMillis =
+                    null == retryPolicy ? RetryPolicy.NO_RETRY : retryPolicy.getRetryDelayMillis(
+                            request, response, status, retryCount, totalDelayMillis);
+
+            if (!waitToRetry(delayMillis, handle)) {
+                return response;
+            }
+
+            attempt.discard(response);
+            retryCount++;
+            totalDelayMillis += delayMillis;
+        }
+    }
+
+    /**
+     * Waits before retrying a request.
+     *
+     * @param delayMillis the delay from {@link RetryPolicy#getRetryDelayMillis}.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return true if the request should be retried, false if it should not be, the thread was
+     *         interrupted while waiting, or the send was cancelled or would pass its deadline.
+     */
+    private static boolean waitToRetry(final long delayMillis,
+            @Nullable final RequestHandle handle) {
+        if (RetryPolicy.NO_RETRY == delayMillis) {
+            return false;
+        }
+
+        try {
+            if (null != handle) {
+                return handle.await(delayMillis);
+            }
+
+            Thread.sleep(delayMillis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Performs a single attempt at the request, using the installed {@link LevelUpResponseCache}
+     * if there is one.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return the cached or newly received response.
+     */
+    @NonNull
+    private LevelUpResponse sendOverNetworkOnce(@NonNull final AbstractRequest request,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
+        final LevelUpResponseCache cache = LevelUpResponseCache.getInstalled();
+
+        if (null != cache) {
+            return sendWithCache(cache, request, listener, handle);
+        }
+
+        return sendOverTransport(request, null, listener, handle);
+    }
+
+    /**
+     * Performs the request, answering it from {@code cache} when possible. Fresh cached responses
+     * are returned without a network request and stale ones are revalidated with the server.
+     *
+     * @param cache the installed cache.
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return the cached or newly received response.
+     */
+    @NonNull
+    private LevelUpResponse sendWithCache(@NonNull final LevelUpResponseCache cache,
+            @NonNull final AbstractRequest request,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
+        final String key = cache.getKey(mContext, request);
+
+        if (null == key) {
+            return sendOverTransport(request, null, listener, handle);
+        }
+
+        final LevelUpResponseCache.CachedResponse cached = cache.get(key);
+
+        if (null != cached && cached.isFresh(System.currentTimeMillis())) {
+            LogManager.v("Returning fresh cached response");
+            return cached.toResponse();
+        }
+
+        final LevelUpResponse response;
+
+        if (null == cached) {
+            response = sendOverTransport(request, null, listener, handle);
         } else {
-            if (!sIsNetworkEnabled) {
-                throw new RuntimeException(String.format(Locale.US,
-                        "Network Activity detected when it was explicitly disabled: %s", requestUrl));
+            response =
+                    sendOverTransport(request, cached.getConditionalHeaders(), listener, handle);
+
+            if (HttpURLConnection.HTTP_NOT_MODIFIED == response.getHttpStatusCode()) {
+                LogManager.v("Cached response was not modified");
+                return cache.update(key, cached, response).toResponse();
             }
+        }
 
-            response = new LevelUpResponse(NetworkConnection.send(mContext, request));
+        if (!cache.put(key, response) && LevelUpStatus.OK == response.getStatus()) {
+            // A newer response that can't be cached supersedes the old entry.
+            cache.remove(key);
         }
 
         return response;
     }
+
+    /**
+     * Sends a single attempt at the request over the {@link Transport} once the
+     * {@link RequestScheduler} lets it, and buffers the response.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param additionalHeaders headers to send in addition to the request's own headers, or null.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return the response.
+     */
+    @NonNull
+    private LevelUpResponse sendOverTransport(@NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
+        if (null != handle && handle.isDone()) {
+            return handle.newDoneResponse();
+        }
+
+        final RequestScheduler scheduler = sDefaultScheduler;
+        final String host = null == scheduler ? null : getHost(request);
+
+        if (null != scheduler && null != host && !acquire(scheduler, host, handle)) {
+            return new LevelUpResponse(newNotSentResponse(handle));
+        }
+
+        try {
+            return new LevelUpResponse(sDefaultTransport.send(mContext, request,
+                    additionalHeaders, listener, handle));
+        } finally {
+            if (null != handle) {
+                handle.detach();
+            }
+
+            if (null != scheduler && null != host) {
+                scheduler.release(host);
+            }
+        }
+    }
+
+    /**
+     * Sends a single attempt at the request over the {@link Transport} once the
+     * {@link RequestScheduler} lets it, and decodes the response.
+     *
+     * @param <T> the type of model in the response.
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param decoder decodes the body of a successful response.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return the decoded response.
+     */
+    @NonNull
+    private <T> ModelResponse<T> decodeOverTransport(@NonNull final AbstractRequest request,
+            @NonNull final ModelDecoder<T> decoder,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
+        if (null != handle && handle.isDone()) {
+            return ModelResponse.decode(new StreamingResponse(handle.newDoneError()), decoder);
+        }
+
+        final RequestScheduler scheduler = sDefaultScheduler;
+        final String host = null == scheduler ? null : getHost(request);
+
+        if (null != scheduler && null != host && !acquire(scheduler, host, handle)) {
+            return ModelResponse.decode(newNotSentResponse(handle), decoder);
+        }
+
+        try {
+            return ModelResponse.decode(
+                    sDefaultTransport.send(mContext, request, null, listener, handle), decoder);
+        } finally {
+            if (null != handle) {
+                handle.detach();
+            }
+
+            if (null != scheduler && null != host) {
+                scheduler.release(host);
+            }
+        }
+    }
+
+    /**
+     * Sends a single attempt at the request over the {@link Transport} once the
+     * {@link RequestScheduler} lets it, and spools the response.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return the spooled response.
+     */
+    @NonNull
+    private SpooledResponse spoolOverTransport(@NonNull final AbstractRequest request,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
+        final File directory = SpooledResponse.getDirectory(mContext);
+
+        if (null != handle && handle.isDone()) {
+            return new SpooledResponse(new StreamingResponse(handle.newDoneError()), directory);
+        }
+
+        final RequestScheduler scheduler = sDefaultScheduler;
+        final String host = null == scheduler ? null : getHost(request);
+
+        if (null != scheduler && null != host && !acquire(scheduler, host, handle)) {
+            return new SpooledResponse(newNotSentResponse(handle), directory);
+        }
+
+        try {
+            return new SpooledResponse(
+                    sDefaultTransport.send(mContext, request, null, listener, handle), directory);
+        } finally {
+            if (null != handle) {
+                handle.detach();
+            }
+
+            if (null != scheduler && null != host) {
+                scheduler.release(host);
+            }
+        }
+    }
+
+    /**
+     * Waits for the scheduler to let a request to {@code host} be sent at this connection's
+     * priority.
+     *
+     * @param scheduler the scheduler.
+     * @param host the host the request is sent to.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return true if the request may be sent, false if the thread was interrupted while waiting
+     *         or {@code handle} was done first.
+     */
+    private boolean acquire(@NonNull final RequestScheduler scheduler,
+            @NonNull final String host, @Nullable final RequestHandle handle) {
+        try {
+            scheduler.acquire(host, mPriority, handle);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (final InterruptedIOException e) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param request the request.
+     * @return the host {@code request} is sent to, or null if the request is invalid (in which case
+     *         the transport reports the error without sending anything).
+     */
+    @Nullable
+    private String getHost(@NonNull final AbstractRequest request) {
+        try {
+            return request.getUrl(mContext).getHost();
+        } catch (final BadRequestException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return a response for a request that was interrupted, cancelled or out of time before it
+     *         was sent.
+     */
+    @NonNull
+    private static StreamingResponse newNotSentResponse(@Nullable final RequestHandle handle) {
+        if (null != handle && handle.isDone()) {
+            return new StreamingResponse(handle.newDoneError());
+        }
+
+        return new StreamingResponse(new InterruptedIOException(
+                "Interrupted while waiting to send request"));
+    }
+
+    /**
+     * Sends the request on the SDK's {@link NetworkExecutor} without blocking the calling thread.
+     * The request is queued at this connection's {@link #getPriority() priority}.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @return a {@link Future} for the response. Cancelling it interrupts the send.
+     */
+    @NonNull
+    public Future<LevelUpResponse> sendAsync(@NonNull final AbstractRequest request) {
+        return sendAsync(request, null, (Executor) null);
+    }
+
+    /**
+     * Sends the request on the SDK's {@link NetworkExecutor} without blocking the calling thread
+     * and delivers the response on {@code looper}.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param callback the callback to deliver the response to.
+     * @param looper the {@link Looper} to call {@code callback} on, usually
+     *        {@link Looper#getMainLooper()}.
+     * @return a {@link Future} for the response. Cancelling it disconnects the send and prevents
+     *         {@code callback} from being called.
+     */
+    @NonNull
+    public Future<LevelUpResponse> sendAsync(@NonNull final AbstractRequest request,
+            @NonNull final ResponseCallback callback, @NonNull final Looper looper) {
+        return sendAsync(request, callback, NetworkExecutor.forLooper(looper));
+    }
+
+    /**
+     * Sends the request on the SDK's {@link NetworkExecutor} without blocking the calling thread
+     * and delivers the response using {@code callbackExecutor}.
+     *
+     * @param request the {@link AbstractRequest} to send to the server.
+     * @param callback the callback to deliver the response to or null.
+     * @param callbackExecutor the {@link Executor} to call {@code callback} on or null to call it
+     *        on the network thread.
+     * @return a {@link Future} for the response. Cancelling it disconnects the send and prevents
+     *         {@code callback} from being called.
+     */
+    @NonNull
+    public Future<LevelUpResponse> sendAsync(@NonNull final AbstractRequest request,
+            @Nullable final ResponseCallback callback, @Nullable final Executor callbackExecutor) {
+        final AsyncSend task = new AsyncSend(this, request, callback, callbackExecutor);
+        NetworkExecutor.execute(task, mPriority);
+
+        return task;
+    }
+
+    /**
+     * A send running on the {@link NetworkExecutor}, which delivers its response to a
+     * {@link ResponseCallback} unless it has been cancelled.
+     */
+    private static final class AsyncSend extends FutureTask<LevelUpResponse> {
+
+        @NonNull
+        private final AbstractRequest mRequest;
+
+        @Nullable
+        private final ResponseCallback mCallback;
+
+        @Nullable
+        private final Executor mCallbackExecutor;
+
+        /**
+         * Disconnects the send when the task is cancelled.
+         */
+        @NonNull
+        private final RequestHandle mHandle;
+
+        /**
+         * @param connection the connection to send the request with.
+         * @param request the request to send.
+         * @param callback the callback to deliver the response to or null.
+         * @param callbackExecutor the executor to deliver on or null to deliver on the network
+         *        thread.
+         */
+        public AsyncSend(@NonNull final LevelUpConnection connection,
+                @NonNull final AbstractRequest request, @Nullable final ResponseCallback callback,
+                @Nullable final Executor callbackExecutor) {
+            this(connection, request, callback, callbackExecutor, new RequestHandle());
+        }
+
+        /**
+         * @param connection the connection to send the request with.
+         * @param request the request to send.
+         * @param callback the callback to deliver the response to or null.
+         * @param callbackExecutor the executor to deliver on or null to deliver on the network
+         *        thread.
+         * @param handle the handle to send the request with.
+         */
+        private AsyncSend(@NonNull final LevelUpConnection connection,
+                @NonNull final AbstractRequest request, @Nullable final ResponseCallback callback,
+                @Nullable final Executor callbackExecutor, @NonNull final RequestHandle handle) {
+            super(new Callable<LevelUpResponse>() {
+                @Override
+                public LevelUpResponse call() {
+                    return connection.send(request, handle);
+                }
+            });
+
+            mRequest = request;
+            mCallback = callback;
+            mCallbackExecutor = callbackExecutor;
+            mHandle = handle;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            // Disconnecting frees the network thread even when it is blocked reading, which an
+            // interrupt does not.
+            mHandle.cancel();
+
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        protected void done() {
+            if (null == mCallback || isCancelled()) {
+                return;
+            }
+
+            final Runnable delivery = new Runnable() {
+                @Override
+                public void run() {
+                    // The task may have been cancelled while the delivery was queued.
+                    if (isCancelled()) {
+                        return;
+                    }
+
+                    try {
+                        mCallback.onResponse(mRequest, NullUtils.nonNullContract(get()));
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (final ExecutionException e) {
+                        throw new RuntimeException("Error sending request", e.getCause());
+                    }
+                }
+            };
+
+            if (null == mCallbackExecutor) {
+                delivery.run();
+            } else {
+                mCallbackExecutor.execute(delivery);
+            }
+        }
+    }
+
+    /**
+     * The part of the interceptor chain from one interceptor onwards.
+     */
+    private final class InterceptorChain implements Interceptor.Chain {
+
+        @NonNull
+        private final Interceptor[] mChainInterceptors;
+
+        /**
+         * The index of the next interceptor to pass the request on to.
+         */
+        private final int mIndex;
+
+        @NonNull
+        private final AbstractRequest mRequest;
+
+        @Nullable
+        private final RequestHandle mHandle;
+
+        /**
+         * @param interceptors the whole chain.
+         * @param index the index of the next interceptor to pass the request on to.
+         * @param request the request as passed on by the previous interceptor.
+         * @param handle the timeouts and cancellation of the send, or null.
+         */
+        public InterceptorChain(@NonNull final Interceptor[] interceptors, final int index,
+                @NonNull final AbstractRequest request, @Nullable final RequestHandle handle) {
+            mChainInterceptors = interceptors;
+            mIndex = index;
+            mRequest = request;
+            mHandle = handle;
+        }
+
+        @Override
+        @NonNull
+        public Context getContext() {
+            return mContext;
+        }
+
+        @Override
+        @NonNull
+        public AbstractRequest getRequest() {
+            return mRequest;
+        }
+
+        @Override
+        @Nullable
+        public RequestHandle getHandle() {
+            return mHandle;
+        }
+
+        @Override
+        @NonNull
+        public LevelUpResponse proceed(@NonNull final AbstractRequest request) {
+            if (mIndex == mChainInterceptors.length) {
+                return sendToNetwork(request, mHandle);
+            }
+
+            return mChainInterceptors[mIndex].intercept(new InterceptorChain(mChainInterceptors,
+                    mIndex + 1, request, mHandle));
+        }
+    }
+
+    /**
+     * A single attempt at a request, made by {@link LevelUpConnection#sendWithRetries}.
+     *
+     * @param <R> the type of response.
+     */
+    private abstract static class Attempt<R extends AbstractResponse<?>> {
+
+        /**
+         * @return the response to a new attempt at the request.
+         */
+        @NonNull
+        public abstract R send();
+
+        /**
+         * @param attempted a response returned by {@link #send()}.
+         * @return the {@link LevelUpStatus} of {@code attempted}.
+         */
+        @NonNull
+        public abstract LevelUpStatus getStatus(@NonNull R attempted);
+
+        /**
+         * Releases a response that is dropped because the request is being retried.
+         *
+         * @param attempted a response returned by {@link #send()}.
+         */
+        public void discard(@NonNull final R attempted) {
+            // Nothing to release by default.
+        }
+    }
 }
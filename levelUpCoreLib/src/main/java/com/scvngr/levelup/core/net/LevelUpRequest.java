@@ -22,8 +22,6 @@ import android.support.annotation.Nullable;
 import com.scvngr.levelup.core.R;
 import com.scvngr.levelup.core.annotation.LevelUpApi;
 import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
-import com.scvngr.levelup.core.annotation.VisibleForTesting;
-import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
 import com.scvngr.levelup.core.model.AccessToken;
 import com.scvngr.levelup.core.util.NullUtils;
 
@@ -33,6 +31,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
@@ -93,8 +92,8 @@ public class LevelUpRequest extends AbstractRequest {
     /**
      * Format string to use in the authorization header to format the access token in.
      */
-    @VisibleForTesting(visibility = Visibility.PRIVATE)
-    /* package */static final String AUTH_TOKEN_TYPE_FORMAT = "token %s";
+    @NonNull
+    public static final String AUTH_TOKEN_TYPE_FORMAT = "token %s";
 
     /**
      * Gets the full endpoint URL.
@@ -124,6 +123,12 @@ public class LevelUpRequest extends AbstractRequest {
     @Nullable
     private final RequestBody mBody;
 
+    /**
+     * The headers that don't depend on the access token, which are built once when first needed.
+     */
+    @Nullable
+    private volatile Map<String, String> mBaseHeaders = null;
+
     /**
      * Creates a new {@link LevelUpRequest}. This variant of the constructor is only for
      * non-authenticated requests.
@@ -210,6 +215,30 @@ public class LevelUpRequest extends AbstractRequest {
         mAccessTokenRetriever = retriever;
     }
 
+    /**
+     * Creates a new {@link LevelUpRequest} from the parts built by a {@link RequestTemplate}. The
+     * maps are not copied, so they must already be unmodifiable.
+     *
+     * @param method the {@link HttpMethod} for this request.
+     * @param url the full URL of the endpoint, without the query string.
+     * @param queryParams the unmodifiable query string parameters.
+     * @param headers the unmodifiable request headers.
+     * @param compiledUrl the final URL, including the query string.
+     * @param body the request body to POST/PUT.
+     * @param retriever implementation of {@link AccessTokenRetriever} to use to try to append the
+     *        access token to this request.
+     */
+    /* package */LevelUpRequest(@NonNull final HttpMethod method, @NonNull final String url,
+            @NonNull final Map<String, String> queryParams,
+            @NonNull final Map<String, String> headers, @NonNull final URL compiledUrl,
+            @Nullable final RequestBody body, @Nullable final AccessTokenRetriever retriever) {
+        super(method, url, headers, queryParams, compiledUrl);
+
+        mBody = body;
+
+        mAccessTokenRetriever = retriever;
+    }
+
     /**
      * Constructor for parceling.
      *
@@ -241,6 +270,14 @@ public class LevelUpRequest extends AbstractRequest {
         return token;
     }
 
+    /**
+     * @return the {@link AccessTokenRetriever} used to get the User's {@link AccessToken}, or null.
+     */
+    @Nullable
+    public final AccessTokenRetriever getAccessTokenRetriever() {
+        return mAccessTokenRetriever;
+    }
+
     /**
      * @param context the context to use to get context dependent parameters
      * @return the body of the request
@@ -286,7 +323,34 @@ public class LevelUpRequest extends AbstractRequest {
     @Override
     @NonNull
     public final Map<String, String> getRequestHeaders(@NonNull final Context context) {
-        final Map<String, String> headers;
+        final Map<String, String> baseHeaders = getBaseHeaders(context);
+        final AccessToken token = getAccessToken(context);
+
+        if (null == token) {
+            return baseHeaders;
+        }
+
+        final HashMap<String, String> temp = new HashMap<String, String>(baseHeaders);
+        temp.put(HEADER_AUTHORIZATION,
+                String.format(Locale.US, AUTH_TOKEN_TYPE_FORMAT, token.getAccessToken()));
+
+        return NullUtils.nonNullContract(Collections.unmodifiableMap(temp));
+    }
+
+    /**
+     * @param context the Application context.
+     * @return the headers that don't depend on the access token. This has been wrapped in a call
+     *         to {@link Collections#unmodifiableMap(Map)}.
+     */
+    @NonNull
+    private Map<String, String> getBaseHeaders(@NonNull final Context context) {
+        Map<String, String> headers = mBaseHeaders;
+
+        if (null != headers) {
+            return headers;
+        }
+
+        // Racing threads build equal maps, so there's no need to lock.
         final HashMap<String, String> temp =
                 new HashMap<String, String>(super.getRequestHeaders(context));
         final RequestBody body = mBody;
@@ -294,19 +358,19 @@ public class LevelUpRequest extends AbstractRequest {
         if (null != body) {
             temp.put(HTTP.CONTENT_TYPE, body.getContentType());
             temp.put(HTTP.CONTENT_LEN, String.valueOf(body.getContentLength()));
+
+            final String contentEncoding = body.getContentEncoding();
+
+            if (null != contentEncoding) {
+                temp.put(RequestUtils.HEADER_CONTENT_ENCODING, contentEncoding);
+            }
         } else {
             temp.put(HTTP.CONTENT_TYPE, RequestUtils.HEADER_CONTENT_TYPE_JSON);
         }
 
         temp.put(HEADER_LEVELUP_API_KEY, context.getString(R.string.levelup_api_key));
-        final AccessToken token = getAccessToken(context);
-
-        if (null != token) {
-            temp.put(HEADER_AUTHORIZATION,
-                    String.format(Locale.US, AUTH_TOKEN_TYPE_FORMAT, token.getAccessToken()));
-        }
-
         headers = NullUtils.nonNullContract(Collections.unmodifiableMap(temp));
+        mBaseHeaders = headers;
 
         return headers;
     }
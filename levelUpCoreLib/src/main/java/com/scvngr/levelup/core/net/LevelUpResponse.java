@@ -19,7 +19,6 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.text.TextUtils;
 
 import com.scvngr.levelup.core.annotation.LevelUpApi;
 import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
@@ -45,6 +44,7 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -73,11 +73,11 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
     private static final String INVALID_ERROR_RESPONSE_MESSAGE =
             "The response cannot be parsed as Error objects.";
 
-    @NonNull
-    private final List<Error> mServerErrors;
-
+    /**
+     * The server errors, parsed from the body the first time they are needed.
+     */
     @Nullable
-    private final Exception mServerErrorReadError;
+    private volatile ServerErrors mServerErrors;
 
     /**
      * Creator for parceling.
@@ -108,34 +108,47 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
     public LevelUpResponse(@NonNull final String data, @NonNull final LevelUpStatus status) {
         super(data);
         mStatus = status;
+    }
+
+    /**
+     * @return the server errors, parsing them from the body if this is the first call.
+     */
+    @NonNull
+    private ServerErrors getParsedServerErrors() {
+        ServerErrors errors = mServerErrors;
 
-        Exception serverErrorReadError = null;
-        List<Error> serverErrors = Collections.emptyList();
+        if (null == errors) {
+            synchronized (this) {
+                errors = mServerErrors;
 
-        try {
-            serverErrors = parseServerError(status);
-        } catch (final IOException e) {
-            serverErrorReadError = e;
+                if (null == errors) {
+                    errors = parseServerErrors();
+                    mServerErrors = errors;
+                }
+            }
         }
 
-        mServerErrorReadError = serverErrorReadError;
-        mServerErrors = serverErrors;
+        return errors;
     }
 
-    private List<Error> parseServerError(@NonNull final LevelUpStatus status) throws IOException {
-        List<Error> serverErrors = Collections.emptyList();
-        if (LevelUpStatus.OK != status) {
-            try {
-                serverErrors = Collections.unmodifiableList(
-                        new ErrorJsonFactory().fromList(new JSONArray(getData())));
-            } catch (final JSONException e) {
-                // No error could be parsed; log the issue.
-                LogManager.e("Error parsing error JSON response: " + getData(), e);
-                throw getInvalidErrorResponseIOException(e);
-            }
+    /**
+     * @return the server errors in the body of an unsuccessful response.
+     */
+    @NonNull
+    private ServerErrors parseServerErrors() {
+        if (LevelUpStatus.OK == mStatus) {
+            return ServerErrors.NONE;
         }
 
-        return serverErrors;
+        try {
+            return new ServerErrors(Collections.unmodifiableList(new ErrorJsonFactory()
+                    .fromList(new JSONArray(getData()))), null);
+        } catch (final JSONException e) {
+            // No error could be parsed; log the issue.
+            LogManager.e("Error parsing error JSON response: " + getData(), e);
+            return new ServerErrors(Collections.<Error> emptyList(),
+                    getInvalidErrorResponseIOException(e));
+        }
     }
 
     @NonNull
@@ -162,9 +175,11 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
         super(in);
         mStatus = LevelUpStatus.valueOf(in.readString());
 
-        mServerErrors = new ArrayList<>();
-        in.readTypedList(mServerErrors, Error.CREATOR);
-        mServerErrorReadError = (Exception) in.readSerializable();
+        final List<Error> serverErrors = new ArrayList<>();
+        in.readTypedList(serverErrors, Error.CREATOR);
+        mServerErrors =
+                new ServerErrors(Collections.unmodifiableList(serverErrors),
+                        (Exception) in.readSerializable());
 
         checkRep();
     }
@@ -182,29 +197,16 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
             @Nullable final Map<String, List<String>> headers, @Nullable final Exception error) {
         super(data, HTTP_STATUS_CODE_UNUSED, headers, error);
         mStatus = status;
-
-        Exception serverErrorReadError = null;
-        List<Error> serverErrors = Collections.emptyList();
-
-        try {
-            serverErrors = parseServerError(status);
-        } catch (final IOException e) {
-            serverErrorReadError = e;
-        }
-
-        mServerErrorReadError = serverErrorReadError;
-        mServerErrors = serverErrors;
     }
 
     /**
-     * Constructor for testing purposes.
+     * Constructor for responses that were not read from a connection, such as cached responses.
      *
      * @param data the string content of the response.
      * @param statusCode HTTP status code.
      * @param headers HTTP headers.
      * @param error error from response or null if there was none.
      */
-    @VisibleForTesting(visibility = Visibility.PRIVATE)
     /* package */LevelUpResponse(@NonNull final String data, final int statusCode,
             @Nullable final Map<String, List<String>> headers, @Nullable final Exception error) {
         super(data, statusCode, headers, error);
@@ -220,18 +222,6 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
         }
 
         mStatus = mapStatus(statusCode, serverHeader);
-
-        Exception serverErrorReadError = null;
-        List<Error> serverErrors = Collections.emptyList();
-
-        try {
-            serverErrors = parseServerError(mStatus);
-        } catch (final IOException e) {
-            serverErrorReadError = e;
-        }
-
-        mServerErrorReadError = serverErrorReadError;
-        mServerErrors = serverErrors;
     }
 
     /**
@@ -244,18 +234,6 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
         super(data);
         mStatus = mapStatus(null, getError());
 
-        Exception serverErrorReadError = null;
-        List<Error> serverErrors = Collections.emptyList();
-
-        try {
-            serverErrors = parseServerError(mStatus);
-        } catch (final IOException e) {
-            serverErrorReadError = e;
-        }
-
-        mServerErrorReadError = serverErrorReadError;
-        mServerErrors = serverErrors;
-
         checkRep();
     }
 
@@ -270,18 +248,6 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
         super(response);
         mStatus = mapStatus(response, getError());
 
-        Exception serverErrorReadError = null;
-        List<Error> serverErrors = Collections.emptyList();
-
-        try {
-            serverErrors = parseServerError(mStatus);
-        } catch (final IOException e) {
-            serverErrorReadError = e;
-        }
-
-        mServerErrorReadError = serverErrorReadError;
-        mServerErrors = serverErrors;
-
         checkRep();
     }
 
@@ -424,19 +390,19 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
     }
 
     /**
-     * @return A list of {@link Error}s on this server response. Will attempt to parse the
-     *         {@link Error}s from the {@link #getData()} if the errors are not already populated.
+     * @return A list of {@link Error}s on this server response. The errors are parsed from
+     *         {@link #getData()} the first time they are needed.
      */
     @NonNull
     public List<Error> getServerErrors() {
-        return mServerErrors;
+        return getParsedServerErrors().mErrors;
     }
 
     /**
      * @return True if there are any server errors that was parsed on this response.
      */
     public boolean hasServerErrors() {
-        return 0 < mServerErrors.size();
+        return !getParsedServerErrors().mErrors.isEmpty();
     }
 
     /**
@@ -450,24 +416,18 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
      */
     @Nullable
     public Error getServerError(@NonNull final ErrorObject object, @NonNull final ErrorCode code) {
-        Error filteredError = null;
-
-        for (final Error error : mServerErrors) {
-            if (TextUtils.equals(object.toString(), error.getObject())) {
-                if (TextUtils.equals(code.toString(), error.getCode())) {
-                    filteredError = error;
-                    break;
-                }
-            }
-        }
-
-        return filteredError;
+        return getParsedServerErrors().get(object.toString(), code.toString());
     }
 
     @Nullable
     @Override
     public Exception getError() {
-        Exception error = mServerErrorReadError;
+        Exception error = null;
+
+        if (LevelUpStatus.OK != mStatus) {
+            error = getParsedServerErrors().mReadError;
+        }
+
         if (null == error) {
             error = super.getError();
         }
@@ -482,7 +442,7 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
         int result = 1;
         result = prime * result + ((mStatus == null) ? 0 : mStatus.hashCode());
         result = prime * result + ((getData() == null) ? 0 : getData().hashCode());
-        result = prime * result + ((mServerErrors == null) ? 0 : mServerErrors.hashCode());
+        result = prime * result + getServerErrors().hashCode();
         return result;
     }
 
@@ -516,7 +476,7 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
             return false;
         }
 
-        if (!mServerErrors.equals(other.mServerErrors)) {
+        if (!getServerErrors().equals(other.getServerErrors())) {
             return false;
         }
 
@@ -533,7 +493,86 @@ public final class LevelUpResponse extends BufferedResponse implements Parcelabl
     public void writeToParcel(final Parcel dest, final int flags) {
         super.writeToParcel(dest, flags);
         dest.writeString(mStatus.name());
-        dest.writeTypedList(mServerErrors);
-        dest.writeSerializable(mServerErrorReadError);
+
+        // Parcel the parsed errors so that they aren't parsed again on the other side.
+        final ServerErrors errors = getParsedServerErrors();
+        dest.writeTypedList(errors.mErrors);
+        dest.writeSerializable(errors.mReadError);
+    }
+
+    /**
+     * The server errors of a response, indexed by object and code.
+     */
+    @Immutable
+    private static final class ServerErrors {
+
+        /**
+         * No errors, for successful responses.
+         */
+        @NonNull
+        public static final ServerErrors NONE =
+                new ServerErrors(Collections.<Error> emptyList(), null);
+
+        @NonNull
+        public final List<Error> mErrors;
+
+        /**
+         * The error that occurred while parsing the errors, or null.
+         */
+        @Nullable
+        public final Exception mReadError;
+
+        /**
+         * The first error for each object and code.
+         */
+        @NonNull
+        private final Map<String, Error> mIndex;
+
+        /**
+         * @param errors the unmodifiable list of errors.
+         * @param readError the error that occurred while parsing the errors, or null.
+         */
+        public ServerErrors(@NonNull final List<Error> errors,
+                @Nullable final Exception readError) {
+            mErrors = errors;
+            mReadError = readError;
+
+            if (errors.isEmpty()) {
+                mIndex = Collections.emptyMap();
+            } else {
+                final Map<String, Error> index = new HashMap<String, Error>(errors.size() * 2);
+
+                for (final Error error : errors) {
+                    final String key = getKey(error.getObject(), error.getCode());
+
+                    if (!index.containsKey(key)) {
+                        index.put(key, error);
+                    }
+                }
+
+                mIndex = index;
+            }
+        }
+
+        /**
+         * @param object the error object.
+         * @param code the error code.
+         * @return the first error with {@code object} and {@code code}, or null.
+         */
+        @Nullable
+        public Error get(@NonNull final String object, @NonNull final String code) {
+            return mIndex.get(getKey(object, code));
+        }
+
+        /**
+         * @param object the error object, or null.
+         * @param code the error code, or null.
+         * @return the key of the object and code in {@link #mIndex}.
+         */
+        @NonNull
+        private static String getKey(@Nullable final String object, @Nullable final String code) {
+            // Objects and codes are identifiers, so they can't contain the separator.
+            return object + '\n' + code;
+        }
     }
 }
@@ -0,0 +1,718 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.SlowOperation;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.model.AccessToken;
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.util.CryptographicHashUtil;
+import com.scvngr.levelup.core.util.CryptographicHashUtil.Algorithms;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>
+ * A two-tier (memory and disk) cache of responses to {@link HttpMethod#GET} requests.
+ * </p>
+ * <p>
+ * Entries are keyed by the request URL and the identity of the user making the request, so cached
+ * responses are never shared between users. A cached response is served without a network request
+ * while it is fresh according to its {@code Cache-Control: max-age}. Once stale, it is revalidated
+ * with {@code If-None-Match} and {@code If-Modified-Since}; a {@code 304 Not Modified} from the
+ * server is answered with the cached body. Both tiers evict least recently used entries once they
+ * exceed their size limits.
+ * </p>
+ * <p>
+ * The cache is disabled until {@link #install(Context, int, long)} is called, usually from
+ * {@link android.app.Application#onCreate()}.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class LevelUpResponseCache {
+
+    /**
+     * Name of the directory within {@link Context#getCacheDir()} for the disk tier.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final String CACHE_DIRECTORY_NAME = "levelup_response_cache";
+
+    /**
+     * Version of the format that entries are written to disk in.
+     */
+    private static final int DISK_FORMAT_VERSION = 1;
+
+    /**
+     * Response header for the entity tag.
+     */
+    @NonNull
+    /* package */static final String HEADER_ETAG = "ETag";
+
+    /**
+     * Response header for the last modification time.
+     */
+    @NonNull
+    /* package */static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    /**
+     * Response header for caching directives.
+     */
+    @NonNull
+    /* package */static final String HEADER_CACHE_CONTROL = "Cache-Control";
+
+    /**
+     * Request header for revalidating with an entity tag.
+     */
+    @NonNull
+    /* package */static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    /**
+     * Request header for revalidating with a modification time.
+     */
+    @NonNull
+    /* package */static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    /**
+     * Sentinel for a response without a {@code max-age} directive.
+     */
+    private static final long MAX_AGE_UNSPECIFIED = -1;
+
+    /**
+     * The response headers that are kept with cached entries.
+     */
+    @NonNull
+    private static final List<String> STORED_HEADERS = Arrays.asList(HEADER_ETAG,
+            HEADER_LAST_MODIFIED, HEADER_CACHE_CONTROL, "Content-Type", "Date", "Link", "Server");
+
+    @Nullable
+    private static volatile LevelUpResponseCache sInstalled = null;
+
+    @NonNull
+    private final LruCache<String, CachedResponse> mMemoryCache;
+
+    @NonNull
+    private final File mDirectory;
+
+    private final long mMaxDiskBytes;
+
+    /**
+     * Intrinsic lock guarding the files in {@link #mDirectory}.
+     */
+    @NonNull
+    private final Object[] mDiskLock = new Object[0];
+
+    /**
+     * @param directory the directory for the disk tier.
+     * @param maxMemoryBytes the approximate maximum size of the memory tier.
+     * @param maxDiskBytes the maximum size of the disk tier.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */LevelUpResponseCache(@NonNull final File directory, final int maxMemoryBytes,
+            final long maxDiskBytes) {
+        mDirectory = directory;
+        mMaxDiskBytes = maxDiskBytes;
+        mMemoryCache = new LruCache<String, CachedResponse>(Math.max(1, maxMemoryBytes)) {
+            @Override
+            protected int sizeOf(final String key, final CachedResponse value) {
+                return value.getSizeBytes();
+            }
+        };
+    }
+
+    /**
+     * Creates a cache in the app's cache directory and enables it for all
+     * {@link LevelUpConnection}s.
+     *
+     * @param context Application context.
+     * @param maxMemoryBytes the approximate maximum size of the memory tier.
+     * @param maxDiskBytes the maximum size of the disk tier. Pass 0 to keep entries only in memory.
+     * @return the installed cache.
+     */
+    @NonNull
+    public static LevelUpResponseCache install(@NonNull final Context context,
+            final int maxMemoryBytes, final long maxDiskBytes) {
+        final LevelUpResponseCache cache =
+                new LevelUpResponseCache(new File(context.getCacheDir(), CACHE_DIRECTORY_NAME),
+                        maxMemoryBytes, maxDiskBytes);
+        sInstalled = cache;
+
+        return cache;
+    }
+
+    /**
+     * Disables caching. Entries already on disk are kept so that they can be used if a cache is
+     * installed again.
+     */
+    public static void uninstall() {
+        sInstalled = null;
+    }
+
+    /**
+     * @return the installed cache or null if caching is disabled.
+     */
+    @Nullable
+    public static LevelUpResponseCache getInstalled() {
+        return sInstalled;
+    }
+
+    /**
+     * Builds the key that a request's response is cached under.
+     *
+     * @param context Application context.
+     * @param request the request.
+     * @return the key or null if the request's response cannot be cached.
+     */
+    @Nullable
+    public String getKey(@NonNull final Context context, @NonNull final AbstractRequest request) {
+        if (HttpMethod.GET != request.getMethod()) {
+            return null;
+        }
+
+        String identity = "";
+
+        if (request instanceof LevelUpRequest) {
+            final AccessToken token = ((LevelUpRequest) request).getAccessToken(context);
+
+            if (null != token) {
+                identity = token.getAccessToken();
+            }
+        }
+
+        try {
+            return CryptographicHashUtil.getHexHash(
+                    NullUtils.format("%s\n%s", request.getUrl(context), identity),
+                    Algorithms.SHA256);
+        } catch (final BadRequestException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param key the key from {@link #getKey(Context, AbstractRequest)}.
+     * @return the cached response or null if there is none.
+     */
+    @Nullable
+    @SlowOperation
+    public CachedResponse get(@NonNull final String key) {
+        CachedResponse cached = mMemoryCache.get(key);
+
+        if (null == cached && 0 < mMaxDiskBytes) {
+            cached = readFromDisk(key);
+
+            if (null != cached) {
+                mMemoryCache.put(key, cached);
+            }
+        }
+
+        return cached;
+    }
+
+    /**
+     * Stores the response if it is cacheable.
+     *
+     * @param key the key from {@link #getKey(Context, AbstractRequest)}.
+     * @param response the response received from the server.
+     * @return true if the response was stored.
+     */
+    @SlowOperation
+    public boolean put(@NonNull final String key, @NonNull final LevelUpResponse response) {
+        if (!isCacheable(response)) {
+            return false;
+        }
+
+        final CachedResponse cached =
+                new CachedResponse(NullUtils.nonNullContract(response.getData()),
+                        response.getHttpStatusCode(), filterHeaders(response.getHttpHeaders()),
+                        System.currentTimeMillis());
+        store(key, cached);
+
+        return true;
+    }
+
+    /**
+     * Refreshes a cached response after the server answered a revalidation with
+     * {@code 304 Not Modified}.
+     *
+     * @param key the key from {@link #getKey(Context, AbstractRequest)}.
+     * @param cached the response that was revalidated.
+     * @param notModified the {@code 304} response. Its headers replace the stored ones.
+     * @return the refreshed response.
+     */
+    @NonNull
+    @SlowOperation
+    public CachedResponse update(@NonNull final String key, @NonNull final CachedResponse cached,
+            @NonNull final AbstractResponse<?> notModified) {
+        final Map<String, List<String>> headers =
+                new HashMap<String, List<String>>(cached.getHeaders());
+        headers.putAll(filterHeaders(notModified.getHttpHeaders()));
+
+        final CachedResponse refreshed =
+                new CachedResponse(cached.getData(), cached.getStatusCode(), headers,
+                        System.currentTimeMillis());
+        store(key, refreshed);
+
+        return refreshed;
+    }
+
+    /**
+     * Removes a single entry from both tiers.
+     *
+     * @param key the key from {@link #getKey(Context, AbstractRequest)}.
+     */
+    @SlowOperation
+    public void remove(@NonNull final String key) {
+        mMemoryCache.remove(key);
+
+        synchronized (mDiskLock) {
+            deleteQuietly(new File(mDirectory, key));
+        }
+    }
+
+    /**
+     * Removes all entries from both tiers.
+     */
+    @SlowOperation
+    public void evictAll() {
+        mMemoryCache.evictAll();
+
+        synchronized (mDiskLock) {
+            final File[] files = mDirectory.listFiles();
+
+            if (null != files) {
+                for (final File file : files) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param response the response received from the server.
+     * @return true if the response may be stored.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static boolean isCacheable(@NonNull final LevelUpResponse response) {
+        if (LevelUpStatus.OK != response.getStatus()
+                || HttpURLConnection.HTTP_OK != response.getHttpStatusCode()
+                || null == response.getData()) {
+            return false;
+        }
+
+        final Map<String, List<String>> headers = response.getHttpHeaders();
+        final String cacheControl = getHeader(headers, HEADER_CACHE_CONTROL);
+
+        if (null != cacheControl
+                && cacheControl.toLowerCase(Locale.US).contains("no-store")) {
+            return false;
+        }
+
+        return null != getHeader(headers, HEADER_ETAG)
+                || null != getHeader(headers, HEADER_LAST_MODIFIED)
+                || MAX_AGE_UNSPECIFIED != parseMaxAgeSeconds(cacheControl);
+    }
+
+    /**
+     * @param cacheControl the value of the {@code Cache-Control} header or null.
+     * @return the {@code max-age} in seconds or {@link #MAX_AGE_UNSPECIFIED}. {@code no-cache} is
+     *         treated as a max-age of zero.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static long parseMaxAgeSeconds(@Nullable final String cacheControl) {
+        if (null == cacheControl) {
+            return MAX_AGE_UNSPECIFIED;
+        }
+
+        long maxAge = MAX_AGE_UNSPECIFIED;
+
+        for (final String directive : cacheControl.split(",")) {
+            final String trimmed = directive.trim().toLowerCase(Locale.US);
+
+            if ("no-cache".equals(trimmed)) {
+                return 0;
+            }
+
+            if (trimmed.startsWith("max-age=")) {
+                try {
+                    maxAge = Long.parseLong(trimmed.substring("max-age=".length()).trim());
+                } catch (final NumberFormatException e) {
+                    LogManager.w("Invalid max-age in Cache-Control: %s", cacheControl);
+                }
+            }
+        }
+
+        return maxAge;
+    }
+
+    /**
+     * Finds a header without regard to the case of its name.
+     *
+     * @param headers the headers or null.
+     * @param name the header name.
+     * @return the first value of the header or null if it is not present.
+     */
+    @Nullable
+    /* package */static String getHeader(@Nullable final Map<String, List<String>> headers,
+            @NonNull final String name) {
+        if (null == headers) {
+            return null;
+        }
+
+        for (final Entry<String, List<String>> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && null != entry.getValue()
+                    && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param headers all the response headers or null.
+     * @return the headers in {@link #STORED_HEADERS}, with normalized names.
+     */
+    @NonNull
+    private static Map<String, List<String>> filterHeaders(
+            @Nullable final Map<String, List<String>> headers) {
+        final Map<String, List<String>> filtered = new HashMap<String, List<String>>();
+
+        for (final String name : STORED_HEADERS) {
+            final String value = getHeader(headers, name);
+
+            if (null != value) {
+                filtered.put(name, Collections.singletonList(value));
+            }
+        }
+
+        return filtered;
+    }
+
+    /**
+     * Writes the entry to both tiers.
+     *
+     * @param key the entry's key.
+     * @param cached the entry.
+     */
+    private void store(@NonNull final String key, @NonNull final CachedResponse cached) {
+        mMemoryCache.put(key, cached);
+
+        if (0 < mMaxDiskBytes) {
+            writeToDisk(key, cached);
+        }
+    }
+
+    /**
+     * @param key the entry's key.
+     * @return the entry read from disk or null if it isn't there or can't be read.
+     */
+    @Nullable
+    private CachedResponse readFromDisk(@NonNull final String key) {
+        synchronized (mDiskLock) {
+            final File file = new File(mDirectory, key);
+
+            if (!file.exists()) {
+                return null;
+            }
+
+            DataInputStream in = null;
+
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+                if (DISK_FORMAT_VERSION != in.readInt()) {
+                    deleteQuietly(file);
+                    return null;
+                }
+
+                final int statusCode = in.readInt();
+                final long storedAtMillis = in.readLong();
+                final int headerCount = in.readInt();
+                final Map<String, List<String>> headers =
+                        new HashMap<String, List<String>>(headerCount);
+
+                for (int i = 0; i < headerCount; i++) {
+                    final String name = in.readUTF();
+                    headers.put(name, Collections.singletonList(in.readUTF()));
+                }
+
+                final byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+
+                // Reading counts as a use for the purposes of LRU eviction.
+                file.setLastModified(System.currentTimeMillis());
+
+                return new CachedResponse(new String(body, "UTF-8"), statusCode, headers,
+                        storedAtMillis);
+            } catch (final IOException e) {
+                LogManager.w("Unable to read cached response", e);
+                deleteQuietly(file);
+                return null;
+            } finally {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Writes the entry to disk and trims the disk tier to its size limit.
+     *
+     * @param key the entry's key.
+     * @param cached the entry.
+     */
+    private void writeToDisk(@NonNull final String key, @NonNull final CachedResponse cached) {
+        synchronized (mDiskLock) {
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                LogManager.w("Unable to create response cache directory %s", mDirectory);
+                return;
+            }
+
+            final File file = new File(mDirectory, key);
+            DataOutputStream out = null;
+
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                out.writeInt(DISK_FORMAT_VERSION);
+                out.writeInt(cached.getStatusCode());
+                out.writeLong(cached.getStoredAtMillis());
+                out.writeInt(cached.getHeaders().size());
+
+                for (final Entry<String, List<String>> header : cached.getHeaders().entrySet()) {
+                    out.writeUTF(header.getKey());
+                    out.writeUTF(header.getValue().get(0));
+                }
+
+                final byte[] body = cached.getData().getBytes("UTF-8");
+                out.writeInt(body.length);
+                out.write(body);
+                out.close();
+                out = null;
+            } catch (final IOException e) {
+                LogManager.w("Unable to write cached response", e);
+                closeQuietly(out);
+                deleteQuietly(file);
+                return;
+            }
+
+            trimDisk();
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the disk tier fits within its size limit.
+     */
+    @GuardedBy("mDiskLock")
+    private void trimDisk() {
+        final File[] files = mDirectory.listFiles();
+
+        if (null == files) {
+            return;
+        }
+
+        long size = 0;
+
+        for (final File file : files) {
+            size += file.length();
+        }
+
+        if (size <= mMaxDiskBytes) {
+            return;
+        }
+
+        final List<File> byAge = new ArrayList<File>(Arrays.asList(files));
+        Collections.sort(byAge, new Comparator<File>() {
+            @Override
+            public int compare(final File lhs, final File rhs) {
+                final long lhsModified = lhs.lastModified();
+                final long rhsModified = rhs.lastModified();
+
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        for (final File file : byAge) {
+            if (size <= mMaxDiskBytes) {
+                break;
+            }
+
+            size -= file.length();
+            mMemoryCache.remove(file.getName());
+            deleteQuietly(file);
+        }
+    }
+
+    /**
+     * @param file the file to delete.
+     */
+    private static void deleteQuietly(@NonNull final File file) {
+        if (file.exists() && !file.delete()) {
+            LogManager.w("Unable to delete %s", file);
+        }
+    }
+
+    /**
+     * @param closeable the stream to close or null.
+     */
+    private static void closeQuietly(@Nullable final Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                // Nothing else can be done.
+            }
+        }
+    }
+
+    /**
+     * A response stored in the cache.
+     */
+    @Immutable
+    public static final class CachedResponse {
+
+        @NonNull
+        private final String mData;
+
+        private final int mStatusCode;
+
+        @NonNull
+        private final Map<String, List<String>> mHeaders;
+
+        private final long mStoredAtMillis;
+
+        /**
+         * @param data the response body.
+         * @param statusCode the HTTP status code.
+         * @param headers the stored response headers.
+         * @param storedAtMillis the wall time at which the response was received or last
+         *        revalidated.
+         */
+        /* package */CachedResponse(@NonNull final String data, final int statusCode,
+                @NonNull final Map<String, List<String>> headers, final long storedAtMillis) {
+            mData = data;
+            mStatusCode = statusCode;
+            mHeaders = NullUtils.nonNullContract(Collections.unmodifiableMap(headers));
+            mStoredAtMillis = storedAtMillis;
+        }
+
+        /**
+         * @return the response body.
+         */
+        @NonNull
+        public String getData() {
+            return mData;
+        }
+
+        /**
+         * @return the HTTP status code.
+         */
+        public int getStatusCode() {
+            return mStatusCode;
+        }
+
+        /**
+         * @return the stored response headers.
+         */
+        @NonNull
+        public Map<String, List<String>> getHeaders() {
+            return mHeaders;
+        }
+
+        /**
+         * @return the wall time at which the response was received or last revalidated.
+         */
+        public long getStoredAtMillis() {
+            return mStoredAtMillis;
+        }
+
+        /**
+         * @param nowMillis the current wall time.
+         * @return true if the response may be used without revalidating it with the server.
+         */
+        public boolean isFresh(final long nowMillis) {
+            final long maxAgeSeconds =
+                    parseMaxAgeSeconds(getHeader(mHeaders, HEADER_CACHE_CONTROL));
+            final long ageMillis = nowMillis - mStoredAtMillis;
+
+            return 0 < maxAgeSeconds && 0 <= ageMillis && ageMillis < maxAgeSeconds * 1000;
+        }
+
+        /**
+         * @return the headers to send to revalidate this response with the server.
+         */
+        @NonNull
+        public Map<String, String> getConditionalHeaders() {
+            final Map<String, String> headers = new HashMap<String, String>(2);
+            final String etag = getHeader(mHeaders, HEADER_ETAG);
+            final String lastModified = getHeader(mHeaders, HEADER_LAST_MODIFIED);
+
+            if (null != etag) {
+                headers.put(HEADER_IF_NONE_MATCH, etag);
+            }
+
+            if (null != lastModified) {
+                headers.put(HEADER_IF_MODIFIED_SINCE, lastModified);
+            }
+
+            return headers;
+        }
+
+        /**
+         * @return a new {@link LevelUpResponse} for the cached data.
+         */
+        @NonNull
+        public LevelUpResponse toResponse() {
+            return new LevelUpResponse(mData, mStatusCode, mHeaders, null);
+        }
+
+        /**
+         * @return the approximate number of bytes of memory this entry uses.
+         */
+        /* package */int getSizeBytes() {
+            // Java Strings use two bytes per character.
+            return mData.length() * 2;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * Decodes a model directly from the body of a response as it is read from the network, without
+ * buffering the body or building a JSON tree first.
+ *
+ * @param <T> the type of model decoded.
+ * @see LevelUpConnection#send(AbstractRequest, ModelDecoder)
+ * @see com.scvngr.levelup.core.model.factory.json.GsonModelFactory#newDecoder()
+ */
+@LevelUpApi(contract = Contract.DRAFT)
+public interface ModelDecoder<T> {
+
+    /**
+     * Reads a model from {@code reader}. Implementations should pull tokens from the reader rather
+     * than reading the whole document into memory.
+     *
+     * @param reader the reader positioned at the start of the response body.
+     * @return the decoded model.
+     * @throws IOException if the body cannot be read.
+     * @throws JsonParseException if the body is not a valid representation of the model.
+     */
+    @NonNull
+    T decode(@NonNull JsonReader reader) throws IOException, JsonParseException;
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.model.Error;
+import com.scvngr.levelup.core.util.LogManager;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+import net.jcip.annotations.Immutable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A response whose body has been decoded into a model by a {@link ModelDecoder}.
+ * <p>
+ * Successful responses are decoded straight from the network stream. Unsuccessful responses are
+ * small, so they are buffered and their server errors parsed as for {@link LevelUpResponse}.
+ * </p>
+ *
+ * @param <T> the type of model in the response.
+ */
+@Immutable
+@LevelUpApi(contract = Contract.DRAFT)
+public final class ModelResponse<T> extends AbstractResponse<T> {
+
+    @Nullable
+    private final T mData;
+
+    @NonNull
+    private final LevelUpStatus mStatus;
+
+    @NonNull
+    private final List<Error> mServerErrors;
+
+    /**
+     * @param statusCode the HTTP status code.
+     * @param response the response that the status code and headers came from.
+     * @param data the decoded model or null if it could not be decoded.
+     * @param status the status of the response.
+     * @param serverErrors the errors returned by the server.
+     * @param error the error that occurred while sending or decoding, or null.
+     */
+    private ModelResponse(final int statusCode, @NonNull final AbstractResponse<?> response,
+            @Nullable final T data, @NonNull final LevelUpStatus status,
+            @NonNull final List<Error> serverErrors, @Nullable final Exception error) {
+        super(statusCode, response.getHttpHeaders(), error);
+        mData = data;
+        mStatus = status;
+        mServerErrors = serverErrors;
+    }
+
+    /**
+     * Decodes a response as it is read from the network. The response is closed afterwards.
+     *
+     * @param <T> the type of model to decode.
+     * @param response the response from the {@link Transport}.
+     * @param decoder the decoder for the response body.
+     * @return the decoded response.
+     */
+    @NonNull
+    /* package */static <T> ModelResponse<T> decode(@NonNull final StreamingResponse response,
+            @NonNull final ModelDecoder<T> decoder) {
+        if (null != response.getError()
+                || LevelUpStatus.OK != LevelUpResponse.mapStatus(response)) {
+            // Reads and closes the response.
+            return fromUnsuccessful(new LevelUpResponse(response));
+        }
+
+        try {
+            final InputStream stream = response.getData();
+
+            if (null == stream) {
+                return new ModelResponse<T>(response.getHttpStatusCode(), response, null,
+                        LevelUpStatus.OK, Collections.<Error> emptyList(), null);
+            }
+
+            return decode(response, new InputStreamReader(stream, "UTF-8"), decoder);
+        } catch (final UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new AssertionError(e);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Decodes a response whose body has already been buffered.
+     *
+     * @param <T> the type of model to decode.
+     * @param response the buffered response.
+     * @param decoder the decoder for the response body.
+     * @return the decoded response.
+     */
+    @NonNull
+    /* package */static <T> ModelResponse<T> decode(@NonNull final LevelUpResponse response,
+            @NonNull final ModelDecoder<T> decoder) {
+        final String data = response.getData();
+
+        if (LevelUpStatus.OK != response.getStatus() || null == data) {
+            return fromUnsuccessful(response);
+        }
+
+        return decode(response, new StringReader(data), decoder);
+    }
+
+    /**
+     * Decodes a response whose body has been spooled. The body is streamed from memory or disk, so
+     * it is never held in memory as a {@link String}. The response is not closed.
+     *
+     * @param <T> the type of model to decode.
+     * @param response the spooled response.
+     * @param decoder the decoder for the response body.
+     * @return the decoded response.
+     */
+    @NonNull
+    public static <T> ModelResponse<T> decode(@NonNull final SpooledResponse response,
+            @NonNull final ModelDecoder<T> decoder) {
+        final LevelUpResponse unsuccessful = response.getUnsuccessfulResponse();
+
+        if (null != unsuccessful) {
+            return fromUnsuccessful(unsuccessful);
+        }
+
+        if (LevelUpStatus.OK != response.getStatus()) {
+            return new ModelResponse<T>(response.getHttpStatusCode(), response, null,
+                    response.getStatus(), Collections.<Error> emptyList(), response.getError());
+        }
+
+        final InputStream stream = response.getData();
+
+        if (null == stream) {
+            return new ModelResponse<T>(response.getHttpStatusCode(), response, null,
+                    LevelUpStatus.OK, Collections.<Error> emptyList(), null);
+        }
+
+        try {
+            return decode(response, new InputStreamReader(stream, "UTF-8"), decoder);
+        } catch (final UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new AssertionError(e);
+        } finally {
+            try {
+                stream.close();
+            } catch (final IOException e) {
+                LogManager.v("Error closing response stream", e);
+            }
+        }
+    }
+
+    /**
+     * @param <T> the type of model to decode.
+     * @param response the response that the body came from.
+     * @param body the response body.
+     * @param decoder the decoder for the response body.
+     * @return the decoded response.
+     */
+    @NonNull
+    private static <T> ModelResponse<T> decode(@NonNull final AbstractResponse<?> response,
+            @NonNull final Reader body, @NonNull final ModelDecoder<T> decoder) {
+        T data = null;
+        LevelUpStatus status = LevelUpStatus.OK;
+        Exception error = null;
+
+        try {
+            data = decoder.decode(new JsonReader(body));
+        } catch (final MalformedJsonException e) {
+            LogManager.e("Error decoding response", e);
+            status = LevelUpStatus.ERROR_PARSING;
+            error = e;
+        } catch (final IOException e) {
+            LogManager.v("Error reading response", e);
+            status = LevelUpResponse.mapStatus(e);
+            error = e;
+        } catch (final JsonParseException | IllegalStateException | NumberFormatException e) {
+            // JsonReader throws IllegalStateException and NumberFormatException for bad tokens.
+            LogManager.e("Error decoding response", e);
+            status = LevelUpStatus.ERROR_PARSING;
+            error = e;
+        }
+
+        return new ModelResponse<T>(response.getHttpStatusCode(), response, data, status,
+                Collections.<Error> emptyList(), error);
+    }
+
+    /**
+     * @param <T> the type of model that would have been decoded.
+     * @param response the unsuccessful response.
+     * @return a response with the status and server errors of {@code response} and no data.
+     */
+    @NonNull
+    private static <T> ModelResponse<T> fromUnsuccessful(@NonNull final LevelUpResponse response) {
+        return new ModelResponse<T>(response.getHttpStatusCode(), response, null,
+                response.getStatus(), response.getServerErrors(), response.getError());
+    }
+
+    /**
+     * @return the decoded model, or null if the response was not successful.
+     */
+    @Override
+    @Nullable
+    public T getData() {
+        return mData;
+    }
+
+    /**
+     * @return the {@link LevelUpStatus} for this response.
+     */
+    @NonNull
+    public LevelUpStatus getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * @return the {@link Error}s returned by the server for an unsuccessful response.
+     */
+    @NonNull
+    public List<Error> getServerErrors() {
+        return mServerErrors;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "ModelResponse [mData=%s, mStatus=%s, mServerErrors=%s, super=%s]",
+                mData, mStatus, mServerErrors, super.toString());
+    }
+}
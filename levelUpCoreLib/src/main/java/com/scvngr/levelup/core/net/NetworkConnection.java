@@ -14,9 +14,11 @@
 package com.scvngr.levelup.core.net;
 
 import android.content.Context;
+import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.scvngr.levelup.core.R;
 import com.scvngr.levelup.core.annotation.LevelUpApi;
 import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
 import com.scvngr.levelup.core.annotation.VisibleForTesting;
@@ -30,9 +32,13 @@ import net.jcip.annotations.ThreadSafe;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility class for performing network operations.
@@ -78,10 +84,64 @@ public final class NetworkConnection {
     @NonNull
     public static StreamingResponse send(@NonNull final Context context,
             @NonNull final AbstractRequest request) {
+        return send(context, request, null);
+    }
+
+    /**
+     * Send the {@link AbstractRequest} using HTTP and create a {@link AbstractResponse}.
+     *
+     * @param context Application Context.
+     * @param request the request to send.
+     * @param additionalHeaders headers to send in addition to the request's own headers, such as
+     *        conditional headers used to revalidate a cached response. May be null.
+     * @return the {@link AbstractResponse} received.
+     */
+    @NonNull
+    public static StreamingResponse send(@NonNull final Context context,
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders) {
+        return send(context, request, additionalHeaders, null);
+    }
+
+    /**
+     * Send the {@link AbstractRequest} using HTTP and create a {@link AbstractResponse}.
+     *
+     * @param context Application Context.
+     * @param request the request to send.
+     * @param additionalHeaders headers to send in addition to the request's own headers, such as
+     *        conditional headers used to revalidate a cached response. May be null.
+     * @param listener the listener to report the progress of the request to. May be null.
+     * @return the {@link AbstractResponse} received.
+     */
+    @NonNull
+    public static StreamingResponse send(@NonNull final Context context,
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders,
+            @Nullable final NetworkEventListener listener) {
+        return send(context, request, additionalHeaders, listener, null);
+    }
+
+    /**
+     * Send the {@link AbstractRequest} using HTTP and create a {@link AbstractResponse}.
+     *
+     * @param context Application Context.
+     * @param request the request to send.
+     * @param additionalHeaders headers to send in addition to the request's own headers, such as
+     *        conditional headers used to revalidate a cached response. May be null.
+     * @param listener the listener to report the progress of the request to. May be null.
+     * @param handle the timeouts and cancellation of the send. May be null to use the default
+     *        timeouts.
+     * @return the {@link AbstractResponse} received.
+     */
+    @NonNull
+    public static StreamingResponse send(@NonNull final Context context,
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle) {
         StreamingResponse response;
 
         try {
-            response = doSendWithRetry(context, request);
+            response = doSendWithRetry(context, request, additionalHeaders, listener, handle);
         } catch (final IOException e) {
             LogManager.v("Error during send", e);
             response = new StreamingResponse(e);
@@ -104,13 +164,19 @@ public final class NetworkConnection {
      *
      * @param context Application Context.
      * @param request the request to send.
+     * @param additionalHeaders headers to send in addition to the request's own headers.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
      * @return {@link StreamingResponse} containing information regarding the outcome of the send.
      * @throws IOException if network operations fail.
      * @throws BadRequestException if the request is invalid.
      */
     @NonNull
     private static StreamingResponse doSendWithRetry(@NonNull final Context context,
-            @NonNull final AbstractRequest request) throws IOException, BadRequestException {
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders,
+            @Nullable final NetworkEventListener listener, @Nullable final RequestHandle handle)
+            throws IOException, BadRequestException {
         LogManager.v("HTTP request headers: %s", request.getRequestHeaders(context));
 
         final boolean isPooled = MAX_POOLED_CONNECTIONS > 0;
@@ -120,13 +186,14 @@ public final class NetworkConnection {
             final boolean shouldCloseConnection = i > 0 && isPooled;
 
             try {
-                return doSend(context, request, shouldCloseConnection);
+                return doSend(context, request, additionalHeaders, shouldCloseConnection,
+                        listener, handle);
             } catch (final EOFException e) {
                 LogManager.e(NullUtils.format("Unable to send request: failures(%d)", i), e);
             }
         }
 
-        return doSend(context, request, false);
+        return doSend(context, request, additionalHeaders, false, listener, handle);
     }
 
     /**
@@ -134,32 +201,47 @@ public final class NetworkConnection {
      *
      * @param context Application Context.
      * @param request the request to send.
+     * @param additionalHeaders headers to send in addition to the request's own headers.
      * @param shouldCloseConnection determines whether the connection should be closed after the
      * request has been made.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
      * @return {@link StreamingResponse} containing information regarding the outcome of the send.
-     * @throws IOException if network operations fail.
+     * @throws IOException if network operations fail or the send was cancelled.
      * @throws BadRequestException if the request is invalid.
      */
     @NonNull
     private static StreamingResponse doSend(@NonNull final Context context,
-            @NonNull final AbstractRequest request, final boolean shouldCloseConnection)
-                    throws IOException, BadRequestException {
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders,
+            final boolean shouldCloseConnection, @Nullable final NetworkEventListener listener,
+            @Nullable final RequestHandle handle) throws IOException, BadRequestException {
         HttpURLConnection connection = null;
         StreamingResponse response = null;
 
         try {
             // Configure the connection based on the request passed
-            connection = configureConnection(context, request);
+            connection = configureConnection(context, request, additionalHeaders, handle);
+
+            if (null != handle && !handle.attach(connection)) {
+                throw handle.newDoneError();
+            }
 
             if (shouldCloseConnection) {
                 connection.setRequestProperty("Connection", "close");
             }
 
+            if (null != listener) {
+                // Connect eagerly so that connecting can be timed apart from sending.
+                connection.connect();
+                listener.connectionAcquired(request, System.nanoTime());
+            }
+
             // Write the post body if necessary
-            doOutput(context, connection, request);
+            doOutput(context, connection, request, listener);
 
             // Get the response from the server
-            response = getResponse(connection);
+            response = getResponse(connection, request, listener, handle);
         } finally {
             if (response == null) {
                 if (connection != null) {
@@ -184,8 +266,59 @@ public final class NetworkConnection {
     @NonNull
     /* package */static HttpURLConnection configureConnection(@NonNull final Context context,
             @NonNull final AbstractRequest request) throws IOException, BadRequestException {
+        return configureConnection(context, request, null);
+    }
+
+    /**
+     * Configures the {@link HttpURLConnection} to use for this request.
+     *
+     * @param context Application Context.
+     * @param request the request to use to configure the connection
+     * @param additionalHeaders headers to send in addition to the request's own headers. May be
+     *        null.
+     * @return the configured connection
+     * @throws IOException if configuration fails
+     * @throws BadRequestException if the request is invalid.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    @NonNull
+    /* package */static HttpURLConnection configureConnection(@NonNull final Context context,
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders)
+            throws IOException, BadRequestException {
+        return configureConnection(context, request, additionalHeaders, null);
+    }
+
+    /**
+     * Configures the {@link HttpURLConnection} to use for this request.
+     *
+     * @param context Application Context.
+     * @param request the request to use to configure the connection
+     * @param additionalHeaders headers to send in addition to the request's own headers. May be
+     *        null.
+     * @param handle the timeouts of the send, or null to use the defaults of
+     *        {@link RequestHandle}.
+     * @return the configured connection
+     * @throws IOException if configuration fails
+     * @throws BadRequestException if the request is invalid.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    @NonNull
+    /* package */static HttpURLConnection configureConnection(@NonNull final Context context,
+            @NonNull final AbstractRequest request,
+            @Nullable final Map<String, String> additionalHeaders,
+            @Nullable final RequestHandle handle) throws IOException, BadRequestException {
         final HttpURLConnection connection =
                 (HttpURLConnection) request.getUrl(context).openConnection();
+
+        if (null == handle) {
+            connection.setConnectTimeout(RequestHandle.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(RequestHandle.DEFAULT_READ_TIMEOUT_MILLIS);
+        } else {
+            connection.setConnectTimeout(handle.getConnectTimeoutMillis());
+            connection.setReadTimeout(handle.getReadTimeoutMillis());
+        }
+
         // Set the HTTP method (GET, POST, PUT, etc..)
         connection.setRequestMethod(request.getMethod().name());
 
@@ -195,6 +328,12 @@ public final class NetworkConnection {
             connection.setRequestProperty(headerKey, headers.get(headerKey));
         }
 
+        if (null != additionalHeaders) {
+            for (final Map.Entry<String, String> header : additionalHeaders.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
         final int bodyLength = request.getBodyLength(context);
 
         if (0 != bodyLength) {
@@ -227,12 +366,31 @@ public final class NetworkConnection {
     /* package */static void doOutput(@NonNull final Context context,
             @NonNull final HttpURLConnection connection, @NonNull final AbstractRequest request)
             throws IOException {
+        doOutput(context, connection, request, null);
+    }
+
+    /**
+     * Write to the post output stream if necessary.
+     *
+     * @param context Application Context.
+     * @param connection the connection to write to
+     * @param request the request containing the post body
+     * @param listener the listener to report to, or null.
+     * @throws IOException if writing of the post body fails.
+     */
+    private static void doOutput(@NonNull final Context context,
+            @NonNull final HttpURLConnection connection, @NonNull final AbstractRequest request,
+            @Nullable final NetworkEventListener listener) throws IOException {
         if (connection.getDoOutput()) {
             OutputStream stream = null;
 
             try {
                 stream = NullUtils.nonNullContract(connection.getOutputStream());
 
+                if (null != listener) {
+                    listener.requestHeadersEnd(request, System.nanoTime());
+                }
+
                 try {
                     request.writeBodyToStream(context, stream);
                 } catch (final IOException e) {
@@ -251,6 +409,14 @@ public final class NetworkConnection {
                     stream.close();
                 }
             }
+
+            if (null != listener) {
+                listener.requestBodyEnd(request, System.nanoTime(),
+                        request.getBodyLength(context));
+            }
+        } else if (null != listener) {
+            // Without a body, the headers are written when the response is requested.
+            listener.requestHeadersEnd(request, System.nanoTime());
         }
     }
 
@@ -265,12 +431,35 @@ public final class NetworkConnection {
     @NonNull
     /* package */static StreamingResponse getResponse(@NonNull final HttpURLConnection connection)
             throws IOException {
+        return getResponse(connection, null, null, null);
+    }
+
+    /**
+     * Gets the response from the server.
+     *
+     * @param connection the connection to use to make the request to the server
+     * @param request the request being sent. Must not be null if {@code listener} isn't.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @return {@link StreamingResponse} containing information regarding the outcome of the send
+     * @throws IOException if network operations fail
+     */
+    @NonNull
+    private static StreamingResponse getResponse(@NonNull final HttpURLConnection connection,
+            @Nullable final AbstractRequest request, @Nullable final NetworkEventListener listener,
+            @Nullable final RequestHandle handle) throws IOException {
         final StreamingResponse nextResponse = sNextResponse;
         final StreamingResponse response;
 
         if (null == nextResponse) {
+            if (null != listener && null != request) {
+                // Waits for the status line and headers.
+                final int statusCode = connection.getResponseCode();
+                listener.responseFirstByte(request, System.nanoTime(), statusCode);
+            }
+
             // Create the response object to pass back to the caller
-            response = new StreamingResponse(connection);
+            response = new StreamingResponse(connection, request, listener, handle);
         } else {
             // If the sNextResponse field was set return it instead of doing the network request
             response = nextResponse;
@@ -280,6 +469,83 @@ public final class NetworkConnection {
         return response;
     }
 
+    /**
+     * Opens a connection to the LevelUp API server and returns it to the connection pool, so that
+     * the next request to the server skips the DNS lookup and the TCP and TLS handshakes. This
+     * sends a {@code HEAD} request to the root of the server and ignores the response. Errors are
+     * logged and otherwise ignored. Only the pool of {@link HttpURLConnection} is warmed, not the
+     * connections of a custom {@link Transport}.
+     *
+     * @param context Application context.
+     * @return true if a connection was opened, false if the prewarm failed.
+     */
+    /* package */static boolean prewarm(@NonNull final Context context) {
+        try {
+            return prewarm(context, new URL(getServerRootUrl(context)));
+        } catch (final MalformedURLException e) {
+            LogManager.e("Invalid server URL", e);
+        }
+
+        return false;
+    }
+
+    /**
+     * Opens a connection to {@code url} and returns it to the connection pool.
+     *
+     * @param context Application context.
+     * @param url the URL to send a {@code HEAD} request to.
+     * @return true if a connection was opened, false if the prewarm failed.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static boolean prewarm(@NonNull final Context context, @NonNull final URL url) {
+        final long startNanos = System.nanoTime();
+
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(RequestHandle.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(RequestHandle.DEFAULT_READ_TIMEOUT_MILLIS);
+            connection.setRequestMethod("HEAD");
+
+            for (final Map.Entry<String, String> header : RequestUtils.getDefaultRequestHeaders(
+                    context).entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            final int statusCode = connection.getResponseCode();
+            final InputStream stream =
+                    HttpURLConnection.HTTP_BAD_REQUEST <= statusCode ? connection
+                            .getErrorStream() : connection.getInputStream();
+
+            // Closing the (empty) body, rather than disconnecting, returns the connection to the
+            // pool.
+            if (null != stream) {
+                stream.close();
+            }
+
+            LogManager.v("Prewarmed connection in %dms (status %d)",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), statusCode);
+
+            return true;
+        } catch (final IOException e) {
+            LogManager.v("Unable to prewarm connection", e);
+        }
+
+        return false;
+    }
+
+    /**
+     * @param context Application context.
+     * @return the URL of the root of the configured LevelUp API server.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    @NonNull
+    /* package */static String getServerRootUrl(@NonNull final Context context) {
+        return NullUtils.nonNullContract(new Uri.Builder()
+                .scheme(context.getString(R.string.levelup_api_scheme))
+                .encodedAuthority(context.getString(R.string.levelup_api_authority))
+                .encodedPath("/").build().toString());
+    }
+
     /**
      * Method to use for testing to set the next response to return regardless of the request.
      *
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+
+/**
+ * <p>
+ * Receives timing events for the requests sent by a {@link LevelUpConnection}, to find out where
+ * request latency goes. Register one with {@link LevelUpConnection#setEventListener}.
+ * </p>
+ * <p>
+ * Every event carries a timestamp from {@link System#nanoTime()}, which is only meaningful relative
+ * to the other timestamps. Events are called on the thread sending the request, except for
+ * {@link #responseBodyEnd}, which is called on the thread that reads the body. Implementations
+ * must therefore be thread-safe and should return quickly. Methods do nothing by default, so
+ * subclasses only override the events they are interested in.
+ * </p>
+ * <p>
+ * A request that is retried reports the events from {@link #connectionAcquired} to
+ * {@link #parseEnd} once per attempt. Requests answered from the {@link LevelUpResponseCache}
+ * report only {@link #callStart} and {@link #parseEnd}, and requests that share the response of an
+ * equal request in flight report nothing. Transports other than {@link HttpUrlConnectionTransport}
+ * may report fewer events.
+ * </p>
+ */
+@LevelUpApi(contract = Contract.DRAFT)
+public abstract class NetworkEventListener {
+
+    /**
+     * Called when a request is about to be sent.
+     *
+     * @param request the request.
+     * @param nanoTime the time of the event.
+     */
+    public void callStart(@NonNull final AbstractRequest request, final long nanoTime) {
+        // Do nothing by default.
+    }
+
+    /**
+     * Called when a connection to the server has been established (including DNS lookup, TCP and
+     * TLS handshakes), or taken from the connection pool.
+     *
+     * @param request the request.
+     * @param nanoTime the time of the event.
+     */
+    public void connectionAcquired(@NonNull final AbstractRequest request, final long nanoTime) {
+        // Do nothing by default.
+    }
+
+    /**
+     * Called when the request headers have been handed to the connection.
+     *
+     * @param request the request.
+     * @param nanoTime the time of the event.
+     */
+    public void requestHeadersEnd(@NonNull final AbstractRequest request, final long nanoTime) {
+        // Do nothing by default.
+    }
+
+    /**
+     * Called when the request body has been written. Not called for requests without a body.
+     *
+     * @param request the request.
+     * @param nanoTime the time of the event.
+     * @param byteCount the number of bytes in the body.
+     */
+    public void requestBodyEnd(@NonNull final AbstractRequest request, final long nanoTime,
+            final long byteCount) {
+        // Do nothing by default.
+    }
+
+    /**
+     * Called when the status line and headers of the response have been received.
+     *
+     * @param request the request.
+     * @param nanoTime the time of the event.
+     * @param statusCode the HTTP status code of the response.
+     */
+    public void responseFirstByte(@NonNull final AbstractRequest request, final long nanoTime,
+            final int statusCode) {
+        // Do nothing by default.
+    }
+
+    /**
+     * Called when the response body has been read to its end or closed.
+     *
+     * @param request the request.
+     * @param nanoTime the time of the event.
+     * @param byteCount the number of bytes of the body that were received, before any
+     *        {@code Content-Encoding} was decoded.
+     */
+    public void responseBodyEnd(@NonNull final AbstractRequest request, final long nanoTime,
+            final long byteCount) {
+        // Do nothing by default.
+    }
+
+    /**
+     * Called when the response has been buffered and its status determined, or decoded into a
+     * model by {@link LevelUpConnection#send(AbstractRequest, ModelDecoder)}. Server errors aren't
+     * parsed by then; they are parsed the first time
+     * {@link LevelUpResponse#getServerErrors()} is called, which this event doesn't time.
+     *
+     * @param request the request.
+     * @param nanoTime the time of the event.
+     * @param status the status of the response.
+     */
+    public void parseEnd(@NonNull final AbstractRequest request, final long nanoTime,
+            @NonNull final LevelUpStatus status) {
+        // Do nothing by default.
+    }
+}
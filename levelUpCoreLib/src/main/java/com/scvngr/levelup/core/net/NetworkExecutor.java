@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.util.EnvironmentUtil;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Comparator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SDK-owned executor that asynchronous requests are sent on.
+ * <p>
+ * The pool is bounded by {@link NetworkConnection#MAX_POOLED_CONNECTIONS}, since running more
+ * requests in parallel than there are pooled connections only results in new connections being
+ * opened and closed. Work beyond that is queued by {@link RequestPriority}, and by submission order
+ * within a priority.
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.INTERNAL)
+public final class NetworkExecutor {
+
+    /**
+     * Number of seconds an idle worker thread is kept alive.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * The number of worker threads.
+     */
+    /* package */static final int POOL_SIZE = Math.max(1, NetworkConnection.MAX_POOLED_CONNECTIONS);
+
+    /**
+     * Orders queued tasks by priority, then by submission.
+     */
+    @NonNull
+    private static final Comparator<Runnable> TASK_ORDER = new Comparator<Runnable>() {
+        @Override
+        public int compare(final Runnable lhs, final Runnable rhs) {
+            final PrioritizedTask left = (PrioritizedTask) lhs;
+            final PrioritizedTask right = (PrioritizedTask) rhs;
+            final int byPriority = left.mPriority.compareTo(right.mPriority);
+
+            if (0 != byPriority) {
+                return byPriority;
+            }
+
+            return left.mSequence < right.mSequence ? -1
+                    : (left.mSequence == right.mSequence ? 0 : 1);
+        }
+    };
+
+    /**
+     * The order tasks were submitted in.
+     */
+    @NonNull
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /**
+     * The shared executor.
+     */
+    @NonNull
+    private static final ThreadPoolExecutor EXECUTOR = newExecutor();
+
+    /**
+     * Runs commands at {@link RequestPriority#NORMAL}.
+     */
+    @NonNull
+    private static final Executor NORMAL_PRIORITY_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            NetworkExecutor.execute(NullUtils.nonNullContract(command), RequestPriority.NORMAL);
+        }
+    };
+
+    /**
+     * @return the shared executor that requests are sent on. Commands run at
+     *         {@link RequestPriority#NORMAL}.
+     */
+    @NonNull
+    public static Executor getExecutor() {
+        return NORMAL_PRIORITY_EXECUTOR;
+    }
+
+    /**
+     * Runs {@code command} on the shared executor once the commands with a higher priority, and
+     * those submitted earlier with the same priority, have started.
+     *
+     * @param command the command to run.
+     * @param priority the priority of the command.
+     */
+    public static void execute(@NonNull final Runnable command,
+            @NonNull final RequestPriority priority) {
+        EXECUTOR.execute(new PrioritizedTask(command, priority, SEQUENCE.getAndIncrement()));
+    }
+
+    /**
+     * @param looper the {@link Looper} to run commands on.
+     * @return an {@link Executor} that posts commands to {@code looper}.
+     */
+    @NonNull
+    public static Executor forLooper(@NonNull final Looper looper) {
+        final Handler handler = new Handler(looper);
+
+        return new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    /**
+     * @return a new executor configured for network requests.
+     */
+    @NonNull
+    private static ThreadPoolExecutor newExecutor() {
+        final ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                        new PriorityBlockingQueue<Runnable>(11, TASK_ORDER),
+                        new NetworkThreadFactory());
+
+        if (EnvironmentUtil.isSdk9OrGreater()) {
+            allowCoreThreadTimeOut(executor);
+        }
+
+        return executor;
+    }
+
+    /**
+     * Lets idle worker threads exit so that the pool costs nothing when the app isn't using it.
+     *
+     * @param executor the executor to configure.
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private static void allowCoreThreadTimeOut(@NonNull final ThreadPoolExecutor executor) {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * A command queued with its priority.
+     */
+    private static final class PrioritizedTask implements Runnable {
+
+        @NonNull
+        private final Runnable mCommand;
+
+        @NonNull
+        /* package */final RequestPriority mPriority;
+
+        /* package */final long mSequence;
+
+        /**
+         * @param command the command to run.
+         * @param priority the priority of the command.
+         * @param sequence the order the command was submitted in.
+         */
+        /* package */PrioritizedTask(@NonNull final Runnable command,
+                @NonNull final RequestPriority priority, final long sequence) {
+            mCommand = command;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            mCommand.run();
+        }
+    }
+
+    /**
+     * Creates daemon threads that run at background priority.
+     */
+    private static final class NetworkThreadFactory implements ThreadFactory {
+
+        @NonNull
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, NullUtils.format("LevelUpNetwork #%d", mCount.getAndIncrement()));
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private NetworkExecutor() {
+        throw new UnsupportedOperationException("This class is non-instantiable");
+    }
+}
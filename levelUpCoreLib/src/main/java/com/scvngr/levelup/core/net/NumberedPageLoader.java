@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>
+ * Loads every page of an endpoint that addresses its pages by number, such as the orders from
+ * {@link com.scvngr.levelup.core.net.request.factory.OrderRequestFactory}, with several pages in
+ * flight at once rather than one after another. This suits loading a whole history, for example
+ * to export it.
+ * </p>
+ * <p>
+ * Pages are requested starting at {@link #FIRST_PAGE}. The last page is found when the server
+ * answers a page with no content or an empty JSON array; pages after it that were already sent are
+ * cancelled. The pages are delivered to {@link PageCallback#onPage} in order, each as soon as it
+ * and every page before it have arrived. A page that fails ends the load.
+ * </p>
+ * <p>
+ * No more than {@code maxParallelism} pages are in flight or waiting for an earlier page at once,
+ * so a slow page holds back the pages after it rather than letting them pile up. Requests are
+ * sent with {@link LevelUpConnection#sendAsync(AbstractRequest)}, so they are queued at the
+ * connection's {@link LevelUpConnection#getPriority() priority}.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class NumberedPageLoader {
+
+    /**
+     * The number of the first page.
+     */
+    public static final int FIRST_PAGE = 1;
+
+    @NonNull
+    private final LevelUpConnection mConnection;
+
+    private final int mMaxParallelism;
+
+    /**
+     * Creates a loader that keeps up to {@link NetworkExecutor}'s pool size of pages in flight.
+     *
+     * @param connection the connection to send requests with.
+     */
+    public NumberedPageLoader(@NonNull final LevelUpConnection connection) {
+        this(connection, NetworkExecutor.POOL_SIZE);
+    }
+
+    /**
+     * @param connection the connection to send requests with.
+     * @param maxParallelism the maximum number of pages in flight or waiting for an earlier page
+     *        at once.
+     */
+    public NumberedPageLoader(@NonNull final LevelUpConnection connection,
+            final int maxParallelism) {
+        if (1 > maxParallelism) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+
+        mConnection = connection;
+        mMaxParallelism = maxParallelism;
+    }
+
+    /**
+     * Loads every page and delivers the callbacks on {@code looper}.
+     *
+     * @param builder builds the request for a page.
+     * @param callback the callback to deliver the pages to.
+     * @param looper the {@link Looper} to call {@code callback} on, usually
+     *        {@link Looper#getMainLooper()}.
+     * @return a {@link Future} for the result of the load. Cancelling it cancels the pages that
+     *         haven't arrived yet and prevents any further callbacks.
+     */
+    @NonNull
+    public Future<PageResult> load(@NonNull final PageRequestBuilder builder,
+            @NonNull final PageCallback callback, @NonNull final Looper looper) {
+        return load(builder, callback, NetworkExecutor.forLooper(looper));
+    }
+
+    /**
+     * Loads every page and delivers the callbacks using {@code callbackExecutor}.
+     *
+     * @param builder builds the request for a page. This is called on the calling thread and on
+     *        network threads.
+     * @param callback the callback to deliver the pages to or null.
+     * @param callbackExecutor the {@link Executor} to call {@code callback} on or null to call it
+     *        on the network threads. The pages are only guaranteed to be delivered in order if this
+     *        runs commands in order.
+     * @return a {@link Future} for the result of the load. Cancelling it cancels the pages that
+     *         haven't arrived yet and prevents any further callbacks.
+     */
+    @NonNull
+    public Future<PageResult> load(@NonNull final PageRequestBuilder builder,
+            @Nullable final PageCallback callback, @Nullable final Executor callbackExecutor) {
+        final Load load =
+                new Load(mConnection, builder, callback, callbackExecutor, mMaxParallelism,
+                        new LoadState());
+        load.sendAll();
+
+        return load;
+    }
+
+    /**
+     * @param response the response to a page.
+     * @return true if the page is past the last page: it was answered with no content or an empty
+     *         JSON array.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static boolean isPastLastPage(@NonNull final LevelUpResponse response) {
+        if (LevelUpStatus.OK != response.getStatus()) {
+            return false;
+        }
+
+        if (HttpURLConnection.HTTP_NO_CONTENT == response.getHttpStatusCode()) {
+            return true;
+        }
+
+        final String data = response.getData();
+
+        if (null == data) {
+            return true;
+        }
+
+        final String trimmed = data.trim();
+
+        return 0 == trimmed.length()
+                || (trimmed.startsWith("[") && "]".equals(trimmed.substring(1).trim()));
+    }
+
+    /**
+     * Builds the request for a page.
+     */
+    public interface PageRequestBuilder {
+
+        /**
+         * @param page the number of the page, starting at {@link NumberedPageLoader#FIRST_PAGE}.
+         * @return the request for {@code page}. If this throws, the page fails with the exception
+         *         as the error of its response.
+         */
+        @NonNull
+        AbstractRequest buildRequest(int page);
+    }
+
+    /**
+     * Receives the pages of a load in order. Neither method is called if the load was cancelled.
+     */
+    public interface PageCallback {
+
+        /**
+         * Called for each page, in order, once it and every page before it have arrived. Not
+         * called for the empty page past the last one or for a page that failed.
+         *
+         * @param page the number of the page.
+         * @param request the request that was sent for {@code page}.
+         * @param response the response to {@code request}.
+         */
+        void onPage(int page, @NonNull AbstractRequest request, @NonNull LevelUpResponse response);
+
+        /**
+         * Called after the last page has been delivered, or after the pages before a failed page
+         * have been.
+         *
+         * @param result the result of the load.
+         */
+        void onComplete(@NonNull PageResult result);
+    }
+
+    /**
+     * The outcome of a completed load.
+     */
+    @Immutable
+    public static final class PageResult {
+
+        private final int mPageCount;
+
+        @Nullable
+        private final LevelUpResponse mFailedResponse;
+
+        /**
+         * @param pageCount the number of pages delivered.
+         * @param failedResponse the response to the page that failed, or null.
+         */
+        /* package */PageResult(final int pageCount,
+                @Nullable final LevelUpResponse failedResponse) {
+            mPageCount = pageCount;
+            mFailedResponse = failedResponse;
+        }
+
+        /**
+         * @return the number of pages delivered to {@link PageCallback#onPage}.
+         */
+        public int getPageCount() {
+            return mPageCount;
+        }
+
+        /**
+         * @return the response to the page that ended the load by failing, or null if every page
+         *         was loaded. The failed page is the one after the last delivered page.
+         */
+        @Nullable
+        public LevelUpResponse getFailedResponse() {
+            return mFailedResponse;
+        }
+
+        /**
+         * @return true if every page was loaded.
+         */
+        public boolean isSuccessful() {
+            return null == mFailedResponse;
+        }
+    }
+
+    /**
+     * The progress of a load, guarded by its own intrinsic lock.
+     */
+    private static final class LoadState {
+
+        /**
+         * The number of the next page to send.
+         */
+        @GuardedBy("this")
+        /* package */int mNextPage = FIRST_PAGE;
+
+        /**
+         * The number of the next page to deliver.
+         */
+        @GuardedBy("this")
+        /* package */int mNextDelivery = FIRST_PAGE;
+
+        /**
+         * The number of the first page that is empty or failed; no page from it on is delivered.
+         */
+        @GuardedBy("this")
+        /* package */int mEndPage = Integer.MAX_VALUE;
+
+        @Nullable
+        @GuardedBy("this")
+        /* package */LevelUpResponse mFailedResponse;
+
+        /**
+         * The pages that have arrived but wait for an earlier page.
+         */
+        @NonNull
+        @GuardedBy("this")
+        /* package */final Map<Integer, Arrival> mArrived = new HashMap<Integer, Arrival>();
+
+        /**
+         * The sends of the pages that haven't arrived yet, by page number.
+         */
+        @NonNull
+        @GuardedBy("this")
+        /* package */final Map<Integer, Future<LevelUpResponse>> mSent =
+                new HashMap<Integer, Future<LevelUpResponse>>();
+    }
+
+    /**
+     * A page that has arrived.
+     */
+    private static final class Arrival {
+
+        /* package */final int mPage;
+
+        @NonNull
+        /* package */final AbstractRequest mRequest;
+
+        @NonNull
+        /* package */final LevelUpResponse mResponse;
+
+        /**
+         * @param page the number of the page.
+         * @param request the request sent for the page.
+         * @param response the response to {@code request}.
+         */
+        /* package */Arrival(final int page, @NonNull final AbstractRequest request,
+                @NonNull final LevelUpResponse response) {
+            mPage = page;
+            mRequest = request;
+            mResponse = response;
+        }
+    }
+
+    /**
+     * A load in progress, which completes when the last page has been delivered.
+     */
+    private static final class Load extends FutureTask<PageResult> {
+
+        @NonNull
+        private final LevelUpConnection mConnection;
+
+        @NonNull
+        private final PageRequestBuilder mBuilder;
+
+        @Nullable
+        private final PageCallback mCallback;
+
+        @Nullable
+        private final Executor mCallbackExecutor;
+
+        private final int mMaxParallelism;
+
+        @NonNull
+        private final LoadState mState;
+
+        /**
+         * Held while pages are taken from {@link LoadState#mArrived} and handed to the callback
+         * executor, so that they are handed over in order.
+         */
+        @NonNull
+        private final Object[] mDeliveryIntrinsicLock = new Object[0];
+
+        /**
+         * @param connection the connection to send requests with.
+         * @param builder builds the request for a page.
+         * @param callback the callback to deliver pages to or null.
+         * @param callbackExecutor the executor to deliver on or null to deliver on the network
+         *        threads.
+         * @param maxParallelism the maximum number of pages in flight or waiting at once.
+         * @param state the progress of the load.
+         */
+        public Load(@NonNull final LevelUpConnection connection,
+                @NonNull final PageRequestBuilder builder, @Nullable final PageCallback callback,
+                @Nullable final Executor callbackExecutor, final int maxParallelism,
+                @NonNull final LoadState state) {
+            super(new Callable<PageResult>() {
+                @Override
+                public PageResult call() {
+                    synchronized (state) {
+                        return new PageResult(state.mNextDelivery - FIRST_PAGE,
+                                state.mFailedResponse);
+                    }
+                }
+            });
+
+            mConnection = connection;
+            mBuilder = builder;
+            mCallback = callback;
+            mCallbackExecutor = callbackExecutor;
+            mMaxParallelism = maxParallelism;
+            mState = state;
+        }
+
+        @Override
+        protected void done() {
+            cancelSent();
+
+            if (isCancelled() || null == mCallback) {
+                return;
+            }
+
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isCancelled()) {
+                        try {
+                            mCallback.onComplete(NullUtils.nonNullContract(get()));
+                        } catch (final Exception e) {
+                            throw new RuntimeException("Error completing page load", e);
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Sends pages until the window of {@link #mMaxParallelism} pages is full.
+         */
+        public void sendAll() {
+            while (sendNext()) {
+                // Keep filling the window.
+            }
+        }
+
+        /**
+         * Sends the next page, if the window has room and the last page hasn't been found.
+         *
+         * @return true if a page was sent.
+         */
+        private boolean sendNext() {
+            final int page;
+
+            synchronized (mState) {
+                if (isDone() || mState.mNextPage >= mState.mEndPage
+                        || mState.mNextPage - mState.mNextDelivery >= mMaxParallelism) {
+                    return false;
+                }
+
+                page = mState.mNextPage++;
+            }
+
+            final AbstractRequest request;
+
+            try {
+                request = mBuilder.buildRequest(page);
+            } catch (final RuntimeException e) {
+                // Throwing here would leave the load waiting for a page that never comes.
+                LogManager.e("Unable to build page request", e);
+                onFailed(page, new LevelUpResponse(new StreamingResponse(e)));
+
+                return false;
+            }
+
+            final Future<LevelUpResponse> future =
+                    mConnection.sendAsync(request, new ResponseCallback() {
+                        @Override
+                        public void onResponse(@NonNull final AbstractRequest sent,
+                                @NonNull final LevelUpResponse response) {
+                            onArrived(new Arrival(page, sent, response));
+                        }
+                    }, (Executor) null);
+            final boolean isDone;
+
+            synchronized (mState) {
+                // Checked under the lock cancelSent() takes, so the page is either cancelled by
+                // it or here.
+                isDone = isDone();
+
+                // A page that has already arrived was removed by onArrived() before it was added.
+                if (!isDone && !future.isDone()) {
+                    mState.mSent.put(page, future);
+                }
+            }
+
+            if (isDone) {
+                future.cancel(true);
+            }
+
+            return true;
+        }
+
+        /**
+         * Ends the load at a page whose request couldn't be built, as if the page had failed.
+         *
+         * @param page the number of the page.
+         * @param response the failed response to report for {@code page}.
+         */
+        private void onFailed(final int page, @NonNull final LevelUpResponse response) {
+            final boolean isComplete;
+
+            // Held so that the load doesn't complete while earlier pages are being handed over.
+            synchronized (mDeliveryIntrinsicLock) {
+                synchronized (mState) {
+                    if (page < mState.mEndPage) {
+                        mState.mEndPage = page;
+                        mState.mFailedResponse = response;
+                    }
+
+                    isComplete = mState.mNextDelivery >= mState.mEndPage;
+                }
+            }
+
+            if (isComplete) {
+                run();
+            }
+        }
+
+        /**
+         * Records a page, delivers the pages that are ready and keeps the load going.
+         *
+         * @param arrival the page that arrived.
+         */
+        private void onArrived(@NonNull final Arrival arrival) {
+            final boolean isComplete;
+
+            synchronized (mDeliveryIntrinsicLock) {
+                final List<Arrival> ready = new ArrayList<Arrival>();
+
+                synchronized (mState) {
+                    mState.mSent.remove(arrival.mPage);
+
+                    if (arrival.mPage < mState.mEndPage) {
+                        if (LevelUpStatus.OK != arrival.mResponse.getStatus()) {
+                            mState.mEndPage = arrival.mPage;
+                            mState.mFailedResponse = arrival.mResponse;
+                        } else if (isPastLastPage(arrival.mResponse)) {
+                            // A later page may have failed first, but it is past the end anyway.
+                            mState.mEndPage = arrival.mPage;
+                            mState.mFailedResponse = null;
+                        } else {
+                            mState.mArrived.put(arrival.mPage, arrival);
+                        }
+                    }
+
+                    Arrival next;
+
+                    while (null != (next = mState.mArrived.remove(mState.mNextDelivery))) {
+                        ready.add(next);
+                        mState.mNextDelivery++;
+                    }
+
+                    isComplete = mState.mNextDelivery >= mState.mEndPage;
+                }
+
+                if (null != mCallback && !ready.isEmpty()) {
+                    deliver(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (final Arrival page : ready) {
+                                if (isCancelled()) {
+                                    return;
+                                }
+
+                                mCallback.onPage(page.mPage, page.mRequest, page.mResponse);
+                            }
+                        }
+                    });
+                }
+            }
+
+            if (isComplete) {
+                run();
+            } else {
+                sendAll();
+            }
+        }
+
+        /**
+         * Cancels the pages that are still in flight.
+         */
+        private void cancelSent() {
+            final List<Future<LevelUpResponse>> sent;
+
+            synchronized (mState) {
+                sent = new ArrayList<Future<LevelUpResponse>>(mState.mSent.values());
+                mState.mSent.clear();
+            }
+
+            for (final Future<LevelUpResponse> future : sent) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * @param delivery the callback to run on the callback executor.
+         */
+        private void deliver(@NonNull final Runnable delivery) {
+            if (null == mCallbackExecutor) {
+                delivery.run();
+            } else {
+                mCallbackExecutor.execute(delivery);
+            }
+        }
+    }
+}
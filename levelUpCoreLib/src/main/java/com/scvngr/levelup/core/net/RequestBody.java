@@ -16,6 +16,7 @@ package com.scvngr.levelup.core.net;
 import android.content.Context;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.scvngr.levelup.core.annotation.LevelUpApi;
 
@@ -51,4 +52,11 @@ public interface RequestBody extends Parcelable {
      */
     @NonNull
     String getContentType();
+
+    /**
+     * @return the value of the {@code Content-Encoding} header for this body, or null if the body
+     *         isn't encoded.
+     */
+    @Nullable
+    String getContentEncoding();
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces equal in-flight requests so that they share a single round trip to the server.
+ * <p>
+ * The first caller for a request performs the send on its own thread. Callers that arrive with an
+ * equal request (see {@link AbstractRequest#equals(Object)}) while that send is in flight wait for
+ * it and receive the same {@link LevelUpResponse}. Once the send completes, the next equal request
+ * is sent again. Only idempotent requests ({@link HttpMethod#GET}) are coalesced.
+ * </p>
+ * <p>
+ * Each caller may pass a {@link RequestHandle}. The first caller's handle controls the shared
+ * send. A caller that joined it stops waiting when its own handle is cancelled or its deadline
+ * passes, without affecting the shared send. If the first caller's handle is cancelled or its
+ * deadline passes before the response arrives, the callers that joined it send the request again
+ * rather than sharing the failure.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.INTERNAL)
+/* package */final class RequestCoalescer {
+
+    /**
+     * Sends in flight, keyed by request.
+     */
+    @NonNull
+    private final ConcurrentMap<AbstractRequest, Send> mInFlight =
+            new ConcurrentHashMap<AbstractRequest, Send>();
+
+    /**
+     * Performs {@code send} unless an equal request is already in flight, in which case its
+     * response is waited for and returned instead.
+     *
+     * @param request the request being sent.
+     * @param send sends {@code request} and returns its response.
+     * @return the response to {@code request}. If the calling thread is interrupted while waiting
+     *         for another caller's send, the response has {@link LevelUpStatus#ERROR_NETWORK}.
+     */
+    @NonNull
+    public LevelUpResponse send(@NonNull final AbstractRequest request,
+            @NonNull final Callable<LevelUpResponse> send) {
+        return send(request, null, send);
+    }
+
+    /**
+     * Performs {@code send} unless an equal request is already in flight, in which case its
+     * response is waited for and returned instead.
+     *
+     * @param request the request being sent.
+     * @param handle the timeouts and cancellation of this caller's send, or null.
+     * @param send sends {@code request} with {@code handle} and returns its response.
+     * @return the response to {@code request}. If the calling thread is interrupted, or
+     *         {@code handle} is cancelled or passes its deadline, while waiting for another
+     *         caller's send, the response has {@link LevelUpStatus#ERROR_NETWORK}.
+     */
+    @NonNull
+    public LevelUpResponse send(@NonNull final AbstractRequest request,
+            @Nullable final RequestHandle handle, @NonNull final Callable<LevelUpResponse> send) {
+        if (HttpMethod.GET != request.getMethod()) {
+            return call(send);
+        }
+
+        while (true) {
+            final Send task = new Send(send, handle);
+            final Send inFlight = mInFlight.putIfAbsent(request, task);
+
+            if (null == inFlight) {
+                try {
+                    task.run();
+                } finally {
+                    mInFlight.remove(request, task);
+                }
+
+                return getResult(task);
+            }
+
+            LogManager.v("Joining in-flight request %s", request);
+
+            if (null != handle) {
+                try {
+                    if (!inFlight.await(handle)) {
+                        return handle.newDoneResponse();
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    return newInterruptedResponse();
+                }
+            }
+
+            final LevelUpResponse response = getResult(inFlight);
+
+            if (!inFlight.isAbandoned(response) || (null != handle && handle.isDone())) {
+                return response;
+            }
+
+            LogManager.v("In-flight request %s was cancelled; sending it again", request);
+        }
+    }
+
+    /**
+     * @return the number of requests in flight.
+     */
+    /* package */int getInFlightCount() {
+        return mInFlight.size();
+    }
+
+    /**
+     * @param request a request.
+     * @return true if the send of a request equal to {@code request} is in flight, so that
+     *         sending {@code request} through {@link #send} would share it.
+     */
+    public boolean isInFlight(@NonNull final AbstractRequest request) {
+        return mInFlight.containsKey(request);
+    }
+
+    /**
+     * @return the number of callers with a {@link RequestHandle} waiting for a send in flight.
+     */
+    /* package */int getWaitingCount() {
+        int count = 0;
+
+        for (final Send send : mInFlight.values()) {
+            count += send.getWaitingCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * @param task the send to wait for.
+     * @return the response of {@code task}.
+     */
+    @NonNull
+    private static LevelUpResponse getResult(@NonNull final FutureTask<LevelUpResponse> task) {
+        try {
+            return NullUtils.nonNullContract(task.get());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return newInterruptedResponse();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new RuntimeException("Error sending request", cause);
+        }
+    }
+
+    /**
+     * @return the response of a caller that was interrupted while waiting for another's send.
+     */
+    @NonNull
+    private static LevelUpResponse newInterruptedResponse() {
+        return new LevelUpResponse(new StreamingResponse(new InterruptedIOException(
+                "Interrupted while waiting for an in-flight request")));
+    }
+
+    /**
+     * @param send sends a request and returns its response.
+     * @return the response.
+     */
+    @NonNull
+    private static LevelUpResponse call(@NonNull final Callable<LevelUpResponse> send) {
+        try {
+            return NullUtils.nonNullContract(send.call());
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new RuntimeException("Error sending request", e);
+        }
+    }
+
+    /**
+     * A send in flight, which wakes the callers with a {@link RequestHandle} that joined it once
+     * it is done.
+     */
+    private static final class Send extends FutureTask<LevelUpResponse> {
+
+        /**
+         * The handle of the caller performing the send, or null.
+         */
+        @Nullable
+        private final RequestHandle mHandle;
+
+        /**
+         * The handles of the callers waiting for the send.
+         */
+        @NonNull
+        @GuardedBy("this")
+        private final List<RequestHandle> mWaiting = new ArrayList<RequestHandle>();
+
+        /**
+         * @param send sends the request and returns its response.
+         * @param handle the handle of the caller performing the send, or null.
+         */
+        public Send(@NonNull final Callable<LevelUpResponse> send,
+                @Nullable final RequestHandle handle) {
+            super(send);
+            mHandle = handle;
+        }
+
+        /**
+         * Waits for the send to be done.
+         *
+         * @param handle the handle of the waiting caller.
+         * @return true if the send is done, false if {@code handle} was cancelled or passed its
+         *         deadline first.
+         * @throws InterruptedException if the thread is interrupted while waiting.
+         */
+        public boolean await(@NonNull final RequestHandle handle) throws InterruptedException {
+            synchronized (this) {
+                if (isDone()) {
+                    return true;
+                }
+
+                mWaiting.add(handle);
+            }
+
+            try {
+                return handle.awaitDone(this);
+            } finally {
+                synchronized (this) {
+                    mWaiting.remove(handle);
+                }
+            }
+        }
+
+        /**
+         * @return the number of callers with a handle waiting for the send.
+         */
+        public synchronized int getWaitingCount() {
+            return mWaiting.size();
+        }
+
+        /**
+         * @param response the response of the send.
+         * @return true if {@code response} is a failure caused by the handle of the caller
+         *         performing the send, which the callers that joined it shouldn't share.
+         */
+        public boolean isAbandoned(@NonNull final LevelUpResponse response) {
+            return null != mHandle && mHandle.isDone()
+                    && LevelUpStatus.ERROR_NETWORK == response.getStatus();
+        }
+
+        @Override
+        protected void done() {
+            final List<RequestHandle> waiting;
+
+            synchronized (this) {
+                waiting = new ArrayList<RequestHandle>(mWaiting);
+            }
+
+            for (final RequestHandle handle : waiting) {
+                handle.wake();
+            }
+        }
+    }
+}
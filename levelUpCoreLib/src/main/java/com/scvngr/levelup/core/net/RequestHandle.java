@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.util.LogManager;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Controls one send of a request: how long connecting and each read may take, how long the whole
+ * send (including retries) may take, and cancelling it. Pass a new handle to
+ * {@link LevelUpConnection#send(AbstractRequest, RequestHandle)} for each send.
+ * </p>
+ * <p>
+ * {@link #cancel()} may be called from any thread, for example when the screen that needed the
+ * response goes away. It disconnects the request's connection, so the thread sending it stops
+ * waiting on the network right away, and the send returns a response with
+ * {@link LevelUpStatus#ERROR_NETWORK}. When the deadline passes, the attempt in progress is
+ * aborted the same way, so a slow DNS lookup or a body that keeps trickling in can't outlast it.
+ * Each connect and read is also bounded to the time that is left, and no attempt is started or
+ * retried once the deadline has passed.
+ * </p>
+ * <p>
+ * A {@link Transport} that doesn't use {@link HttpURLConnection} hooks cancellation and the
+ * deadline with {@link #setOnCancelListener(Runnable)}, setting a listener that aborts its attempt
+ * for as long as the attempt runs and clearing it afterwards.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class RequestHandle {
+
+    /**
+     * The time allowed to connect to the server when no other timeout is given.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(15);
+
+    /**
+     * The time allowed for each read from the server when no other timeout is given.
+     */
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Passed as the deadline when the send may take any amount of time.
+     */
+    public static final long NO_DEADLINE = 0;
+
+    /**
+     * Aborts attempts whose deadline has passed. Created when first needed.
+     */
+    @Nullable
+    @GuardedBy("RequestHandle.class")
+    private static Timer sDeadlineTimer;
+
+    private final int mConnectTimeoutMillis;
+
+    private final int mReadTimeoutMillis;
+
+    /**
+     * The {@link SystemClock#elapsedRealtime()} by which the send must be done, or
+     * {@link Long#MAX_VALUE} if there is no deadline.
+     */
+    private final long mDeadlineRealtimeMillis;
+
+    @GuardedBy("this")
+    private boolean mIsCancelled;
+
+    /**
+     * Run once when the send is cancelled or its deadline passes, or null.
+     */
+    @Nullable
+    @GuardedBy("this")
+    private Runnable mOnCancelListener;
+
+    /**
+     * Runs {@link #mOnCancelListener} at the deadline, or null if none is scheduled.
+     */
+    @Nullable
+    @GuardedBy("this")
+    private TimerTask mDeadlineTask;
+
+    /**
+     * Creates a handle with the default timeouts and no deadline.
+     */
+    public RequestHandle() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, NO_DEADLINE);
+    }
+
+    /**
+     * @param connectTimeoutMillis the time allowed to connect to the server. Must be positive.
+     * @param readTimeoutMillis the time allowed for each read from the server. Must be positive.
+     * @param deadlineMillis the time allowed for the whole send, counted from now, or
+     *        {@link #NO_DEADLINE}.
+     * @throws IllegalArgumentException if a timeout isn't positive or the deadline is negative.
+     */
+    public RequestHandle(final int connectTimeoutMillis, final int readTimeoutMillis,
+            final long deadlineMillis) {
+        if (0 >= connectTimeoutMillis || 0 >= readTimeoutMillis) {
+            throw new IllegalArgumentException("Timeouts must be positive");
+        }
+
+        if (0 > deadlineMillis) {
+            throw new IllegalArgumentException("deadlineMillis must not be negative");
+        }
+
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mDeadlineRealtimeMillis =
+                NO_DEADLINE == deadlineMillis ? Long.MAX_VALUE : SystemClock.elapsedRealtime()
+                        + deadlineMillis;
+    }
+
+    /**
+     * @return the time allowed to connect to the server, no longer than the time left before the
+     *         deadline.
+     */
+    public int getConnectTimeoutMillis() {
+        return limitToRemaining(mConnectTimeoutMillis);
+    }
+
+    /**
+     * @return the time allowed for each read from the server, no longer than the time left before
+     *         the deadline.
+     */
+    public int getReadTimeoutMillis() {
+        return limitToRemaining(mReadTimeoutMillis);
+    }
+
+    /**
+     * @return the time left before the deadline, or {@link Long#MAX_VALUE} if there is none.
+     */
+    public long getRemainingMillis() {
+        if (Long.MAX_VALUE == mDeadlineRealtimeMillis) {
+            return Long.MAX_VALUE;
+        }
+
+        return Math.max(0, mDeadlineRealtimeMillis - SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @return the time to pass to {@link Object#wait(long)} to wait no longer than the deadline:
+     *         0, meaning no limit, if there is no deadline, and otherwise at least 1.
+     */
+    /* package */long getWaitMillis() {
+        final long remainingMillis = getRemainingMillis();
+
+        return Long.MAX_VALUE == remainingMillis ? 0 : Math.max(1, remainingMillis);
+    }
+
+    /**
+     * @return true if the send has been cancelled or its deadline has passed.
+     */
+    public boolean isDone() {
+        return isCancelled() || 0 == getRemainingMillis();
+    }
+
+    /**
+     * @return true if {@link #cancel()} has been called.
+     */
+    public synchronized boolean isCancelled() {
+        return mIsCancelled;
+    }
+
+    /**
+     * Cancels the send, running the listener set by {@link #setOnCancelListener(Runnable)} if
+     * there is one.
+     */
+    public void cancel() {
+        final Runnable listener;
+
+        synchronized (this) {
+            if (mIsCancelled) {
+                return;
+            }
+
+            mIsCancelled = true;
+            listener = mOnCancelListener;
+            clearOnCancelListener();
+            notifyAll();
+        }
+
+        if (null != listener) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Sets the action that aborts the attempt in progress when the send is cancelled or its
+     * deadline passes, for example by closing its socket. The listener is run at most once: on the
+     * thread that calls {@link #cancel()}, on a timer thread at the deadline, or right away on this
+     * thread if the send is already done. A {@link Transport} should set it when it starts an
+     * attempt and clear it when the attempt is done, so that cancelling doesn't abort anything that
+     * has been reused since.
+     *
+     * @param listener the action to run, or null to clear it.
+     */
+    public void setOnCancelListener(@Nullable final Runnable listener) {
+        if (!trySetOnCancelListener(listener)) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Sets the listener and schedules it to run at the deadline, unless the send is already done.
+     *
+     * @param listener the listener, or null to clear it.
+     * @return false if {@code listener} wasn't set because the send is already done.
+     */
+    private synchronized boolean trySetOnCancelListener(@Nullable final Runnable listener) {
+        clearOnCancelListener();
+
+        if (null == listener) {
+            return true;
+        }
+
+        if (isDone()) {
+            return false;
+        }
+
+        mOnCancelListener = listener;
+
+        if (Long.MAX_VALUE != mDeadlineRealtimeMillis) {
+            mDeadlineTask = new TimerTask() {
+                @Override
+                public void run() {
+                    onDeadline(this);
+                }
+            };
+            getDeadlineTimer().schedule(mDeadlineTask, getRemainingMillis());
+        }
+
+        return true;
+    }
+
+    /**
+     * Forgets the listener and stops it from being run at the deadline.
+     */
+    @GuardedBy("this")
+    private void clearOnCancelListener() {
+        mOnCancelListener = null;
+
+        if (null != mDeadlineTask) {
+            mDeadlineTask.cancel();
+            mDeadlineTask = null;
+        }
+    }
+
+    /**
+     * Aborts the attempt in progress once the deadline has passed.
+     *
+     * @param task the task that was scheduled for the deadline.
+     */
+    private void onDeadline(@NonNull final TimerTask task) {
+        final Runnable listener;
+
+        synchronized (this) {
+            if (task != mDeadlineTask) {
+                // The listener was changed after the task started.
+                return;
+            }
+
+            listener = mOnCancelListener;
+            mOnCancelListener = null;
+            mDeadlineTask = null;
+            notifyAll();
+        }
+
+        if (null != listener) {
+            LogManager.v("Request deadline passed, aborting the attempt in progress");
+            listener.run();
+        }
+    }
+
+    /**
+     * Sets the connection the request is being sent over, so that {@link #cancel()} can
+     * disconnect it.
+     *
+     * @param connection the connection.
+     * @return false if the send has already been cancelled or its deadline has passed, in which
+     *         case the connection should not be used.
+     */
+    /* package */boolean attach(@NonNull final HttpURLConnection connection) {
+        return trySetOnCancelListener(new Runnable() {
+            @Override
+            public void run() {
+                // Makes the thread blocked on the connection throw an IOException.
+                connection.disconnect();
+            }
+        });
+    }
+
+    /**
+     * Forgets the connection set by {@link #attach(HttpURLConnection)}, or the listener set by
+     * {@link #setOnCancelListener(Runnable)}, once the attempt that used it is done, so that
+     * cancelling doesn't disconnect a connection that has gone back to the pool.
+     */
+    /* package */void detach() {
+        setOnCancelListener(null);
+    }
+
+    /**
+     * Waits before retrying the send.
+     *
+     * @param delayMillis the time to wait.
+     * @return true if the wait finished, false if the send was cancelled while waiting or the
+     *         deadline would pass first.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    /* package */synchronized boolean await(final long delayMillis) throws InterruptedException {
+        if (delayMillis >= getRemainingMillis()) {
+            return false;
+        }
+
+        final long endMillis = SystemClock.elapsedRealtime() + delayMillis;
+        long waitMillis = delayMillis;
+
+        while (!mIsCancelled && 0 < waitMillis) {
+            wait(waitMillis);
+            waitMillis = endMillis - SystemClock.elapsedRealtime();
+        }
+
+        return !mIsCancelled;
+    }
+
+    /**
+     * Waits for the send of an equal request that this send has joined to finish.
+     *
+     * @param future the send that was joined.
+     * @return true if {@code future} finished, false if this send was cancelled or its deadline
+     *         passed first.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    /* package */synchronized boolean awaitDone(@NonNull final Future<?> future)
+            throws InterruptedException {
+        while (!future.isDone()) {
+            final long remainingMillis = getRemainingMillis();
+
+            if (mIsCancelled || 0 == remainingMillis) {
+                return false;
+            }
+
+            wait(Long.MAX_VALUE == remainingMillis ? 0 : remainingMillis);
+        }
+
+        return true;
+    }
+
+    /**
+     * Wakes a thread waiting in {@link #awaitDone(Future)} once the joined send has finished.
+     */
+    /* package */synchronized void wake() {
+        notifyAll();
+    }
+
+    /**
+     * @return the response of a send that stopped because it was cancelled or its deadline
+     *         passed.
+     */
+    @NonNull
+    /* package */LevelUpResponse newDoneResponse() {
+        return new LevelUpResponse(new StreamingResponse(newDoneError()));
+    }
+
+    /**
+     * @return the error of a send that stopped because it was cancelled or its deadline passed.
+     */
+    @NonNull
+    /* package */InterruptedIOException newDoneError() {
+        return new InterruptedIOException(isCancelled() ? "Request was cancelled"
+                : "Request deadline passed");
+    }
+
+    /**
+     * @return the timer that aborts attempts at their deadline.
+     */
+    @NonNull
+    private static synchronized Timer getDeadlineTimer() {
+        if (null == sDeadlineTimer) {
+            sDeadlineTimer = new Timer("RequestHandle deadline", true);
+        }
+
+        return sDeadlineTimer;
+    }
+
+    /**
+     * @param timeoutMillis a timeout.
+     * @return {@code timeoutMillis}, or the time left before the deadline if that is shorter. This
+     *         is at least 1, since 0 means no timeout to {@link HttpURLConnection}.
+     */
+    private int limitToRemaining(final int timeoutMillis) {
+        return (int) Math.max(1, Math.min(timeoutMillis, getRemainingMillis()));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "RequestHandle [mConnectTimeoutMillis=%d, mReadTimeoutMillis=%d, "
+                        + "remainingMillis=%d, isCancelled=%b]", mConnectTimeoutMillis,
+                mReadTimeoutMillis, getRemainingMillis(), isCancelled());
+    }
+}
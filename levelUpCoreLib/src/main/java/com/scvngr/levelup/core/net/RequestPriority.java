@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+
+/**
+ * Enum for the priority classes of requests, from highest to lowest. When requests to a server
+ * have to wait for a connection, {@link RequestScheduler} lets higher priorities go first.
+ */
+@LevelUpApi(contract = Contract.DRAFT)
+public enum RequestPriority {
+    /**
+     * A request the user is waiting on, such as fetching a payment token.
+     */
+    @NonNull
+    INTERACTIVE(false),
+
+    /**
+     * The default priority.
+     */
+    @NonNull
+    NORMAL(false),
+
+    /**
+     * A request for data the user may need soon, such as the next page of a list.
+     */
+    @NonNull
+    PREFETCH(true),
+
+    /**
+     * A request no one is waiting on, such as those sent by
+     * {@link com.scvngr.levelup.core.service.SilentNetworkRequestService}.
+     */
+    @NonNull
+    BACKGROUND(true);
+
+    private final boolean mIsDeferrable;
+
+    /**
+     * @param isDeferrable whether the priority is deferrable.
+     */
+    private RequestPriority(final boolean isDeferrable) {
+        mIsDeferrable = isDeferrable;
+    }
+
+    /**
+     * @return true if requests with this priority can wait, so that they are never given the last
+     *         free connection to a server.
+     */
+    public boolean isDeferrable() {
+        return mIsDeferrable;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.util.LogManager;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * For Testing: an {@link Interceptor} that remembers the last request sent to each URL before
+ * passing it on.
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class RequestRecordingInterceptor implements Interceptor {
+
+    /**
+     * The last request sent to each URL.
+     */
+    @NonNull
+    @GuardedBy("mRequests")
+    private final Map<String, AbstractRequest> mRequests = new HashMap<String, AbstractRequest>();
+
+    /**
+     * @param url the URL of the request, if null will return any request in the map if there are
+     *        any.
+     * @throws AssertionError if a call is made with a null URL and there are multiple requests
+     *         recorded.
+     * @return the last request made for the URL passed.
+     */
+    @Nullable
+    public AbstractRequest getLastRequest(@Nullable final String url) {
+        synchronized (mRequests) {
+            LogManager.i("getLastRequest url=%s size=%d", url, mRequests.size());
+            String key = url;
+
+            if (null == key) {
+                if (mRequests.size() > 1) {
+                    throw new AssertionError("This method of getting last request is not "
+                            + "supported if there are multiple requests being made");
+                }
+
+                if (mRequests.size() > 0) {
+                    key = mRequests.keySet().iterator().next();
+                }
+            }
+
+            return mRequests.get(key);
+        }
+    }
+
+    /**
+     * Sets the last request for a URL.
+     *
+     * @param url the URL for this request.
+     * @param request the last request that was made (null clears the request).
+     */
+    public void setLastRequest(@Nullable final String url,
+            @Nullable final AbstractRequest request) {
+        synchronized (mRequests) {
+            if (null == request) {
+                mRequests.remove(url);
+            } else {
+                mRequests.put(url, request);
+            }
+        }
+    }
+
+    @Override
+    @NonNull
+    public LevelUpResponse intercept(@NonNull final Chain chain) {
+        final AbstractRequest request = chain.getRequest();
+        String url = null;
+
+        try {
+            url = request.getUrlString(chain.getContext());
+        } catch (final BadRequestException e) {
+            LogManager.e("BadRequestException", e);
+        }
+
+        setLastRequest(url, request);
+
+        return chain.proceed(request);
+    }
+}
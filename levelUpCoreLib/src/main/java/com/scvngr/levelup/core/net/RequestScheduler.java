@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.util.LogManager;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * <p>
+ * Limits the number of requests sent to each host at once, and decides which waiting request goes
+ * next by its {@link RequestPriority}.
+ * </p>
+ * <p>
+ * Requests that would exceed {@code maxRequestsPerHost} wait in a queue ordered by priority, and by
+ * arrival within a priority, so that a higher-priority request overtakes any lower-priority ones
+ * already waiting. {@link RequestPriority#isDeferrable() Deferrable} requests are never given the
+ * last free slot, which keeps it open for a request the user is waiting on.
+ * </p>
+ * <p>
+ * A thread that sends a request while it already holds a slot (for example, to fetch an access
+ * token while building another request's headers) is admitted immediately, since waiting could
+ * deadlock. A request whose {@link RequestHandle} is cancelled or runs out of time while waiting
+ * gives up its place in line right away.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class RequestScheduler {
+
+    /**
+     * Orders tickets by priority, then by arrival.
+     */
+    @NonNull
+    private static final Comparator<Ticket> TICKET_ORDER = new Comparator<Ticket>() {
+        @Override
+        public int compare(final Ticket lhs, final Ticket rhs) {
+            final int byPriority = lhs.mPriority.compareTo(rhs.mPriority);
+
+            if (0 != byPriority) {
+                return byPriority;
+            }
+
+            return lhs.mSequence < rhs.mSequence ? -1 : (lhs.mSequence == rhs.mSequence ? 0 : 1);
+        }
+    };
+
+    private final int mMaxRequestsPerHost;
+
+    @NonNull
+    @GuardedBy("mHosts")
+    private final Map<String, HostQueue> mHosts = new HashMap<String, HostQueue>();
+
+    /**
+     * The number of slots held by the current thread.
+     */
+    @NonNull
+    private final ThreadLocal<Integer> mHeldCount = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return 0;
+        }
+    };
+
+    /**
+     * @param maxRequestsPerHost the maximum number of requests sent to each host at once.
+     */
+    public RequestScheduler(final int maxRequestsPerHost) {
+        if (1 > maxRequestsPerHost) {
+            throw new IllegalArgumentException("maxRequestsPerHost must be at least 1");
+        }
+
+        mMaxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * @return the maximum number of requests sent to each host at once.
+     */
+    public int getMaxRequestsPerHost() {
+        return mMaxRequestsPerHost;
+    }
+
+    /**
+     * Waits until a request to {@code host} may be sent. Every successful call must be followed by
+     * a call to {@link #release(String)}.
+     *
+     * @param host the host the request is sent to.
+     * @param priority the priority of the request.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void acquire(@NonNull final String host, @NonNull final RequestPriority priority)
+            throws InterruptedException {
+        try {
+            acquire(host, priority, null);
+        } catch (final InterruptedIOException e) {
+            // Only thrown for a handle.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Waits until a request to {@code host} may be sent, or until {@code handle} is cancelled or
+     * its deadline passes. Every successful call must be followed by a call to
+     * {@link #release(String)}.
+     *
+     * @param host the host the request is sent to.
+     * @param priority the priority of the request.
+     * @param handle the timeouts and cancellation of the send, or null to wait for as long as it
+     *        takes.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     * @throws InterruptedIOException if {@code handle} is done before the request may be sent.
+     */
+    public void acquire(@NonNull final String host, @NonNull final RequestPriority priority,
+            @Nullable final RequestHandle handle) throws InterruptedException,
+            InterruptedIOException {
+        final HostQueue queue = getHostQueue(host);
+        final int heldCount = mHeldCount.get();
+
+        if (0 < heldCount) {
+            queue.admitNested();
+        } else if (null == handle) {
+            queue.acquire(priority, null);
+        } else {
+            // Cancelling wakes the thread so that it gives up its place right away.
+            handle.setOnCancelListener(queue.mWakeUp);
+
+            try {
+                queue.acquire(priority, handle);
+            } finally {
+                handle.setOnCancelListener(null);
+            }
+        }
+
+        mHeldCount.set(heldCount + 1);
+    }
+
+    /**
+     * Frees the slot taken by {@link #acquire(String, RequestPriority)}, letting the next waiting
+     * request go.
+     *
+     * @param host the host the request was sent to.
+     */
+    public void release(@NonNull final String host) {
+        mHeldCount.set(mHeldCount.get() - 1);
+        getHostQueue(host).release();
+    }
+
+    /**
+     * @param host the host.
+     * @return the number of requests being sent to {@code host}.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */int getRunningCount(@NonNull final String host) {
+        return getHostQueue(host).getRunningCount();
+    }
+
+    /**
+     * @param host the host.
+     * @return the number of requests waiting to be sent to {@code host}.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */int getQueuedCount(@NonNull final String host) {
+        return getHostQueue(host).getQueuedCount();
+    }
+
+    /**
+     * @param host the host.
+     * @return the queue for {@code host}.
+     */
+    @NonNull
+    private HostQueue getHostQueue(@NonNull final String host) {
+        synchronized (mHosts) {
+            HostQueue queue = mHosts.get(host);
+
+            if (null == queue) {
+                queue = new HostQueue();
+                mHosts.put(host, queue);
+            }
+
+            return queue;
+        }
+    }
+
+    /**
+     * The requests running and waiting for one host.
+     */
+    @ThreadSafe
+    private final class HostQueue {
+
+        @NonNull
+        @GuardedBy("this")
+        private final PriorityQueue<Ticket> mWaiting = new PriorityQueue<Ticket>(11, TICKET_ORDER);
+
+        @GuardedBy("this")
+        private int mRunning = 0;
+
+        @GuardedBy("this")
+        private long mNextSequence = 0;
+
+        /**
+         * Wakes the threads waiting in {@link #acquire}, so that a cancelled one can give up.
+         */
+        @NonNull
+        /* package */final Runnable mWakeUp = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (HostQueue.this) {
+                    HostQueue.this.notifyAll();
+                }
+            }
+        };
+
+        /**
+         * Waits until the request is first in line and there is a slot it may take.
+         *
+         * @param priority the priority of the request.
+         * @param handle the timeouts and cancellation of the send, or null.
+         * @throws InterruptedException if the thread is interrupted while waiting.
+         * @throws InterruptedIOException if {@code handle} is done first.
+         */
+        public synchronized void acquire(@NonNull final RequestPriority priority,
+                @Nullable final RequestHandle handle) throws InterruptedException,
+                InterruptedIOException {
+            checkNotDone(handle);
+
+            if (mWaiting.isEmpty() && canRun(priority)) {
+                mRunning++;
+                return;
+            }
+
+            final Ticket ticket = new Ticket(priority, mNextSequence++);
+            mWaiting.add(ticket);
+            LogManager.v("Queued %s request behind %d running", priority, mRunning);
+
+            boolean isAdmitted = false;
+
+            try {
+                while (ticket != mWaiting.peek() || !canRun(priority)) {
+                    checkNotDone(handle);
+                    wait(null == handle ? 0 : handle.getWaitMillis());
+                }
+
+                isAdmitted = true;
+            } finally {
+                if (!isAdmitted) {
+                    mWaiting.remove(ticket);
+                    // The next ticket may be able to run now.
+                    notifyAll();
+                }
+            }
+
+            mWaiting.poll();
+            mRunning++;
+            // The new head may also be able to run.
+            notifyAll();
+        }
+
+        /**
+         * Admits a nested request without waiting.
+         */
+        public synchronized void admitNested() {
+            mRunning++;
+        }
+
+        /**
+         * Frees a slot.
+         */
+        public synchronized void release() {
+            mRunning--;
+            notifyAll();
+        }
+
+        /**
+         * @return the number of running requests.
+         */
+        public synchronized int getRunningCount() {
+            return mRunning;
+        }
+
+        /**
+         * @return the number of waiting requests.
+         */
+        public synchronized int getQueuedCount() {
+            return mWaiting.size();
+        }
+
+        /**
+         * @param handle the timeouts and cancellation of the send, or null.
+         * @throws InterruptedIOException if {@code handle} is done.
+         */
+        private void checkNotDone(@Nullable final RequestHandle handle)
+                throws InterruptedIOException {
+            if (null != handle && handle.isDone()) {
+                throw handle.newDoneError();
+            }
+        }
+
+        /**
+         * @param priority the priority of a request.
+         * @return true if a request with {@code priority} may take a slot now.
+         */
+        private boolean canRun(@NonNull final RequestPriority priority) {
+            final int limit =
+                    priority.isDeferrable() && 1 < mMaxRequestsPerHost ? mMaxRequestsPerHost - 1
+                            : mMaxRequestsPerHost;
+
+            return mRunning < limit;
+        }
+    }
+
+    /**
+     * A request waiting for a slot.
+     */
+    private static final class Ticket {
+
+        @NonNull
+        /* package */final RequestPriority mPriority;
+
+        /* package */final long mSequence;
+
+        /**
+         * @param priority the priority of the request.
+         * @param sequence the order the request arrived in.
+         */
+        /* package */Ticket(@NonNull final RequestPriority priority, final long sequence) {
+            mPriority = priority;
+            mSequence = sequence;
+        }
+    }
+}
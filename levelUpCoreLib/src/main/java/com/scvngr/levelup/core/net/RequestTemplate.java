@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * The parts of the requests to one endpoint that are the same for every request, built once so
+ * that each {@link LevelUpRequest} only fills in the rest. A template holds the full URL of the
+ * endpoint up to its path, the default headers, and any fixed query parameters already sorted and
+ * encoded. {@link #newRequest} then formats the path, appends the query string and builds the
+ * final {@link URL} once, rather than on every call to {@link AbstractRequest#getUrl(Context)}.
+ * </p>
+ * <p>
+ * Requests built from a template are equal to those built with the {@link LevelUpRequest}
+ * constructors from the same arguments. The access token is still added to the headers when the
+ * request is sent. The default headers are captured when the template is created, so a template
+ * should be dropped if the device's locale changes (see {@link RequestUtils#getUserAgent}). The
+ * shared templates from {@link #getInstance} are rebuilt when it does.
+ * </p>
+ */
+@Immutable
+@LevelUpApi(contract = Contract.INTERNAL)
+public final class RequestTemplate {
+
+    /**
+     * Templates by method, API version and endpoint format.
+     */
+    @NonNull
+    @GuardedBy("TEMPLATES")
+    private static final Map<String, RequestTemplate> TEMPLATES =
+            new HashMap<String, RequestTemplate>();
+
+    /**
+     * The locale that the default headers of the templates in {@link #TEMPLATES} were built for.
+     */
+    @Nullable
+    @GuardedBy("TEMPLATES")
+    private static Locale sTemplatesLocale = null;
+
+    @NonNull
+    private final HttpMethod mMethod;
+
+    /**
+     * The full URL up to the endpoint's path, ending with a slash.
+     */
+    @NonNull
+    private final String mUrlPrefix;
+
+    @NonNull
+    private final String mEndpointFormat;
+
+    @NonNull
+    private final Map<String, String> mHeaders;
+
+    /**
+     * Fixed query parameters, sorted by key.
+     */
+    @NonNull
+    private final Map<String, String> mQueryParams;
+
+    /**
+     * {@link #mQueryParams} encoded as a query string, including the leading '?', or the empty
+     * string if there are none.
+     */
+    @NonNull
+    private final String mEncodedQuery;
+
+    /**
+     * @param context the Application context.
+     * @param method the {@link HttpMethod} of the requests.
+     * @param apiVersion the version of the LevelUp web service API to hit.
+     * @param endpointFormat the API endpoint to request, as a format string for the path
+     *        arguments passed to {@link #newRequest}.
+     * @param queryParams fixed query string parameters that every request has.
+     */
+    public RequestTemplate(@NonNull final Context context, @NonNull final HttpMethod method,
+            @NonNull final String apiVersion, @NonNull final String endpointFormat,
+            @Nullable final Map<String, String> queryParams) {
+        mMethod = method;
+        mUrlPrefix = LevelUpRequest.getFullUrl(context, apiVersion, "");
+        mEndpointFormat = endpointFormat;
+        mHeaders =
+                NullUtils.nonNullContract(Collections.unmodifiableMap(RequestUtils
+                        .getDefaultRequestHeaders(context)));
+
+        final TreeMap<String, String> sorted = new TreeMap<String, String>();
+
+        if (null != queryParams) {
+            sorted.putAll(queryParams);
+        }
+
+        mQueryParams = NullUtils.nonNullContract(Collections.unmodifiableMap(sorted));
+        mEncodedQuery = encodeQuery(mQueryParams);
+    }
+
+    /**
+     * Gets a shared template for an endpoint without fixed query parameters. The shared templates
+     * are rebuilt if the default locale has changed since they were created, so that their
+     * default headers stay current.
+     *
+     * @param context the Application context.
+     * @param method the {@link HttpMethod} of the requests.
+     * @param apiVersion the version of the LevelUp web service API to hit.
+     * @param endpointFormat the API endpoint to request, as a format string for the path
+     *        arguments passed to {@link #newRequest}.
+     * @return the template.
+     */
+    @NonNull
+    public static RequestTemplate getInstance(@NonNull final Context context,
+            @NonNull final HttpMethod method, @NonNull final String apiVersion,
+            @NonNull final String endpointFormat) {
+        final String key = NullUtils.format("%s %s/%s", method, apiVersion, endpointFormat);
+
+        synchronized (TEMPLATES) {
+            final Locale locale = Locale.getDefault();
+
+            if (!locale.equals(sTemplatesLocale)) {
+                TEMPLATES.clear();
+                sTemplatesLocale = locale;
+            }
+
+            RequestTemplate template = TEMPLATES.get(key);
+
+            if (null == template) {
+                template =
+                        new RequestTemplate(context.getApplicationContext(), method, apiVersion,
+                                endpointFormat, null);
+                TEMPLATES.put(key, template);
+            }
+
+            return template;
+        }
+    }
+
+    /**
+     * Builds a request to the template's endpoint.
+     *
+     * @param queryParams query string parameters in addition to the template's, or null.
+     * @param body the request body to POST/PUT.
+     * @param retriever implementation of {@link AccessTokenRetriever} to use to try to append the
+     *        access token to this request.
+     * @param pathArgs the arguments for the template's endpoint format.
+     * @return the request.
+     * @throws IllegalArgumentException if the resulting URL is malformed.
+     */
+    @NonNull
+    public LevelUpRequest newRequest(@Nullable final Map<String, String> queryParams,
+            @Nullable final RequestBody body, @Nullable final AccessTokenRetriever retriever,
+            @NonNull final Object... pathArgs) {
+        final String url = mUrlPrefix + NullUtils.format(mEndpointFormat, pathArgs);
+        final Map<String, String> allParams;
+        final String encodedQuery;
+
+        if (null == queryParams || queryParams.isEmpty()) {
+            allParams = mQueryParams;
+            encodedQuery = mEncodedQuery;
+        } else {
+            final TreeMap<String, String> sorted = new TreeMap<String, String>(mQueryParams);
+            sorted.putAll(queryParams);
+            allParams = NullUtils.nonNullContract(Collections.unmodifiableMap(sorted));
+            encodedQuery = encodeQuery(allParams);
+        }
+
+        final URL compiledUrl;
+
+        try {
+            compiledUrl = new URL(url + encodedQuery);
+        } catch (final MalformedURLException e) {
+            throw new IllegalArgumentException("Malformed request URL", e);
+        }
+
+        return new LevelUpRequest(mMethod, url, allParams, mHeaders, compiledUrl, body, retriever);
+    }
+
+    /**
+     * Encodes query parameters the same way as {@link AbstractRequest#getUrl(Context)}.
+     *
+     * @param sortedParams the parameters, sorted by key.
+     * @return the query string, including the leading '?', or the empty string if there are no
+     *         parameters.
+     */
+    @NonNull
+    private static String encodeQuery(@NonNull final Map<String, String> sortedParams) {
+        if (sortedParams.isEmpty()) {
+            return "";
+        }
+
+        final StringBuilder query = new StringBuilder();
+
+        for (final Map.Entry<String, String> param : sortedParams.entrySet()) {
+            query.append(0 == query.length() ? '?' : '&');
+            query.append(Uri.encode(param.getKey())).append('=')
+                    .append(Uri.encode(param.getValue()));
+        }
+
+        return NullUtils.nonNullContract(query.toString());
+    }
+}
@@ -33,9 +33,11 @@ import com.scvngr.levelup.core.util.NullUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.URL;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * Class with methods to help with creating requests.
@@ -49,6 +51,18 @@ public final class RequestUtils {
     @NonNull
     public static final String HEADER_ACCEPT = "Accept";
 
+    /**
+     * Header key for the content encodings accepted in responses.
+     */
+    @NonNull
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    /**
+     * Header key for the content encoding of a request body.
+     */
+    @NonNull
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
     /**
      * Value for the accepts header for JSON.
      */
@@ -98,6 +112,26 @@ public final class RequestUtils {
     @NonNull
     public static final String PARAM_DEVICE_IDENTIFIER = "device_identifier";
 
+    /**
+     * Stands in for the path segments that identify a resource in
+     * {@link #getEndpointTemplate(URL)}.
+     */
+    @NonNull
+    public static final String ENDPOINT_ID_PLACEHOLDER = "{id}";
+
+    /**
+     * Matches the path segment of the API version, such as {@code v15}.
+     */
+    @NonNull
+    private static final Pattern API_VERSION_PATTERN = Pattern.compile("v\\d+");
+
+    /**
+     * Matches path segments that identify a resource: numeric IDs, UUIDs and codes all contain a
+     * digit, while the names of API endpoints don't.
+     */
+    @NonNull
+    private static final Pattern ID_SEGMENT_PATTERN = Pattern.compile(".*\\d.*");
+
     /**
      * Get the request headers for all API requests.
      *
@@ -106,10 +140,12 @@ public final class RequestUtils {
      */
     @NonNull
     public static Map<String, String> getDefaultRequestHeaders(@NonNull final Context context) {
-        final Map<String, String> headers = new HashMap<String, String>(3);
+        final Map<String, String> headers = new HashMap<String, String>(4);
         headers.put(HEADER_DEVICE_MODEL_KEY, HEADER_DEVICE_MODEL_VALUE);
         headers.put(HEADER_USER_AGENT, getUserAgent(context));
         headers.put(HEADER_ACCEPT, HEADER_CONTENT_TYPE_JSON);
+        // Responses are decoded by StreamingResponse.
+        headers.put(HEADER_ACCEPT_ENCODING, GzipRequestBody.CONTENT_ENCODING_GZIP);
         return headers;
     }
 
@@ -212,6 +248,38 @@ public final class RequestUtils {
         }
     }
 
+    /**
+     * Gets the endpoint a URL belongs to: its host and path, with each path segment that
+     * identifies a resource replaced by {@link #ENDPOINT_ID_PLACEHOLDER}. For example,
+     * {@code https://api.thelevelup.com/v15/users/123/orders?page=2} belongs to the endpoint
+     * {@code api.thelevelup.com/v15/users/{id}/orders}. Requests to the same endpoint are served
+     * by the same code on the server, so they tend to succeed, fail and take as long together.
+     *
+     * @param url the URL of a request.
+     * @return the endpoint of {@code url}.
+     */
+    @NonNull
+    public static String getEndpointTemplate(@NonNull final URL url) {
+        final StringBuilder endpoint = new StringBuilder(url.getHost());
+
+        for (final String segment : url.getPath().split("/")) {
+            if (0 == segment.length()) {
+                continue;
+            }
+
+            endpoint.append('/');
+
+            if (ID_SEGMENT_PATTERN.matcher(segment).matches()
+                    && !API_VERSION_PATTERN.matcher(segment).matches()) {
+                endpoint.append(ENDPOINT_ID_PLACEHOLDER);
+            } else {
+                endpoint.append(segment);
+            }
+        }
+
+        return NullUtils.nonNullContract(endpoint.toString());
+    }
+
     /**
      * Gets the package name and version of the app for the user agent header. For example,
      * "com.scvngr.levelup.app/2.3.12".
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small pool of scratch buffers for reading responses whose length isn't known up front, so
+ * that each response doesn't allocate (and grow) its own. Buffers are handed out to one reader at
+ * a time and must not be used after they have been recycled.
+ */
+@ThreadSafe
+/* package */final class ResponseBufferPool {
+
+    /**
+     * The number of buffers kept, which matches the number of responses usually read at once.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final int MAX_POOLED_BUFFERS = NetworkExecutor.POOL_SIZE;
+
+    /**
+     * The largest buffer kept, so that the pool doesn't hold on to the memory of a rare large
+     * response.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+    @NonNull
+    @GuardedBy("BUFFERS")
+    private static final List<byte[]> BUFFERS = new ArrayList<byte[]>(MAX_POOLED_BUFFERS);
+
+    /**
+     * @return a buffer of at least {@link BufferedResponse#READ_BUFFER_SIZE_BYTES} bytes, with
+     *         undefined contents.
+     */
+    @NonNull
+    public static byte[] obtain() {
+        synchronized (BUFFERS) {
+            if (!BUFFERS.isEmpty()) {
+                return BUFFERS.remove(BUFFERS.size() - 1);
+            }
+        }
+
+        return new byte[BufferedResponse.READ_BUFFER_SIZE_BYTES];
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not use it afterwards.
+     *
+     * @param buffer the buffer.
+     */
+    public static void recycle(@NonNull final byte[] buffer) {
+        if (BufferedResponse.READ_BUFFER_SIZE_BYTES > buffer.length
+                || MAX_POOLED_BUFFER_SIZE < buffer.length) {
+            return;
+        }
+
+        synchronized (BUFFERS) {
+            if (MAX_POOLED_BUFFERS > BUFFERS.size()) {
+                BUFFERS.add(buffer);
+            }
+        }
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private ResponseBufferPool() {
+        throw new UnsupportedOperationException("This class is non-instantiable");
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+
+/**
+ * Receives the result of a request sent with
+ * {@link LevelUpConnection#sendAsync(AbstractRequest, ResponseCallback, java.util.concurrent.Executor)}.
+ */
+@LevelUpApi(contract = Contract.DRAFT)
+public interface ResponseCallback {
+
+    /**
+     * Called when the response has been received. This is not called if the request was cancelled.
+     *
+     * @param request the request that was sent.
+     * @param response the response to {@code request}.
+     */
+    void onResponse(@NonNull AbstractRequest request, @NonNull LevelUpResponse response);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+
+/**
+ * Decides whether a request that failed should be sent again, and after how long.
+ * <p>
+ * {@link LevelUpConnection} consults the policy after every attempt, so implementations can also
+ * use it to count attempts. Implementations must be thread-safe.
+ * </p>
+ *
+ * @see LevelUpConnection#setDefaultRetryPolicy(RetryPolicy)
+ */
+@LevelUpApi(contract = Contract.DRAFT)
+public interface RetryPolicy {
+
+    /**
+     * Returned by {@link #getRetryDelayMillis} when the request should not be retried.
+     */
+    long NO_RETRY = -1;
+
+    /**
+     * @param request the request that was sent.
+     * @param response the response to the latest attempt.
+     * @param status the {@link LevelUpStatus} of {@code response}.
+     * @param retryCount the number of times the request has already been retried.
+     * @param totalDelayMillis the total time already spent waiting between attempts.
+     * @return the number of milliseconds to wait before sending the request again, or
+     *         {@link #NO_RETRY}.
+     */
+    long getRetryDelayMillis(@NonNull AbstractRequest request, @NonNull AbstractResponse<?> response,
+            @NonNull LevelUpStatus status, int retryCount, long totalDelayMillis);
+}
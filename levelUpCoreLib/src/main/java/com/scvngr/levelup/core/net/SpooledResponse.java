@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.model.Error;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * A response whose body may be too large to hold in memory as a {@link BufferedResponse}. Small
+ * bodies are kept in memory, while larger ones are written to a temporary file as they are read,
+ * so the memory used doesn't depend on the size of the body. The body can then be read any number
+ * of times with {@link #getData()} or decoded with
+ * {@link ModelResponse#decode(SpooledResponse, ModelDecoder)}.
+ * </p>
+ * <p>
+ * Unsuccessful responses are small, so they are buffered as a {@link LevelUpResponse} and their
+ * server errors parsed as usual. {@link #close()} must be called once the body is no longer
+ * needed, to delete the temporary file.
+ * </p>
+ *
+ * @see LevelUpConnection#sendSpooled(AbstractRequest)
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class SpooledResponse extends AbstractResponse<InputStream> {
+
+    /**
+     * The largest body that is kept in memory.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final int MAX_IN_MEMORY_BYTES = 64 * 1024;
+
+    /**
+     * Name of the directory within {@link Context#getCacheDir()} that bodies are written to.
+     */
+    @NonNull
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final String DIRECTORY_NAME = "levelup_spool";
+
+    /**
+     * Whether the directories left behind by earlier processes have been deleted.
+     */
+    @NonNull
+    private static final AtomicBoolean IS_DIRECTORY_CLEANED = new AtomicBoolean();
+
+    @NonNull
+    private final LevelUpStatus mStatus;
+
+    /**
+     * The buffered response if it was unsuccessful, or null.
+     */
+    @Nullable
+    private final LevelUpResponse mUnsuccessfulResponse;
+
+    /**
+     * The body if it is held in memory, or null.
+     */
+    @Nullable
+    private final byte[] mBytes;
+
+    /**
+     * The file holding the body if it was too large to hold in memory, or null.
+     */
+    @Nullable
+    private final File mFile;
+
+    private final long mLength;
+
+    /**
+     * Error that occurred while reading the body, or null.
+     */
+    @Nullable
+    private final Exception mReadError;
+
+    /**
+     * Reads the body of {@code response} and closes it.
+     *
+     * @param response the response from the {@link Transport}.
+     * @param directory the directory to write large bodies to.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */SpooledResponse(@NonNull final StreamingResponse response,
+            @NonNull final File directory) {
+        super(response.getHttpStatusCode(), response.getHttpHeaders(), response.getError());
+
+        if (null != response.getError()
+                || LevelUpStatus.OK != LevelUpResponse.mapStatus(response)) {
+            // Reads and closes the response.
+            mUnsuccessfulResponse = new LevelUpResponse(response);
+            mStatus = mUnsuccessfulResponse.getStatus();
+            mBytes = null;
+            mFile = null;
+            mLength = 0;
+            mReadError = null;
+            return;
+        }
+
+        final Spool spool = new Spool();
+        Exception error = null;
+
+        try {
+            final InputStream data = response.getData();
+
+            if (null != data) {
+                spool.read(data, BufferedResponse.getExpectedLength(response), directory);
+            }
+        } catch (final IOException e) {
+            LogManager.v("Error spooling response", e);
+            spool.discard();
+            error = e;
+        } finally {
+            response.close();
+        }
+
+        mUnsuccessfulResponse = null;
+        mStatus = LevelUpResponse.mapStatus(response, error);
+        mBytes = spool.getBytes();
+        mFile = spool.mFile;
+        mLength = spool.mLength;
+        mReadError = error;
+    }
+
+    /**
+     * Wraps a response that has already been buffered, such as a cached or canned response.
+     *
+     * @param response the buffered response.
+     */
+    /* package */SpooledResponse(@NonNull final LevelUpResponse response) {
+        super(response.getHttpStatusCode(), response.getHttpHeaders(), response.getError());
+        mStatus = response.getStatus();
+        mFile = null;
+        mReadError = null;
+
+        final String data = response.getData();
+
+        if (LevelUpStatus.OK != mStatus || null == data) {
+            mUnsuccessfulResponse = LevelUpStatus.OK == mStatus ? null : response;
+            mBytes = null;
+            mLength = 0;
+        } else {
+            mUnsuccessfulResponse = null;
+            mBytes = encode(data);
+            mLength = mBytes.length;
+        }
+    }
+
+    /**
+     * @param context the Application context.
+     * @return the directory that large bodies are written to by this process. Each process has its
+     *         own, named by its pid, so that one process never deletes a file that another (such as
+     *         a {@code :remote} service) is still reading. The first call in each process deletes
+     *         the directories of processes that are no longer running.
+     */
+    @NonNull
+    /* package */static File getDirectory(@NonNull final Context context) {
+        final File root = new File(context.getCacheDir(), DIRECTORY_NAME);
+        final File directory = new File(root, String.valueOf(Process.myPid()));
+
+        if (IS_DIRECTORY_CLEANED.compareAndSet(false, true)) {
+            final File[] files = root.listFiles();
+
+            if (null != files) {
+                for (final File file : files) {
+                    // A directory with this process's pid was left by an earlier process.
+                    if (directory.equals(file) || !isRunning(file.getName())) {
+                        deleteAll(NullUtils.nonNullContract(file));
+                    }
+                }
+            }
+        }
+
+        return directory;
+    }
+
+    /**
+     * Opens a new stream over the body. The caller must close the stream.
+     *
+     * @return a stream over the body, or null if there is none or it has been deleted by
+     *         {@link #close()}.
+     */
+    @Override
+    @Nullable
+    public InputStream getData() {
+        if (null != mBytes) {
+            return new ByteArrayInputStream(mBytes);
+        }
+
+        if (null != mUnsuccessfulResponse) {
+            final String data = mUnsuccessfulResponse.getData();
+
+            return null == data ? null : new ByteArrayInputStream(encode(data));
+        }
+
+        if (null != mFile) {
+            try {
+                return new FileInputStream(mFile);
+            } catch (final IOException e) {
+                LogManager.w("Spooled response has been closed", e);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the length of the body in bytes.
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return true if the body was too large to hold in memory and was written to a file.
+     */
+    public boolean isSpooledToDisk() {
+        return null != mFile;
+    }
+
+    /**
+     * @return the {@link LevelUpStatus} for this response.
+     */
+    @NonNull
+    public LevelUpStatus getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * @return the {@link Error}s returned by the server for an unsuccessful response.
+     */
+    @NonNull
+    public List<Error> getServerErrors() {
+        if (null != mUnsuccessfulResponse) {
+            return mUnsuccessfulResponse.getServerErrors();
+        }
+
+        return NullUtils.nonNullContract(Collections.<Error> emptyList());
+    }
+
+    /**
+     * @return the buffered response if it was unsuccessful, or null.
+     */
+    @Nullable
+    /* package */LevelUpResponse getUnsuccessfulResponse() {
+        return mUnsuccessfulResponse;
+    }
+
+    /**
+     * Get the error that occurred during the sending of the request OR during the reading of the
+     * response.
+     *
+     * @return the error that occurred.
+     */
+    @Override
+    @Nullable
+    public Exception getError() {
+        Exception error = mReadError;
+
+        if (null == error) {
+            error = super.getError();
+        }
+
+        return error;
+    }
+
+    /**
+     * Deletes the file holding the body, if there is one. Streams that are already open may still
+     * be read.
+     */
+    public void close() {
+        if (null != mFile) {
+            delete(mFile);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "SpooledResponse [mStatus=%s, mLength=%d, mFile=%s, AbstractResponse=%s]",
+                mStatus, mLength, mFile, super.toString());
+    }
+
+    /**
+     * @param data the string to encode.
+     * @return {@code data} as UTF-8.
+     */
+    @NonNull
+    private static byte[] encode(@NonNull final String data) {
+        try {
+            return NullUtils.nonNullContract(data.getBytes("UTF-8"));
+        } catch (final UnsupportedEncodingException e) {
+            // This is pretty much impossible.
+            throw new RuntimeException("The unthinkable happened: there is no UTF-8", e);
+        }
+    }
+
+    /**
+     * @param file the file to delete.
+     */
+    private static void delete(@NonNull final File file) {
+        if (file.exists() && !file.delete()) {
+            LogManager.w("Unable to delete %s", file);
+        }
+    }
+
+    /**
+     * Deletes a file, or a directory and the files in it.
+     *
+     * @param file the file or directory to delete.
+     */
+    private static void deleteAll(@NonNull final File file) {
+        final File[] files = file.listFiles();
+
+        if (null != files) {
+            for (final File child : files) {
+                delete(NullUtils.nonNullContract(child));
+            }
+        }
+
+        delete(file);
+    }
+
+    /**
+     * @param name the name of a file in the spool directory.
+     * @return true if {@code name} is the pid of a process that is running. Files left directly in
+     *         the spool directory by earlier versions aren't pids.
+     */
+    private static boolean isRunning(@NonNull final String name) {
+        try {
+            return new File("/proc", String.valueOf(Integer.parseInt(name))).exists();
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Where a body is read to: memory until it passes {@link #MAX_IN_MEMORY_BYTES}, and a file
+     * from then on.
+     */
+    private static final class Spool {
+
+        @Nullable
+        private ByteArrayOutputStream mMemory;
+
+        @Nullable
+        private File mFile;
+
+        private long mLength;
+
+        /**
+         * Reads {@code data} and closes it.
+         *
+         * @param data the body.
+         * @param expectedLength the length of the body if known, or -1.
+         * @param directory the directory to write large bodies to.
+         * @throws IOException if the body can't be read or written.
+         */
+        public void read(@NonNull final InputStream data, final int expectedLength,
+                @NonNull final File directory) throws IOException {
+            final byte[] buffer = ResponseBufferPool.obtain();
+            OutputStream out = null;
+
+            try {
+                if (MAX_IN_MEMORY_BYTES < expectedLength) {
+                    out = openFile(directory);
+                } else {
+                    mMemory =
+                            new ByteArrayOutputStream(0 <= expectedLength ? expectedLength
+                                    : BufferedResponse.READ_BUFFER_SIZE_BYTES);
+                    out = mMemory;
+                }
+
+                int read;
+
+                while (-1 != (read = data.read(buffer))) {
+                    if (null != mMemory && MAX_IN_MEMORY_BYTES < mLength + read) {
+                        // Move what has been read so far to a file.
+                        out = openFile(directory);
+                        mMemory.writeTo(out);
+                        mMemory = null;
+                    }
+
+                    out.write(buffer, 0, read);
+                    mLength += read;
+                }
+
+                out.close();
+                out = null;
+            } finally {
+                ResponseBufferPool.recycle(buffer);
+
+                if (null != out) {
+                    try {
+                        out.close();
+                    } catch (final IOException e) {
+                        // The error that got here is more useful.
+                    }
+                }
+
+                data.close();
+            }
+
+            if (null != mFile) {
+                LogManager.v("Spooled %d byte response to %s", mLength, mFile);
+            }
+        }
+
+        /**
+         * @return the body if it is held in memory, or null.
+         */
+        @Nullable
+        public byte[] getBytes() {
+            return null == mMemory ? null : mMemory.toByteArray();
+        }
+
+        /**
+         * Drops anything read so far.
+         */
+        public void discard() {
+            mMemory = null;
+            mLength = 0;
+
+            if (null != mFile) {
+                delete(mFile);
+                mFile = null;
+            }
+        }
+
+        /**
+         * @param directory the directory to create the file in.
+         * @return a stream to the new file.
+         * @throws IOException if the file can't be created.
+         */
+        @NonNull
+        private OutputStream openFile(@NonNull final File directory) throws IOException {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Unable to create " + directory);
+            }
+
+            mFile = File.createTempFile("response", null, directory);
+
+            return new BufferedOutputStream(new FileOutputStream(mFile),
+                    BufferedResponse.READ_BUFFER_SIZE_BYTES);
+        }
+    }
+}
@@ -22,9 +22,14 @@ import com.scvngr.levelup.core.annotation.VisibleForTesting;
 import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
 import com.scvngr.levelup.core.util.LogManager;
 
+import net.jcip.annotations.GuardedBy;
+
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * An {@link AbstractResponse} that uses a streaming interface where the response data is read from
@@ -39,6 +44,20 @@ public class StreamingResponse extends AbstractResponse<InputStream> {
     @Nullable
     private final HttpURLConnection mConnection;
 
+    /**
+     * The raw body, when its end is reported to a {@link NetworkEventListener}.
+     */
+    @Nullable
+    private final EventReportingInputStream mEventStream;
+
+    /**
+     * Run once when the response is closed or its body has been read to the end or failed, or
+     * null if there is nothing to run.
+     */
+    @Nullable
+    @GuardedBy("this")
+    private Runnable mCloseAction;
+
     /**
      * Constructor for a successful response.
      *
@@ -46,17 +65,67 @@ public class StreamingResponse extends AbstractResponse<InputStream> {
      * @throws IOException if the @code InputStream} from the connection cannot be read.
      */
     protected StreamingResponse(@NonNull final HttpURLConnection connection) throws IOException {
+        this(connection, null, null, null);
+    }
+
+    /**
+     * Constructor for a successful response that reports the end of its body to a
+     * {@link NetworkEventListener}, and stops reading it once {@code handle} is done.
+     *
+     * @param connection the @link HttpURLConnection} that this response is for.
+     * @param request the request the response is for. Must not be null if {@code listener} isn't.
+     * @param listener the listener to report to, or null.
+     * @param handle the timeouts and cancellation of the send, or null.
+     * @throws IOException if the @code InputStream} from the connection cannot be read.
+     */
+    /* package */StreamingResponse(@NonNull final HttpURLConnection connection,
+            @Nullable final AbstractRequest request, @Nullable final NetworkEventListener listener,
+            @Nullable final RequestHandle handle) throws IOException {
         super(connection.getResponseCode(), connection.getHeaderFields(), null);
 
         mConnection = connection;
         LogManager.v("Got HTTP status code %d", getHttpStatusCode());
 
+        InputStream data;
+
         if (getHttpStatusCode() >= STATUS_CODE_SUCCESS_MIN_INCLUSIVE
                 && getHttpStatusCode() < STATUS_CODE_SUCCESS_MAX_EXCLUSIVE) {
-            mData = connection.getInputStream();
+            data = connection.getInputStream();
         } else {
-            mData = connection.getErrorStream();
+            data = connection.getErrorStream();
+        }
+
+        if (null != handle && null != data) {
+            data = new DeadlineInputStream(data, handle);
         }
+
+        if (null != listener && null != request && null != data) {
+            mEventStream = new EventReportingInputStream(data, request, listener);
+            mData = runCloseActionAtEnd(decodeContent(mEventStream));
+        } else {
+            mEventStream = null;
+            mData = runCloseActionAtEnd(decodeContent(data));
+        }
+    }
+
+    /**
+     * Constructor for a response received by a {@link Transport} that does not use
+     * {@link HttpURLConnection}. {@link #close()} closes {@code data}. If {@code headers} has
+     * {@code Content-Encoding: gzip}, {@code data} is decoded; transports that decode the body
+     * themselves must not report that header.
+     *
+     * @param statusCode the HTTP status code.
+     * @param headers the HTTP headers. This must be an unmodifiable map.
+     * @param data the response body, or null if there is none.
+     */
+    protected StreamingResponse(final int statusCode,
+            @Nullable final Map<String, List<String>> headers, @Nullable final InputStream data) {
+        super(statusCode, headers, null);
+
+        mConnection = null;
+        mEventStream = null;
+        mData = runCloseActionAtEnd(decodeContent(data));
+        LogManager.v("Got HTTP status code %d", getHttpStatusCode());
     }
 
     /**
@@ -67,9 +136,38 @@ public class StreamingResponse extends AbstractResponse<InputStream> {
     protected StreamingResponse(@NonNull final Exception error) {
         super(error);
         mConnection = null;
+        mEventStream = null;
         mData = null;
     }
 
+    /**
+     * Creates a response received by a {@link Transport} that does not use
+     * {@link HttpURLConnection}. {@link #close()} closes {@code data}. If {@code headers} has
+     * {@code Content-Encoding: gzip}, {@code data} is decoded; transports that decode the body
+     * themselves must not report that header.
+     *
+     * @param statusCode the HTTP status code.
+     * @param headers the HTTP headers. This must be an unmodifiable map.
+     * @param data the response body, or null if there is none.
+     * @return the response.
+     */
+    @NonNull
+    public static StreamingResponse newResponse(final int statusCode,
+            @Nullable final Map<String, List<String>> headers, @Nullable final InputStream data) {
+        return new StreamingResponse(statusCode, headers, data);
+    }
+
+    /**
+     * Creates the response of a {@link Transport} that failed to send a request.
+     *
+     * @param error the exception that was thrown during the request.
+     * @return the response.
+     */
+    @NonNull
+    public static StreamingResponse newErrorResponse(@NonNull final Exception error) {
+        return new StreamingResponse(error);
+    }
+
     /**
      * Default constructor for testing.
      */
@@ -77,9 +175,89 @@ public class StreamingResponse extends AbstractResponse<InputStream> {
     /* package */StreamingResponse() {
         super();
         mConnection = null;
+        mEventStream = null;
         mData = null;
     }
 
+    /**
+     * Wraps the response body so that it is decoded according to its {@code Content-Encoding}.
+     * The limit of {@link BufferedResponse#MAX_DATA_SIZE_BYTES} applies to the decoded body, since
+     * that is what is held in memory.
+     *
+     * @param data the body as received, or null if there is none.
+     * @return the decoded body, or null if there is none.
+     */
+    @Nullable
+    private InputStream decodeContent(@Nullable final InputStream data) {
+        final String encoding = getHttpHeader(RequestUtils.HEADER_CONTENT_ENCODING);
+
+        if (null != data && null != encoding
+                && GzipRequestBody.CONTENT_ENCODING_GZIP.equalsIgnoreCase(encoding.trim())) {
+            return new GzipDecodingInputStream(data);
+        }
+
+        return data;
+    }
+
+    /**
+     * Wraps the response body so that the close action is run as soon as the body has been read
+     * to the end or reading it fails, without waiting for {@link #close()}.
+     *
+     * @param data the body, or null if there is none.
+     * @return the wrapped body, or null if there is none.
+     */
+    @Nullable
+    private InputStream runCloseActionAtEnd(@Nullable final InputStream data) {
+        if (null == data) {
+            return null;
+        }
+
+        return new FilterInputStream(data) {
+            @Override
+            public int read() throws IOException {
+                try {
+                    final int result = super.read();
+
+                    if (-1 == result) {
+                        runCloseAction();
+                    }
+
+                    return result;
+                } catch (final IOException e) {
+                    runCloseAction();
+                    throw e;
+                }
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset, final int length)
+                    throws IOException {
+                try {
+                    final int count = super.read(buffer, offset, length);
+
+                    if (-1 == count) {
+                        runCloseAction();
+                    }
+
+                    return count;
+                } catch (final IOException e) {
+                    runCloseAction();
+                    throw e;
+                }
+            }
+
+            @Override
+            public long skip(final long byteCount) throws IOException {
+                try {
+                    return super.skip(byteCount);
+                } catch (final IOException e) {
+                    runCloseAction();
+                    throw e;
+                }
+            }
+        };
+    }
+
     /**
      * @return the {@link InputStream} containing the data from the server's response
      */
@@ -89,12 +267,54 @@ public class StreamingResponse extends AbstractResponse<InputStream> {
         return mData;
     }
 
+    /**
+     * Sets an action to run the first time this response is closed or its body is read to the end
+     * or fails, for a {@link Transport} that holds on to something until the body has been read.
+     * This must be called before the response is returned by the transport.
+     *
+     * @param action the action to run, or null to run none.
+     */
+    /* package */synchronized void setCloseAction(@Nullable final Runnable action) {
+        mCloseAction = action;
+    }
+
     /**
      * Closes this connection. You must call this when you are done reading this response.
      */
     public final void close() {
-        if (null != mConnection) {
-            mConnection.disconnect();
+        try {
+            if (null != mEventStream) {
+                // Disconnecting doesn't close the stream, so report the end of the body here.
+                mEventStream.reportEnd();
+            }
+
+            if (null != mConnection) {
+                mConnection.disconnect();
+            } else if (null != mData) {
+                try {
+                    mData.close();
+                } catch (final IOException e) {
+                    LogManager.v("Error closing response stream", e);
+                }
+            }
+        } finally {
+            runCloseAction();
+        }
+    }
+
+    /**
+     * Runs the action set by {@link #setCloseAction(Runnable)}, if it hasn't been run yet.
+     */
+    private void runCloseAction() {
+        final Runnable closeAction;
+
+        synchronized (this) {
+            closeAction = mCloseAction;
+            mCloseAction = null;
+        }
+
+        if (null != closeAction) {
+            closeAction.run();
         }
     }
 
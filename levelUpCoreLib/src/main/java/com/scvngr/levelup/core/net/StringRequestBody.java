@@ -16,6 +16,7 @@ package com.scvngr.levelup.core.net;
 import android.content.Context;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.scvngr.levelup.core.annotation.LevelUpApi;
 import com.scvngr.levelup.core.util.NullUtils;
@@ -25,7 +26,6 @@ import net.jcip.annotations.ThreadSafe;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -47,6 +47,12 @@ public abstract class StringRequestBody implements RequestBody {
     @NonNull
     private final String mBody;
 
+    /**
+     * The UTF-8 encoding of {@link #mBody}, which is encoded once when first needed.
+     */
+    @Nullable
+    private volatile byte[] mEncodedBody = null;
+
     /**
      * @param body the request body
      */
@@ -74,22 +80,44 @@ public abstract class StringRequestBody implements RequestBody {
     @Override
     public void writeToOutputStream(@NonNull final Context context,
             @NonNull final OutputStream outputStream) throws IOException {
-        final OutputStreamWriter writer = new OutputStreamWriter(outputStream, "utf-8");
         try {
-            writer.write(mBody);
+            outputStream.write(getEncodedBody());
         } finally {
-            writer.close();
+            outputStream.close();
         }
     }
 
     @Override
     public int getContentLength() {
-        try {
-            return mBody.getBytes("UTF-8").length;
-        } catch (final UnsupportedEncodingException e) {
-         // This is pretty much impossible.
-            throw new RuntimeException("The unthinkable happened: there is no UTF-8", e);
+        return getEncodedBody().length;
+    }
+
+    @Override
+    @Nullable
+    public String getContentEncoding() {
+        return null;
+    }
+
+    /**
+     * @return the body encoded as UTF-8.
+     */
+    @NonNull
+    private byte[] getEncodedBody() {
+        byte[] encoded = mEncodedBody;
+
+        if (null == encoded) {
+            // Racing threads encode the same bytes, so there's no need to lock.
+            try {
+                encoded = NullUtils.nonNullContract(mBody.getBytes("UTF-8"));
+            } catch (final UnsupportedEncodingException e) {
+                // This is pretty much impossible.
+                throw new RuntimeException("The unthinkable happened: there is no UTF-8", e);
+            }
+
+            mEncodedBody = encoded;
         }
+
+        return encoded;
     }
 
     @SuppressWarnings("null") // Generated code.
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.SlowOperation;
+
+import java.util.Map;
+
+/**
+ * Sends {@link AbstractRequest}s over the network on behalf of {@link LevelUpConnection}.
+ * <p>
+ * The default implementation, {@link HttpUrlConnectionTransport}, uses {@link NetworkConnection}.
+ * Other implementations can be installed with
+ * {@link LevelUpConnection#setDefaultTransport(Transport)}, for example to use a different HTTP
+ * client or to answer requests in-process for benchmarks. Implementations must be thread-safe.
+ * </p>
+ */
+@LevelUpApi(contract = Contract.DRAFT)
+public interface Transport {
+
+    /**
+     * Sends the request and returns the response. Responses are created with
+     * {@link StreamingResponse#newResponse}. Errors must be reported in the response rather than
+     * thrown; see {@link StreamingResponse#newErrorResponse(Exception)}. If {@code handle} isn't
+     * null, the attempt should be aborted when it is cancelled; see
+     * {@link RequestHandle#setOnCancelListener(Runnable)}.
+     *
+     * @param context Application context.
+     * @param request the request to send.
+     * @param additionalHeaders headers to send in addition to
+     *        {@link AbstractRequest#getRequestHeaders(Context)}. May be null.
+     * @param listener the listener to report the progress of the request to. May be null, in which
+     *        case no events should be created.
+     * @param handle the timeouts and cancellation of the send. May be null, in which case the
+     *        default timeouts of {@link RequestHandle} should be used.
+     * @return the response. The caller must always {@link StreamingResponse#close()} it, even if
+     *         the body isn't read: a transport may hold on to a connection or, like
+     *         {@link ConcurrencyLimitingTransport}, a slot until the response is closed or its
+     *         body has been read to the end.
+     */
+    @NonNull
+    @SlowOperation
+    StreamingResponse send(@NonNull Context context, @NonNull AbstractRequest request,
+            @Nullable Map<String, String> additionalHeaders,
+            @Nullable NetworkEventListener listener, @Nullable RequestHandle handle);
+
+    /**
+     * @return the maximum number of connections this transport keeps open to each server. Sending
+     *         more requests than this in parallel makes the transport open extra connections.
+     */
+    int getMaxConnections();
+}
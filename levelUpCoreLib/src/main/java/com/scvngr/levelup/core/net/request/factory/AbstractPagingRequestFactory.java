@@ -36,6 +36,11 @@ import com.scvngr.levelup.core.net.AccessTokenRetriever;
  * Once a page has been loaded successfully, {@link #setNextPage(Uri)} should be called with the URL
  * contained in the Link header.
  * </p>
+ *
+ * <p>
+ * To load pages before they are needed, call {@link #enablePrefetch(int)} and add the
+ * {@link PagePrefetcher} it returns to the connection that sends the page requests.
+ * </p>
  */
 @LevelUpApi(contract = Contract.INTERNAL)
 public abstract class AbstractPagingRequestFactory extends AbstractRequestFactory {
@@ -46,6 +51,12 @@ public abstract class AbstractPagingRequestFactory extends AbstractRequestFactor
     @NonNull
     private final String mSavedPageKey;
 
+    /**
+     * Loads pages ahead of time, or null if prefetching isn't enabled.
+     */
+    @Nullable
+    private volatile PagePrefetcher mPrefetcher;
+
     /**
      * @param context the context.
      * @param retriever an access token retriever.
@@ -124,6 +135,51 @@ public abstract class AbstractPagingRequestFactory extends AbstractRequestFactor
      */
     public final void setNextPage(@Nullable final Uri page) {
         mPageCacheRetriever.setNextPage(mSavedPageKey, page);
+
+        final PagePrefetcher prefetcher = mPrefetcher;
+
+        if (null == page && null != prefetcher) {
+            // The list starts over from the first page, so the prefetched pages may be stale.
+            prefetcher.clear();
+        }
+    }
+
+    /**
+     * <p>
+     * Turns on loading pages before they are needed. The returned {@link PagePrefetcher} must be
+     * added to the {@link com.scvngr.levelup.core.net.LevelUpConnection} that sends the requests
+     * from {@link #getNextPageRequest()}; whenever a page arrives with a link to the next one,
+     * the next page is sent in the background so that it is ready when it is requested.
+     * </p>
+     *
+     * <p>
+     * Calling this again replaces the previous prefetcher and drops its pages.
+     * </p>
+     *
+     * @param maxPages the most pages to load ahead. Must be positive.
+     * @return the prefetcher to add to the connection.
+     * @throws IllegalArgumentException if {@code maxPages} isn't positive.
+     */
+    @NonNull
+    public final synchronized PagePrefetcher enablePrefetch(final int maxPages) {
+        final PagePrefetcher prefetcher = new PagePrefetcher(this, maxPages);
+        final PagePrefetcher previous = mPrefetcher;
+        mPrefetcher = prefetcher;
+
+        if (null != previous) {
+            previous.clear();
+        }
+
+        return prefetcher;
+    }
+
+    /**
+     * @return the prefetcher returned by {@link #enablePrefetch(int)}, or null if prefetching isn't
+     *         enabled.
+     */
+    @Nullable
+    public final PagePrefetcher getPrefetcher() {
+        return mPrefetcher;
     }
 
     /**
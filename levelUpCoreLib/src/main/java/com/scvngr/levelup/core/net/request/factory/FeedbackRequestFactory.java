@@ -25,7 +25,6 @@ import com.scvngr.levelup.core.model.factory.json.FeedbackJsonFactory;
 import com.scvngr.levelup.core.net.AbstractRequest;
 import com.scvngr.levelup.core.net.AccessTokenRetriever;
 import com.scvngr.levelup.core.net.HttpMethod;
-import com.scvngr.levelup.core.net.JsonElementRequestBody;
 import com.scvngr.levelup.core.net.LevelUpRequest;
 import com.scvngr.levelup.core.net.Permissions;
 import com.scvngr.levelup.core.util.NullUtils;
@@ -76,7 +75,7 @@ public final class FeedbackRequestFactory extends AbstractRequestFactory {
         return new LevelUpRequest(getContext(), NullUtils.nonNullContract(HttpMethod.POST),
                 LevelUpRequest.API_VERSION_CODE_V15, NullUtils.nonNullContract(String.format(
                         Locale.US, ENDPOINT_FEEDBACK_FORMAT, orderUuid)), null,
-                new JsonElementRequestBody(new FeedbackJsonFactory().toJsonElement(feedback)),
+                new FeedbackJsonFactory().toRequestBody(feedback),
                 getAccessTokenRetriever());
     }
 }
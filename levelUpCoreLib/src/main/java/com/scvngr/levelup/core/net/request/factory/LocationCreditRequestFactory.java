@@ -25,7 +25,7 @@ import com.scvngr.levelup.core.net.AccessTokenRetriever;
 import com.scvngr.levelup.core.net.HttpMethod;
 import com.scvngr.levelup.core.net.LevelUpRequest;
 import com.scvngr.levelup.core.net.Permissions;
-import com.scvngr.levelup.core.util.NullUtils;
+import com.scvngr.levelup.core.net.RequestTemplate;
 
 import net.jcip.annotations.Immutable;
 
@@ -69,11 +69,8 @@ public final class LocationCreditRequestFactory extends AbstractRequestFactory {
     @LevelUpApi(contract = LevelUpApi.Contract.PUBLIC)
     @RequiresPermission(value = Permissions.PERMISSION_MANAGE_USER_CAMPAIGNS)
     public AbstractRequest buildLocationCreditRequest(@NonNull final Location location) {
-
-        final String endpoint =
-                NullUtils.nonNullContract(String.format(ENDPOINT, Long.toString(location.getId())));
-
-        return new LevelUpRequest(getContext(), HttpMethod.GET, LevelUpRequest.API_VERSION_CODE_V15,
-                endpoint, null, null, getAccessTokenRetriever());
+        return RequestTemplate.getInstance(getContext(), HttpMethod.GET,
+                LevelUpRequest.API_VERSION_CODE_V15, ENDPOINT).newRequest(null, null,
+                getAccessTokenRetriever(), Long.toString(location.getId()));
     }
 }
@@ -25,7 +25,7 @@ import com.scvngr.levelup.core.net.AccessTokenRetriever;
 import com.scvngr.levelup.core.net.HttpMethod;
 import com.scvngr.levelup.core.net.LevelUpRequest;
 import com.scvngr.levelup.core.net.Permissions;
-import com.scvngr.levelup.core.util.NullUtils;
+import com.scvngr.levelup.core.net.RequestTemplate;
 
 import net.jcip.annotations.Immutable;
 
@@ -37,6 +37,12 @@ import net.jcip.annotations.Immutable;
 @LevelUpApi(contract = Contract.PUBLIC)
 public final class LoyaltyRequestFactory extends AbstractRequestFactory {
 
+    /**
+     * The endpoint for the current user's loyalty at a merchant.
+     */
+    @NonNull
+    private static final String ENDPOINT_LOYALTY_FORMAT = "merchants/%d/loyalty";
+
     /**
      * @param context the Application context.
      * @param retriever the implementation of {@link AccessTokenRetriever} to use to get the
@@ -59,9 +65,8 @@ public final class LoyaltyRequestFactory extends AbstractRequestFactory {
     @RequiresPermission(Permissions.PERMISSION_MANAGE_USER_CAMPAIGNS)
     @AccessTokenRequired
     public AbstractRequest buildGetLoyaltyForMerchantRequest(final long merchantWebServiceId) {
-        return new LevelUpRequest(getContext(), HttpMethod.GET,
-                LevelUpRequest.API_VERSION_CODE_V15, NullUtils.format(
-                        "merchants/%d/loyalty", merchantWebServiceId), null, null,
-                getAccessTokenRetriever());
+        return RequestTemplate.getInstance(getContext(), HttpMethod.GET,
+                LevelUpRequest.API_VERSION_CODE_V15, ENDPOINT_LOYALTY_FORMAT).newRequest(null,
+                null, getAccessTokenRetriever(), merchantWebServiceId);
     }
 }
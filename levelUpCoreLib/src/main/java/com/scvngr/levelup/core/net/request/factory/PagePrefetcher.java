@@ -0,0 +1,437 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net.request.factory;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.net.AbstractRequest;
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.net.HttpMethod;
+import com.scvngr.levelup.core.net.Interceptor;
+import com.scvngr.levelup.core.net.LevelUpConnection;
+import com.scvngr.levelup.core.net.LevelUpResponse;
+import com.scvngr.levelup.core.net.LevelUpStatus;
+import com.scvngr.levelup.core.net.RequestHandle;
+import com.scvngr.levelup.core.net.RequestPriority;
+import com.scvngr.levelup.core.net.ResponseCallback;
+import com.scvngr.levelup.core.util.LinkHeaderParser;
+import com.scvngr.levelup.core.util.LinkHeaderParser.LinkHeader;
+import com.scvngr.levelup.core.util.LinkHeaderParser.MalformedLinkHeaderException;
+import com.scvngr.levelup.core.util.LogManager;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * An {@link Interceptor} that loads the pages of an {@link AbstractPagingRequestFactory} ahead of
+ * time. When a page arrives with a Link header pointing to the next page, that page is sent in
+ * the background at {@link RequestPriority#PREFETCH} priority, and so on until
+ * {@link #getMaxPages()} pages are waiting to be used. When the request returned by
+ * {@link AbstractPagingRequestFactory#getNextPageRequest()} is later sent, it gets the prefetched
+ * response instead of going to the network again. If the prefetch is still queued, it is cancelled
+ * and the page is sent at the caller's priority instead; if it is in flight, the caller waits for
+ * it only as long as its {@link RequestHandle} allows.
+ * </p>
+ * <p>
+ * Get an instance from {@link AbstractPagingRequestFactory#enablePrefetch(int)} and add it to the
+ * {@link LevelUpConnection} that loads the pages with
+ * {@link LevelUpConnection#addInterceptor(Interceptor)}.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.DRAFT)
+public final class PagePrefetcher implements Interceptor {
+
+    /**
+     * The relation of the Link header that points to the next page.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final String REL_NEXT = "next";
+
+    @NonNull
+    private final AbstractPagingRequestFactory mFactory;
+
+    private final int mMaxPages;
+
+    /**
+     * The pages that have been prefetched or are being prefetched, by URL.
+     */
+    @NonNull
+    @GuardedBy("mPages")
+    private final Map<String, Prefetch> mPages = new HashMap<String, Prefetch>();
+
+    /**
+     * @param factory the factory that builds the page requests.
+     * @param maxPages the most pages to load ahead. Must be positive.
+     * @throws IllegalArgumentException if {@code maxPages} isn't positive.
+     */
+    /* package */PagePrefetcher(@NonNull final AbstractPagingRequestFactory factory,
+            final int maxPages) {
+        if (0 >= maxPages) {
+            throw new IllegalArgumentException("maxPages must be positive");
+        }
+
+        mFactory = factory;
+        mMaxPages = maxPages;
+    }
+
+    /**
+     * @return the most pages that are loaded ahead.
+     */
+    public int getMaxPages() {
+        return mMaxPages;
+    }
+
+    /**
+     * Cancels the pages being prefetched and drops the ones that have been, for example when the
+     * list is loaded again from the first page.
+     */
+    public void clear() {
+        final List<Prefetch> pages;
+
+        synchronized (mPages) {
+            pages = new ArrayList<Prefetch>(mPages.values());
+            mPages.clear();
+        }
+
+        for (final Prefetch page : pages) {
+            page.mFuture.cancel(true);
+        }
+    }
+
+    @Override
+    @NonNull
+    public LevelUpResponse intercept(@NonNull final Chain chain) {
+        final AbstractRequest request = chain.getRequest();
+
+        if (HttpMethod.GET != request.getMethod()) {
+            return chain.proceed(request);
+        }
+
+        final String url;
+
+        try {
+            url = request.getUrlString(chain.getContext());
+        } catch (final BadRequestException e) {
+            return chain.proceed(request);
+        }
+
+        final Prefetch prefetch;
+        final boolean isStarted;
+
+        synchronized (mPages) {
+            prefetch = mPages.get(url);
+
+            if (null != prefetch && prefetch.mRequest == request) {
+                // This is the prefetch itself, sent by a connection that has this interceptor.
+                prefetch.mIsStarted = true;
+                isStarted = false;
+            } else {
+                mPages.remove(url);
+                isStarted = null != prefetch && prefetch.mIsStarted;
+            }
+        }
+
+        if (null != prefetch && prefetch.mRequest == request) {
+            // Sent outside the lock, so that taking and adding other pages isn't held up.
+            return chain.proceed(request);
+        }
+
+        LevelUpResponse response = null;
+
+        if (null != prefetch) {
+            if (isStarted) {
+                response = getPrefetched(prefetch, chain.getHandle());
+            } else {
+                /*
+                 * The prefetch is still queued behind other requests at PREFETCH priority, so
+                 * waiting for it could take much longer than sending the page now, and would tie
+                 * up this thread while it waits for the pool.
+                 */
+                LogManager.v("Sending page %s instead of waiting for its prefetch", request);
+                prefetch.mFuture.cancel(true);
+            }
+        }
+
+        if (null == response) {
+            response = chain.proceed(request);
+        }
+
+        prefetchNext(chain.getContext(), url, response);
+
+        return response;
+    }
+
+    /**
+     * Prefetches the pages after the one in {@code response} until {@link #getMaxPages()} pages
+     * are waiting. The pages that have already been prefetched are skipped, so that the lookahead
+     * is topped up from the end of the chain each time a page is taken from it.
+     *
+     * @param context the Application context.
+     * @param url the URL {@code response} was loaded from, which the Link header is relative to.
+     * @param response a page.
+     */
+    private void prefetchNext(@NonNull final Context context, @NonNull final String url,
+            @NonNull final LevelUpResponse response) {
+        String pageUrl = url;
+        LevelUpResponse page = response;
+
+        // Bounded in case the pages link back to each other.
+        for (int i = 0; i <= mMaxPages; i++) {
+            final Uri next = getNextPage(pageUrl, page);
+
+            if (null == next) {
+                return;
+            }
+
+            final AbstractRequest request = mFactory.getPageRequest(next);
+
+            if (null == request) {
+                return;
+            }
+
+            final String nextUrl;
+
+            try {
+                nextUrl = request.getUrlString(context);
+            } catch (final BadRequestException e) {
+                LogManager.e("BadRequestException", e);
+                return;
+            }
+
+            final Prefetch existing;
+
+            synchronized (mPages) {
+                existing = mPages.get(nextUrl);
+
+                if (null == existing) {
+                    if (mPages.size() < mMaxPages) {
+                        startPrefetch(context, nextUrl, request);
+                    }
+
+                    return;
+                }
+            }
+
+            page = getArrived(existing);
+
+            if (null == page) {
+                // Still loading; it continues the chain when it arrives.
+                return;
+            }
+
+            pageUrl = nextUrl;
+        }
+    }
+
+    /**
+     * Sends a page in the background and adds it to {@link #mPages}.
+     *
+     * @param context the Application context.
+     * @param url the URL of the page.
+     * @param request the request for the page.
+     */
+    @GuardedBy("mPages")
+    private void startPrefetch(@NonNull final Context context, @NonNull final String url,
+            @NonNull final AbstractRequest request) {
+        final Prefetch prefetch = new Prefetch(request);
+        final LevelUpConnection connection = LevelUpConnection.newInstance(context);
+        connection.setPriority(RequestPriority.PREFETCH);
+
+        // The send can't reach intercept() before the lock is released, so mFuture is always set
+        // by then.
+        prefetch.mFuture = connection.sendAsync(request, new ResponseCallback() {
+            @Override
+            public void onResponse(@NonNull final AbstractRequest sent,
+                    @NonNull final LevelUpResponse prefetched) {
+                synchronized (mPages) {
+                    // Dropped by clear(), or already taken by a send that will look ahead.
+                    if (mPages.get(url) != prefetch) {
+                        return;
+                    }
+                }
+
+                if (LevelUpStatus.OK == prefetched.getStatus()) {
+                    prefetchNext(context, url, prefetched);
+                }
+            }
+        }, (Executor) null);
+        mPages.put(url, prefetch);
+    }
+
+    /**
+     * @param prefetch a page in {@link #mPages}.
+     * @return the prefetched response if it has arrived, or null if it is still loading or
+     *         failed.
+     */
+    @Nullable
+    private static LevelUpResponse getArrived(@NonNull final Prefetch prefetch) {
+        if (!prefetch.mFuture.isDone() || prefetch.mFuture.isCancelled()) {
+            return null;
+        }
+
+        try {
+            return prefetch.mFuture.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            LogManager.w("Prefetching page failed", e.getCause());
+        }
+
+        return null;
+    }
+
+    /**
+     * Waits for a prefetch that has started, for no longer than the send that took it may take.
+     *
+     * @param prefetch a page taken from {@link #mPages} whose send has started.
+     * @param handle the timeouts and cancellation of the send that took the page, or null.
+     * @return the prefetched response, or null if it failed or the send that took it was
+     *         cancelled or ran out of time first, in which case the page should be sent again.
+     */
+    @Nullable
+    private static LevelUpResponse getPrefetched(@NonNull final Prefetch prefetch,
+            @Nullable final RequestHandle handle) {
+        final Future<LevelUpResponse> future = prefetch.mFuture;
+
+        if (null != handle) {
+            // Cancelling the prefetch is what stops the wait, since nothing else will use it.
+            handle.setOnCancelListener(new Runnable() {
+                @Override
+                public void run() {
+                    future.cancel(true);
+                }
+            });
+        }
+
+        try {
+            final LevelUpResponse response = future.get();
+
+            if (LevelUpStatus.OK == response.getStatus()) {
+                LogManager.v("Using prefetched page %s", prefetch.mRequest);
+                return response;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            LogManager.w("Prefetching page failed", e.getCause());
+        } catch (final CancellationException e) {
+            LogManager.v("Prefetch was cancelled");
+        } finally {
+            if (null != handle) {
+                handle.setOnCancelListener(null);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param url the URL {@code response} was loaded from.
+     * @param response a page.
+     * @return the URL of the page after the one in {@code response}, or null if it is the last.
+     */
+    @Nullable
+    private static Uri getNextPage(@NonNull final String url,
+            @NonNull final LevelUpResponse response) {
+        final String header = response.getHttpHeader("Link");
+
+        if (LevelUpStatus.OK != response.getStatus() || null == header) {
+            return null;
+        }
+
+        return parseNextPage(url, header);
+    }
+
+    /**
+     * @param url the URL of the page the header came with, which the link is relative to.
+     * @param header the value of the Link header.
+     * @return the URL of the next page, or null if the header doesn't link to one.
+     */
+    @Nullable
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static Uri parseNextPage(@NonNull final String url,
+            @NonNull final String header) {
+        final LinkHeader link;
+
+        try {
+            link = LinkHeaderParser.parseLinkHeader(Uri.parse(url), header);
+        } catch (final MalformedLinkHeaderException e) {
+            LogManager.w("Malformed Link header", e);
+            return null;
+        }
+
+        final String rel = link.getParameter(LinkHeaderParser.PARAMETER_REL);
+
+        if (null != rel) {
+            for (final String relation : rel.toLowerCase(Locale.US).split(" ")) {
+                if (REL_NEXT.equals(relation)) {
+                    return link.getLink();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A page that has been prefetched or is being prefetched.
+     */
+    private static final class Prefetch {
+
+        /**
+         * The request for the page, which is let through when the prefetch itself is sent by a
+         * connection that has this interceptor.
+         */
+        @NonNull
+        /* package */final AbstractRequest mRequest;
+
+        /**
+         * The response. Set while holding the lock on {@link PagePrefetcher#mPages}, before the
+         * prefetch is added to it.
+         */
+        /* package */Future<LevelUpResponse> mFuture;
+
+        /**
+         * True once the prefetch has reached {@link PagePrefetcher#intercept(Chain)}, rather than
+         * still being queued. Guarded by the lock on {@link PagePrefetcher#mPages}.
+         */
+        /* package */boolean mIsStarted;
+
+        /**
+         * @param request the request for the page.
+         */
+        /* package */Prefetch(@NonNull final AbstractRequest request) {
+            mRequest = request;
+        }
+    }
+}
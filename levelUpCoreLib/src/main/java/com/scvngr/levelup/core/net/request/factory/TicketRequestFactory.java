@@ -64,7 +64,7 @@ public final class TicketRequestFactory extends AbstractRequestFactory {
     public AbstractRequest buildSupportRequest(@NonNull final String messageBody) {
         return new LevelUpRequest(getContext(), HttpMethod.POST,
                 LevelUpRequest.API_VERSION_CODE_V14, ENDPOINT, null,
-                new TicketJsonFactory().toRequestSerializer(new Ticket(messageBody)),
+                new TicketJsonFactory().toRequestBody(new Ticket(messageBody)),
                 getAccessTokenRetriever());
     }
 }
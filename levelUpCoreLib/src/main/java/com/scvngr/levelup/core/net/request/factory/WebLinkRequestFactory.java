@@ -23,7 +23,7 @@ import com.scvngr.levelup.core.model.WebLink;
 import com.scvngr.levelup.core.net.AbstractRequest;
 import com.scvngr.levelup.core.net.HttpMethod;
 import com.scvngr.levelup.core.net.LevelUpRequest;
-import com.scvngr.levelup.core.util.NullUtils;
+import com.scvngr.levelup.core.net.RequestTemplate;
 
 import net.jcip.annotations.Immutable;
 
@@ -54,9 +54,8 @@ public final class WebLinkRequestFactory extends AbstractRequestFactory {
      */
     @NonNull
     public AbstractRequest buildGetWebLinksForLocationRequest(final long locationWebServiceId) {
-        return new LevelUpRequest(getContext(), HttpMethod.GET,
-                LevelUpRequest.API_VERSION_CODE_V15, NullUtils.format(ENDPOINT_WEB_LINKS_FORMAT,
-                        locationWebServiceId), null, null,
-                getAccessTokenRetriever());
+        return RequestTemplate.getInstance(getContext(), HttpMethod.GET,
+                LevelUpRequest.API_VERSION_CODE_V15, ENDPOINT_WEB_LINKS_FORMAT).newRequest(null,
+                null, getAccessTokenRetriever(), locationWebServiceId);
     }
 }
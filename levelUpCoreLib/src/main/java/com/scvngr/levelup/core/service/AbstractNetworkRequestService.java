@@ -16,6 +16,7 @@ package com.scvngr.levelup.core.service;
 import android.app.IntentService;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.LocalBroadcastManager;
@@ -27,6 +28,7 @@ import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
 import com.scvngr.levelup.core.net.AbstractRequest;
 import com.scvngr.levelup.core.net.LevelUpConnection;
 import com.scvngr.levelup.core.net.LevelUpResponse;
+import com.scvngr.levelup.core.net.RequestPriority;
 import com.scvngr.levelup.core.util.LogManager;
 
 import java.util.UUID;
@@ -45,8 +47,10 @@ public abstract class AbstractNetworkRequestService extends IntentService {
      * Intent action broadcast via {@link LocalBroadcastManager} when the service completes its
      * work.
      * <p>
-     * The Intent will contain {@link #EXTRA_PARCELABLE_RESPONSE}, {@link #EXTRA_STRING_TOKEN}, and
-     * {@link #EXTRA_BOOLEAN_IS_REQUEST_SUCCESSFUL}.
+     * The Intent will contain {@link #EXTRA_STRING_TOKEN} and
+     * {@link #EXTRA_BOOLEAN_IS_REQUEST_SUCCESSFUL}. Get the response with
+     * {@link #getResult(Intent)}, which doesn't parse it again. The Intent also still contains
+     * {@link #EXTRA_PARCELABLE_RESPONSE}.
      */
     public static final String ACTION_REQUEST_FINISHED = AbstractNetworkRequestService.class
             .getName() + ".intent.action.request_finished";
@@ -64,7 +68,11 @@ public abstract class AbstractNetworkRequestService extends IntentService {
      * Type: {@code Response}.
      * <p>
      * Key mapping to a response from the request the service performed.
+     *
+     * @deprecated use {@link #getResult(Intent)}. The response is still sent in the broadcast, but
+     *             this extra will be removed in the next major release.
      */
+    @Deprecated
     public static final String EXTRA_PARCELABLE_RESPONSE = AbstractNetworkRequestService.class
             .getName() + ".extra.PARCELABLE_RESPONSE";
 
@@ -103,6 +111,21 @@ public abstract class AbstractNetworkRequestService extends IntentService {
     protected abstract boolean handleResponse(@NonNull final Context context,
             @NonNull final LevelUpResponse response);
 
+    /**
+     * Decodes the response into whatever receivers of the broadcast need, so that they don't each
+     * have to parse it. The result is available from {@link RequestResultRegistry.Result#getModel}.
+     * Default implementation returns null.
+     *
+     * @param context the Application context.
+     * @param response the {@link LevelUpResponse} received from the server.
+     * @return the decoded response, or null.
+     */
+    @Nullable
+    protected Object decodeResponse(@NonNull final Context context,
+            @NonNull final LevelUpResponse response) {
+        return null;
+    }
+
     @Override
     public void onHandleIntent(final Intent intent) {
         performRequest(getApplicationContext(), intent);
@@ -122,12 +145,14 @@ public abstract class AbstractNetworkRequestService extends IntentService {
         if (null != request) {
             LogManager.v("Sending request in the background: %s", request);
 
-            final LevelUpResponse response =
-                    LevelUpConnection.newInstance(context).send(request);
+            final LevelUpConnection connection = LevelUpConnection.newInstance(context);
+            connection.setPriority(getPriority());
+            final LevelUpResponse response = connection.send(request);
 
             LogManager.v("Response from background request %s", response.getStatus());
             final boolean success = handleResponse(context, response);
-            onRequestFinished(context, intent, response, success);
+            onRequestFinished(context, intent.getStringExtra(EXTRA_STRING_TOKEN), response,
+                    decodeResponse(context, response), success);
         } else {
             LogManager.w("No request passed");
         }
@@ -146,6 +171,17 @@ public abstract class AbstractNetworkRequestService extends IntentService {
         return intent.getParcelableExtra(EXTRA_PARCELABLE_REQUEST);
     }
 
+    /**
+     * Get the priority to send requests with. Default implementation returns
+     * {@link RequestPriority#NORMAL}.
+     *
+     * @return the {@link RequestPriority} of the requests sent by this service.
+     */
+    @NonNull
+    protected RequestPriority getPriority() {
+        return RequestPriority.NORMAL;
+    }
+
     /**
      * Gets a unique token that identifies a request. Subclasses should make sure to add a token to
      * the Intent sent to any instances of this class because receivers use the tokens to determine
@@ -172,10 +208,81 @@ public abstract class AbstractNetworkRequestService extends IntentService {
     /* package */static void onRequestFinished(@NonNull final Context context,
             @NonNull final Intent intent, @NonNull final LevelUpResponse response,
             final boolean success) {
+        onRequestFinished(context, intent.getStringExtra(EXTRA_STRING_TOKEN), response, success);
+    }
+
+    /**
+     * Called when the request finished. Takes the response, success flag and request token and
+     * broadcasts them to the {@link android.content.BroadcastReceiver}s listening for the action
+     * {@link #ACTION_REQUEST_FINISHED}.
+     *
+     * @param context the Application context.
+     * @param token the token identifying the request.
+     * @param response the {@link LevelUpResponse} received during the request.
+     * @param success true if the request was successful, false otherwise.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static void onRequestFinished(@NonNull final Context context,
+            @Nullable final String token, @NonNull final LevelUpResponse response,
+            final boolean success) {
+        onRequestFinished(context, token, response, null, success);
+    }
+
+    /**
+     * Called when the request finished. Stores the result in the {@link RequestResultRegistry} and
+     * broadcasts the request token, response and success flag to the
+     * {@link android.content.BroadcastReceiver}s listening for the action
+     * {@link #ACTION_REQUEST_FINISHED}. The result is removed from the registry once the broadcast
+     * has been delivered.
+     *
+     * @param context the Application context.
+     * @param token the token identifying the request, or null to identify it by a new token so
+     *        that receivers can still get its result.
+     * @param response the {@link LevelUpResponse} received during the request.
+     * @param model the result of {@link #decodeResponse}, or null.
+     * @param success true if the request was successful, false otherwise.
+     */
+    /* package */static void onRequestFinished(@NonNull final Context context,
+            @Nullable final String token, @NonNull final LevelUpResponse response,
+            @Nullable final Object model, final boolean success) {
+        final String resultToken = null != token ? token : getToken();
+        final LocalBroadcastManager manager = LocalBroadcastManager.getInstance(context);
+        RequestResultRegistry.put(resultToken,
+                new RequestResultRegistry.Result(response, model, success));
+
         final Intent resultIntent = new Intent(ACTION_REQUEST_FINISHED);
-        resultIntent.putExtra(EXTRA_STRING_TOKEN, intent.getStringExtra(EXTRA_STRING_TOKEN));
-        resultIntent.putExtra(EXTRA_BOOLEAN_IS_REQUEST_SUCCESSFUL, success);
+        resultIntent.putExtra(EXTRA_STRING_TOKEN, resultToken);
         resultIntent.putExtra(EXTRA_PARCELABLE_RESPONSE, response);
-        LocalBroadcastManager.getInstance(context).sendBroadcast(resultIntent);
+        resultIntent.putExtra(EXTRA_BOOLEAN_IS_REQUEST_SUCCESSFUL, success);
+        manager.sendBroadcast(resultIntent);
+
+        /*
+         * The LocalBroadcastManager delivers broadcasts in a message it has already posted to the
+         * main thread by now, so this runs after every receiver has had the result.
+         */
+        new Handler(context.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                RequestResultRegistry.remove(resultToken);
+            }
+        });
+    }
+
+    /**
+     * Gets the result of the request that a {@link #ACTION_REQUEST_FINISHED} broadcast is for.
+     *
+     * @param intent the broadcast Intent.
+     * @return the result of the request, or null if the broadcast has already been delivered and
+     *         the result dropped from the {@link RequestResultRegistry}.
+     */
+    @Nullable
+    public static RequestResultRegistry.Result getResult(@NonNull final Intent intent) {
+        final String token = intent.getStringExtra(EXTRA_STRING_TOKEN);
+
+        if (null == token) {
+            return null;
+        }
+
+        return RequestResultRegistry.get(token);
     }
 }
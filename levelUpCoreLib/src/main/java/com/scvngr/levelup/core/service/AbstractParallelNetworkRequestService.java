@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.service;
+
+import android.annotation.TargetApi;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.net.AbstractRequest;
+import com.scvngr.levelup.core.net.LevelUpConnection;
+import com.scvngr.levelup.core.net.LevelUpResponse;
+import com.scvngr.levelup.core.net.RequestPriority;
+import com.scvngr.levelup.core.util.EnvironmentUtil;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A variant of {@link AbstractNetworkRequestService} that sends requests on a pool of up to
+ * {@link #getMaxParallelism()} threads instead of one, so that a slow request doesn't hold up the
+ * others. It is started with the same extras and reports results the same way, by broadcasting
+ * {@link AbstractNetworkRequestService#ACTION_REQUEST_FINISHED} with the result in the
+ * {@link RequestResultRegistry}, so subclasses of {@link AbstractNetworkRequestService} can switch
+ * to this by changing their superclass.
+ * </p>
+ * <p>
+ * Requests are not sent in the order they were started in. Requests that must be sent in order
+ * should be given the same key by {@link #getSerialKey(Intent)}; requests with the same key are
+ * sent one at a time, in the order the service was started with them. Since
+ * {@link #handleResponse(Context, LevelUpResponse)} can be called on several threads at once, it
+ * must be thread safe.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.INTERNAL)
+public abstract class AbstractParallelNetworkRequestService extends Service {
+
+    /**
+     * The default value of {@link #getMaxParallelism()}.
+     */
+    public static final int DEFAULT_MAX_PARALLELISM = 4;
+
+    /**
+     * @see AbstractNetworkRequestService#ACTION_REQUEST_FINISHED
+     */
+    public static final String ACTION_REQUEST_FINISHED =
+            AbstractNetworkRequestService.ACTION_REQUEST_FINISHED;
+
+    /**
+     * @see AbstractNetworkRequestService#EXTRA_PARCELABLE_REQUEST
+     */
+    /* package */static final String EXTRA_PARCELABLE_REQUEST =
+            AbstractNetworkRequestService.EXTRA_PARCELABLE_REQUEST;
+
+    /**
+     * @see AbstractNetworkRequestService#EXTRA_STRING_TOKEN
+     */
+    public static final String EXTRA_STRING_TOKEN =
+            AbstractNetworkRequestService.EXTRA_STRING_TOKEN;
+
+    /**
+     * @see AbstractNetworkRequestService#EXTRA_BOOLEAN_IS_REQUEST_SUCCESSFUL
+     */
+    public static final String EXTRA_BOOLEAN_IS_REQUEST_SUCCESSFUL =
+            AbstractNetworkRequestService.EXTRA_BOOLEAN_IS_REQUEST_SUCCESSFUL;
+
+    /**
+     * Number of seconds an idle worker thread is kept alive. Only applies on SDK 9 and above, where
+     * core threads can time out.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    @NonNull
+    private final Object mLock = new Object();
+
+    /**
+     * Created on first use, since {@link #getMaxParallelism()} can't be called from the
+     * constructor.
+     */
+    @Nullable
+    @GuardedBy("mLock")
+    private ThreadPoolExecutor mExecutor;
+
+    /**
+     * Requests waiting for an earlier request with the same key to finish, by key. A key is
+     * present while a request with that key is queued or being sent.
+     */
+    @NonNull
+    @GuardedBy("mLock")
+    private final Map<String, LinkedList<Runnable>> mSerialQueues =
+            new HashMap<String, LinkedList<Runnable>>();
+
+    /**
+     * The number of requests that have been started but not finished.
+     */
+    @GuardedBy("mLock")
+    private int mPendingCount = 0;
+
+    /**
+     * The ID of the latest start request, which is passed to {@link #stopSelf(int)} once all of
+     * the requests have finished.
+     */
+    @GuardedBy("mLock")
+    private int mLastStartId = 0;
+
+    /**
+     * Handle the response from the server. This may be called on several threads at once.
+     *
+     * @param context the Application context.
+     * @param response the {@link LevelUpResponse} received from the server.
+     * @return true if the response indicated a successful request.
+     */
+    protected abstract boolean handleResponse(@NonNull final Context context,
+            @NonNull final LevelUpResponse response);
+
+    /**
+     * Decodes the response into whatever receivers of the broadcast need, as for
+     * {@link AbstractNetworkRequestService#decodeResponse(Context, LevelUpResponse)}. This may be
+     * called on several threads at once. Default implementation returns null.
+     *
+     * @param context the Application context.
+     * @param response the {@link LevelUpResponse} received from the server.
+     * @return the decoded response, or null.
+     */
+    @Nullable
+    protected Object decodeResponse(@NonNull final Context context,
+            @NonNull final LevelUpResponse response) {
+        return null;
+    }
+
+    /**
+     * Get the request to send with this service. Default implementation gets the request from the
+     * intent (stored in key {@link #EXTRA_PARCELABLE_REQUEST}). Subclasses can override this to
+     * build a request differently.
+     *
+     * @param intent the intent used to start the service.
+     * @return {@link AbstractRequest} to send with the service.
+     */
+    @Nullable
+    protected AbstractRequest getRequest(@NonNull final Intent intent) {
+        return intent.getParcelableExtra(EXTRA_PARCELABLE_REQUEST);
+    }
+
+    /**
+     * Get the priority to send requests with. Default implementation returns
+     * {@link RequestPriority#NORMAL}.
+     *
+     * @return the {@link RequestPriority} of the requests sent by this service.
+     */
+    @NonNull
+    protected RequestPriority getPriority() {
+        return RequestPriority.NORMAL;
+    }
+
+    /**
+     * Get the maximum number of requests sent at once. This is called once, when the first
+     * request is started. Default implementation returns {@link #DEFAULT_MAX_PARALLELISM}.
+     *
+     * @return the maximum number of requests sent at once, at least 1.
+     */
+    protected int getMaxParallelism() {
+        return DEFAULT_MAX_PARALLELISM;
+    }
+
+    /**
+     * Get the key of the requests that {@code intent}'s request must be sent in order with.
+     * Default implementation returns null, so that requests are sent in any order.
+     *
+     * @param intent the intent used to start the service.
+     * @return the key, or null if the request can be sent in any order.
+     */
+    @Nullable
+    protected String getSerialKey(@NonNull final Intent intent) {
+        return null;
+    }
+
+    /**
+     * Gets a unique token that identifies a request, as for
+     * {@link AbstractNetworkRequestService#getToken()}.
+     *
+     * @return the token to use to identify a request.
+     */
+    @NonNull
+    protected static String getToken() {
+        return AbstractNetworkRequestService.getToken();
+    }
+
+    @Override
+    @Nullable
+    public IBinder onBind(final Intent intent) {
+        return null;
+    }
+
+    @Override
+    public int onStartCommand(@Nullable final Intent intent, final int flags, final int startId) {
+        synchronized (mLock) {
+            mPendingCount++;
+            mLastStartId = startId;
+        }
+
+        final Runnable onFinished = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mLock) {
+                    mPendingCount--;
+
+                    if (0 == mPendingCount) {
+                        // Doesn't stop the service if it has been started again since.
+                        stopSelf(mLastStartId);
+                    }
+                }
+            }
+        };
+
+        if (null == intent) {
+            onFinished.run();
+        } else {
+            submit(getApplicationContext(), intent, onFinished);
+        }
+
+        // Like AbstractNetworkRequestService, requests are not redelivered.
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        synchronized (mLock) {
+            if (null != mExecutor) {
+                mExecutor.shutdown();
+                mExecutor = null;
+            }
+        }
+
+        super.onDestroy();
+    }
+
+    /**
+     * Queues the request in {@code intent}.
+     *
+     * @param context the Application context.
+     * @param intent the intent that was used to start the service.
+     * @param onFinished run once the request has finished.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */void submit(@NonNull final Context context, @NonNull final Intent intent,
+            @NonNull final Runnable onFinished) {
+        final String key = getSerialKey(intent);
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    performRequest(context, intent);
+                } catch (final RuntimeException e) {
+                    LogManager.e("Error performing background request", e);
+                } finally {
+                    if (null != key) {
+                        runNext(key);
+                    }
+
+                    onFinished.run();
+                }
+            }
+        };
+
+        synchronized (mLock) {
+            if (null != key) {
+                final LinkedList<Runnable> queue = mSerialQueues.get(key);
+
+                if (null != queue) {
+                    queue.add(task);
+                    return;
+                }
+
+                mSerialQueues.put(key, new LinkedList<Runnable>());
+            }
+
+            getExecutor().execute(task);
+        }
+    }
+
+    /**
+     * Runs the next request with {@code key}, if there is one.
+     *
+     * @param key the key of the request that just finished.
+     */
+    private void runNext(@NonNull final String key) {
+        synchronized (mLock) {
+            final LinkedList<Runnable> queue = NullUtils.nonNullContract(mSerialQueues.get(key));
+
+            if (queue.isEmpty()) {
+                mSerialQueues.remove(key);
+            } else {
+                getExecutor().execute(queue.removeFirst());
+            }
+        }
+    }
+
+    /**
+     * @return the executor requests are sent on.
+     */
+    @NonNull
+    @GuardedBy("mLock")
+    private ExecutorService getExecutor() {
+        if (null == mExecutor) {
+            final int parallelism = Math.max(1, getMaxParallelism());
+
+            final ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE_SECONDS,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                            new WorkerThreadFactory(getClass().getSimpleName()));
+
+            if (EnvironmentUtil.isSdk9OrGreater()) {
+                allowCoreThreadTimeOut(executor);
+            }
+
+            mExecutor = executor;
+        }
+
+        return mExecutor;
+    }
+
+    /**
+     * Lets idle worker threads exit so that the service holds no threads between bursts of
+     * requests.
+     *
+     * @param executor the executor to configure.
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private static void allowCoreThreadTimeOut(@NonNull final ThreadPoolExecutor executor) {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Performs the request to the server, handles the response, and sends a broadcast when the
+     * process is done.
+     *
+     * @param context the Application context.
+     * @param intent the intent that was used to start the service.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */void performRequest(@NonNull final Context context, @NonNull final Intent intent) {
+        final AbstractRequest request = getRequest(intent);
+
+        if (null != request) {
+            LogManager.v("Sending request in the background: %s", request);
+
+            final LevelUpConnection connection = LevelUpConnection.newInstance(context);
+            connection.setPriority(getPriority());
+            final LevelUpResponse response = connection.send(request);
+
+            LogManager.v("Response from background request %s", response.getStatus());
+            final boolean success = handleResponse(context, response);
+            AbstractNetworkRequestService.onRequestFinished(context,
+                    intent.getStringExtra(EXTRA_STRING_TOKEN), response,
+                    decodeResponse(context, response), success);
+        } else {
+            LogManager.w("No request passed");
+        }
+    }
+
+    /**
+     * Creates threads that run at background priority.
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        @NonNull
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @NonNull
+        private final String mName;
+
+        /**
+         * @param name the name of the service the threads work for.
+         */
+        public WorkerThreadFactory(@NonNull final String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, NullUtils.format("%s #%d", mName, mCount.getAndIncrement()));
+        }
+    }
+}
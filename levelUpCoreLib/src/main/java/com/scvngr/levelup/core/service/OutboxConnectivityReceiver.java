@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.service;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.NonNull;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.PermissionUtil;
+
+/**
+ * Starts {@link SilentNetworkRequestService} to flush the {@link RequestOutbox} when the device
+ * regains connectivity. This receiver is disabled in the manifest, and only enabled while there
+ * are requests waiting for a connection, so that the app isn't woken up by every connectivity
+ * change.
+ */
+@LevelUpApi(contract = Contract.INTERNAL)
+public final class OutboxConnectivityReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(final Context context, final Intent intent) {
+        if (ConnectivityManager.CONNECTIVITY_ACTION.equals(intent.getAction())
+                && isConnected(context)) {
+            LogManager.v("Connectivity restored, flushing outbox");
+            setEnabled(context, false);
+            SilentNetworkRequestService.startFlush(context);
+        }
+    }
+
+    /**
+     * @param context Application context.
+     * @return true if the device has a network connection, or if that can't be determined because
+     *         the app lacks {@link Manifest.permission#ACCESS_NETWORK_STATE}.
+     */
+    public static boolean isConnected(@NonNull final Context context) {
+        if (!PermissionUtil.isPermissionGranted(context,
+                Manifest.permission.ACCESS_NETWORK_STATE)) {
+            return true;
+        }
+
+        final ConnectivityManager manager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo info = manager.getActiveNetworkInfo();
+
+        return null != info && info.isConnected();
+    }
+
+    /**
+     * Enables or disables this receiver.
+     *
+     * @param context Application context.
+     * @param isEnabled true to be notified of connectivity changes.
+     */
+    public static void setEnabled(@NonNull final Context context, final boolean isEnabled) {
+        final PackageManager packageManager = context.getPackageManager();
+        final ComponentName component =
+                new ComponentName(context, OutboxConnectivityReceiver.class);
+        final int state =
+                isEnabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED
+                        : PackageManager.COMPONENT_ENABLED_STATE_DEFAULT;
+
+        if (state != packageManager.getComponentEnabledSetting(component)) {
+            packageManager.setComponentEnabledSetting(component, state,
+                    PackageManager.DONT_KILL_APP);
+        }
+    }
+}
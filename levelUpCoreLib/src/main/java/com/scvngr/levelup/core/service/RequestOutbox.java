@@ -0,0 +1,584 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.service;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.net.AbstractRequest;
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.net.AccessTokenRetriever;
+import com.scvngr.levelup.core.net.HttpMethod;
+import com.scvngr.levelup.core.net.LevelUpRequest;
+import com.scvngr.levelup.core.util.LogManager;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A queue of requests on disk, so that fire-and-forget requests survive the device being offline
+ * and the process being killed. Each request is stored in its own file with the token identifying
+ * it to broadcast receivers (see {@link AbstractNetworkRequestService#EXTRA_STRING_TOKEN}).
+ * </p>
+ * <p>
+ * Each request is resolved when it is stored, and stored as its method, final URL, headers and
+ * encoded body, so that it reads back the same in later versions of the app and the SDK. The
+ * access token is never written to disk: the request's {@link AccessTokenRetriever} is stored
+ * instead (parceled, so it must not parcel the token itself) and asked for the token when the
+ * request is sent. Apps must call {@link #clear()} when the user logs out, so that one user's
+ * requests aren't sent with the next user's token. Entries that can't be read are dropped, as are
+ * entries older than {@link #MAX_ENTRY_AGE_MILLIS}.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.INTERNAL)
+public final class RequestOutbox {
+
+    /**
+     * The name of the directory in {@link Context#getFilesDir()} that requests are stored in.
+     */
+    @NonNull
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final String DIRECTORY_NAME = "levelup_outbox";
+
+    /**
+     * The age after which stored requests are dropped without being sent.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final long MAX_ENTRY_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * The largest request body that is stored. Requests with larger bodies aren't stored.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final int MAX_BODY_LENGTH = 256 * 1024;
+
+    /**
+     * The most headers a stored request may have.
+     */
+    private static final int MAX_HEADER_COUNT = 64;
+
+    /**
+     * Version of the format of stored entries. Entries in other versions are dropped.
+     */
+    private static final int DISK_FORMAT_VERSION = 3;
+
+    /**
+     * The offset of the attempt count in an entry's file, just after the version.
+     */
+    private static final long ATTEMPT_COUNT_OFFSET = 4;
+
+    /**
+     * Format of entry file names, which sort in the order the entries were added.
+     */
+    @NonNull
+    private static final String FILE_NAME_FORMAT = "%019d-%010d";
+
+    @Nullable
+    private static volatile RequestOutbox sInstance = null;
+
+    @NonNull
+    private final File mDirectory;
+
+    /**
+     * Distinguishes entries added in the same millisecond.
+     */
+    private int mSequence = 0;
+
+    /**
+     * @param directory the directory to store requests in.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */RequestOutbox(@NonNull final File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * @param context Application context.
+     * @return the outbox of the app.
+     */
+    @NonNull
+    public static RequestOutbox getInstance(@NonNull final Context context) {
+        RequestOutbox outbox = sInstance;
+
+        if (null == outbox) {
+            synchronized (RequestOutbox.class) {
+                outbox = sInstance;
+
+                if (null == outbox) {
+                    outbox =
+                            new RequestOutbox(new File(context.getApplicationContext()
+                                    .getFilesDir(), DIRECTORY_NAME));
+                    sInstance = outbox;
+                }
+            }
+        }
+
+        return outbox;
+    }
+
+    /**
+     * Resolves a request and stores it at the end of the queue.
+     *
+     * @param context Application context.
+     * @param token the token identifying the request.
+     * @param request the request.
+     * @return true if the request was stored, false if it is invalid, its body is longer than
+     *         {@link #MAX_BODY_LENGTH}, it has an access token that can't be got again when it is
+     *         sent, or it couldn't be written.
+     */
+    public synchronized boolean add(@NonNull final Context context, @NonNull final String token,
+            @NonNull final AbstractRequest request) {
+        final String url;
+        final Map<String, String> headers;
+        final byte[] body;
+        final AccessTokenRetriever retriever = getAccessTokenRetriever(request);
+
+        try {
+            url = request.getUrl(context).toString();
+            headers = new HashMap<String, String>(request.getRequestHeaders(context));
+            body = getBody(context, request);
+        } catch (final BadRequestException e) {
+            LogManager.w("Not storing invalid request", e);
+            return false;
+        } catch (final IOException e) {
+            LogManager.w("Unable to encode request body", e);
+            return false;
+        }
+
+        if (null != headers.remove(LevelUpRequest.HEADER_AUTHORIZATION) && null == retriever) {
+            LogManager.w("Not storing a request whose access token can't be got again");
+            return false;
+        }
+
+        if (null == body || MAX_HEADER_COUNT < headers.size()) {
+            LogManager.w("Request is too large to store");
+            return false;
+        }
+
+        final byte[] retrieverBytes;
+
+        try {
+            retrieverBytes = marshall(retriever);
+        } catch (final RuntimeException e) {
+            LogManager.w("Unable to store access token retriever", e);
+            return false;
+        }
+
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            LogManager.w("Unable to create outbox directory %s", mDirectory);
+            return false;
+        }
+
+        final File file =
+                new File(mDirectory, String.format(Locale.US, FILE_NAME_FORMAT,
+                        System.currentTimeMillis(), mSequence++ & Integer.MAX_VALUE));
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(DISK_FORMAT_VERSION);
+            out.writeInt(0);
+            out.writeUTF(token);
+            out.writeUTF(request.getMethod().name());
+            out.writeUTF(url);
+            out.writeInt(headers.size());
+
+            for (final Map.Entry<String, String> header : headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeInt(retrieverBytes.length);
+            out.write(retrieverBytes);
+            out.close();
+            out = null;
+        } catch (final IOException e) {
+            LogManager.w("Unable to store request", e);
+            closeQuietly(out);
+            deleteQuietly(file);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the oldest entries without removing them. Entries that can't be read or have expired
+     * are deleted.
+     *
+     * @param maxCount the maximum number of entries to read.
+     * @return up to {@code maxCount} entries, oldest first.
+     */
+    @NonNull
+    public synchronized List<Entry> peek(final int maxCount) {
+        final List<Entry> entries = new ArrayList<Entry>();
+        final String[] names = mDirectory.list();
+
+        if (null == names) {
+            return entries;
+        }
+
+        Arrays.sort(names);
+
+        for (final String name : names) {
+            if (entries.size() >= maxCount) {
+                break;
+            }
+
+            final File file = new File(mDirectory, NullUtils.nonNullContract(name));
+            final Entry entry = read(file);
+
+            if (null == entry) {
+                deleteQuietly(file);
+            } else if (isExpired(file, System.currentTimeMillis())) {
+                LogManager.w("Dropping expired request %s", entry.getToken());
+                deleteQuietly(file);
+            } else {
+                entries.add(entry);
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Removes an entry returned by {@link #peek(int)}.
+     *
+     * @param entry the entry to remove.
+     */
+    public synchronized void remove(@NonNull final Entry entry) {
+        deleteQuietly(entry.mFile);
+    }
+
+    /**
+     * Records a failed attempt to send an entry returned by {@link #peek(int)}.
+     *
+     * @param entry the entry that failed.
+     * @return the number of failed attempts to send the entry, including this one.
+     */
+    public synchronized int recordFailure(@NonNull final Entry entry) {
+        final int attemptCount = entry.getAttemptCount() + 1;
+        RandomAccessFile file = null;
+
+        try {
+            file = new RandomAccessFile(entry.mFile, "rw");
+            file.seek(ATTEMPT_COUNT_OFFSET);
+            file.writeInt(attemptCount);
+        } catch (final IOException e) {
+            LogManager.w("Unable to record failed attempt", e);
+        } finally {
+            closeQuietly(file);
+        }
+
+        return attemptCount;
+    }
+
+    /**
+     * Deletes every stored entry without sending it. Apps must call this when the user logs out.
+     */
+    public synchronized void clear() {
+        final File[] files = mDirectory.listFiles();
+
+        if (null != files) {
+            for (final File file : files) {
+                deleteQuietly(NullUtils.nonNullContract(file));
+            }
+        }
+    }
+
+    /**
+     * @return the number of stored entries, including any that can't be read.
+     */
+    public synchronized int size() {
+        final String[] names = mDirectory.list();
+
+        return null == names ? 0 : names.length;
+    }
+
+    /**
+     * @param file the entry's file.
+     * @param nowMillis the current wall time.
+     * @return true if the entry is older than {@link #MAX_ENTRY_AGE_MILLIS}.
+     */
+    private static boolean isExpired(@NonNull final File file, final long nowMillis) {
+        final String name = file.getName();
+        final long addedAtMillis;
+
+        try {
+            addedAtMillis = Long.parseLong(name.substring(0, name.indexOf('-')));
+        } catch (final RuntimeException e) {
+            return true;
+        }
+
+        return nowMillis - addedAtMillis > MAX_ENTRY_AGE_MILLIS;
+    }
+
+    /**
+     * @param context Application context.
+     * @param request the request.
+     * @return the encoded body of {@code request}, or null if it is longer than
+     *         {@link #MAX_BODY_LENGTH}.
+     * @throws IOException if the body can't be encoded.
+     */
+    @Nullable
+    private static byte[] getBody(@NonNull final Context context,
+            @NonNull final AbstractRequest request) throws IOException {
+        final int length = request.getBodyLength(context);
+
+        if (0 >= length) {
+            return new byte[0];
+        }
+
+        if (MAX_BODY_LENGTH < length) {
+            return null;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        request.writeBodyToStream(context, out);
+
+        return MAX_BODY_LENGTH < out.size() ? null : out.toByteArray();
+    }
+
+    /**
+     * @param request the request.
+     * @return the retriever of the access token of {@code request}, or null if it has none.
+     */
+    @Nullable
+    private static AccessTokenRetriever getAccessTokenRetriever(
+            @NonNull final AbstractRequest request) {
+        if (request instanceof LevelUpRequest) {
+            return ((LevelUpRequest) request).getAccessTokenRetriever();
+        }
+
+        if (request instanceof StoredRequest) {
+            return ((StoredRequest) request).getAccessTokenRetriever();
+        }
+
+        return null;
+    }
+
+    /**
+     * @param retriever the retriever to store, or null.
+     * @return {@code retriever} parceled, or an empty array if it is null.
+     */
+    @NonNull
+    private static byte[] marshall(@Nullable final AccessTokenRetriever retriever) {
+        if (null == retriever) {
+            return new byte[0];
+        }
+
+        final Parcel parcel = Parcel.obtain();
+
+        try {
+            parcel.writeParcelable(retriever, 0);
+
+            return NullUtils.nonNullContract(parcel.marshall());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @param bytes a retriever stored by {@link #marshall(AccessTokenRetriever)}.
+     * @return the retriever, or null if {@code bytes} is empty.
+     */
+    @Nullable
+    private static AccessTokenRetriever unmarshall(@NonNull final byte[] bytes) {
+        if (0 == bytes.length) {
+            return null;
+        }
+
+        final Parcel parcel = Parcel.obtain();
+
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+
+            return parcel.readParcelable(AccessTokenRetriever.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @param file the entry's file.
+     * @return the entry, or null if it can't be read.
+     */
+    @Nullable
+    private static Entry read(@NonNull final File file) {
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (DISK_FORMAT_VERSION != in.readInt()) {
+                return null;
+            }
+
+            final int attemptCount = in.readInt();
+            final String token = NullUtils.nonNullContract(in.readUTF());
+            final HttpMethod method = HttpMethod.valueOf(in.readUTF());
+            final String url = NullUtils.nonNullContract(in.readUTF());
+            final int headerCount = in.readInt();
+
+            if (0 > headerCount || MAX_HEADER_COUNT < headerCount) {
+                return null;
+            }
+
+            final Map<String, String> headers = new HashMap<String, String>();
+
+            for (int i = 0; i < headerCount; i++) {
+                headers.put(in.readUTF(), in.readUTF());
+            }
+
+            final int bodyLength = in.readInt();
+
+            // Don't trust the length enough to allocate more than the file could hold.
+            if (0 > bodyLength || MAX_BODY_LENGTH < bodyLength || file.length() < bodyLength) {
+                return null;
+            }
+
+            final byte[] body = new byte[bodyLength];
+            in.readFully(body);
+
+            final int retrieverLength = in.readInt();
+
+            if (0 > retrieverLength || file.length() < retrieverLength) {
+                return null;
+            }
+
+            final byte[] retrieverBytes = new byte[retrieverLength];
+            in.readFully(retrieverBytes);
+
+            return new Entry(token, new StoredRequest(NullUtils.nonNullContract(method), url,
+                    headers, body, unmarshall(retrieverBytes)), attemptCount, file);
+        } catch (final IOException e) {
+            LogManager.w("Unable to read stored request", e);
+            return null;
+        } catch (final RuntimeException e) {
+            // Includes a retriever that can no longer be unparceled.
+            LogManager.w("Unable to read stored request", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * @param file the file to delete.
+     */
+    private static void deleteQuietly(@NonNull final File file) {
+        if (file.exists() && !file.delete()) {
+            LogManager.w("Unable to delete %s", file);
+        }
+    }
+
+    /**
+     * @param closeable the stream to close or null.
+     */
+    private static void closeQuietly(@Nullable final Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                // Nothing else can be done.
+            }
+        }
+    }
+
+    /**
+     * A stored request.
+     */
+    @Immutable
+    public static final class Entry {
+
+        @NonNull
+        private final String mToken;
+
+        @NonNull
+        private final AbstractRequest mRequest;
+
+        private final int mAttemptCount;
+
+        @NonNull
+        /* package */final File mFile;
+
+        /**
+         * @param token the token identifying the request.
+         * @param request the request.
+         * @param attemptCount the number of failed attempts to send the request.
+         * @param file the file the entry is stored in.
+         */
+        /* package */Entry(@NonNull final String token, @NonNull final AbstractRequest request,
+                final int attemptCount, @NonNull final File file) {
+            mToken = token;
+            mRequest = request;
+            mAttemptCount = attemptCount;
+            mFile = file;
+        }
+
+        /**
+         * @return the number of failed attempts to send the request when it was read.
+         */
+        public int getAttemptCount() {
+            return mAttemptCount;
+        }
+
+        /**
+         * @return the token identifying the request.
+         */
+        @NonNull
+        public String getToken() {
+            return mToken;
+        }
+
+        /**
+         * @return the request.
+         */
+        @NonNull
+        public AbstractRequest getRequest() {
+            return mRequest;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.service;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
+import com.scvngr.levelup.core.net.LevelUpResponse;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Holds the results of requests sent by an {@link AbstractNetworkRequestService}, keyed by the
+ * token in {@link AbstractNetworkRequestService#EXTRA_STRING_TOKEN}. Receivers of
+ * {@link AbstractNetworkRequestService#ACTION_REQUEST_FINISHED} are all in the same process as the
+ * service, so they look the result up here rather than having the response (and whatever the
+ * service decoded from it) parceled into the broadcast and parsed again.
+ * </p>
+ * <p>
+ * Several receivers may look up the same result, so results are never removed when they are read.
+ * Instead the service removes each result once its broadcast has been delivered to every receiver,
+ * so a receiver must look up its result in {@code onReceive} rather than later.
+ * </p>
+ */
+@ThreadSafe
+@LevelUpApi(contract = Contract.INTERNAL)
+public final class RequestResultRegistry {
+
+    /**
+     * Results by token, of the requests whose broadcasts haven't been delivered yet.
+     */
+    @NonNull
+    @GuardedBy("RESULTS")
+    private static final Map<String, Result> RESULTS = new HashMap<String, Result>();
+
+    /**
+     * @param token the token identifying the request.
+     * @param result the result of the request.
+     */
+    /* package */static void put(@NonNull final String token, @NonNull final Result result) {
+        synchronized (RESULTS) {
+            RESULTS.put(token, result);
+        }
+    }
+
+    /**
+     * @param token the token identifying the request.
+     * @return the result of the request, or null if there is none or it has been dropped.
+     */
+    @Nullable
+    public static Result get(@NonNull final String token) {
+        synchronized (RESULTS) {
+            return RESULTS.get(token);
+        }
+    }
+
+    /**
+     * Drops the result of a request.
+     *
+     * @param token the token identifying the request.
+     * @return the result of the request, or null if there is none or it has been dropped.
+     */
+    @Nullable
+    /* package */static Result remove(@NonNull final String token) {
+        synchronized (RESULTS) {
+            return RESULTS.remove(token);
+        }
+    }
+
+    /**
+     * Drops all results.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static void clear() {
+        synchronized (RESULTS) {
+            RESULTS.clear();
+        }
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private RequestResultRegistry() {
+        throw new UnsupportedOperationException("This class is non-instantiable");
+    }
+
+    /**
+     * The result of a request.
+     */
+    @Immutable
+    public static final class Result {
+
+        @NonNull
+        private final LevelUpResponse mResponse;
+
+        @Nullable
+        private final Object mModel;
+
+        private final boolean mIsSuccessful;
+
+        /**
+         * @param response the response received from the server.
+         * @param model what the service decoded from {@code response}, or null.
+         * @param isSuccessful true if the service handled the response as successful.
+         */
+        /* package */Result(@NonNull final LevelUpResponse response, @Nullable final Object model,
+                final boolean isSuccessful) {
+            mResponse = response;
+            mModel = model;
+            mIsSuccessful = isSuccessful;
+        }
+
+        /**
+         * @return the response received from the server.
+         */
+        @NonNull
+        public LevelUpResponse getResponse() {
+            return mResponse;
+        }
+
+        /**
+         * @param <T> the type of the model.
+         * @param type the class of the model.
+         * @return what the service decoded from the response (see
+         *         {@link AbstractNetworkRequestService#decodeResponse}), or null if it decoded
+         *         nothing.
+         * @throws ClassCastException if the model isn't a {@code type}.
+         */
+        @Nullable
+        public <T> T getModel(@NonNull final Class<T> type) {
+            return type.cast(mModel);
+        }
+
+        /**
+         * @return true if the service handled the response as successful.
+         */
+        public boolean isSuccessful() {
+            return mIsSuccessful;
+        }
+    }
+}
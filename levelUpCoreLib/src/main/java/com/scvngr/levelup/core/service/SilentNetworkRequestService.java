@@ -13,23 +13,80 @@
  */
 package com.scvngr.levelup.core.service;
 
+import android.app.AlarmManager;
+import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
 import com.scvngr.levelup.core.annotation.LevelUpApi;
 import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.annotation.VisibleForTesting;
+import com.scvngr.levelup.core.annotation.VisibleForTesting.Visibility;
 import com.scvngr.levelup.core.net.AbstractRequest;
+import com.scvngr.levelup.core.net.CircuitBreakerTransport.CircuitOpenException;
+import com.scvngr.levelup.core.net.LevelUpConnection;
 import com.scvngr.levelup.core.net.LevelUpResponse;
+import com.scvngr.levelup.core.net.LevelUpStatus;
+import com.scvngr.levelup.core.net.RequestPriority;
+import com.scvngr.levelup.core.util.LogManager;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Intent Service to send requests in the background that we do not care to read the response of.
+ * <p>
+ * Requests are stored in the {@link RequestOutbox} before they are sent, so that they aren't lost
+ * if the device is offline or the process is killed. Whenever the service runs, it sends every
+ * stored request back to back, so that the radio wakes up once for all of them. If the device is
+ * offline, the requests are kept until {@link OutboxConnectivityReceiver} sees the connection come
+ * back. If a request fails to reach the server while the device is online, the service tries again
+ * after a delay that doubles with each failed attempt, and drops the request after
+ * {@link #MAX_ATTEMPTS} attempts so that it doesn't hold back the requests after it. A broadcast
+ * of {@link #ACTION_REQUEST_FINISHED} is sent for each request once it has been sent or dropped.
+ * </p>
+ * <p>
+ * A request that isn't idempotent (see {@link com.scvngr.levelup.core.net.HttpMethod#isIdempotent})
+ * is only sent again when it is known that the server never saw it, for example when the
+ * connection couldn't be opened. If it failed after it may have reached the server, such as on a
+ * read timeout, it is dropped and reported as failed rather than risk the server applying it
+ * twice.
+ * </p>
  */
 @LevelUpApi(contract = Contract.INTERNAL)
 public final class SilentNetworkRequestService extends AbstractNetworkRequestService {
 
     /**
-     * Starts the {@link SilentNetworkRequestService} with the request passed.
+     * The maximum number of stored requests read from the outbox at a time.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final int MAX_BATCH_SIZE = 20;
+
+    /**
+     * The number of attempts after which a request that keeps failing to reach the server is
+     * dropped.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static final int MAX_ATTEMPTS = 8;
+
+    /**
+     * The delay before the outbox is sent again after the first failed attempt.
+     */
+    private static final long INITIAL_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The longest delay before the outbox is sent again.
+     */
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Starts the {@link SilentNetworkRequestService} with the request passed. A request that
+     * isn't idempotent is never sent twice to the server, so it may be dropped without knowing
+     * whether the server applied it (see the class documentation).
      *
      * @param context the application context.
      * @param request the {@link AbstractRequest} to send.
@@ -42,6 +99,179 @@ public final class SilentNetworkRequestService extends AbstractNetworkRequestSer
         context.startService(intent);
     }
 
+    /**
+     * Starts the {@link SilentNetworkRequestService} to send the requests stored in the
+     * {@link RequestOutbox}.
+     *
+     * @param context the application context.
+     */
+    public static void startFlush(@NonNull final Context context) {
+        context.startService(new Intent(context, SilentNetworkRequestService.class));
+    }
+
+    @Override
+    /* package */void performRequest(@NonNull final Context context, @NonNull final Intent intent) {
+        final RequestOutbox outbox = RequestOutbox.getInstance(context);
+        final AbstractRequest request = getRequest(intent);
+
+        if (null != request) {
+            String token = intent.getStringExtra(EXTRA_STRING_TOKEN);
+
+            if (null == token) {
+                token = getToken();
+            }
+
+            if (!outbox.add(context, token, request)) {
+                // Send it once, as if there were no outbox.
+                super.performRequest(context, intent);
+            }
+        }
+
+        flush(context, outbox);
+    }
+
+    /**
+     * Sends the requests stored in {@code outbox}, oldest first, until it is empty or a request
+     * fails to reach the server. In the latter case, another attempt is scheduled.
+     *
+     * @param context the Application context.
+     * @param outbox the outbox to send requests from.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */void flush(@NonNull final Context context, @NonNull final RequestOutbox outbox) {
+        List<RequestOutbox.Entry> batch = outbox.peek(MAX_BATCH_SIZE);
+
+        while (!batch.isEmpty()) {
+            if (!OutboxConnectivityReceiver.isConnected(context)) {
+                LogManager.v("Offline, holding %d requests", outbox.size());
+                OutboxConnectivityReceiver.setEnabled(context, true);
+                return;
+            }
+
+            LogManager.v("Sending %d stored requests", batch.size());
+
+            for (final RequestOutbox.Entry entry : batch) {
+                final LevelUpConnection connection = LevelUpConnection.newInstance(context);
+                connection.setPriority(getPriority());
+                final LevelUpResponse response = connection.send(entry.getRequest());
+
+                if (LevelUpStatus.ERROR_NETWORK == response.getStatus()) {
+                    if (!isSafeToResend(entry.getRequest(), response)) {
+                        LogManager.w("Request %s may have reached the server, not sending it again",
+                                entry.getToken());
+                    } else {
+                        final int attemptCount = outbox.recordFailure(entry);
+
+                        if (MAX_ATTEMPTS > attemptCount) {
+                            LogManager.v("Request didn't reach the server, holding %d requests",
+                                    outbox.size());
+                            scheduleFlush(context, attemptCount);
+                            OutboxConnectivityReceiver.setEnabled(context, true);
+                            return;
+                        }
+
+                        LogManager.w("Dropping request %s after %d attempts", entry.getToken(),
+                                attemptCount);
+                    }
+
+                    outbox.remove(entry);
+                    onRequestFinished(context, entry.getToken(), response, false);
+                    continue;
+                }
+
+                outbox.remove(entry);
+                onRequestFinished(context, entry.getToken(), response,
+                        handleResponse(context, response));
+            }
+
+            batch = outbox.peek(MAX_BATCH_SIZE);
+        }
+
+        cancelScheduledFlush(context);
+        OutboxConnectivityReceiver.setEnabled(context, false);
+    }
+
+    /**
+     * @param request a request that failed with {@link LevelUpStatus#ERROR_NETWORK}.
+     * @param response the response to {@code request}.
+     * @return true if sending {@code request} again can't make the server apply it twice.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static boolean isSafeToResend(@NonNull final AbstractRequest request,
+            @NonNull final LevelUpResponse response) {
+        if (request.getMethod().isIdempotent()) {
+            return true;
+        }
+
+        final Exception error = response.getError();
+
+        // The server never saw requests that failed to connect or were rejected by the client.
+        return error instanceof ConnectException || error instanceof UnknownHostException
+                || error instanceof CircuitOpenException;
+    }
+
+    /**
+     * @param attemptCount the number of failed attempts to send the request at the head of the
+     *        outbox.
+     * @return the delay before the outbox is sent again.
+     */
+    @VisibleForTesting(visibility = Visibility.PRIVATE)
+    /* package */static long getRetryDelayMillis(final int attemptCount) {
+        final int doublings = Math.min(Math.max(0, attemptCount - 1), Long.SIZE - 2);
+
+        return Math.min(MAX_RETRY_DELAY_MILLIS, INITIAL_RETRY_DELAY_MILLIS << doublings);
+    }
+
+    /**
+     * Schedules the outbox to be sent again, in case the device stays online and
+     * {@link OutboxConnectivityReceiver} is never triggered.
+     *
+     * @param context the Application context.
+     * @param attemptCount the number of failed attempts to send the request at the head of the
+     *        outbox.
+     */
+    private static void scheduleFlush(@NonNull final Context context, final int attemptCount) {
+        // Not a wakeup alarm: the requests can wait until the device is awake anyway.
+        getAlarmManager(context).set(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + getRetryDelayMillis(attemptCount),
+                getFlushIntent(context));
+    }
+
+    /**
+     * Cancels the alarm set by {@link #scheduleFlush(Context, int)}.
+     *
+     * @param context the Application context.
+     */
+    private static void cancelScheduledFlush(@NonNull final Context context) {
+        getAlarmManager(context).cancel(getFlushIntent(context));
+    }
+
+    /**
+     * @param context the Application context.
+     * @return the {@link AlarmManager}.
+     */
+    @NonNull
+    private static AlarmManager getAlarmManager(@NonNull final Context context) {
+        return (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+
+    /**
+     * @param context the Application context.
+     * @return the intent that starts a flush of the outbox.
+     */
+    @NonNull
+    private static PendingIntent getFlushIntent(@NonNull final Context context) {
+        return PendingIntent.getService(context, 0, new Intent(context,
+                SilentNetworkRequestService.class), PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    @Override
+    @NonNull
+    protected RequestPriority getPriority() {
+        // No one is waiting on these requests.
+        return RequestPriority.BACKGROUND;
+    }
+
     @Override
     protected boolean handleResponse(@NonNull final Context context,
             @NonNull final LevelUpResponse response) {
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.service;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.scvngr.levelup.core.annotation.LevelUpApi;
+import com.scvngr.levelup.core.annotation.LevelUpApi.Contract;
+import com.scvngr.levelup.core.model.AccessToken;
+import com.scvngr.levelup.core.net.AbstractRequest;
+import com.scvngr.levelup.core.net.AccessTokenRetriever;
+import com.scvngr.levelup.core.net.HttpMethod;
+import com.scvngr.levelup.core.net.LevelUpRequest;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import net.jcip.annotations.Immutable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A request read back from the {@link RequestOutbox}. It holds the request as it was resolved when
+ * it was stored: the final URL, the headers and the encoded body. The access token isn't stored;
+ * it is added to the headers from the request's {@link AccessTokenRetriever} when the request is
+ * sent.
+ */
+@Immutable
+@LevelUpApi(contract = Contract.INTERNAL)
+public final class StoredRequest extends AbstractRequest {
+
+    /**
+     * Implements the {@code Parcelable} interface.
+     */
+    public static final Creator<StoredRequest> CREATOR = new Creator<StoredRequest>() {
+
+        @Override
+        public StoredRequest createFromParcel(final Parcel in) {
+            return new StoredRequest(NullUtils.nonNullContract(in));
+        }
+
+        @Override
+        public StoredRequest[] newArray(final int size) {
+            return new StoredRequest[size];
+        }
+    };
+
+    /**
+     * The encoded body. This isn't modified after construction.
+     */
+    @NonNull
+    private final byte[] mBody;
+
+    /**
+     * Gets the access token when the request is sent, or null if the request isn't authenticated.
+     */
+    @Nullable
+    private final AccessTokenRetriever mAccessTokenRetriever;
+
+    /**
+     * @param method the method of the request.
+     * @param url the final URL, including the query string.
+     * @param headers the headers of the request, other than the access token.
+     * @param body the encoded body, which is not copied.
+     * @param retriever gets the access token when the request is sent, or null.
+     */
+    /* package */StoredRequest(@NonNull final HttpMethod method, @NonNull final String url,
+            @NonNull final Map<String, String> headers, @NonNull final byte[] body,
+            @Nullable final AccessTokenRetriever retriever) {
+        super(method, url, headers, null);
+        mBody = body;
+        mAccessTokenRetriever = retriever;
+    }
+
+    /**
+     * Constructor for parceling.
+     *
+     * @param in the parcel to read from.
+     */
+    public StoredRequest(@NonNull final Parcel in) {
+        super(in);
+        mBody = NullUtils.nonNullContract(in.createByteArray());
+        mAccessTokenRetriever = in.readParcelable(StoredRequest.class.getClassLoader());
+    }
+
+    /**
+     * @return the retriever that gets the access token when the request is sent, or null if the
+     *         request isn't authenticated.
+     */
+    @Nullable
+    public AccessTokenRetriever getAccessTokenRetriever() {
+        return mAccessTokenRetriever;
+    }
+
+    @Override
+    @NonNull
+    public Map<String, String> getRequestHeaders(@NonNull final Context context) {
+        final Map<String, String> headers = super.getRequestHeaders(context);
+        final AccessToken token =
+                null == mAccessTokenRetriever ? null : mAccessTokenRetriever
+                        .getAccessToken(context);
+
+        if (null == token) {
+            return headers;
+        }
+
+        final HashMap<String, String> temp = new HashMap<String, String>(headers);
+        temp.put(LevelUpRequest.HEADER_AUTHORIZATION, String.format(Locale.US,
+                LevelUpRequest.AUTH_TOKEN_TYPE_FORMAT, token.getAccessToken()));
+
+        return NullUtils.nonNullContract(Collections.unmodifiableMap(temp));
+    }
+
+    @Override
+    public void writeBodyToStream(@NonNull final Context context,
+            @NonNull final OutputStream stream) throws IOException {
+        stream.write(mBody);
+    }
+
+    @Override
+    public int getBodyLength(@NonNull final Context context) {
+        return mBody.length;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        super.writeToParcel(dest, flags);
+        dest.writeByteArray(mBody);
+        dest.writeParcelable(mAccessTokenRetriever, flags);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + Arrays.hashCode(mBody))
+                + (null == mAccessTokenRetriever ? 0 : mAccessTokenRetriever.hashCode());
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!super.equals(obj) || !(obj instanceof StoredRequest)) {
+            return false;
+        }
+
+        final StoredRequest other = (StoredRequest) obj;
+
+        if (null == mAccessTokenRetriever ? null != other.mAccessTokenRetriever
+                : !mAccessTokenRetriever.equals(other.mAccessTokenRetriever)) {
+            return false;
+        }
+
+        return Arrays.equals(mBody, other.mBody);
+    }
+}
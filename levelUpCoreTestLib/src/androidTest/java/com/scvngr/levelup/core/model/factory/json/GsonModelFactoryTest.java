@@ -29,11 +29,17 @@ import com.scvngr.levelup.core.model.User;
 import com.scvngr.levelup.core.model.UserFixture;
 import com.scvngr.levelup.core.util.NullUtils;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 
 import net.jcip.annotations.Immutable;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
 /**
  * Tests {@link com.scvngr.levelup.core.model.factory.json.GsonModelFactory} with a few of the models. Once these are moved over to individual
  * models, this class can be removed.
@@ -172,6 +178,63 @@ public final class GsonModelFactoryTest extends AndroidTestCase {
         }
     }
 
+    /**
+     * Tests {@link GsonModelFactory#newDecoder()} with a wrapped model.
+     *
+     * @throws IOException if the decoder throws.
+     */
+    public void testNewDecoder_wrapped() throws IOException {
+        final GsonModelFactory<Product> factory =
+                new GsonModelFactory<Product>("product", Product.class, true);
+        final JsonObject container = new JsonObject();
+        container.add("product", getFullProductFixture());
+
+        final Product product =
+                factory.newDecoder().decode(new JsonReader(new StringReader(container.toString())));
+
+        assertEquals(123, product.getId());
+        assertEquals("widget", product.getName());
+        assertEquals("This makes widgets", product.getDescription());
+    }
+
+    /**
+     * Tests {@link GsonModelFactory#newListDecoder()}.
+     *
+     * @throws IOException if the decoder throws.
+     */
+    public void testNewListDecoder() throws IOException {
+        final GsonModelFactory<Product> factory =
+                new GsonModelFactory<Product>("product", Product.class, false);
+        final JsonArray array = new JsonArray();
+        array.add(getMinimalProductFixture());
+        array.add(getFullProductFixture());
+
+        final List<Product> products =
+                factory.newListDecoder().decode(
+                        new JsonReader(new StringReader(array.toString())));
+
+        assertEquals(2, products.size());
+        assertNull(products.get(0).getDescription());
+        assertEquals("This makes widgets", products.get(1).getDescription());
+    }
+
+    /**
+     * Tests {@link GsonModelFactory#newDecoder()} with a model missing a required field.
+     */
+    public void testNewDecoder_invalidNoName() {
+        final GsonModelFactory<Product> factory =
+                new GsonModelFactory<Product>("product", Product.class, false);
+        final JsonObject jo = getMinimalProductFixture();
+        jo.remove("name");
+
+        try {
+            factory.newDecoder().decode(new JsonReader(new StringReader(jo.toString())));
+            fail("Exception expected to be thrown");
+        } catch (final IOException e) {
+            // Expected exception.
+        }
+    }
+
     @NonNull
     private JsonObject getMinimalProductFixture() {
         final JsonObject jo = new JsonObject();
@@ -58,6 +58,15 @@ public abstract class AbstractRequestBodyTest<T extends RequestBody> extends And
         assertTrue("Content type must have a /", contentType.contains("/"));
     }
 
+    /**
+     * Tests that the fixture isn't encoded, since only {@link GzipRequestBody} encodes its
+     * content.
+     */
+    @SmallTest
+    public void testGetContentEncoding() {
+        assertNull(getFixture().getContentEncoding());
+    }
+
     /**
      * Tests that the fixture survives parceling.
      */
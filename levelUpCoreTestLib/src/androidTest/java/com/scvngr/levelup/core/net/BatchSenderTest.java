@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.BatchSender.BatchCallback;
+import com.scvngr.levelup.core.net.BatchSender.BatchResult;
+import com.scvngr.levelup.core.net.BatchSender.RequestBuilder;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.BatchSender}.
+ */
+public final class BatchSenderTest extends SupportAndroidTestCase {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @NonNull
+    private final RequestBuilder<String> mBuilder = new RequestBuilder<String>() {
+        @Override
+        public AbstractRequest buildRequest(@NonNull final String key) {
+            return new LevelUpRequest(getContext(), HttpMethod.GET,
+                    LevelUpRequest.API_VERSION_CODE_V14, key, null, null);
+        }
+    };
+
+    /**
+     * Tests that an invalid limit is rejected.
+     */
+    @SmallTest
+    public void testConstructor_invalidParallelism() {
+        try {
+            new BatchSender(new LevelUpConnection(getContext()), 0);
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+            // Expected exception.
+        }
+    }
+
+    /**
+     * Tests that every response is delivered and failures are reported without stopping the
+     * batch.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testSend_partialFailure() throws Exception {
+        final LevelUpConnection connection = new LevelUpConnection(getContext());
+        final List<String> keys = Arrays.asList("a", "b", "c", "d");
+
+        for (final String key : keys) {
+            connection.setNextResponse(mBuilder.buildRequest(key).getUrlString(getContext()),
+                    new LevelUpResponse(key, "b".equals(key) ? LevelUpStatus.ERROR_SERVER
+                            : LevelUpStatus.OK));
+        }
+
+        final Set<String> delivered = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicReference<BatchResult<String>> completed =
+                new AtomicReference<BatchResult<String>>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final BatchResult<String> result =
+                new BatchSender(connection, 2).send(keys, mBuilder, new BatchCallback<String>() {
+                    @Override
+                    public void onResponse(@NonNull final String key,
+                            @NonNull final AbstractRequest request,
+                            @NonNull final LevelUpResponse response) {
+                        assertEquals(key, response.getData());
+                        delivered.add(key);
+                    }
+
+                    @Override
+                    public void onComplete(@NonNull final BatchResult<String> batchResult) {
+                        completed.set(batchResult);
+                        latch.countDown();
+                    }
+                }, (Executor) null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(result, completed.get());
+        assertEquals(new HashSet<String>(keys), delivered);
+        assertEquals(new HashSet<String>(keys), result.getResponses().keySet());
+        assertEquals(Arrays.asList("b"), result.getFailedKeys());
+        assertFalse(result.isSuccessful());
+    }
+
+    /**
+     * Tests that keys whose request can't be built fail without stopping the batch, whether they
+     * are built when the batch starts or when a response arrives.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testSend_buildRequestThrows() throws Exception {
+        final LevelUpConnection connection = new LevelUpConnection(getContext());
+        final List<String> keys = Arrays.asList("a", "bad1", "c", "bad2", "bad3");
+        connection.setNextResponse(mBuilder.buildRequest("a").getUrlString(getContext()),
+                new LevelUpResponse("a", LevelUpStatus.OK));
+        connection.setNextResponse(mBuilder.buildRequest("c").getUrlString(getContext()),
+                new LevelUpResponse("c", LevelUpStatus.OK));
+
+        final RequestBuilder<String> builder = new RequestBuilder<String>() {
+            @Override
+            public AbstractRequest buildRequest(@NonNull final String key) {
+                if (key.startsWith("bad")) {
+                    throw new IllegalStateException(key);
+                }
+
+                return mBuilder.buildRequest(key);
+            }
+        };
+
+        final BatchResult<String> result =
+                new BatchSender(connection, 1).send(keys, builder, null, (Executor) null).get(
+                        TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertEquals(new HashSet<String>(keys), result.getResponses().keySet());
+        assertEquals(new HashSet<String>(Arrays.asList("bad1", "bad2", "bad3")),
+                new HashSet<String>(result.getFailedKeys()));
+    }
+
+    /**
+     * Tests that an empty batch completes immediately.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testSend_empty() throws Exception {
+        final BatchResult<String> result =
+                new BatchSender(new LevelUpConnection(getContext())).send(
+                        Collections.<String> emptyList(), mBuilder, null, (Executor) null).get(
+                        TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue(result.getResponses().isEmpty());
+        assertTrue(result.isSuccessful());
+    }
+}
@@ -19,9 +19,16 @@ import android.test.suitebuilder.annotation.SmallTest;
 import com.scvngr.levelup.core.net.BufferedResponse.ResponseTooLargeException;
 import com.scvngr.levelup.core.test.SupportAndroidTestCase;
 
+import org.apache.http.protocol.HTTP;
+
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Tests {@link com.scvngr.levelup.core.net.BufferedResponse}.
@@ -145,6 +152,112 @@ public final class BufferedResponseTest extends SupportAndroidTestCase {
         }
     }
 
+    /**
+     * Tests {@link BufferedResponse#readBytes(InputStream, int)} with the expected length.
+     */
+    @SmallTest
+    public void testReadBytes_expectedLength() throws IOException {
+        final byte[] data = ONE_KB_OF_TEXT.getBytes("UTF-8");
+
+        assertTrue(Arrays.equals(data,
+                BufferedResponse.readBytes(new ByteArrayInputStream(data), data.length)));
+    }
+
+    /**
+     * Tests {@link BufferedResponse#readBytes(InputStream, int)} with an expected length that
+     * doesn't match the stream.
+     */
+    @SmallTest
+    public void testReadBytes_wrongExpectedLength() throws IOException {
+        final byte[] data = ONE_KB_OF_TEXT.getBytes("UTF-8");
+
+        assertTrue(Arrays.equals(data,
+                BufferedResponse.readBytes(new ByteArrayInputStream(data), data.length - 1)));
+        assertTrue(Arrays.equals(data,
+                BufferedResponse.readBytes(new ByteArrayInputStream(data), data.length + 1)));
+        assertTrue(Arrays.equals(data,
+                BufferedResponse.readBytes(new ByteArrayInputStream(data), 0)));
+        assertEquals(0,
+                BufferedResponse.readBytes(new ByteArrayInputStream(new byte[0]), -1).length);
+    }
+
+    /**
+     * Tests {@link BufferedResponse#readBytes(InputStream, int)} with an expected length over the
+     * limit.
+     */
+    @SmallTest
+    public void testReadBytes_expectedLengthTooLarge() {
+        try {
+            BufferedResponse.readBytes(new ByteArrayInputStream(new byte[0]),
+                    BufferedResponse.MAX_DATA_SIZE_BYTES + 1);
+            fail("readBytes() did not throw the proper exception");
+        } catch (final IOException e) {
+            assertTrue(e instanceof ResponseTooLargeException);
+        }
+    }
+
+    /**
+     * Tests reading a {@link StreamingResponse} that reports its {@code Content-Length}.
+     */
+    @SmallTest
+    public void testConstructor_contentLength() throws IOException {
+        final String text = "{\"caf\u00e9\":\"\u2603\"}";
+        final byte[] data = text.getBytes("UTF-8");
+        final BufferedResponse response =
+                new BufferedResponse(new StreamingResponse(HttpURLConnection.HTTP_OK,
+                        getHeaders(HTTP.CONTENT_LEN, String.valueOf(data.length)),
+                        new ByteArrayInputStream(data)));
+
+        assertNull(response.getError());
+        assertEquals(text, response.getData());
+    }
+
+    /**
+     * Tests reading a {@link StreamingResponse} whose {@code Content-Length} doesn't match the
+     * body.
+     */
+    @SmallTest
+    public void testConstructor_wrongContentLength() throws IOException {
+        final BufferedResponse response =
+                new BufferedResponse(new StreamingResponse(HttpURLConnection.HTTP_OK,
+                        getHeaders(HTTP.CONTENT_LEN, "2"), new ByteArrayInputStream(
+                                ONE_KB_OF_TEXT.getBytes("UTF-8"))));
+
+        assertNull(response.getError());
+        assertEquals(ONE_KB_OF_TEXT, response.getData());
+    }
+
+    /**
+     * Tests reading a {@link StreamingResponse} with a {@code Content-Length} that isn't a number.
+     */
+    @SmallTest
+    public void testConstructor_invalidContentLength() throws IOException {
+        final BufferedResponse response =
+                new BufferedResponse(new StreamingResponse(HttpURLConnection.HTTP_OK,
+                        getHeaders(HTTP.CONTENT_LEN, "lots"), new ByteArrayInputStream(
+                                ONE_KB_OF_TEXT.getBytes("UTF-8"))));
+
+        assertNull(response.getError());
+        assertEquals(ONE_KB_OF_TEXT, response.getData());
+    }
+
+    /**
+     * Tests that the data of a response read from a stream is the same after parceling.
+     */
+    @SmallTest
+    public void testParcelable_fromStream() throws IOException {
+        final BufferedResponse response =
+                new BufferedResponse(new ByteArrayInputStream(ONE_KB_OF_TEXT.getBytes("UTF-8")));
+        final Parcel out = Parcel.obtain();
+        response.writeToParcel(out, 0);
+        out.setDataPosition(0);
+        final BufferedResponse parceledResponse = BufferedResponse.CREATOR.createFromParcel(out);
+        out.recycle();
+
+        assertEquals(ONE_KB_OF_TEXT, parceledResponse.getData());
+        assertEquals(ONE_KB_OF_TEXT, response.getData());
+    }
+
     @SmallTest
     public void testGetError() {
         {
@@ -160,6 +273,15 @@ public final class BufferedResponseTest extends SupportAndroidTestCase {
         }
     }
 
+    /**
+     * @param name the name of the header.
+     * @param value the value of the header.
+     * @return unmodifiable headers with just that header.
+     */
+    private static Map<String, List<String>> getHeaders(final String name, final String value) {
+        return Collections.singletonMap(name, Collections.singletonList(value));
+    }
+
     /**
      * Helper method to generate a string of a certain length. Does it the inefficient way.
      *
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.model.TicketFixture;
+import com.scvngr.levelup.core.model.factory.json.TicketJsonFactory;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.ByteArrayRequestBody}.
+ */
+public final class ByteArrayRequestBodyTest extends AbstractRequestBodyTest<ByteArrayRequestBody> {
+
+    /**
+     * Tests that a model serialized straight to bytes matches the tree-based serialization.
+     */
+    @SmallTest
+    public void testToRequestBody_matchesToRequestSerializer() {
+        final TicketJsonFactory factory = new TicketJsonFactory();
+        final ByteArrayRequestBody body = factory.toRequestBody(TicketFixture.getModel());
+
+        assertEquals(factory.toRequestSerializer(TicketFixture.getModel()).toString(),
+                body.toString());
+        assertEquals(RequestUtils.HEADER_CONTENT_TYPE_JSON, body.getContentType());
+    }
+
+    @Override
+    @NonNull
+    protected ByteArrayRequestBody getFixture() {
+        return new TicketJsonFactory().toRequestBody(TicketFixture.getModel());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.model.AccessToken;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.CachingAccessTokenRetriever}.
+ */
+public final class CachingAccessTokenRetrieverTest extends SupportAndroidTestCase {
+
+    /**
+     * Tests that the token is read once.
+     */
+    @SmallTest
+    public void testGetAccessToken_cached() {
+        final CountingAccessTokenRetriever counting = new CountingAccessTokenRetriever();
+        final CachingAccessTokenRetriever retriever = new CachingAccessTokenRetriever(counting);
+
+        assertSame(counting.mToken, retriever.getAccessToken(getContext()));
+        assertSame(counting.mToken, retriever.getAccessToken(getContext()));
+        assertSame(counting.mToken,
+                new CachingAccessTokenRetriever(counting).getAccessToken(getContext()));
+        assertEquals(1, counting.mReads.get());
+    }
+
+    /**
+     * Tests that a null token is read again every time.
+     */
+    @SmallTest
+    public void testGetAccessToken_null() {
+        final CountingAccessTokenRetriever counting = new CountingAccessTokenRetriever(null);
+        final CachingAccessTokenRetriever retriever = new CachingAccessTokenRetriever(counting);
+
+        assertNull(retriever.getAccessToken(getContext()));
+        assertNull(retriever.getAccessToken(getContext()));
+        assertEquals(2, counting.mReads.get());
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.CachingAccessTokenRetriever#invalidate()}.
+     */
+    @SmallTest
+    public void testInvalidate() {
+        final CountingAccessTokenRetriever counting = new CountingAccessTokenRetriever();
+        final CachingAccessTokenRetriever retriever = new CachingAccessTokenRetriever(counting);
+
+        retriever.getAccessToken(getContext());
+        retriever.invalidate();
+        assertSame(counting.mToken, retriever.getAccessToken(getContext()));
+        assertEquals(2, counting.mReads.get());
+    }
+
+    /**
+     * Tests that threads that need the token while it is being read share that read.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SmallTest
+    public void testGetAccessToken_singleRead() throws InterruptedException {
+        final CountDownLatch readStarted = new CountDownLatch(1);
+        final CountDownLatch finishRead = new CountDownLatch(1);
+        final CountingAccessTokenRetriever counting = new CountingAccessTokenRetriever() {
+
+            @Override
+            public AccessToken getAccessToken(@NonNull final Context context) {
+                readStarted.countDown();
+
+                try {
+                    finishRead.await(2, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return super.getAccessToken(context);
+            }
+        };
+        final CachingAccessTokenRetriever retriever = new CachingAccessTokenRetriever(counting);
+        final int threadCount = 4;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final AtomicReference<AccessToken> wrongToken = new AtomicReference<AccessToken>();
+
+        for (int i = 0; i < threadCount; i++) {
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    final AccessToken token = retriever.getAccessToken(getContext());
+
+                    if (counting.mToken != token) {
+                        wrongToken.set(token);
+                    }
+
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(readStarted.await(2, TimeUnit.SECONDS));
+        // Give the other threads time to start waiting for the read.
+        Thread.sleep(50);
+        finishRead.countDown();
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertNull(wrongToken.get());
+        assertEquals(1, counting.mReads.get());
+    }
+
+    /**
+     * Tests that a response with {@link LevelUpStatus#LOGIN_REQUIRED} drops the token.
+     */
+    @SmallTest
+    public void testLoginRequired() {
+        final CountingAccessTokenRetriever counting = new CountingAccessTokenRetriever();
+        final LevelUpRequest request =
+                new LevelUpRequest(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V14, "user", null, null,
+                        new CachingAccessTokenRetriever(counting));
+        final LevelUpConnection connection = new LevelUpConnection(getContext());
+        final CannedResponseInterceptor canned = new CannedResponseInterceptor();
+        connection.addInterceptor(canned);
+
+        canned.setResponse(null, new LevelUpResponse("", LevelUpStatus.OK));
+        request.getRequestHeaders(getContext());
+        connection.send(request);
+        request.getRequestHeaders(getContext());
+        assertEquals(1, counting.mReads.get());
+
+        canned.setResponse(null, new LevelUpResponse("", LevelUpStatus.LOGIN_REQUIRED));
+        connection.send(request);
+        request.getRequestHeaders(getContext());
+        assertEquals(2, counting.mReads.get());
+    }
+
+    /**
+     * Tests parceling.
+     */
+    @SmallTest
+    public void testParcel() {
+        final CachingAccessTokenRetriever retriever =
+                new CachingAccessTokenRetriever(new MockAccessTokenRetriever());
+        final Parcel parcel = Parcel.obtain();
+
+        try {
+            parcel.writeParcelable(retriever, 0);
+            parcel.setDataPosition(0);
+            final CachingAccessTokenRetriever read =
+                    parcel.readParcelable(CachingAccessTokenRetriever.class.getClassLoader());
+
+            assertEquals(retriever, read);
+            assertEquals(retriever.getAccessToken(getContext()), read.getAccessToken(getContext()));
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Counts how many times its token is read.
+     */
+    private static class CountingAccessTokenRetriever implements AccessTokenRetriever {
+
+        @Nullable
+        /* package */final AccessToken mToken;
+
+        @NonNull
+        /* package */final AtomicInteger mReads = new AtomicInteger();
+
+        /**
+         * Constructor which uses a basic {@link AccessToken}.
+         */
+        public CountingAccessTokenRetriever() {
+            this(new AccessToken("test_access_token", 1L));
+        }
+
+        /**
+         * @param token the token to return, or null.
+         */
+        public CountingAccessTokenRetriever(@Nullable final AccessToken token) {
+            mToken = token;
+        }
+
+        @Override
+        public AccessToken getAccessToken(@NonNull final Context context) {
+            mReads.incrementAndGet();
+            return mToken;
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(final Parcel dest, final int flags) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.net.CircuitBreakerTransport.CircuitOpenException;
+import com.scvngr.levelup.core.net.NetworkConnectionTest.RequestStub;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.CircuitBreakerTransport}.
+ */
+public final class CircuitBreakerTransportTest extends SupportAndroidTestCase {
+
+    @NonNull
+    private static final String URL = "http://www.example.com/v15/test";
+
+    @NonNull
+    private static final String ENDPOINT = "www.example.com/v15/test";
+
+    private static final long OPEN_DURATION_MILLIS = 100;
+
+    /**
+     * Tests that a circuit opens after the threshold of consecutive failures and rejects requests
+     * without sending them.
+     */
+    @SmallTest
+    public void testSend_opensAfterThreshold() {
+        final StubTransport stub = new StubTransport(HttpURLConnection.HTTP_UNAVAILABLE);
+        final CircuitBreakerTransport transport =
+                new CircuitBreakerTransport(stub, 2, OPEN_DURATION_MILLIS);
+
+        transport.send(getContext(), newRequest(URL), null, null, null);
+        assertFalse(transport.isOpen(ENDPOINT));
+        transport.send(getContext(), newRequest(URL), null, null, null);
+        assertTrue(transport.isOpen(ENDPOINT));
+
+        final StreamingResponse response =
+                transport.send(getContext(), newRequest(URL), null, null, null);
+        assertTrue(response.getError() instanceof CircuitOpenException);
+        assertEquals(LevelUpStatus.ERROR_NETWORK, LevelUpResponse.mapStatus(response));
+        assertEquals(2, stub.mSendCount.get());
+    }
+
+    /**
+     * Tests that a success resets the count of consecutive failures.
+     */
+    @SmallTest
+    public void testSend_successResets() {
+        final StubTransport stub = new StubTransport(HttpURLConnection.HTTP_UNAVAILABLE);
+        final CircuitBreakerTransport transport =
+                new CircuitBreakerTransport(stub, 2, OPEN_DURATION_MILLIS);
+
+        transport.send(getContext(), newRequest(URL), null, null, null);
+        stub.mStatusCode = HttpURLConnection.HTTP_OK;
+        transport.send(getContext(), newRequest(URL), null, null, null);
+        stub.mStatusCode = HttpURLConnection.HTTP_UNAVAILABLE;
+        transport.send(getContext(), newRequest(URL), null, null, null);
+        assertFalse(transport.isOpen(ENDPOINT));
+    }
+
+    /**
+     * Tests that circuits are kept per endpoint.
+     */
+    @SmallTest
+    public void testSend_perEndpoint() {
+        final StubTransport stub = new StubTransport(HttpURLConnection.HTTP_UNAVAILABLE);
+        final CircuitBreakerTransport transport =
+                new CircuitBreakerTransport(stub, 1, OPEN_DURATION_MILLIS);
+
+        transport.send(getContext(), newRequest(URL), null, null, null);
+        assertTrue(transport.isOpen(ENDPOINT));
+        assertFalse(transport.isOpen("www.example.com/v15/other"));
+
+        stub.mStatusCode = HttpURLConnection.HTTP_OK;
+        final StreamingResponse response =
+                transport.send(getContext(), newRequest("http://www.example.com/v15/other"),
+                        null, null, null);
+        assertEquals(HttpURLConnection.HTTP_OK, response.getHttpStatusCode());
+    }
+
+    /**
+     * Tests that requests for different resources of the same endpoint share a circuit.
+     */
+    @SmallTest
+    public void testSend_sharedByResources() {
+        final StubTransport stub = new StubTransport(HttpURLConnection.HTTP_UNAVAILABLE);
+        final CircuitBreakerTransport transport =
+                new CircuitBreakerTransport(stub, 2, OPEN_DURATION_MILLIS);
+
+        transport.send(getContext(), newRequest("http://www.example.com/v15/users/1"), null,
+                null, null);
+        transport.send(getContext(), newRequest("http://www.example.com/v15/users/2"), null,
+                null, null);
+        assertTrue(transport.isOpen("www.example.com/v15/users/{id}"));
+
+        final StreamingResponse response =
+                transport.send(getContext(), newRequest("http://www.example.com/v15/users/3"),
+                        null, null, null);
+        assertTrue(response.getError() instanceof CircuitOpenException);
+        assertEquals(2, stub.mSendCount.get());
+    }
+
+    /**
+     * Tests that a trial request is let through once the circuit has been open long enough, and
+     * that its success closes the circuit.
+     */
+    @SmallTest
+    public void testSend_halfOpenTrial() {
+        final StubTransport stub = new StubTransport(HttpURLConnection.HTTP_UNAVAILABLE);
+        final CircuitBreakerTransport transport =
+                new CircuitBreakerTransport(stub, 1, OPEN_DURATION_MILLIS);
+
+        transport.send(getContext(), newRequest(URL), null, null, null);
+        assertTrue(transport.isOpen(ENDPOINT));
+
+        SystemClock.sleep(OPEN_DURATION_MILLIS * 2);
+        assertFalse(transport.isOpen(ENDPOINT));
+
+        // The failed trial opens the circuit again.
+        transport.send(getContext(), newRequest(URL), null, null, null);
+        assertEquals(2, stub.mSendCount.get());
+        assertTrue(transport.isOpen(ENDPOINT));
+
+        SystemClock.sleep(OPEN_DURATION_MILLIS * 2);
+        stub.mStatusCode = HttpURLConnection.HTTP_OK;
+        transport.send(getContext(), newRequest(URL), null, null, null);
+        assertFalse(transport.isOpen(ENDPOINT));
+    }
+
+    /**
+     * Tests {@link CircuitBreakerTransport#isFailure(StreamingResponse)}.
+     */
+    @SmallTest
+    public void testIsFailure() {
+        assertTrue(CircuitBreakerTransport.isFailure(new StreamingResponse(new IOException())));
+        assertTrue(CircuitBreakerTransport.isFailure(newResponse(
+                HttpURLConnection.HTTP_INTERNAL_ERROR)));
+        assertFalse(CircuitBreakerTransport.isFailure(newResponse(HttpURLConnection.HTTP_OK)));
+        assertFalse(CircuitBreakerTransport.isFailure(newResponse(
+                HttpURLConnection.HTTP_NOT_FOUND)));
+        assertFalse(CircuitBreakerTransport.isFailure(new StreamingResponse(
+                new BadRequestException(""))));
+        assertFalse(CircuitBreakerTransport.isFailure(new StreamingResponse(
+                new CircuitOpenException(ENDPOINT))));
+    }
+
+    /**
+     * Tests that a request rejected by an open circuit is not retried.
+     */
+    @SmallTest
+    public void testCircuitOpenNotRetried() {
+        final LevelUpResponse response =
+                new LevelUpResponse(new StreamingResponse(new CircuitOpenException(ENDPOINT)));
+
+        assertFalse(ExponentialBackoffRetryPolicy.isRetryable(HttpMethod.GET, response,
+                response.getStatus()));
+    }
+
+    /**
+     * @param url the request URL.
+     * @return a new GET request to {@code url}.
+     */
+    @NonNull
+    private static AbstractRequest newRequest(@NonNull final String url) {
+        return new RequestStub(HttpMethod.GET, url, null, null, null);
+    }
+
+    /**
+     * @param statusCode the HTTP status code.
+     * @return a new response with an empty body.
+     */
+    @NonNull
+    /* package */static StreamingResponse newResponse(final int statusCode) {
+        return StreamingResponse.newResponse(statusCode, null,
+                new ByteArrayInputStream(new byte[0]));
+    }
+
+    /**
+     * Transport that responds to every request with a fixed status code.
+     */
+    /* package */static final class StubTransport implements Transport {
+
+        @NonNull
+        /* package */final AtomicInteger mSendCount = new AtomicInteger();
+
+        /* package */volatile int mStatusCode;
+
+        /**
+         * @param statusCode the status code to respond with.
+         */
+        /* package */StubTransport(final int statusCode) {
+            mStatusCode = statusCode;
+        }
+
+        @Override
+        @NonNull
+        public StreamingResponse send(@NonNull final Context context,
+                @NonNull final AbstractRequest request,
+                @Nullable final Map<String, String> additionalHeaders,
+                @Nullable final NetworkEventListener listener,
+                @Nullable final RequestHandle handle) {
+            mSendCount.incrementAndGet();
+
+            return newResponse(mStatusCode);
+        }
+
+        @Override
+        public int getMaxConnections() {
+            return 4;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.CircuitBreakerTransportTest.StubTransport;
+import com.scvngr.levelup.core.net.ConcurrencyLimitingTransport.HostLimit;
+import com.scvngr.levelup.core.net.NetworkConnectionTest.RequestStub;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.ConcurrencyLimitingTransport}.
+ */
+public final class ConcurrencyLimitingTransportTest extends SupportAndroidTestCase {
+
+    @NonNull
+    private static final String HOST = "www.example.com";
+
+    @NonNull
+    private static final String ENDPOINT = HOST + "/test";
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * Tests that the limit starts at the maximum connections of the wrapped transport.
+     */
+    @SmallTest
+    public void testGetLimit_initial() {
+        final StubTransport stub = new StubTransport(HttpURLConnection.HTTP_OK);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(stub);
+
+        assertEquals(stub.getMaxConnections(), transport.getLimit(HOST));
+        assertEquals(stub.getMaxConnections(), transport.getMaxConnections());
+    }
+
+    /**
+     * Tests that failed sends halve the limit down to one.
+     */
+    @SmallTest
+    public void testSend_failureDecreases() {
+        final StubTransport stub = new StubTransport(HttpURLConnection.HTTP_UNAVAILABLE);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(stub);
+
+        transport.send(getContext(), newRequest(), null, null, null).close();
+        assertEquals(2, transport.getLimit(HOST));
+        transport.send(getContext(), newRequest(), null, null, null).close();
+        assertEquals(1, transport.getLimit(HOST));
+        transport.send(getContext(), newRequest(), null, null, null).close();
+        assertEquals(1, transport.getLimit(HOST));
+        assertEquals(3, stub.mSendCount.get());
+        assertEquals(stub.getMaxConnections(), transport.getLimit("other.example.com"));
+    }
+
+    /**
+     * Tests that a request stays in flight until its response is closed.
+     */
+    @SmallTest
+    public void testSend_heldUntilClosed() {
+        final StubTransport stub = new StubTransport(HttpURLConnection.HTTP_OK);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(stub);
+
+        final StreamingResponse response =
+                transport.send(getContext(), newRequest(), null, null, null);
+        assertEquals(1, transport.getHostLimit(HOST).getInFlight());
+
+        response.close();
+        assertEquals(0, transport.getHostLimit(HOST).getInFlight());
+
+        // Closing again doesn't release another request.
+        response.close();
+        assertEquals(0, transport.getHostLimit(HOST).getInFlight());
+    }
+
+    /**
+     * Tests that a request stops being in flight once its body has been read to the end, even if
+     * the response is never closed.
+     *
+     * @throws IOException if the body can't be read.
+     */
+    @SmallTest
+    public void testSend_releasedAtEndOfBody() throws IOException {
+        final StubTransport stub = new StubTransport(HttpURLConnection.HTTP_OK);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(stub);
+
+        final StreamingResponse response =
+                transport.send(getContext(), newRequest(), null, null, null);
+        assertEquals(1, transport.getHostLimit(HOST).getInFlight());
+
+        final InputStream data = NullUtils.nonNullContract(response.getData());
+        assertEquals(-1, data.read());
+        assertEquals(0, transport.getHostLimit(HOST).getInFlight());
+
+        // Closing afterwards doesn't release another request.
+        response.close();
+        assertEquals(0, transport.getHostLimit(HOST).getInFlight());
+    }
+
+    /**
+     * Tests that successes raise the limit back up to the maximum, but not beyond.
+     */
+    @SmallTest
+    public void testHostLimit_successIncreases() {
+        final HostLimit limit = new HostLimit(4);
+
+        acquireAndRelease(limit, 0, true);
+        acquireAndRelease(limit, 0, true);
+        assertEquals(1, limit.getLimit());
+
+        acquireAndRelease(limit, 0, false);
+        assertEquals(2, limit.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            acquireAndRelease(limit, 0, false);
+        }
+
+        assertEquals(4, limit.getLimit());
+    }
+
+    /**
+     * Tests that a response much slower than the fastest recent one lowers the limit.
+     */
+    @SmallTest
+    public void testHostLimit_slowResponse() {
+        final HostLimit limit = new HostLimit(4);
+
+        acquireAndRelease(limit, TimeUnit.MILLISECONDS.toNanos(10), false);
+        assertEquals(4, limit.getLimit());
+        acquireAndRelease(limit, TimeUnit.MILLISECONDS.toNanos(15), false);
+        assertEquals(4, limit.getLimit());
+        acquireAndRelease(limit, TimeUnit.MILLISECONDS.toNanos(50), false);
+        assertEquals(2, limit.getLimit());
+    }
+
+    /**
+     * Tests that latency is compared to the lowest recent latency of the same endpoint only.
+     *
+     * @throws IOException if acquiring fails.
+     * @throws InterruptedException if interrupted while acquiring.
+     */
+    @SmallTest
+    public void testHostLimit_latencyPerEndpoint() throws IOException, InterruptedException {
+        final HostLimit limit = new HostLimit(4);
+
+        acquireAndRelease(limit, TimeUnit.MILLISECONDS.toNanos(10), false);
+        limit.acquire(null);
+        limit.release(HOST + "/search", TimeUnit.MILLISECONDS.toNanos(500), false);
+        assertEquals(4, limit.getLimit());
+
+        limit.acquire(null);
+        limit.release(HOST + "/search", TimeUnit.MILLISECONDS.toNanos(2000), false);
+        assertEquals(2, limit.getLimit());
+    }
+
+    /**
+     * Tests that requests beyond the limit wait for one in flight to finish.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testHostLimit_blocksAtLimit() throws Exception {
+        final HostLimit limit = new HostLimit(1);
+        final CountDownLatch acquired = new CountDownLatch(1);
+
+        limit.acquire(null);
+
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limit.acquire(null);
+                    acquired.countDown();
+                } catch (final InterruptedException e) {
+                    // Test fails below.
+                } catch (final IOException e) {
+                    // Test fails below.
+                }
+            }
+        });
+        waiter.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limit.release(ENDPOINT, 0, false);
+        assertTrue(acquired.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        waiter.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Tests that a request waiting for a slot gives up as soon as its handle is cancelled.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testHostLimit_cancelledWhileWaiting() throws Exception {
+        final HostLimit limit = new HostLimit(1);
+        final RequestHandle handle = new RequestHandle();
+        final CountDownLatch gaveUp = new CountDownLatch(1);
+
+        limit.acquire(null);
+
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limit.acquire(handle);
+                } catch (final InterruptedException e) {
+                    // Test fails below.
+                } catch (final InterruptedIOException e) {
+                    gaveUp.countDown();
+                }
+            }
+        });
+        waiter.start();
+
+        assertFalse(gaveUp.await(100, TimeUnit.MILLISECONDS));
+        handle.cancel();
+        assertTrue(gaveUp.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, limit.getInFlight());
+        waiter.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Tests that a request waiting for a slot gives up when its deadline passes.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testHostLimit_deadlineWhileWaiting() throws Exception {
+        final HostLimit limit = new HostLimit(1);
+
+        limit.acquire(null);
+
+        try {
+            limit.acquire(new RequestHandle(1000, 1000, 100));
+            fail("Expected InterruptedIOException");
+        } catch (final InterruptedIOException e) {
+            // Expected exception.
+        }
+
+        assertEquals(1, limit.getInFlight());
+    }
+
+    /**
+     * @param limit the limit to record a request on.
+     * @param latencyNanos the latency of the request.
+     * @param isFailure true if the request failed.
+     */
+    private static void acquireAndRelease(@NonNull final HostLimit limit,
+            final long latencyNanos, final boolean isFailure) {
+        try {
+            limit.acquire(null);
+        } catch (final InterruptedException e) {
+            throw new AssertionError(e);
+        } catch (final IOException e) {
+            throw new AssertionError(e);
+        }
+
+        limit.release(ENDPOINT, latencyNanos, isFailure);
+    }
+
+    /**
+     * @return a new GET request to {@link #HOST}.
+     */
+    @NonNull
+    private static AbstractRequest newRequest() {
+        return new RequestStub(HttpMethod.GET, "http://" + HOST + "/test", null, null, null);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.NetworkConnectionTest.RequestStub;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.ExponentialBackoffRetryPolicy}.
+ */
+public final class ExponentialBackoffRetryPolicyTest extends SupportAndroidTestCase {
+
+    @NonNull
+    private static final String URL = "http://www.example.com/test";
+
+    /**
+     * Tests {@link ExponentialBackoffRetryPolicy#isRetryable}.
+     */
+    @SmallTest
+    public void testIsRetryable() {
+        assertTrue(ExponentialBackoffRetryPolicy.isRetryable(HttpMethod.GET,
+                newErrorResponse(new IOException()), LevelUpStatus.ERROR_NETWORK));
+        assertFalse(ExponentialBackoffRetryPolicy.isRetryable(HttpMethod.POST,
+                newErrorResponse(new IOException()), LevelUpStatus.ERROR_NETWORK));
+        assertTrue(ExponentialBackoffRetryPolicy.isRetryable(HttpMethod.POST,
+                newErrorResponse(new ConnectException()), LevelUpStatus.ERROR_NETWORK));
+
+        assertTrue(ExponentialBackoffRetryPolicy.isRetryable(HttpMethod.GET,
+                newResponse(HttpURLConnection.HTTP_UNAVAILABLE, null),
+                LevelUpStatus.ERROR_MAINTENANCE));
+        assertTrue(ExponentialBackoffRetryPolicy.isRetryable(HttpMethod.PUT,
+                newResponse(HttpURLConnection.HTTP_BAD_GATEWAY, null), LevelUpStatus.ERROR_SERVER));
+        assertFalse(ExponentialBackoffRetryPolicy.isRetryable(HttpMethod.POST,
+                newResponse(HttpURLConnection.HTTP_BAD_GATEWAY, null), LevelUpStatus.ERROR_SERVER));
+        assertFalse(ExponentialBackoffRetryPolicy.isRetryable(HttpMethod.GET,
+                newResponse(HttpURLConnection.HTTP_INTERNAL_ERROR, null),
+                LevelUpStatus.ERROR_SERVER));
+        assertFalse(ExponentialBackoffRetryPolicy.isRetryable(HttpMethod.GET,
+                newResponse(HttpURLConnection.HTTP_OK, null), LevelUpStatus.OK));
+    }
+
+    /**
+     * Tests {@link ExponentialBackoffRetryPolicy#parseRetryAfterMillis}.
+     */
+    @SmallTest
+    public void testParseRetryAfterMillis() {
+        assertEquals(RetryPolicy.NO_RETRY,
+                ExponentialBackoffRetryPolicy.parseRetryAfterMillis(null, 0));
+        assertEquals(RetryPolicy.NO_RETRY,
+                ExponentialBackoffRetryPolicy.parseRetryAfterMillis("soon", 0));
+        assertEquals(3000, ExponentialBackoffRetryPolicy.parseRetryAfterMillis(" 3 ", 0));
+        assertEquals(2000, ExponentialBackoffRetryPolicy.parseRetryAfterMillis(
+                "Thu, 01 Jan 1970 00:00:12 GMT", 10000));
+        assertEquals(0, ExponentialBackoffRetryPolicy.parseRetryAfterMillis(
+                "Thu, 01 Jan 1970 00:00:05 GMT", 10000));
+    }
+
+    /**
+     * Tests that delays grow exponentially up to the cap and that the retry budget is respected.
+     */
+    @SmallTest
+    public void testGetRetryDelayMillis_backoff() {
+        final ExponentialBackoffRetryPolicy policy =
+                new ExponentialBackoffRetryPolicy(3, 100, 300, 10000, new MaxRandom());
+        final AbstractRequest request = new RequestStub(HttpMethod.GET, URL, null, null, null);
+        final AbstractResponse<?> response = newResponse(HttpURLConnection.HTTP_UNAVAILABLE, null);
+
+        assertEquals(100, policy.getRetryDelayMillis(request, response,
+                LevelUpStatus.ERROR_MAINTENANCE, 0, 0));
+        assertEquals(200, policy.getRetryDelayMillis(request, response,
+                LevelUpStatus.ERROR_MAINTENANCE, 1, 100));
+        assertEquals(300, policy.getRetryDelayMillis(request, response,
+                LevelUpStatus.ERROR_MAINTENANCE, 2, 300));
+        assertEquals(RetryPolicy.NO_RETRY, policy.getRetryDelayMillis(request, response,
+                LevelUpStatus.ERROR_MAINTENANCE, 3, 600));
+
+        assertEquals(4, policy.getAttemptCount());
+        assertEquals(3, policy.getRetryCount());
+        assertEquals(1, policy.getExhaustedCount());
+    }
+
+    /**
+     * Tests that the total delay budget is respected.
+     */
+    @SmallTest
+    public void testGetRetryDelayMillis_totalBudget() {
+        final ExponentialBackoffRetryPolicy policy =
+                new ExponentialBackoffRetryPolicy(5, 100, 1000, 250, new MaxRandom());
+        final AbstractRequest request = new RequestStub(HttpMethod.GET, URL, null, null, null);
+        final AbstractResponse<?> response = newResponse(HttpURLConnection.HTTP_UNAVAILABLE, null);
+
+        assertEquals(RetryPolicy.NO_RETRY, policy.getRetryDelayMillis(request, response,
+                LevelUpStatus.ERROR_MAINTENANCE, 1, 100));
+    }
+
+    /**
+     * Tests that {@code Retry-After} is honored when it is within the cap and gives up otherwise.
+     */
+    @SmallTest
+    public void testGetRetryDelayMillis_retryAfter() {
+        final ExponentialBackoffRetryPolicy policy =
+                new ExponentialBackoffRetryPolicy(3, 100, 2000, 10000, new MaxRandom());
+        final AbstractRequest request = new RequestStub(HttpMethod.GET, URL, null, null, null);
+
+        assertEquals(1000, policy.getRetryDelayMillis(request,
+                newResponse(ExponentialBackoffRetryPolicy.HTTP_TOO_MANY_REQUESTS, "1"),
+                LevelUpStatus.ERROR_SERVER, 0, 0));
+        assertEquals(RetryPolicy.NO_RETRY, policy.getRetryDelayMillis(request,
+                newResponse(ExponentialBackoffRetryPolicy.HTTP_TOO_MANY_REQUESTS, "60"),
+                LevelUpStatus.ERROR_SERVER, 0, 0));
+    }
+
+    /**
+     * @param statusCode the HTTP status code.
+     * @param retryAfter the value of the {@code Retry-After} header or null.
+     * @return a response with the given status code.
+     */
+    @NonNull
+    private static AbstractResponse<?> newResponse(final int statusCode,
+            @Nullable final String retryAfter) {
+        final Map<String, List<String>> headers;
+
+        if (null == retryAfter) {
+            headers = null;
+        } else {
+            headers = Collections.singletonMap(ExponentialBackoffRetryPolicy.HEADER_RETRY_AFTER,
+                    Collections.singletonList(retryAfter));
+        }
+
+        return new LevelUpResponse("", statusCode, headers, null);
+    }
+
+    /**
+     * @param error the error that occurred.
+     * @return a response for the error.
+     */
+    @NonNull
+    private static AbstractResponse<?> newErrorResponse(@NonNull final Exception error) {
+        return new StreamingResponse(error);
+    }
+
+    /**
+     * Always returns the maximum jitter.
+     */
+    private static final class MaxRandom extends Random {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double nextDouble() {
+            return 0.9999999999;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.model.TicketFixture;
+import com.scvngr.levelup.core.test.ParcelTestUtils;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.GzipRequestBody}.
+ */
+public final class GzipRequestBodyTest extends SupportAndroidTestCase {
+
+    /**
+     * Tests that the compressed body decompresses to the original body.
+     *
+     * @throws IOException if compression fails.
+     */
+    @SmallTest
+    public void testContent() throws IOException {
+        final JsonElementRequestBody original = getOriginal();
+        final GzipRequestBody body = new GzipRequestBody(getContext(), original);
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        body.writeToOutputStream(getContext(), compressed);
+        assertEquals(body.getContentLength(), compressed.size());
+
+        assertEquals(original.toString(),
+                readFully(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+    }
+
+    /**
+     * Tests that the content type of the original body is kept.
+     *
+     * @throws IOException if compression fails.
+     */
+    @SmallTest
+    public void testGetContentType() throws IOException {
+        final GzipRequestBody body = new GzipRequestBody(getContext(), getOriginal());
+
+        assertEquals(RequestUtils.HEADER_CONTENT_TYPE_JSON, body.getContentType());
+        assertEquals("gzip", body.getContentEncoding());
+    }
+
+    /**
+     * Tests that the body survives parceling.
+     *
+     * @throws IOException if compression fails.
+     */
+    @SmallTest
+    public void testParceling() throws IOException {
+        ParcelTestUtils.assertParcelableRoundtrips(new GzipRequestBody(getContext(),
+                getOriginal()));
+    }
+
+    /**
+     * Tests that requests with the body send the {@code Content-Encoding} header.
+     *
+     * @throws IOException if compression fails.
+     */
+    @SmallTest
+    public void testRequestHeaders() throws IOException {
+        final GzipRequestBody body = new GzipRequestBody(getContext(), getOriginal());
+        final LevelUpRequest request =
+                new LevelUpRequest(getContext(), HttpMethod.POST,
+                        LevelUpRequest.API_VERSION_CODE_V15, "test", null, body);
+
+        assertEquals("gzip",
+                request.getRequestHeaders(getContext()).get(RequestUtils.HEADER_CONTENT_ENCODING));
+        assertEquals(body.getContentLength(), request.getBodyLength(getContext()));
+    }
+
+    /**
+     * Tests that gzip-encoded responses are decoded.
+     *
+     * @throws IOException if compression fails.
+     */
+    @SmallTest
+    public void testResponseDecoding() throws IOException {
+        final JsonElementRequestBody original = getOriginal();
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new GzipRequestBody(getContext(), original).writeToOutputStream(getContext(),
+                compressed);
+
+        final StreamingResponse response =
+                new StreamingResponse(HttpURLConnection.HTTP_OK, Collections.singletonMap(
+                        RequestUtils.HEADER_CONTENT_ENCODING,
+                        Collections.singletonList("gzip")), new ByteArrayInputStream(
+                        compressed.toByteArray()));
+        final BufferedResponse buffered = new BufferedResponse(response);
+
+        assertNull(buffered.getError());
+        assertEquals(original.toString(), buffered.getData());
+    }
+
+    /**
+     * Tests that an empty gzip-encoded response reads as empty.
+     */
+    @SmallTest
+    public void testResponseDecoding_empty() {
+        final StreamingResponse response =
+                new StreamingResponse(HttpURLConnection.HTTP_NOT_MODIFIED, Collections.singletonMap(
+                        RequestUtils.HEADER_CONTENT_ENCODING,
+                        Collections.singletonList("gzip")), new ByteArrayInputStream(
+                        new byte[0]));
+        final BufferedResponse buffered = new BufferedResponse(response);
+
+        assertNull(buffered.getError());
+        assertEquals("", buffered.getData());
+    }
+
+    /**
+     * @return the body to compress.
+     */
+    @NonNull
+    private static JsonElementRequestBody getOriginal() {
+        return new JsonElementRequestBody(TicketFixture.getJsonModel());
+    }
+
+    /**
+     * @param stream the stream to read.
+     * @return the contents of the stream as UTF-8.
+     * @throws IOException if the stream cannot be read.
+     */
+    @NonNull
+    private static String readFully(@NonNull final InputStream stream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[BufferedResponse.READ_BUFFER_SIZE_BYTES];
+        int read;
+
+        while (-1 != (read = stream.read(buffer))) {
+            out.write(buffer, 0, read);
+        }
+
+        stream.close();
+
+        return out.toString("UTF-8");
+    }
+}
@@ -34,4 +34,15 @@ public final class HttpMethodTest extends SupportAndroidTestCase {
             assertNotNull(HttpMethod.valueOf(verb));
         }
     }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.HttpMethod#isIdempotent()}.
+     */
+    @SmallTest
+    public void testIsIdempotent() {
+        assertTrue(HttpMethod.GET.isIdempotent());
+        assertFalse(HttpMethod.POST.isIdempotent());
+        assertTrue(HttpMethod.PUT.isIdempotent());
+        assertTrue(HttpMethod.DELETE.isIdempotent());
+    }
 }
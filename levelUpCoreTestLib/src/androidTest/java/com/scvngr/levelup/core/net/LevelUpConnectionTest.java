@@ -15,9 +15,11 @@ package com.scvngr.levelup.core.net;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.net.NetworkConnectionTest.RecordingEventListener;
 import com.scvngr.levelup.core.test.SupportAndroidTestCase;
 import com.scvngr.levelup.core.util.LogManager;
 
@@ -27,8 +29,15 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Tests {@link com.scvngr.levelup.core.net.LevelUpConnection}.
@@ -248,6 +257,8 @@ public final class LevelUpConnectionTest extends SupportAndroidTestCase {
         final LevelUpRequest request =
                 new LevelUpRequest(getContext(), HttpMethod.GET,
                         LevelUpRequest.API_VERSION_CODE_V14, "user", null, null);
+        final RequestRecordingInterceptor recorder = new RequestRecordingInterceptor();
+        connection.addInterceptor(recorder);
         NetworkConnection.setNextResponse(new StreamingResponse(new MockHttpUrlConnection()));
         final LevelUpResponse response = connection.send(request);
 
@@ -256,11 +267,98 @@ public final class LevelUpConnectionTest extends SupportAndroidTestCase {
 
         // Make sure that the last request is set.
         final AbstractRequest sentRequest =
-                connection.getLastRequest(request.getUrl(getContext()).toString());
+                recorder.getLastRequest(request.getUrl(getContext()).toString());
         assertNotNull(sentRequest);
         assertEquals(request, sentRequest);
     }
 
+    /**
+     * Tests that {@link com.scvngr.levelup.core.net.LevelUpConnection#send} passes requests
+     * through interceptors in the order they were added.
+     */
+    @SmallTest
+    public void testAddInterceptor_order() {
+        final LevelUpConnection connection = new LevelUpConnection(getContext());
+        final StringBuilder order = new StringBuilder();
+        final LevelUpResponse response = new LevelUpResponse("test", LevelUpStatus.OK);
+        final CannedResponseInterceptor canned = new CannedResponseInterceptor();
+        canned.setResponse(null, response);
+
+        connection.addInterceptor(new OrderInterceptor(order, "a"));
+        connection.addInterceptor(new OrderInterceptor(order, "b"));
+        connection.addInterceptor(canned);
+        connection.addInterceptor(new OrderInterceptor(order, "c"));
+
+        assertSame(response, connection.send(new LevelUpRequest(getContext(), HttpMethod.GET,
+                LevelUpRequest.API_VERSION_CODE_V14, "user", null, null)));
+        // The canned response means the request never reaches the last interceptor.
+        assertEquals("ab", order.toString());
+    }
+
+    /**
+     * Tests that an interceptor can rewrite the request it passes on.
+     *
+     * @throws BadRequestException if the URL can't be built.
+     */
+    @SmallTest
+    public void testAddInterceptor_rewrite() throws BadRequestException {
+        final LevelUpConnection connection = new LevelUpConnection(getContext());
+        final LevelUpRequest rewritten =
+                new LevelUpRequest(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V14, "rewritten", null, null);
+        final RequestRecordingInterceptor recorder = new RequestRecordingInterceptor();
+        final CannedResponseInterceptor canned = new CannedResponseInterceptor();
+        canned.setResponse(null, new LevelUpResponse("test", LevelUpStatus.OK));
+
+        connection.addInterceptor(new Interceptor() {
+            @Override
+            @NonNull
+            public LevelUpResponse intercept(@NonNull final Chain chain) {
+                assertSame(getContext().getApplicationContext(), chain.getContext());
+                return chain.proceed(rewritten);
+            }
+        });
+        connection.addInterceptor(recorder);
+        connection.addInterceptor(canned);
+
+        connection.send(new LevelUpRequest(getContext(), HttpMethod.GET,
+                LevelUpRequest.API_VERSION_CODE_V14, "user", null, null));
+        assertSame(rewritten, recorder.getLastRequest(null));
+        assertSame(rewritten, recorder.getLastRequest(rewritten.getUrlString(getContext())));
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.LevelUpConnection#removeInterceptor(Interceptor)}.
+     */
+    @SmallTest
+    public void testRemoveInterceptor() {
+        final LevelUpConnection connection = new LevelUpConnection(getContext());
+        final CannedResponseInterceptor canned = new CannedResponseInterceptor();
+        final LevelUpResponse response = new LevelUpResponse("test", LevelUpStatus.OK);
+        canned.setResponse(null, response);
+        connection.addInterceptor(canned);
+
+        final LevelUpRequest request =
+                new LevelUpRequest(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V14, "user", null, null);
+        assertSame(response, connection.send(request));
+
+        assertTrue(connection.removeInterceptor(canned));
+        assertFalse(connection.removeInterceptor(canned));
+
+        // With no interceptors left, the request goes to the network.
+        LevelUpConnection.setNetworkEnabled(false);
+
+        try {
+            connection.send(request);
+            fail("network connection should throw exception");
+        } catch (final RuntimeException e) {
+            // Expected exception
+        } finally {
+            LevelUpConnection.setNetworkEnabled(true);
+        }
+    }
+
     /**
      * Tests {@link com.scvngr.levelup.core.net.LevelUpConnection#setNetworkEnabled(boolean)}.
      */
@@ -289,6 +387,412 @@ public final class LevelUpConnectionTest extends SupportAndroidTestCase {
         }
     }
 
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.LevelUpConnection#sendAsync(AbstractRequest)}.
+     *
+     * @throws Exception if the future throws.
+     */
+    @SmallTest
+    public void testSendAsync_future() throws Exception {
+        final LevelUpConnection connection = new LevelUpConnection(getContext());
+        final LevelUpRequest request =
+                new LevelUpRequest(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V14, "user", null, null);
+        final LevelUpResponse response = new LevelUpResponse("test", LevelUpStatus.OK);
+        connection.setNextResponse(null, response);
+
+        final Future<LevelUpResponse> future = connection.sendAsync(request);
+        assertSame(response, future.get(2, TimeUnit.SECONDS));
+        assertFalse(future.isCancelled());
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.LevelUpConnection#sendAsync(AbstractRequest,
+     * ResponseCallback, java.util.concurrent.Executor)} delivers on the executor passed.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SmallTest
+    public void testSendAsync_callbackExecutor() throws InterruptedException {
+        final LevelUpConnection connection = new LevelUpConnection(getContext());
+        final LevelUpRequest request =
+                new LevelUpRequest(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V14, "user", null, null);
+        final LevelUpResponse response = new LevelUpResponse("test", LevelUpStatus.OK);
+        connection.setNextResponse(null, response);
+
+        final AtomicReference<LevelUpResponse> delivered = new AtomicReference<LevelUpResponse>();
+        final AtomicBoolean usedExecutor = new AtomicBoolean(false);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        connection.sendAsync(request, new ResponseCallback() {
+            @Override
+            public void onResponse(@NonNull final AbstractRequest sent,
+                    @NonNull final LevelUpResponse received) {
+                assertSame(request, sent);
+                delivered.set(received);
+                latch.countDown();
+            }
+        }, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                usedExecutor.set(true);
+                command.run();
+            }
+        });
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertSame(response, delivered.get());
+        assertTrue(usedExecutor.get());
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.LevelUpConnection#prewarm()} does nothing when
+     * network access is disabled.
+     */
+    @SmallTest
+    public void testPrewarm_networkDisabled() {
+        LevelUpConnection.setNetworkEnabled(false);
+
+        try {
+            assertFalse(new LevelUpConnection(getContext()).prewarm());
+        } finally {
+            LevelUpConnection.setNetworkEnabled(true);
+        }
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.LevelUpConnection#setDefaultTransport(Transport)}.
+     */
+    @SmallTest
+    public void testSetDefaultTransport() {
+        final AtomicReference<AbstractRequest> sentRequest = new AtomicReference<>();
+        LevelUpConnection.setDefaultTransport(new Transport() {
+            @Override
+            @NonNull
+            public StreamingResponse send(@NonNull final Context context,
+                    @NonNull final AbstractRequest request,
+                    @Nullable final Map<String, String> additionalHeaders,
+                    @Nullable final NetworkEventListener listener,
+                    @Nullable final RequestHandle handle) {
+                sentRequest.set(request);
+
+                return new StreamingResponse(HttpURLConnection.HTTP_OK, null,
+                        new ByteArrayInputStream(getName().getBytes()));
+            }
+
+            @Override
+            public int getMaxConnections() {
+                return 1;
+            }
+        });
+
+        try {
+            final LevelUpRequest request =
+                    new LevelUpRequest(getContext(), HttpMethod.POST,
+                            LevelUpRequest.API_VERSION_CODE_V14, "user", null, null);
+            final LevelUpResponse response =
+                    LevelUpConnection.newInstance(getContext()).send(request);
+
+            assertSame(request, sentRequest.get());
+            assertEquals(LevelUpStatus.OK, response.getStatus());
+            assertEquals(getName(), response.getData());
+        } finally {
+            LevelUpConnection.setDefaultTransport(null);
+        }
+
+        assertTrue(LevelUpConnection.getDefaultTransport() instanceof HttpUrlConnectionTransport);
+    }
+
+    /**
+     * Tests that {@link com.scvngr.levelup.core.net.LevelUpConnection#send(AbstractRequest,
+     * RequestHandle)} passes the handle to the transport, and doesn't send at all once the handle
+     * is cancelled.
+     */
+    @SmallTest
+    public void testSend_withHandle() {
+        final AtomicReference<RequestHandle> sentHandle = new AtomicReference<>();
+        LevelUpConnection.setDefaultTransport(new Transport() {
+            @Override
+            @NonNull
+            public StreamingResponse send(@NonNull final Context context,
+                    @NonNull final AbstractRequest request,
+                    @Nullable final Map<String, String> additionalHeaders,
+                    @Nullable final NetworkEventListener listener,
+                    @Nullable final RequestHandle handle) {
+                sentHandle.set(handle);
+
+                return new StreamingResponse(HttpURLConnection.HTTP_OK, null,
+                        new ByteArrayInputStream(getName().getBytes()));
+            }
+
+            @Override
+            public int getMaxConnections() {
+                return 1;
+            }
+        });
+
+        try {
+            final LevelUpRequest request =
+                    new LevelUpRequest(getContext(), HttpMethod.GET,
+                            LevelUpRequest.API_VERSION_CODE_V14, "user", null, null);
+            final LevelUpConnection connection = LevelUpConnection.newInstance(getContext());
+            final RequestHandle handle = new RequestHandle();
+
+            assertEquals(LevelUpStatus.OK, connection.send(request, handle).getStatus());
+            assertSame(handle, sentHandle.get());
+
+            sentHandle.set(null);
+            handle.cancel();
+
+            assertEquals(LevelUpStatus.ERROR_NETWORK, connection.send(request, handle)
+                    .getStatus());
+            assertNull(sentHandle.get());
+        } finally {
+            LevelUpConnection.setDefaultTransport(null);
+        }
+    }
+
+    /**
+     * Tests that two concurrent {@link com.scvngr.levelup.core.net.LevelUpConnection#sendAsync}
+     * GETs for the same URL share a single send over the transport.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testSendAsync_coalesced() throws Exception {
+        final AtomicInteger sendCount = new AtomicInteger();
+        final CountDownLatch sendStarted = new CountDownLatch(1);
+        final CountDownLatch releaseSend = new CountDownLatch(1);
+        LevelUpConnection.setDefaultTransport(new Transport() {
+            @Override
+            @NonNull
+            public StreamingResponse send(@NonNull final Context context,
+                    @NonNull final AbstractRequest request,
+                    @Nullable final Map<String, String> additionalHeaders,
+                    @Nullable final NetworkEventListener listener,
+                    @Nullable final RequestHandle handle) {
+                sendCount.incrementAndGet();
+                sendStarted.countDown();
+
+                try {
+                    releaseSend.await(2, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return new StreamingResponse(HttpURLConnection.HTTP_OK, null,
+                        new ByteArrayInputStream(getName().getBytes()));
+            }
+
+            @Override
+            public int getMaxConnections() {
+                return 2;
+            }
+        });
+
+        try {
+            final LevelUpConnection connection = LevelUpConnection.newInstance(getContext());
+            final Future<LevelUpResponse> first =
+                    connection.sendAsync(new LevelUpRequest(getContext(), HttpMethod.GET,
+                            LevelUpRequest.API_VERSION_CODE_V14, "user", null, null));
+            assertTrue(sendStarted.await(2, TimeUnit.SECONDS));
+
+            final Future<LevelUpResponse> second =
+                    connection.sendAsync(new LevelUpRequest(getContext(), HttpMethod.GET,
+                            LevelUpRequest.API_VERSION_CODE_V14, "user", null, null));
+            final long endMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(2);
+
+            while (0 == LevelUpConnection.getCoalescer().getWaitingCount()
+                    && System.currentTimeMillis() < endMillis) {
+                Thread.sleep(10);
+            }
+
+            releaseSend.countDown();
+
+            assertEquals(getName(), first.get(2, TimeUnit.SECONDS).getData());
+            assertEquals(getName(), second.get(2, TimeUnit.SECONDS).getData());
+            assertEquals(1, sendCount.get());
+        } finally {
+            releaseSend.countDown();
+            LevelUpConnection.setDefaultTransport(null);
+        }
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.LevelUpConnection#sendSpooled(AbstractRequest)}.
+     */
+    @SmallTest
+    public void testSendSpooled() throws IOException {
+        LevelUpConnection.setDefaultTransport(new Transport() {
+            @Override
+            @NonNull
+            public StreamingResponse send(@NonNull final Context context,
+                    @NonNull final AbstractRequest request,
+                    @Nullable final Map<String, String> additionalHeaders,
+                    @Nullable final NetworkEventListener listener,
+                    @Nullable final RequestHandle handle) {
+                return new StreamingResponse(HttpURLConnection.HTTP_OK, null,
+                        new ByteArrayInputStream(getName().getBytes()));
+            }
+
+            @Override
+            public int getMaxConnections() {
+                return 1;
+            }
+        });
+
+        try {
+            final LevelUpRequest request =
+                    new LevelUpRequest(getContext(), HttpMethod.GET,
+                            LevelUpRequest.API_VERSION_CODE_V14, "user", null, null);
+            final SpooledResponse response =
+                    LevelUpConnection.newInstance(getContext()).sendSpooled(request);
+            final InputStream data = response.getData();
+
+            assertEquals(LevelUpStatus.OK, response.getStatus());
+            assertNotNull(data);
+
+            try {
+                assertEquals(getName(), BufferedResponse.readStream(data).toString());
+            } finally {
+                response.close();
+            }
+        } finally {
+            LevelUpConnection.setDefaultTransport(null);
+        }
+    }
+
+    /**
+     * Tests that {@link com.scvngr.levelup.core.net.LevelUpConnection#sendSpooled(AbstractRequest,
+     * RequestHandle)} passes the handle to the transport, and doesn't send at all once the handle
+     * is cancelled.
+     */
+    @SmallTest
+    public void testSendSpooled_withHandle() {
+        final AtomicReference<RequestHandle> sentHandle = new AtomicReference<>();
+        LevelUpConnection.setDefaultTransport(new Transport() {
+            @Override
+            @NonNull
+            public StreamingResponse send(@NonNull final Context context,
+                    @NonNull final AbstractRequest request,
+                    @Nullable final Map<String, String> additionalHeaders,
+                    @Nullable final NetworkEventListener listener,
+                    @Nullable final RequestHandle handle) {
+                sentHandle.set(handle);
+
+                return new StreamingResponse(HttpURLConnection.HTTP_OK, null,
+                        new ByteArrayInputStream(getName().getBytes()));
+            }
+
+            @Override
+            public int getMaxConnections() {
+                return 1;
+            }
+        });
+
+        try {
+            final LevelUpRequest request =
+                    new LevelUpRequest(getContext(), HttpMethod.GET,
+                            LevelUpRequest.API_VERSION_CODE_V14, "user", null, null);
+            final LevelUpConnection connection = LevelUpConnection.newInstance(getContext());
+            final RequestHandle handle = new RequestHandle();
+
+            SpooledResponse response = connection.sendSpooled(request, handle);
+            response.close();
+            assertEquals(LevelUpStatus.OK, response.getStatus());
+            assertSame(handle, sentHandle.get());
+
+            sentHandle.set(null);
+            handle.cancel();
+
+            response = connection.sendSpooled(request, handle);
+            response.close();
+            assertEquals(LevelUpStatus.ERROR_NETWORK, response.getStatus());
+            assertNull(sentHandle.get());
+        } finally {
+            LevelUpConnection.setDefaultTransport(null);
+        }
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.LevelUpConnection#setEventListener} passes the
+     * listener to the transport and reports the start and parse of the call.
+     */
+    @SmallTest
+    public void testSetEventListener() {
+        final RecordingEventListener listener = new RecordingEventListener();
+        final AtomicReference<NetworkEventListener> transportListener = new AtomicReference<>();
+        LevelUpConnection.setDefaultTransport(new Transport() {
+            @Override
+            @NonNull
+            public StreamingResponse send(@NonNull final Context context,
+                    @NonNull final AbstractRequest request,
+                    @Nullable final Map<String, String> additionalHeaders,
+                    @Nullable final NetworkEventListener eventListener,
+                    @Nullable final RequestHandle handle) {
+                transportListener.set(eventListener);
+
+                return new StreamingResponse(HttpURLConnection.HTTP_OK, null,
+                        new ByteArrayInputStream(getName().getBytes()));
+            }
+
+            @Override
+            public int getMaxConnections() {
+                return 1;
+            }
+        });
+
+        try {
+            final LevelUpConnection connection = new LevelUpConnection(getContext());
+            assertNull(connection.getEventListener());
+            connection.setEventListener(listener);
+            assertSame(listener, connection.getEventListener());
+
+            connection.send(new LevelUpRequest(getContext(), HttpMethod.POST,
+                    LevelUpRequest.API_VERSION_CODE_V14, "user", null, null));
+
+            assertSame(listener, transportListener.get());
+            assertEquals(Arrays.asList("callStart", "parseEnd"), listener.mEvents);
+        } finally {
+            LevelUpConnection.setDefaultTransport(null);
+        }
+    }
+
+    /**
+     * Tests that requests aren't held back unless a {@link RequestScheduler} is set.
+     */
+    @SmallTest
+    public void testSetDefaultScheduler() {
+        assertNull(LevelUpConnection.getDefaultScheduler());
+
+        final RequestScheduler scheduler = new RequestScheduler(NetworkExecutor.POOL_SIZE);
+        LevelUpConnection.setDefaultScheduler(scheduler);
+
+        try {
+            assertSame(scheduler, LevelUpConnection.getDefaultScheduler());
+        } finally {
+            LevelUpConnection.setDefaultScheduler(null);
+        }
+    }
+
+    /**
+     * Tests that requests aren't retried unless a {@link RetryPolicy} is set.
+     */
+    @SmallTest
+    public void testSetDefaultRetryPolicy() {
+        assertNull(LevelUpConnection.getDefaultRetryPolicy());
+
+        final RetryPolicy policy = new ExponentialBackoffRetryPolicy();
+        LevelUpConnection.setDefaultRetryPolicy(policy);
+
+        try {
+            assertSame(policy, LevelUpConnection.getDefaultRetryPolicy());
+        } finally {
+            LevelUpConnection.setDefaultRetryPolicy(null);
+        }
+    }
+
     /**
      * Tests that requests that throw exceptions are caught properly.
      */
@@ -365,4 +869,32 @@ public final class LevelUpConnectionTest extends SupportAndroidTestCase {
             // do nothing
         }
     }
+
+    /**
+     * Appends its name to a log of the interceptors a request passed through.
+     */
+    private static final class OrderInterceptor implements Interceptor {
+
+        @NonNull
+        private final StringBuilder mOrder;
+
+        @NonNull
+        private final String mName;
+
+        /**
+         * @param order the log to append to.
+         * @param name the name to append.
+         */
+        public OrderInterceptor(@NonNull final StringBuilder order, @NonNull final String name) {
+            mOrder = order;
+            mName = name;
+        }
+
+        @Override
+        @NonNull
+        public LevelUpResponse intercept(@NonNull final Chain chain) {
+            mOrder.append(mName);
+            return chain.proceed(chain.getRequest());
+        }
+    }
 }
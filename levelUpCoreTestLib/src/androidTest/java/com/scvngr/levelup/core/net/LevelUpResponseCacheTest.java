@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.LevelUpResponseCache.CachedResponse;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.LevelUpResponseCache}.
+ */
+public final class LevelUpResponseCacheTest extends SupportAndroidTestCase {
+
+    @NonNull
+    private static final String KEY = "test_key";
+
+    @NonNull
+    private static final String DATA = "{\"test\":\"data\"}";
+
+    @NonNull
+    private static final String ETAG = "\"abc123\"";
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mDirectory = new File(getContext().getCacheDir(), "test_response_cache");
+        new LevelUpResponseCache(mDirectory, 1024 * 1024, 1024 * 1024).evictAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new LevelUpResponseCache(mDirectory, 1024 * 1024, 1024 * 1024).evictAll();
+        LevelUpResponseCache.uninstall();
+
+        super.tearDown();
+    }
+
+    /**
+     * Tests {@link LevelUpResponseCache#parseMaxAgeSeconds(String)}.
+     */
+    @SmallTest
+    public void testParseMaxAgeSeconds() {
+        assertEquals(-1, LevelUpResponseCache.parseMaxAgeSeconds(null));
+        assertEquals(-1, LevelUpResponseCache.parseMaxAgeSeconds("private"));
+        assertEquals(60, LevelUpResponseCache.parseMaxAgeSeconds("private, max-age=60"));
+        assertEquals(60, LevelUpResponseCache.parseMaxAgeSeconds("MAX-AGE=60"));
+        assertEquals(0, LevelUpResponseCache.parseMaxAgeSeconds("max-age=60, no-cache"));
+        assertEquals(-1, LevelUpResponseCache.parseMaxAgeSeconds("max-age=abc"));
+    }
+
+    /**
+     * Tests {@link LevelUpResponseCache#isCacheable(LevelUpResponse)}.
+     */
+    @SmallTest
+    public void testIsCacheable() {
+        assertTrue(LevelUpResponseCache.isCacheable(newResponse(HttpURLConnection.HTTP_OK,
+                LevelUpResponseCache.HEADER_ETAG, ETAG)));
+        assertTrue(LevelUpResponseCache.isCacheable(newResponse(HttpURLConnection.HTTP_OK,
+                LevelUpResponseCache.HEADER_CACHE_CONTROL, "max-age=60")));
+        assertFalse(LevelUpResponseCache.isCacheable(newResponse(HttpURLConnection.HTTP_OK, null,
+                null)));
+        assertFalse(LevelUpResponseCache.isCacheable(newResponse(HttpURLConnection.HTTP_OK,
+                LevelUpResponseCache.HEADER_CACHE_CONTROL, "no-store, max-age=60")));
+        assertFalse(LevelUpResponseCache.isCacheable(newResponse(
+                HttpURLConnection.HTTP_NOT_FOUND, LevelUpResponseCache.HEADER_ETAG, ETAG)));
+    }
+
+    /**
+     * Tests that stored responses are returned from memory and disk.
+     */
+    @SmallTest
+    public void testPutGet() {
+        final LevelUpResponseCache cache = new LevelUpResponseCache(mDirectory, 1024, 1024 * 1024);
+        assertNull(cache.get(KEY));
+        assertTrue(cache.put(KEY,
+                newResponse(HttpURLConnection.HTTP_OK, LevelUpResponseCache.HEADER_ETAG, ETAG)));
+
+        final CachedResponse cached = cache.get(KEY);
+        assertNotNull(cached);
+        assertEquals(DATA, cached.getData());
+        assertEquals(LevelUpStatus.OK, cached.toResponse().getStatus());
+
+        // A new cache on the same directory reads the entry from disk.
+        final CachedResponse fromDisk =
+                new LevelUpResponseCache(mDirectory, 1024, 1024 * 1024).get(KEY);
+        assertNotNull(fromDisk);
+        assertEquals(DATA, fromDisk.getData());
+        assertEquals(ETAG, fromDisk.getConditionalHeaders().get(
+                LevelUpResponseCache.HEADER_IF_NONE_MATCH));
+    }
+
+    /**
+     * Tests that uncacheable responses are not stored.
+     */
+    @SmallTest
+    public void testPut_notCacheable() {
+        final LevelUpResponseCache cache = new LevelUpResponseCache(mDirectory, 1024, 1024 * 1024);
+        assertFalse(cache.put(KEY, newResponse(HttpURLConnection.HTTP_OK,
+                LevelUpResponseCache.HEADER_CACHE_CONTROL, "no-store")));
+        assertNull(cache.get(KEY));
+    }
+
+    /**
+     * Tests {@link CachedResponse#isFresh(long)}.
+     */
+    @SmallTest
+    public void testIsFresh() {
+        final CachedResponse maxAge =
+                new CachedResponse(DATA, HttpURLConnection.HTTP_OK, newHeaders(
+                        LevelUpResponseCache.HEADER_CACHE_CONTROL, "max-age=60"), 0);
+        assertTrue(maxAge.isFresh(59 * 1000));
+        assertFalse(maxAge.isFresh(60 * 1000));
+
+        final CachedResponse etagOnly =
+                new CachedResponse(DATA, HttpURLConnection.HTTP_OK, newHeaders(
+                        LevelUpResponseCache.HEADER_ETAG, ETAG), 0);
+        assertFalse(etagOnly.isFresh(0));
+    }
+
+    /**
+     * Tests {@link LevelUpResponseCache#update} keeps the body and refreshes the headers.
+     */
+    @SmallTest
+    public void testUpdate() {
+        final LevelUpResponseCache cache = new LevelUpResponseCache(mDirectory, 1024, 1024 * 1024);
+        cache.put(KEY,
+                newResponse(HttpURLConnection.HTTP_OK, LevelUpResponseCache.HEADER_ETAG, ETAG));
+        final CachedResponse cached = cache.get(KEY);
+        assertNotNull(cached);
+
+        final LevelUpResponse notModified =
+                new LevelUpResponse("", HttpURLConnection.HTTP_NOT_MODIFIED, newHeaders(
+                        LevelUpResponseCache.HEADER_CACHE_CONTROL, "max-age=60"), null);
+        final CachedResponse refreshed = cache.update(KEY, cached, notModified);
+        assertEquals(DATA, refreshed.getData());
+        assertTrue(refreshed.isFresh(System.currentTimeMillis()));
+        assertEquals(ETAG,
+                refreshed.getConditionalHeaders().get(LevelUpResponseCache.HEADER_IF_NONE_MATCH));
+    }
+
+    /**
+     * Tests that the disk tier is trimmed to its size limit.
+     */
+    @SmallTest
+    public void testDiskTrim() {
+        final LevelUpResponseCache cache = new LevelUpResponseCache(mDirectory, 1024, 1);
+        cache.put(KEY,
+                newResponse(HttpURLConnection.HTTP_OK, LevelUpResponseCache.HEADER_ETAG, ETAG));
+
+        final File[] files = mDirectory.listFiles();
+        assertTrue(null == files || 0 == files.length);
+    }
+
+    /**
+     * Tests {@link LevelUpResponseCache#install} and {@link LevelUpResponseCache#uninstall()}.
+     */
+    @SmallTest
+    public void testInstall() {
+        assertNull(LevelUpResponseCache.getInstalled());
+
+        final LevelUpResponseCache cache = LevelUpResponseCache.install(getContext(), 1024, 0);
+        assertSame(cache, LevelUpResponseCache.getInstalled());
+
+        LevelUpResponseCache.uninstall();
+        assertNull(LevelUpResponseCache.getInstalled());
+    }
+
+    /**
+     * @param statusCode the HTTP status code.
+     * @param headerName the name of a header to include or null.
+     * @param headerValue the value of the header.
+     * @return a response with {@link #DATA} as its body.
+     */
+    @NonNull
+    private static LevelUpResponse newResponse(final int statusCode, final String headerName,
+            final String headerValue) {
+        return new LevelUpResponse(DATA, statusCode, newHeaders(headerName, headerValue), null);
+    }
+
+    /**
+     * @param name the name of a header to include or null.
+     * @param value the value of the header.
+     * @return the headers.
+     */
+    @NonNull
+    private static Map<String, List<String>> newHeaders(final String name, final String value) {
+        final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+
+        if (null != name) {
+            headers.put(name, Collections.singletonList(value));
+        }
+
+        return headers;
+    }
+}
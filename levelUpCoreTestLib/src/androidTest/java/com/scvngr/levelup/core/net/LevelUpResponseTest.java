@@ -400,6 +400,29 @@ public final class LevelUpResponseTest extends SupportAndroidTestCase {
                 nonNullContract(ErrorCode.fromString(mError1.getCode()))));
     }
 
+    /**
+     * Tests that {@link LevelUpResponse#getServerError} returns the first of several errors with
+     * the same object and code.
+     */
+    @SmallTest
+    public void testGetError_duplicates() {
+        final Error duplicate =
+                new Error(mError1.getCode(), "message3", mError1.getObject(), "property3");
+        final JSONArray errorList = new JSONArray();
+
+        errorList.put(ErrorFixture.getJsonObjectFromModel(mError1));
+        errorList.put(ErrorFixture.getJsonObjectFromModel(duplicate));
+
+        final LevelUpResponse response =
+                new LevelUpResponse(nonNullContract(errorList.toString()),
+                        LevelUpStatus.ERROR_SERVER);
+
+        assertEquals(2, response.getServerErrors().size());
+        assertEquals(mError1, response.getServerError(
+                nonNullContract(ErrorObject.fromString(mError1.getObject())),
+                nonNullContract(ErrorCode.fromString(mError1.getCode()))));
+    }
+
     @SmallTest
     public void testGetErrorList() {
         final List<Error> expectedErrorList = new LinkedList<Error>();
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.ModelResponse}.
+ */
+public final class ModelResponseTest extends SupportAndroidTestCase {
+
+    /**
+     * Decodes the {@code value} property of a JSON object.
+     */
+    @NonNull
+    private static final ModelDecoder<String> VALUE_DECODER = new ModelDecoder<String>() {
+        @Override
+        @NonNull
+        public String decode(@NonNull final JsonReader reader) throws IOException {
+            String value = null;
+
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                if ("value".equals(reader.nextName())) {
+                    value = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+
+            if (null == value) {
+                throw new IOException("Missing value");
+            }
+
+            return value;
+        }
+    };
+
+    /**
+     * Tests decoding a successful response from a stream.
+     */
+    @SmallTest
+    public void testDecode_streamSuccess() {
+        final ModelResponse<String> response =
+                ModelResponse.decode(newResponse(HttpURLConnection.HTTP_OK,
+                        "{\"other\":[1,2],\"value\":\"test\"}"), VALUE_DECODER);
+
+        assertEquals(LevelUpStatus.OK, response.getStatus());
+        assertEquals("test", response.getData());
+        assertNull(response.getError());
+        assertEquals(HttpURLConnection.HTTP_OK, response.getHttpStatusCode());
+    }
+
+    /**
+     * Tests decoding a malformed response from a stream.
+     */
+    @SmallTest
+    public void testDecode_streamMalformed() {
+        final ModelResponse<String> response =
+                ModelResponse.decode(newResponse(HttpURLConnection.HTTP_OK, "[\"value\"]"),
+                        VALUE_DECODER);
+
+        assertEquals(LevelUpStatus.ERROR_PARSING, response.getStatus());
+        assertNull(response.getData());
+        assertNotNull(response.getError());
+    }
+
+    /**
+     * Tests that unsuccessful responses are not decoded and have their server errors parsed.
+     */
+    @SmallTest
+    public void testDecode_streamUnsuccessful() {
+        final Map<String, List<String>> headers =
+                Collections.singletonMap("Server",
+                        Collections.singletonList("LevelUp"));
+        final ModelResponse<String> response =
+                ModelResponse.decode(new StreamingResponse(HttpURLConnection.HTTP_NOT_FOUND,
+                        headers, new ByteArrayInputStream(("[{\"error\":{\"code\":\"not_found\","
+                                + "\"message\":\"Not found\"}}]").getBytes())), VALUE_DECODER);
+
+        assertEquals(LevelUpStatus.ERROR_NOT_FOUND, response.getStatus());
+        assertNull(response.getData());
+        assertEquals(1, response.getServerErrors().size());
+    }
+
+    /**
+     * Tests decoding a buffered {@link LevelUpResponse}.
+     */
+    @SmallTest
+    public void testDecode_buffered() {
+        final ModelResponse<String> response =
+                ModelResponse.decode(new LevelUpResponse("{\"value\":\"test\"}", LevelUpStatus.OK),
+                        VALUE_DECODER);
+
+        assertEquals(LevelUpStatus.OK, response.getStatus());
+        assertEquals("test", response.getData());
+    }
+
+    /**
+     * Tests decoding a {@link SpooledResponse} that was written to disk.
+     */
+    @SmallTest
+    public void testDecode_spooled() {
+        final StringBuilder body = new StringBuilder("{\"value\":\"test\",\"other\":\"");
+
+        while (body.length() <= SpooledResponse.MAX_IN_MEMORY_BYTES) {
+            body.append("padding");
+        }
+
+        body.append("\"}");
+
+        final SpooledResponse spooled =
+                new SpooledResponse(newResponse(HttpURLConnection.HTTP_OK, body.toString()),
+                        new File(getContext().getCacheDir(), getName()));
+
+        try {
+            assertTrue(spooled.isSpooledToDisk());
+
+            final ModelResponse<String> response = ModelResponse.decode(spooled, VALUE_DECODER);
+
+            assertEquals(LevelUpStatus.OK, response.getStatus());
+            assertEquals("test", response.getData());
+        } finally {
+            spooled.close();
+        }
+    }
+
+    /**
+     * @param statusCode the HTTP status code.
+     * @param body the response body.
+     * @return a response that streams {@code body}.
+     */
+    @NonNull
+    private static StreamingResponse newResponse(final int statusCode, @NonNull final String body) {
+        return new StreamingResponse(statusCode, null, new ByteArrayInputStream(body.getBytes()));
+    }
+}
@@ -14,11 +14,15 @@
 package com.scvngr.levelup.core.net;
 
 import android.content.Context;
+import android.net.Uri;
 import android.os.Parcel;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 
+import com.scvngr.levelup.core.R;
 import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
 import com.scvngr.levelup.core.test.SupportAndroidTestCase;
 import com.scvngr.levelup.core.util.NullUtils;
@@ -30,10 +34,16 @@ import com.google.mockwebserver.RecordedRequest;
 import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -233,6 +243,52 @@ public final class NetworkConnectionTest extends SupportAndroidTestCase {
         assertEquals(HttpMethod.POST.name(), connection.getRequestMethod());
     }
 
+    /**
+     * Tests that reading a body that trickles in slower than its deadline stops at the deadline,
+     * even though each read finishes well within the read timeout.
+     *
+     * @throws IOException if the mock server can't be started.
+     */
+    @MediumTest
+    public void testSend_slowBodyPastDeadline() throws IOException {
+        final MockWebServer server = new MockWebServer();
+        final byte[] body = new byte[1000];
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK)
+                .setBody(body).setBytesPerSecond(50));
+        server.play();
+
+        try {
+            final RequestHandle handle = new RequestHandle(5000, 5000, 1000);
+            final RequestStub request =
+                    new RequestStub(HttpMethod.GET, server.getUrl("/").toString(),
+                            new HashMap<String, String>(), new HashMap<String, String>(), null);
+            final long startMillis = SystemClock.elapsedRealtime();
+            final StreamingResponse response =
+                    NetworkConnection.send(getContext(), request, null, null, handle);
+            assertEquals(HttpURLConnection.HTTP_OK, response.getHttpStatusCode());
+
+            final InputStream data = NullUtils.nonNullContract(response.getData());
+
+            try {
+                while (-1 != data.read()) {
+                    assertTrue("Read past the deadline",
+                            SystemClock.elapsedRealtime() - startMillis < 5000);
+                }
+
+                fail("Expected IOException");
+            } catch (final IOException e) {
+                // Expected exception.
+            } finally {
+                response.close();
+            }
+
+            assertTrue(handle.isDone());
+            assertTrue(SystemClock.elapsedRealtime() - startMillis < 5000);
+        } finally {
+            server.shutdown();
+        }
+    }
+
     /**
      * Tests {@link com.scvngr.levelup.core.net.NetworkConnection#send} with a GET request.
      *
@@ -343,6 +399,35 @@ public final class NetworkConnectionTest extends SupportAndroidTestCase {
         assertEquals(body, new String(recorded.getBody()));
     }
 
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.NetworkConnection#send} reports the progress of a
+     * request to a {@link NetworkEventListener}.
+     *
+     * @throws java.io.IOException if {@link #getMockServerUrl()} throws it
+     */
+    @SmallTest
+    public void testSend_withEventListener() throws IOException {
+        final String body = "this is a test body";
+        final RequestStub request =
+                new RequestStub(HttpMethod.POST, getMockServerUrl(), null, null, body);
+        final RecordingEventListener listener = new RecordingEventListener();
+        final StreamingResponse response =
+                NetworkConnection.send(getContext(), request, null, listener);
+
+        assertEquals(HttpURLConnection.HTTP_OK, response.getHttpStatusCode());
+        assertEquals(Arrays.asList("connectionAcquired", "requestHeadersEnd", "requestBodyEnd",
+                "responseFirstByte"), listener.mEvents);
+        assertEquals(body.getBytes("utf-8").length, listener.mRequestByteCount);
+
+        assertEquals(RESPONSE_BODY, new BufferedResponse(response).getData());
+        assertEquals("responseBodyEnd", listener.mEvents.get(listener.mEvents.size() - 1));
+        assertEquals(RESPONSE_BODY.getBytes("utf-8").length, listener.mResponseByteCount);
+
+        // Closing again doesn't report again.
+        response.close();
+        assertEquals(5, listener.mEvents.size());
+    }
+
     /**
      * Tests {@link com.scvngr.levelup.core.net.NetworkConnection#send} with a PUT request.
      *
@@ -475,6 +560,48 @@ public final class NetworkConnectionTest extends SupportAndroidTestCase {
         }
     }
 
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.NetworkConnection#prewarm(Context, java.net.URL)}
+     * sends a HEAD request.
+     *
+     * @throws InterruptedException if {@link MockWebServer#takeRequest()} throws it
+     * @throws java.io.IOException if {@link #getMockServerUrl()} throws it
+     */
+    @SmallTest
+    public void testPrewarm() throws InterruptedException, IOException {
+        assertTrue(NetworkConnection.prewarm(getContext(), mServer.getUrl("/")));
+        final RecordedRequest recorded = mServer.takeRequest();
+
+        assertEquals("HEAD", recorded.getMethod());
+        assertEquals("/", recorded.getPath());
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.NetworkConnection#prewarm(Context, java.net.URL)}
+     * reports a failure when it can't connect.
+     *
+     * @throws IOException if {@link MockWebServer#shutdown()} throws it
+     */
+    @SmallTest
+    public void testPrewarm_unreachable() throws IOException {
+        final URL url = mServer.getUrl("/");
+        mServer.shutdown();
+
+        assertFalse(NetworkConnection.prewarm(getContext(), url));
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.NetworkConnection#getServerRootUrl(Context)}.
+     */
+    @SmallTest
+    public void testGetServerRootUrl() {
+        final Uri url = Uri.parse(NetworkConnection.getServerRootUrl(getContext()));
+
+        assertEquals(getContext().getString(R.string.levelup_api_authority),
+                url.getEncodedAuthority());
+        assertEquals("/", url.getPath());
+    }
+
     /**
      * Helper method to get the mock server URL.
      *
@@ -486,6 +613,63 @@ public final class NetworkConnectionTest extends SupportAndroidTestCase {
         return NullUtils.nonNullContract(mServer.getUrl("/").toString());
     }
 
+    /**
+     * Records the events reported to it in order.
+     */
+    /* package */static final class RecordingEventListener extends NetworkEventListener {
+
+        @NonNull
+        /* package */final List<String> mEvents =
+                Collections.synchronizedList(new ArrayList<String>());
+
+        /* package */volatile long mRequestByteCount = -1;
+
+        /* package */volatile long mResponseByteCount = -1;
+
+        @Override
+        public void callStart(@NonNull final AbstractRequest request, final long nanoTime) {
+            mEvents.add("callStart");
+        }
+
+        @Override
+        public void connectionAcquired(@NonNull final AbstractRequest request,
+                final long nanoTime) {
+            mEvents.add("connectionAcquired");
+        }
+
+        @Override
+        public void requestHeadersEnd(@NonNull final AbstractRequest request,
+                final long nanoTime) {
+            mEvents.add("requestHeadersEnd");
+        }
+
+        @Override
+        public void requestBodyEnd(@NonNull final AbstractRequest request, final long nanoTime,
+                final long byteCount) {
+            mEvents.add("requestBodyEnd");
+            mRequestByteCount = byteCount;
+        }
+
+        @Override
+        public void responseFirstByte(@NonNull final AbstractRequest request,
+                final long nanoTime, final int statusCode) {
+            mEvents.add("responseFirstByte");
+        }
+
+        @Override
+        public void responseBodyEnd(@NonNull final AbstractRequest request, final long nanoTime,
+                final long byteCount) {
+            mEvents.add("responseBodyEnd");
+            mResponseByteCount = byteCount;
+        }
+
+        @Override
+        public void parseEnd(@NonNull final AbstractRequest request, final long nanoTime,
+                @NonNull final LevelUpStatus status) {
+            mEvents.add("parseEnd");
+        }
+    }
+
     /**
      * Test implementation of {@link com.scvngr.levelup.core.net.AbstractRequest} that throws a {@link com.scvngr.levelup.core.net.AbstractRequest.BadRequestException} when
      * {@link com.scvngr.levelup.core.net.AbstractRequest#getUrlString} is called.
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.net.NumberedPageLoader.PageCallback;
+import com.scvngr.levelup.core.net.NumberedPageLoader.PageRequestBuilder;
+import com.scvngr.levelup.core.net.NumberedPageLoader.PageResult;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.NumberedPageLoader}.
+ */
+public final class NumberedPageLoaderTest extends SupportAndroidTestCase {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @NonNull
+    private final PageRequestBuilder mBuilder = new PageRequestBuilder() {
+        @Override
+        public AbstractRequest buildRequest(final int page) {
+            return new LevelUpRequest(getContext(), HttpMethod.GET,
+                    LevelUpRequest.API_VERSION_CODE_V14, "page/" + page, null, null);
+        }
+    };
+
+    /**
+     * Tests that an invalid limit is rejected.
+     */
+    @SmallTest
+    public void testConstructor_invalidParallelism() {
+        try {
+            new NumberedPageLoader(new LevelUpConnection(getContext()), 0);
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+            // Expected exception.
+        }
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.NumberedPageLoader#isPastLastPage}.
+     */
+    @SmallTest
+    public void testIsPastLastPage() {
+        assertTrue(NumberedPageLoader.isPastLastPage(new LevelUpResponse("", LevelUpStatus.OK)));
+        assertTrue(NumberedPageLoader.isPastLastPage(new LevelUpResponse("[]", LevelUpStatus.OK)));
+        assertTrue(NumberedPageLoader
+                .isPastLastPage(new LevelUpResponse(" [ \n] ", LevelUpStatus.OK)));
+        assertFalse(NumberedPageLoader
+                .isPastLastPage(new LevelUpResponse("[{}]", LevelUpStatus.OK)));
+        assertFalse(NumberedPageLoader.isPastLastPage(new LevelUpResponse("[]",
+                LevelUpStatus.ERROR_SERVER)));
+    }
+
+    /**
+     * Tests that the pages are delivered in order and the load stops at the first empty page.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testLoad() throws Exception {
+        final LevelUpConnection connection = newConnection(5, 0);
+        final PageRecorder recorder = new PageRecorder();
+
+        final PageResult result =
+                new NumberedPageLoader(connection, 3).load(mBuilder, recorder, (Executor) null)
+                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue(recorder.mLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(result, recorder.mResult.get());
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), recorder.mPages);
+        assertEquals(5, result.getPageCount());
+        assertTrue(result.isSuccessful());
+    }
+
+    /**
+     * Tests that a failed page ends the load after the pages before it.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testLoad_failure() throws Exception {
+        final LevelUpConnection connection = newConnection(5, 3);
+        final PageRecorder recorder = new PageRecorder();
+
+        final PageResult result =
+                new NumberedPageLoader(connection, 2).load(mBuilder, recorder, (Executor) null)
+                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue(recorder.mLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2), recorder.mPages);
+        assertEquals(2, result.getPageCount());
+        assertFalse(result.isSuccessful());
+        assertEquals(LevelUpStatus.ERROR_SERVER, result.getFailedResponse().getStatus());
+    }
+
+    /**
+     * Tests that a page whose request can't be built ends the load with a failure after the pages
+     * before it.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testLoad_buildRequestThrows() throws Exception {
+        final LevelUpConnection connection = newConnection(5, 0);
+        final PageRecorder recorder = new PageRecorder();
+        final PageRequestBuilder builder = new PageRequestBuilder() {
+            @Override
+            public AbstractRequest buildRequest(final int page) {
+                if (3 == page) {
+                    throw new IllegalStateException("page 3");
+                }
+
+                return mBuilder.buildRequest(page);
+            }
+        };
+
+        final PageResult result =
+                new NumberedPageLoader(connection, 2).load(builder, recorder, (Executor) null)
+                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue(recorder.mLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2), recorder.mPages);
+        assertEquals(2, result.getPageCount());
+        assertFalse(result.isSuccessful());
+        assertNotNull(result.getFailedResponse());
+    }
+
+    /**
+     * Tests that a load with no pages completes.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testLoad_empty() throws Exception {
+        final PageResult result =
+                new NumberedPageLoader(newConnection(0, 0)).load(mBuilder, null, (Executor) null)
+                        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertEquals(0, result.getPageCount());
+        assertTrue(result.isSuccessful());
+    }
+
+    /**
+     * @param pageCount the number of pages with content.
+     * @param failedPage the page that fails, or 0 if none does.
+     * @return a connection that answers the pages, and every page after the last with an empty
+     *         list.
+     * @throws BadRequestException if a page request is bad.
+     */
+    @NonNull
+    private LevelUpConnection newConnection(final int pageCount, final int failedPage)
+            throws BadRequestException {
+        final LevelUpConnection connection = new LevelUpConnection(getContext());
+        connection.setNextResponse(null, new LevelUpResponse("[]", LevelUpStatus.OK));
+
+        for (int page = NumberedPageLoader.FIRST_PAGE; page <= pageCount; page++) {
+            connection.setNextResponse(mBuilder.buildRequest(page).getUrlString(getContext()),
+                    new LevelUpResponse("[{}]", page == failedPage ? LevelUpStatus.ERROR_SERVER
+                            : LevelUpStatus.OK));
+        }
+
+        return connection;
+    }
+
+    /**
+     * Records the pages delivered to it.
+     */
+    private static final class PageRecorder implements PageCallback {
+
+        @NonNull
+        /* package */final List<Integer> mPages =
+                Collections.synchronizedList(new ArrayList<Integer>());
+
+        @NonNull
+        /* package */final AtomicReference<PageResult> mResult = new AtomicReference<PageResult>();
+
+        @NonNull
+        /* package */final CountDownLatch mLatch = new CountDownLatch(1);
+
+        @Override
+        public void onPage(final int page, @NonNull final AbstractRequest request,
+                @NonNull final LevelUpResponse response) {
+            mPages.add(page);
+        }
+
+        @Override
+        public void onComplete(@NonNull final PageResult result) {
+            mResult.set(result);
+            mLatch.countDown();
+        }
+    }
+}
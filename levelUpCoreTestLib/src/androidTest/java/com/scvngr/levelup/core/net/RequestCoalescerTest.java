@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.NetworkConnectionTest.RequestStub;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.RequestCoalescer}.
+ */
+public final class RequestCoalescerTest extends SupportAndroidTestCase {
+
+    @NonNull
+    private static final String URL = "http://www.example.com/test";
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * Tests that an equal GET request sent while another is in flight shares its response.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testSend_coalescesEqualGets() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch sendStarted = new CountDownLatch(1);
+        final CountDownLatch releaseSend = new CountDownLatch(1);
+        final AtomicInteger sendCount = new AtomicInteger();
+        final LevelUpResponse expected = new LevelUpResponse("", LevelUpStatus.OK);
+        final AtomicReference<LevelUpResponse> leaderResponse =
+                new AtomicReference<LevelUpResponse>();
+
+        final Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                leaderResponse.set(coalescer.send(newRequest(HttpMethod.GET),
+                        new Callable<LevelUpResponse>() {
+                            @Override
+                            public LevelUpResponse call() throws InterruptedException {
+                                sendCount.incrementAndGet();
+                                sendStarted.countDown();
+                                releaseSend.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+                                return expected;
+                            }
+                        }));
+            }
+        });
+        leader.start();
+        assertTrue(sendStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, coalescer.getInFlightCount());
+
+        final AtomicReference<LevelUpResponse> followerResponse =
+                new AtomicReference<LevelUpResponse>();
+        final Thread follower = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                followerResponse.set(coalescer.send(newRequest(HttpMethod.GET),
+                        new Callable<LevelUpResponse>() {
+                            @Override
+                            public LevelUpResponse call() {
+                                sendCount.incrementAndGet();
+
+                                return new LevelUpResponse("", LevelUpStatus.ERROR_SERVER);
+                            }
+                        }));
+            }
+        });
+        follower.start();
+
+        releaseSend.countDown();
+        leader.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        follower.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        /*
+         * The follower may not have registered before the leader finished, in which case it sent
+         * its own request. Either way the leader got its own response.
+         */
+        assertSame(expected, leaderResponse.get());
+
+        if (1 == sendCount.get()) {
+            assertSame(expected, followerResponse.get());
+        }
+
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    /**
+     * Tests that a caller that joined a send stops waiting when its handle is cancelled, and that
+     * the callers that joined a send whose own handle was cancelled send the request again.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testSend_cancelled() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch sendStarted = new CountDownLatch(1);
+        final RequestHandle leaderHandle = new RequestHandle();
+        final AtomicInteger sendCount = new AtomicInteger();
+        final LevelUpResponse expected = new LevelUpResponse("", LevelUpStatus.OK);
+
+        final Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                coalescer.send(newRequest(HttpMethod.GET), leaderHandle,
+                        new Callable<LevelUpResponse>() {
+                            @Override
+                            public LevelUpResponse call() throws InterruptedException {
+                                sendCount.incrementAndGet();
+                                sendStarted.countDown();
+
+                                // Stands in for the connection that cancel() disconnects.
+                                leaderHandle.awaitDone(new FutureTask<Void>(
+                                        new Callable<Void>() {
+                                            @Override
+                                            public Void call() {
+                                                return null;
+                                            }
+                                        }));
+
+                                return leaderHandle.newDoneResponse();
+                            }
+                        });
+            }
+        });
+        leader.start();
+        assertTrue(sendStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final RequestHandle cancelledHandle = new RequestHandle();
+        cancelledHandle.cancel();
+        assertEquals(LevelUpStatus.ERROR_NETWORK, coalescer.send(newRequest(HttpMethod.GET),
+                cancelledHandle, new Callable<LevelUpResponse>() {
+                    @Override
+                    public LevelUpResponse call() {
+                        sendCount.incrementAndGet();
+
+                        return expected;
+                    }
+                }).getStatus());
+        assertEquals(1, sendCount.get());
+
+        final AtomicReference<LevelUpResponse> followerResponse =
+                new AtomicReference<LevelUpResponse>();
+        final Thread follower = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                followerResponse.set(coalescer.send(newRequest(HttpMethod.GET),
+                        new RequestHandle(), new Callable<LevelUpResponse>() {
+                            @Override
+                            public LevelUpResponse call() {
+                                sendCount.incrementAndGet();
+
+                                return expected;
+                            }
+                        }));
+            }
+        });
+        follower.start();
+
+        final long endMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(2);
+
+        while (0 == coalescer.getWaitingCount() && System.currentTimeMillis() < endMillis) {
+            Thread.sleep(10);
+        }
+
+        leaderHandle.cancel();
+        leader.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        follower.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        assertSame(expected, followerResponse.get());
+        assertEquals(2, sendCount.get());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    /**
+     * Tests that requests that are not idempotent are never coalesced.
+     */
+    @SmallTest
+    public void testSend_postNotCoalesced() {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final AtomicInteger sendCount = new AtomicInteger();
+        final Callable<LevelUpResponse> send = new Callable<LevelUpResponse>() {
+            @Override
+            public LevelUpResponse call() {
+                sendCount.incrementAndGet();
+                assertEquals(0, coalescer.getInFlightCount());
+
+                return new LevelUpResponse("", LevelUpStatus.OK);
+            }
+        };
+
+        coalescer.send(newRequest(HttpMethod.POST), send);
+        coalescer.send(newRequest(HttpMethod.POST), send);
+        assertEquals(2, sendCount.get());
+    }
+
+    /**
+     * Tests that a failed send is not left in flight.
+     */
+    @SmallTest
+    public void testSend_exception() {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+
+        try {
+            coalescer.send(newRequest(HttpMethod.GET), new Callable<LevelUpResponse>() {
+                @Override
+                public LevelUpResponse call() {
+                    throw new IllegalStateException();
+                }
+            });
+            fail("Expected exception");
+        } catch (final IllegalStateException e) {
+            // Expected exception
+        }
+
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    /**
+     * @param method the request method.
+     * @return a new request to {@link #URL}.
+     */
+    @NonNull
+    private static AbstractRequest newRequest(@NonNull final HttpMethod method) {
+        return new RequestStub(method, URL, null, null, null);
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.RequestHandle}.
+ */
+public final class RequestHandleTest extends SupportAndroidTestCase {
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.RequestHandle#RequestHandle()}.
+     */
+    @SmallTest
+    public void testConstructor_defaults() {
+        final RequestHandle handle = new RequestHandle();
+
+        assertEquals(RequestHandle.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                handle.getConnectTimeoutMillis());
+        assertEquals(RequestHandle.DEFAULT_READ_TIMEOUT_MILLIS, handle.getReadTimeoutMillis());
+        assertEquals(Long.MAX_VALUE, handle.getRemainingMillis());
+        assertFalse(handle.isDone());
+        assertFalse(handle.isCancelled());
+    }
+
+    /**
+     * Tests that the constructor rejects timeouts that aren't positive and negative deadlines.
+     */
+    @SmallTest
+    public void testConstructor_invalid() {
+        try {
+            new RequestHandle(0, 1, RequestHandle.NO_DEADLINE);
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // Expected exception.
+        }
+
+        try {
+            new RequestHandle(1, -1, RequestHandle.NO_DEADLINE);
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // Expected exception.
+        }
+
+        try {
+            new RequestHandle(1, 1, -1);
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // Expected exception.
+        }
+    }
+
+    /**
+     * Tests that the timeouts are limited to the time left before the deadline.
+     *
+     * @throws InterruptedException if interrupted while sleeping.
+     */
+    @SmallTest
+    public void testDeadline() throws InterruptedException {
+        final RequestHandle handle = new RequestHandle(10000, 10000, 50);
+
+        assertTrue(handle.getConnectTimeoutMillis() <= 50);
+        assertTrue(handle.getReadTimeoutMillis() <= 50);
+
+        Thread.sleep(100);
+
+        assertTrue(handle.isDone());
+        assertFalse(handle.isCancelled());
+        assertEquals(0, handle.getRemainingMillis());
+        assertEquals(1, handle.getConnectTimeoutMillis());
+        assertEquals(1, handle.getReadTimeoutMillis());
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.RequestHandle#cancel()} disconnects the attached
+     * connection and refuses new ones.
+     *
+     * @throws IOException if the connection can't be opened.
+     */
+    @SmallTest
+    public void testCancel() throws IOException {
+        final DisconnectRecordingConnection connection = new DisconnectRecordingConnection();
+        final RequestHandle handle = new RequestHandle();
+
+        assertTrue(handle.attach(connection));
+        handle.cancel();
+
+        assertTrue(connection.mIsDisconnected.get());
+        assertTrue(handle.isCancelled());
+        assertTrue(handle.isDone());
+        assertFalse(handle.attach(connection));
+    }
+
+    /**
+     * Tests that {@link com.scvngr.levelup.core.net.RequestHandle#detach()} keeps cancelling
+     * from disconnecting the connection.
+     *
+     * @throws IOException if the connection can't be opened.
+     */
+    @SmallTest
+    public void testDetach() throws IOException {
+        final DisconnectRecordingConnection connection = new DisconnectRecordingConnection();
+        final RequestHandle handle = new RequestHandle();
+
+        assertTrue(handle.attach(connection));
+        handle.detach();
+        handle.cancel();
+
+        assertFalse(connection.mIsDisconnected.get());
+    }
+
+    /**
+     * Tests that {@link com.scvngr.levelup.core.net.RequestHandle#cancel()} runs the listener set
+     * by {@link com.scvngr.levelup.core.net.RequestHandle#setOnCancelListener(Runnable)} once,
+     * and that a listener set after cancelling is run right away.
+     */
+    @SmallTest
+    public void testSetOnCancelListener() {
+        final RequestHandle handle = new RequestHandle();
+        final AtomicInteger runCount = new AtomicInteger();
+        final Runnable listener = new Runnable() {
+
+            @Override
+            public void run() {
+                runCount.incrementAndGet();
+            }
+        };
+
+        handle.setOnCancelListener(listener);
+        assertEquals(0, runCount.get());
+
+        handle.cancel();
+        handle.cancel();
+        assertEquals(1, runCount.get());
+
+        handle.setOnCancelListener(listener);
+        assertEquals(2, runCount.get());
+    }
+
+    /**
+     * Tests that the listener is run when the deadline passes, without anyone calling
+     * {@link com.scvngr.levelup.core.net.RequestHandle#cancel()}.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SmallTest
+    public void testSetOnCancelListener_deadline() throws InterruptedException {
+        final RequestHandle handle = new RequestHandle(1000, 1000, 100);
+        final CountDownLatch run = new CountDownLatch(1);
+
+        handle.setOnCancelListener(new Runnable() {
+
+            @Override
+            public void run() {
+                run.countDown();
+            }
+        });
+
+        assertTrue(run.await(2, TimeUnit.SECONDS));
+        assertTrue(handle.isDone());
+        assertFalse(handle.isCancelled());
+    }
+
+    /**
+     * Tests that a cleared listener isn't run on cancel.
+     */
+    @SmallTest
+    public void testSetOnCancelListener_cleared() {
+        final RequestHandle handle = new RequestHandle();
+        final AtomicBoolean isRun = new AtomicBoolean();
+
+        handle.setOnCancelListener(new Runnable() {
+
+            @Override
+            public void run() {
+                isRun.set(true);
+            }
+        });
+        handle.setOnCancelListener(null);
+        handle.cancel();
+
+        assertFalse(isRun.get());
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.RequestHandle#await(long)}.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SmallTest
+    public void testAwait() throws InterruptedException {
+        assertTrue(new RequestHandle().await(1));
+        assertFalse(new RequestHandle(1000, 1000, 1000).await(2000));
+
+        final RequestHandle cancelled = new RequestHandle();
+        cancelled.cancel();
+        assertFalse(cancelled.await(1));
+    }
+
+    /**
+     * Tests that {@link com.scvngr.levelup.core.net.RequestHandle#cancel()} ends a wait early.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SmallTest
+    public void testAwait_cancelled() throws InterruptedException {
+        final RequestHandle handle = new RequestHandle();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean result = new AtomicBoolean(true);
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    result.set(handle.await(TimeUnit.SECONDS.toMillis(10)));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                done.countDown();
+            }
+        }).start();
+
+        Thread.sleep(50);
+        handle.cancel();
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertFalse(result.get());
+    }
+
+    /**
+     * Connection that never connects and records whether it was disconnected.
+     */
+    private static final class DisconnectRecordingConnection extends HttpURLConnection {
+
+        /* package */final AtomicBoolean mIsDisconnected = new AtomicBoolean();
+
+        /**
+         * @throws IOException if the URL can't be parsed.
+         */
+        public DisconnectRecordingConnection() throws IOException {
+            super(new URL("http://www.example.com"));
+        }
+
+        @Override
+        public void disconnect() {
+            mIsDisconnected.set(true);
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+            // Never connects.
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.RequestScheduler}.
+ */
+public final class RequestSchedulerTest extends SupportAndroidTestCase {
+
+    @NonNull
+    private static final String HOST = "www.example.com";
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * Tests that an invalid limit is rejected.
+     */
+    @SmallTest
+    public void testConstructor_invalidLimit() {
+        try {
+            new RequestScheduler(0);
+            fail("Expected exception");
+        } catch (final IllegalArgumentException e) {
+            // Expected exception
+        }
+    }
+
+    /**
+     * Tests that waiting requests are admitted in order of priority, regardless of arrival.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testAcquire_priorityOrder() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(1);
+        final Holder holder = new Holder(scheduler, RequestPriority.NORMAL);
+        holder.start();
+        assertTrue(holder.mAcquired.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final List<RequestPriority> order =
+                Collections.synchronizedList(new ArrayList<RequestPriority>());
+        final List<Thread> waiters = new ArrayList<Thread>();
+
+        for (final RequestPriority priority : new RequestPriority[] {
+                RequestPriority.BACKGROUND, RequestPriority.PREFETCH, RequestPriority.NORMAL,
+                RequestPriority.INTERACTIVE }) {
+            final Thread waiter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        scheduler.acquire(HOST, priority);
+                        order.add(priority);
+                        scheduler.release(HOST);
+                    } catch (final InterruptedException e) {
+                        // Test fails below.
+                    }
+                }
+            });
+            waiters.add(waiter);
+            waiter.start();
+            awaitQueuedCount(scheduler, waiters.size());
+        }
+
+        holder.mRelease.countDown();
+
+        for (final Thread waiter : waiters) {
+            waiter.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        }
+
+        assertEquals(Arrays.asList(RequestPriority.INTERACTIVE, RequestPriority.NORMAL,
+                RequestPriority.PREFETCH, RequestPriority.BACKGROUND), order);
+        assertEquals(0, scheduler.getRunningCount(HOST));
+        assertEquals(0, scheduler.getQueuedCount(HOST));
+    }
+
+    /**
+     * Tests that deferrable requests leave the last slot free for others.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testAcquire_deferrableReservesSlot() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(2);
+        final Holder background = new Holder(scheduler, RequestPriority.BACKGROUND);
+        background.start();
+        assertTrue(background.mAcquired.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final Holder prefetch = new Holder(scheduler, RequestPriority.PREFETCH);
+        prefetch.start();
+        awaitQueuedCount(scheduler, 1);
+
+        final Holder interactive = new Holder(scheduler, RequestPriority.INTERACTIVE);
+        interactive.start();
+        assertTrue(interactive.mAcquired.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.getRunningCount(HOST));
+
+        interactive.mRelease.countDown();
+        background.mRelease.countDown();
+        assertTrue(prefetch.mAcquired.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        prefetch.mRelease.countDown();
+
+        background.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        prefetch.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        interactive.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertEquals(0, scheduler.getRunningCount(HOST));
+    }
+
+    /**
+     * Tests that hosts are limited separately.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @SmallTest
+    public void testAcquire_perHost() throws InterruptedException {
+        final RequestScheduler scheduler = new RequestScheduler(1);
+        final Holder holder = new Holder(scheduler, RequestPriority.NORMAL);
+        holder.start();
+        assertTrue(holder.mAcquired.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        scheduler.acquire("other.example.com", RequestPriority.NORMAL);
+        assertEquals(1, scheduler.getRunningCount("other.example.com"));
+        scheduler.release("other.example.com");
+
+        holder.mRelease.countDown();
+        holder.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Tests that a thread already holding a slot is admitted without waiting.
+     *
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @SmallTest
+    public void testAcquire_nested() throws InterruptedException {
+        final RequestScheduler scheduler = new RequestScheduler(1);
+
+        scheduler.acquire(HOST, RequestPriority.NORMAL);
+        scheduler.acquire(HOST, RequestPriority.NORMAL);
+        assertEquals(2, scheduler.getRunningCount(HOST));
+
+        scheduler.release(HOST);
+        scheduler.release(HOST);
+        assertEquals(0, scheduler.getRunningCount(HOST));
+    }
+
+    /**
+     * Tests that an interrupted waiter leaves the queue.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testAcquire_interrupted() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(1);
+        final Holder holder = new Holder(scheduler, RequestPriority.NORMAL);
+        holder.start();
+        assertTrue(holder.mAcquired.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final AtomicBoolean isInterrupted = new AtomicBoolean();
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire(HOST, RequestPriority.NORMAL);
+                } catch (final InterruptedException e) {
+                    isInterrupted.set(true);
+                }
+            }
+        });
+        waiter.start();
+        awaitQueuedCount(scheduler, 1);
+
+        waiter.interrupt();
+        waiter.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertTrue(isInterrupted.get());
+        assertEquals(0, scheduler.getQueuedCount(HOST));
+
+        holder.mRelease.countDown();
+        holder.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Tests that a waiter whose handle is cancelled gives up and leaves the queue.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testAcquire_cancelled() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(1);
+        final Holder holder = new Holder(scheduler, RequestPriority.NORMAL);
+        holder.start();
+        assertTrue(holder.mAcquired.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final RequestHandle handle = new RequestHandle();
+        final CountDownLatch gaveUp = new CountDownLatch(1);
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire(HOST, RequestPriority.NORMAL, handle);
+                } catch (final InterruptedException e) {
+                    // Test fails below.
+                } catch (final InterruptedIOException e) {
+                    gaveUp.countDown();
+                }
+            }
+        });
+        waiter.start();
+        awaitQueuedCount(scheduler, 1);
+
+        handle.cancel();
+        assertTrue(gaveUp.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        waiter.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertEquals(0, scheduler.getQueuedCount(HOST));
+        assertEquals(1, scheduler.getRunningCount(HOST));
+
+        holder.mRelease.countDown();
+        holder.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Tests that a waiter gives up when its deadline passes.
+     *
+     * @throws Exception if the test fails.
+     */
+    @SmallTest
+    public void testAcquire_deadline() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(1);
+        final Holder holder = new Holder(scheduler, RequestPriority.NORMAL);
+        holder.start();
+        assertTrue(holder.mAcquired.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final AtomicBoolean isTimedOut = new AtomicBoolean();
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire(HOST, RequestPriority.NORMAL,
+                            new RequestHandle(1000, 1000, 100));
+                } catch (final InterruptedException e) {
+                    // Test fails below.
+                } catch (final InterruptedIOException e) {
+                    isTimedOut.set(true);
+                }
+            }
+        });
+        waiter.start();
+        waiter.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        assertTrue(isTimedOut.get());
+        assertEquals(0, scheduler.getQueuedCount(HOST));
+
+        holder.mRelease.countDown();
+        holder.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Waits until {@code count} requests are queued for {@link #HOST}.
+     *
+     * @param scheduler the scheduler.
+     * @param count the number of queued requests to wait for.
+     */
+    private static void awaitQueuedCount(@NonNull final RequestScheduler scheduler,
+            final int count) {
+        final long deadline = SystemClock.elapsedRealtime() + TimeUnit.SECONDS.toMillis(
+                TIMEOUT_SECONDS);
+
+        while (scheduler.getQueuedCount(HOST) < count) {
+            assertTrue(SystemClock.elapsedRealtime() < deadline);
+            SystemClock.sleep(5);
+        }
+    }
+
+    /**
+     * Thread that holds a slot until it is told to release it.
+     */
+    private static final class Holder extends Thread {
+
+        @NonNull
+        /* package */final CountDownLatch mAcquired = new CountDownLatch(1);
+
+        @NonNull
+        /* package */final CountDownLatch mRelease = new CountDownLatch(1);
+
+        @NonNull
+        private final RequestScheduler mScheduler;
+
+        @NonNull
+        private final RequestPriority mPriority;
+
+        /**
+         * @param scheduler the scheduler to take a slot from.
+         * @param priority the priority to take it with.
+         */
+        /* package */Holder(@NonNull final RequestScheduler scheduler,
+                @NonNull final RequestPriority priority) {
+            mScheduler = scheduler;
+            mPriority = priority;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mScheduler.acquire(HOST, mPriority);
+                mAcquired.countDown();
+                mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                mScheduler.release(HOST);
+            } catch (final InterruptedException e) {
+                // Test fails when the slot isn't acquired.
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.test.ParcelTestUtils;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.RequestTemplate}.
+ */
+public final class RequestTemplateTest extends SupportAndroidTestCase {
+
+    @NonNull
+    private static final String ENDPOINT_FORMAT = "merchants/%d/loyalty";
+
+    /**
+     * Tests that a request from a template matches one built with the constructor.
+     *
+     * @throws BadRequestException if the test fails.
+     */
+    @SmallTest
+    public void testNewRequest_matchesConstructor() throws BadRequestException {
+        final MockAccessTokenRetriever retriever = new MockAccessTokenRetriever();
+        final LevelUpRequest expected =
+                new LevelUpRequest(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V15, "merchants/42/loyalty", null, null,
+                        retriever);
+        final LevelUpRequest actual =
+                RequestTemplate.getInstance(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V15, ENDPOINT_FORMAT).newRequest(null,
+                        null, retriever, 42L);
+
+        assertEquals(expected, actual);
+        assertEquals(expected.getUrl(getContext()), actual.getUrl(getContext()));
+        assertEquals(expected.getRequestHeaders(getContext()),
+                actual.getRequestHeaders(getContext()));
+    }
+
+    /**
+     * Tests that fixed and per-request query parameters are merged, sorted and encoded like the
+     * constructor does.
+     *
+     * @throws BadRequestException if the test fails.
+     */
+    @SmallTest
+    public void testNewRequest_queryParams() throws BadRequestException {
+        final Map<String, String> fixedParams = new HashMap<String, String>();
+        fixedParams.put("zeta", "last value");
+        final Map<String, String> params = new HashMap<String, String>();
+        params.put("alpha", "a&b=c");
+        final Map<String, String> allParams = new HashMap<String, String>(fixedParams);
+        allParams.putAll(params);
+
+        final LevelUpRequest expected =
+                new LevelUpRequest(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V14, "locations/7/web_links", allParams,
+                        null);
+        final LevelUpRequest actual =
+                new RequestTemplate(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V14, "locations/%d/web_links",
+                        fixedParams).newRequest(params, null, null, 7);
+
+        assertEquals(expected, actual);
+        assertEquals(expected.getUrl(getContext()), actual.getUrl(getContext()));
+    }
+
+    /**
+     * Tests that shared templates are reused.
+     */
+    @SmallTest
+    public void testGetInstance() {
+        assertSame(RequestTemplate.getInstance(getContext(), HttpMethod.GET,
+                LevelUpRequest.API_VERSION_CODE_V15, ENDPOINT_FORMAT),
+                RequestTemplate.getInstance(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V15, ENDPOINT_FORMAT));
+    }
+
+    /**
+     * Tests that shared templates are rebuilt when the default locale changes, since their default
+     * headers depend on it.
+     */
+    @SmallTest
+    public void testGetInstance_localeChanged() {
+        final Locale original = Locale.getDefault();
+        final RequestTemplate template =
+                RequestTemplate.getInstance(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V15, ENDPOINT_FORMAT);
+
+        try {
+            Locale.setDefault(Locale.US.equals(original) ? Locale.FRANCE : Locale.US);
+
+            assertNotSame(template, RequestTemplate.getInstance(getContext(), HttpMethod.GET,
+                    LevelUpRequest.API_VERSION_CODE_V15, ENDPOINT_FORMAT));
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    /**
+     * Tests that a request from a template survives parceling.
+     */
+    @SmallTest
+    public void testParceling() {
+        final LevelUpRequest request =
+                RequestTemplate.getInstance(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V15, ENDPOINT_FORMAT).newRequest(null,
+                        null, null, 42L);
+
+        ParcelTestUtils.assertParcelableRoundtrips(request);
+    }
+}
@@ -33,6 +33,8 @@ import com.scvngr.levelup.core.util.NullUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -66,6 +68,8 @@ public final class RequestUtilsTest extends SupportAndroidTestCase {
                 headers.containsKey("X-Device-Model"));
         assertEquals("Accept header is set for JSON", //
                 RequestUtils.HEADER_CONTENT_TYPE_JSON, headers.get(RequestUtils.HEADER_ACCEPT));
+        assertEquals("Accept-Encoding header allows gzip", "gzip",
+                headers.get(RequestUtils.HEADER_ACCEPT_ENCODING));
         assertEquals("User-Agent header matches RequestUtils.getUserAgent()",
                 RequestUtils.getUserAgent(mMockContext),
                 headers.get("User-Agent"));
@@ -136,6 +140,23 @@ public final class RequestUtilsTest extends SupportAndroidTestCase {
                 object.getString(RequestUtils.PARAM_DEVICE_IDENTIFIER));
     }
 
+    /**
+     * Test {@link com.scvngr.levelup.core.net.RequestUtils#getEndpointTemplate}.
+     *
+     * @throws MalformedURLException if a test URL is malformed.
+     */
+    @SmallTest
+    public void testGetEndpointTemplate() throws MalformedURLException {
+        assertEquals("www.example.com/v15/users/{id}/orders", RequestUtils.getEndpointTemplate(
+                new URL("http://www.example.com/v15/users/123/orders?page=2")));
+        assertEquals("www.example.com/v15/orders/{id}", RequestUtils.getEndpointTemplate(
+                new URL("http://www.example.com/v15/orders/0a1b2c3d-4e5f-6789-abcd/")));
+        assertEquals("www.example.com/v14/access_tokens", RequestUtils.getEndpointTemplate(
+                new URL("http://www.example.com/v14/access_tokens")));
+        assertEquals("www.example.com",
+                RequestUtils.getEndpointTemplate(new URL("http://www.example.com")));
+    }
+
     /**
      * Helper method to get the device specific portion of the user agent screen.
      *
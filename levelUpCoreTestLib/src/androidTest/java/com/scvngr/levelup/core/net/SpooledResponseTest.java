@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import org.apache.http.protocol.HTTP;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.SpooledResponse}.
+ */
+public final class SpooledResponseTest extends SupportAndroidTestCase {
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mDirectory = new File(getContext().getCacheDir(), getName());
+        deleteDirectory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+
+        super.tearDown();
+    }
+
+    /**
+     * Tests that a small body is kept in memory.
+     */
+    @SmallTest
+    public void testConstructor_small() throws IOException {
+        final byte[] body = getBody(SpooledResponse.MAX_IN_MEMORY_BYTES);
+        final SpooledResponse response = newResponse(HttpURLConnection.HTTP_OK, null, body);
+
+        assertEquals(LevelUpStatus.OK, response.getStatus());
+        assertNull(response.getError());
+        assertFalse(response.isSpooledToDisk());
+        assertEquals(body.length, response.getLength());
+        assertTrue(Arrays.equals(body, read(response.getData())));
+        assertFalse(mDirectory.exists());
+    }
+
+    /**
+     * Tests that a large body is written to disk and can be read more than once.
+     */
+    @SmallTest
+    public void testConstructor_large() throws IOException {
+        final byte[] body = getBody(SpooledResponse.MAX_IN_MEMORY_BYTES * 3 + 1);
+        final SpooledResponse response = newResponse(HttpURLConnection.HTTP_OK, null, body);
+
+        assertEquals(LevelUpStatus.OK, response.getStatus());
+        assertNull(response.getError());
+        assertTrue(response.isSpooledToDisk());
+        assertEquals(body.length, response.getLength());
+        assertTrue(Arrays.equals(body, read(response.getData())));
+        assertTrue(Arrays.equals(body, read(response.getData())));
+        assertEquals(1, mDirectory.list().length);
+
+        response.close();
+
+        assertEquals(0, mDirectory.list().length);
+        assertNull(response.getData());
+    }
+
+    /**
+     * Tests that a body whose {@code Content-Length} is large is written straight to disk.
+     */
+    @SmallTest
+    public void testConstructor_largeContentLength() throws IOException {
+        final byte[] body = getBody(SpooledResponse.MAX_IN_MEMORY_BYTES + 1);
+        final SpooledResponse response =
+                newResponse(HttpURLConnection.HTTP_OK,
+                        Collections.singletonMap(HTTP.CONTENT_LEN,
+                                Collections.singletonList(String.valueOf(body.length))), body);
+
+        assertTrue(response.isSpooledToDisk());
+        assertTrue(Arrays.equals(body, read(response.getData())));
+        response.close();
+    }
+
+    /**
+     * Tests that unsuccessful responses are buffered and their server errors parsed.
+     */
+    @SmallTest
+    public void testConstructor_unsuccessful() throws IOException {
+        final String body = "[{\"error\":{\"code\":\"not_found\",\"message\":\"Not found\"}}]";
+        final SpooledResponse response =
+                newResponse(HttpURLConnection.HTTP_NOT_FOUND,
+                        Collections.singletonMap("Server", Collections.singletonList("LevelUp")),
+                        body.getBytes("UTF-8"));
+
+        assertEquals(LevelUpStatus.ERROR_NOT_FOUND, response.getStatus());
+        assertFalse(response.isSpooledToDisk());
+        assertEquals(1, response.getServerErrors().size());
+        assertEquals(body, new String(read(response.getData()), "UTF-8"));
+    }
+
+    /**
+     * Tests that nothing is kept when the body can't be read.
+     */
+    @SmallTest
+    public void testConstructor_readError() {
+        final byte[] body = getBody(SpooledResponse.MAX_IN_MEMORY_BYTES * 2);
+        final SpooledResponse response =
+                new SpooledResponse(new StreamingResponse(HttpURLConnection.HTTP_OK, null,
+                        new TruncatedStream(body)), mDirectory);
+
+        assertEquals(LevelUpStatus.ERROR_NETWORK, response.getStatus());
+        assertNotNull(response.getError());
+        assertNull(response.getData());
+        assertEquals(0, mDirectory.list().length);
+    }
+
+    /**
+     * Tests wrapping a buffered response.
+     */
+    @SmallTest
+    public void testConstructor_buffered() throws IOException {
+        final SpooledResponse response =
+                new SpooledResponse(new LevelUpResponse("{\"value\":\"test\"}", LevelUpStatus.OK));
+
+        assertEquals(LevelUpStatus.OK, response.getStatus());
+        assertFalse(response.isSpooledToDisk());
+        assertEquals("{\"value\":\"test\"}", new String(read(response.getData()), "UTF-8"));
+    }
+
+    /**
+     * Tests that each process spools to a directory of its own.
+     */
+    @SmallTest
+    public void testGetDirectory() {
+        final File directory = SpooledResponse.getDirectory(getContext());
+
+        assertEquals(String.valueOf(Process.myPid()), directory.getName());
+        assertEquals(new File(getContext().getCacheDir(), SpooledResponse.DIRECTORY_NAME),
+                directory.getParentFile());
+    }
+
+    /**
+     * @param length the length of the body.
+     * @return a body of {@code length} bytes.
+     */
+    @NonNull
+    private static byte[] getBody(final int length) {
+        final byte[] body = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+
+        return body;
+    }
+
+    /**
+     * @param statusCode the HTTP status code.
+     * @param headers the HTTP headers, or null.
+     * @param body the body.
+     * @return the body spooled to {@link #mDirectory}.
+     */
+    @NonNull
+    private SpooledResponse newResponse(final int statusCode,
+            final Map<String, List<String>> headers, @NonNull final byte[] body) {
+        return new SpooledResponse(new StreamingResponse(statusCode, headers,
+                new ByteArrayInputStream(body)), mDirectory);
+    }
+
+    /**
+     * @param stream the stream to read and close.
+     * @return the contents of {@code stream}.
+     */
+    @NonNull
+    private static byte[] read(final InputStream stream) throws IOException {
+        assertNotNull(stream);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+
+        try {
+            while (-1 != (read = stream.read(buffer))) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            stream.close();
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Deletes {@link #mDirectory} and its contents.
+     */
+    private void deleteDirectory() {
+        final File[] files = mDirectory.listFiles();
+
+        if (null != files) {
+            for (final File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+
+        mDirectory.delete();
+    }
+
+    /**
+     * A stream that fails like a dropped connection once it has returned all of its data.
+     */
+    private static final class TruncatedStream extends InputStream {
+
+        @NonNull
+        private final InputStream mData;
+
+        /**
+         * @param data the data to return before failing.
+         */
+        public TruncatedStream(@NonNull final byte[] data) {
+            mData = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = mData.read();
+
+            if (-1 == read) {
+                throw new IOException("Connection reset");
+            }
+
+            return read;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.net.request.factory;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.AbstractRequest;
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.net.LevelUpConnection;
+import com.scvngr.levelup.core.net.LevelUpConnectionHelper;
+import com.scvngr.levelup.core.net.LevelUpResponse;
+import com.scvngr.levelup.core.net.LevelUpStatus;
+import com.scvngr.levelup.core.net.MockAccessTokenRetriever;
+import com.scvngr.levelup.core.net.MockPageCacheRetriever;
+import com.scvngr.levelup.core.net.NetworkEventListener;
+import com.scvngr.levelup.core.net.RequestHandle;
+import com.scvngr.levelup.core.net.StreamingResponse;
+import com.scvngr.levelup.core.net.Transport;
+import com.scvngr.levelup.core.net.factory.MockPagingRequestFactory;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+import com.scvngr.levelup.core.util.NullUtils;
+
+import java.io.ByteArrayInputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.net.request.factory.PagePrefetcher}.
+ */
+public final class PagePrefetcherTest extends SupportAndroidTestCase {
+
+    @NonNull
+    private static final String TEST_PAGE_KEY = "test_page_key";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        LevelUpConnectionHelper.clearInstance();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        LevelUpConnection.setDefaultTransport(null);
+        super.tearDown();
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.net.request.factory.PagePrefetcher#parseNextPage}.
+     */
+    @SmallTest
+    public void testParseNextPage() {
+        final String url = MockPagingRequestFactory.PAGE_1_URL;
+
+        assertEquals(Uri.parse(MockPagingRequestFactory.PAGE_2_URL),
+                PagePrefetcher.parseNextPage(url, "<?page=2>; rel=\"next\""));
+        assertEquals(Uri.parse(MockPagingRequestFactory.PAGE_2_URL),
+                PagePrefetcher.parseNextPage(url, "<?page=2>; rel=\"last next\""));
+        assertNull(PagePrefetcher.parseNextPage(url, "<?page=2>; rel=\"prev\""));
+        assertNull(PagePrefetcher.parseNextPage(url, "<?page=2>"));
+        assertNull(PagePrefetcher.parseNextPage(url, "not a link"));
+    }
+
+    /**
+     * Tests that the constructor rejects a lookahead that isn't positive.
+     */
+    @SmallTest
+    public void testEnablePrefetch_invalid() {
+        try {
+            newFactory().enablePrefetch(0);
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // Expected exception.
+        }
+    }
+
+    /**
+     * Tests that the next page is prefetched and then used instead of being sent again, and that
+     * no more than {@link PagePrefetcher#getMaxPages()} pages are loaded ahead.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SmallTest
+    public void testPrefetch() throws InterruptedException {
+        final PagingTransport transport = new PagingTransport();
+        LevelUpConnection.setDefaultTransport(transport);
+        final MockPagingRequestFactory factory = newFactory();
+        final LevelUpConnection connection = LevelUpConnection.newInstance(getContext());
+        connection.addInterceptor(factory.enablePrefetch(1));
+
+        assertEquals(LevelUpStatus.OK, connection.send(factory.getNextPageRequest()).getStatus());
+        assertTrue(transport.awaitSent("2"));
+
+        factory.setNextPage(Uri.parse(MockPagingRequestFactory.PAGE_2_URL));
+        final LevelUpResponse response = connection.send(factory.getNextPageRequest());
+
+        assertEquals(LevelUpStatus.OK, response.getStatus());
+        assertEquals(1, transport.getSendCount("2"));
+        // Page 3 is only prefetched once page 2 has been used.
+        assertTrue(transport.awaitSent("3"));
+    }
+
+    /**
+     * Tests that the lookahead is topped up from the end of the prefetched pages each time a page
+     * is used, so that paging through more than {@link PagePrefetcher#getMaxPages()} pages keeps
+     * finding them prefetched.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SmallTest
+    public void testPrefetch_keepsAhead() throws InterruptedException {
+        final PagingTransport transport = new PagingTransport(10, null);
+        LevelUpConnection.setDefaultTransport(transport);
+        final MockPagingRequestFactory factory = newFactory();
+        final LevelUpConnection connection = LevelUpConnection.newInstance(getContext());
+        connection.addInterceptor(factory.enablePrefetch(2));
+
+        assertEquals(LevelUpStatus.OK, connection.send(factory.getNextPageRequest()).getStatus());
+        assertTrue(transport.awaitSent("3"));
+
+        for (int page = 2; page <= 8; page++) {
+            factory.setNextPage(Uri.parse(getPageUrl(page)));
+            final LevelUpResponse response = connection.send(factory.getNextPageRequest());
+
+            assertEquals(LevelUpStatus.OK, response.getStatus());
+            assertEquals(1, transport.getSendCount(String.valueOf(page)));
+            // Two pages ahead of the one just used are loading again.
+            assertTrue(transport.awaitSent(String.valueOf(page + 2)));
+        }
+    }
+
+    /**
+     * Tests that a send waits for a prefetch in flight no longer than its deadline.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SmallTest
+    public void testPrefetch_deadlineWhileWaiting() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final PagingTransport transport = new PagingTransport(3, release);
+        LevelUpConnection.setDefaultTransport(transport);
+        final MockPagingRequestFactory factory = newFactory();
+        final LevelUpConnection connection = LevelUpConnection.newInstance(getContext());
+        connection.addInterceptor(factory.enablePrefetch(1));
+
+        try {
+            connection.send(factory.getNextPageRequest());
+            assertTrue(transport.awaitSent("2"));
+
+            factory.setNextPage(Uri.parse(MockPagingRequestFactory.PAGE_2_URL));
+            final long startMillis = SystemClock.elapsedRealtime();
+            final LevelUpResponse response = connection.send(factory.getNextPageRequest(),
+                    new RequestHandle(5000, 5000, 500));
+
+            assertTrue(SystemClock.elapsedRealtime() - startMillis < 2000);
+            assertEquals(LevelUpStatus.ERROR_NETWORK, response.getStatus());
+            assertEquals(1, transport.getSendCount("2"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * Tests that starting over from the first page drops the prefetched pages.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SmallTest
+    public void testSetNextPage_clears() throws InterruptedException {
+        final PagingTransport transport = new PagingTransport();
+        LevelUpConnection.setDefaultTransport(transport);
+        final MockPagingRequestFactory factory = newFactory();
+        final LevelUpConnection connection = LevelUpConnection.newInstance(getContext());
+        connection.addInterceptor(factory.enablePrefetch(1));
+
+        connection.send(factory.getNextPageRequest());
+        assertTrue(transport.awaitSent("2"));
+
+        factory.setNextPage(null);
+        connection.send(NullUtils.nonNullContract(factory.getPageRequest(Uri
+                .parse(MockPagingRequestFactory.PAGE_2_URL))));
+
+        assertEquals(2, transport.getSendCount("2"));
+    }
+
+    /**
+     * @return a paging factory with no saved page.
+     */
+    @NonNull
+    private MockPagingRequestFactory newFactory() {
+        return new MockPagingRequestFactory(getContext(), new MockAccessTokenRetriever(),
+                new MockPageCacheRetriever(), TEST_PAGE_KEY);
+    }
+
+    /**
+     * @param page the number of a page.
+     * @return the URL of the page.
+     */
+    @NonNull
+    private static String getPageUrl(final int page) {
+        return MockPagingRequestFactory.PAGE_1_URL + "?page=" + page;
+    }
+
+    /**
+     * Transport that serves numbered pages, each linking to the next up to the last, and counts
+     * how many times each is sent.
+     */
+    private static final class PagingTransport implements Transport {
+
+        private final int mLastPage;
+
+        /**
+         * Holds back every page after the first until it is counted down, or null to serve them
+         * right away.
+         */
+        @Nullable
+        private final CountDownLatch mRelease;
+
+        /**
+         * The number of sends of each page, by its {@code page} query parameter.
+         */
+        @NonNull
+        private final ConcurrentHashMap<String, AtomicInteger> mSendCounts =
+                new ConcurrentHashMap<String, AtomicInteger>();
+
+        /**
+         * Latches counted down when each page is first sent, by its {@code page} query parameter.
+         */
+        @NonNull
+        private final ConcurrentHashMap<String, CountDownLatch> mSentLatches =
+                new ConcurrentHashMap<String, CountDownLatch>();
+
+        /**
+         * Serves the three pages of {@link MockPagingRequestFactory} right away.
+         */
+        public PagingTransport() {
+            this(3, null);
+        }
+
+        /**
+         * @param lastPage the number of the last page.
+         * @param release holds back every page after the first until it is counted down, or null
+         *        to serve them right away.
+         */
+        public PagingTransport(final int lastPage, @Nullable final CountDownLatch release) {
+            mLastPage = lastPage;
+            mRelease = release;
+        }
+
+        /**
+         * @param page the {@code page} query parameter of the page.
+         * @return the number of times the page has been sent.
+         */
+        public int getSendCount(@NonNull final String page) {
+            final AtomicInteger count = mSendCounts.get(page);
+
+            return null == count ? 0 : count.get();
+        }
+
+        /**
+         * @param page the {@code page} query parameter of the page.
+         * @return true if the page was sent within two seconds.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        public boolean awaitSent(@NonNull final String page) throws InterruptedException {
+            return getSentLatch(page).await(2, TimeUnit.SECONDS);
+        }
+
+        @Override
+        @NonNull
+        public StreamingResponse send(@NonNull final Context context,
+                @NonNull final AbstractRequest request,
+                @Nullable final Map<String, String> additionalHeaders,
+                @Nullable final NetworkEventListener listener,
+                @Nullable final RequestHandle handle) {
+            String page;
+
+            try {
+                page = Uri.parse(request.getUrlString(context)).getQueryParameter("page");
+            } catch (final BadRequestException e) {
+                return StreamingResponse.newErrorResponse(e);
+            }
+
+            if (null == page) {
+                page = "1";
+            }
+
+            final AtomicInteger count = new AtomicInteger();
+            final AtomicInteger existing = mSendCounts.putIfAbsent(page, count);
+            (null == existing ? count : existing).incrementAndGet();
+            getSentLatch(page).countDown();
+
+            final int number = Integer.parseInt(page);
+            Map<String, List<String>> headers = null;
+
+            if (number < mLastPage) {
+                headers = MockPagingRequestFactory.getLinkHeaders(getPageUrl(number + 1));
+            }
+
+            if (null != mRelease && 1 != number) {
+                try {
+                    mRelease.await();
+                } catch (final InterruptedException e) {
+                    return StreamingResponse.newErrorResponse(e);
+                }
+            }
+
+            return StreamingResponse.newResponse(HttpURLConnection.HTTP_OK, headers,
+                    new ByteArrayInputStream(new byte[0]));
+        }
+
+        @Override
+        public int getMaxConnections() {
+            return 4;
+        }
+
+        /**
+         * @param page the {@code page} query parameter of the page.
+         * @return the latch counted down when the page is first sent.
+         */
+        @NonNull
+        private CountDownLatch getSentLatch(@NonNull final String page) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final CountDownLatch existing = mSentLatches.putIfAbsent(page, latch);
+
+            return null == existing ? latch : existing;
+        }
+    }
+}
@@ -17,6 +17,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.v4.content.LocalBroadcastManager;
 import android.test.suitebuilder.annotation.SmallTest;
@@ -34,6 +35,7 @@ import com.scvngr.levelup.core.test.SupportAndroidTestCase;
 import java.util.ArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Tests {@link com.scvngr.levelup.core.service.AbstractNetworkRequestService}.
@@ -201,6 +203,99 @@ public final class AbstractNetworkRequestServiceTest extends SupportAndroidTestC
         }
     }
 
+    /**
+     * Tests that the result of
+     * {@link AbstractNetworkRequestService#decodeResponse(Context, LevelUpResponse)} is available
+     * from {@link AbstractNetworkRequestService#getResult(Intent)}.
+     *
+     * @throws InterruptedException on interruption
+     */
+    @SmallTest
+    public void testGetResult_decodedModel() throws InterruptedException {
+        final Context context = getContext();
+        final String token = AbstractNetworkRequestService.getToken();
+        final AtomicReference<RequestResultRegistry.Result> result =
+                new AtomicReference<RequestResultRegistry.Result>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(final Context receiverContext, final Intent intent) {
+                result.set(AbstractNetworkRequestService.getResult(intent));
+                latch.countDown();
+            }
+        };
+        LocalBroadcastManager.getInstance(context).registerReceiver(receiver,
+                new IntentFilter(AbstractNetworkRequestService.ACTION_REQUEST_FINISHED));
+
+        try {
+            final Intent intent = new Intent(context, NetworkRequestServiceUnderTest.class);
+            intent.putExtra(AbstractNetworkRequestService.EXTRA_PARCELABLE_REQUEST,
+                    new LevelUpRequest(context, HttpMethod.GET,
+                            LevelUpRequest.API_VERSION_CODE_V14, "test", null, null));
+            intent.putExtra(AbstractNetworkRequestService.EXTRA_STRING_TOKEN, token);
+            LevelUpConnectionHelper.setNextResponse(context, "decoded", LevelUpStatus.OK);
+
+            new NetworkRequestServiceUnderTest().performRequest(context, intent);
+
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+            assertNotNull(result.get());
+            assertEquals("decoded", result.get().getModel(String.class));
+        } finally {
+            LocalBroadcastManager.getInstance(context).unregisterReceiver(receiver);
+        }
+    }
+
+    /**
+     * Tests that results are kept in the {@link RequestResultRegistry} until their broadcasts have
+     * been delivered, however many there are, and removed after.
+     *
+     * @throws InterruptedException on interruption
+     */
+    @SmallTest
+    public void testOnRequestFinished_removedAfterDelivery() throws InterruptedException {
+        final Context context = getContext();
+        final LevelUpResponse response = new LevelUpResponse("", LevelUpStatus.OK);
+        final ArrayList<String> tokens = new ArrayList<String>();
+        final CountDownLatch receivedLatch = new CountDownLatch(100);
+        final BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(final Context receiverContext, final Intent intent) {
+                if (null != AbstractNetworkRequestService.getResult(intent)) {
+                    receivedLatch.countDown();
+                }
+            }
+        };
+        LocalBroadcastManager.getInstance(context).registerReceiver(receiver,
+                new IntentFilter(AbstractNetworkRequestService.ACTION_REQUEST_FINISHED));
+
+        try {
+            for (int i = 0; i < 100; i++) {
+                final String token = AbstractNetworkRequestService.getToken();
+                tokens.add(token);
+                AbstractNetworkRequestService.onRequestFinished(context, token, response, null,
+                        true);
+            }
+
+            assertTrue(receivedLatch.await(2, TimeUnit.SECONDS));
+
+            // Wait for the main thread to run everything posted so far.
+            final CountDownLatch idleLatch = new CountDownLatch(1);
+            new Handler(context.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    idleLatch.countDown();
+                }
+            });
+            assertTrue(idleLatch.await(2, TimeUnit.SECONDS));
+
+            for (final String token : tokens) {
+                assertNull(RequestResultRegistry.get(token));
+            }
+        } finally {
+            LocalBroadcastManager.getInstance(context).unregisterReceiver(receiver);
+        }
+    }
+
     /**
      * A concrete implementation of {@link com.scvngr.levelup.core.service.AbstractNetworkRequestService} which counts calls to
      * {@link #handleResponse(android.content.Context, com.scvngr.levelup.core.net.LevelUpResponse)}.
@@ -215,6 +310,12 @@ public final class AbstractNetworkRequestServiceTest extends SupportAndroidTestC
             latch.countDown();
             return false;
         }
+
+        @Override
+        protected Object decodeResponse(@NonNull final Context context,
+                @NonNull final LevelUpResponse response) {
+            return response.getData();
+        }
     }
 
     /**
@@ -237,15 +338,27 @@ public final class AbstractNetworkRequestServiceTest extends SupportAndroidTestC
         @Override
         public void onReceive(final Context context, final Intent intent) {
             assertEquals(AbstractNetworkRequestService.ACTION_REQUEST_FINISHED, intent.getAction());
-            assertTrue(intent.hasExtra(AbstractNetworkRequestService.EXTRA_PARCELABLE_RESPONSE));
-            final LevelUpResponse response =
-                    intent.getParcelableExtra(AbstractNetworkRequestService.EXTRA_PARCELABLE_RESPONSE);
-            assertEquals(expectedResponse, response);
+            assertEquals(expectedResponse, intent
+                    .getParcelableExtra(AbstractNetworkRequestService.EXTRA_PARCELABLE_RESPONSE));
+
+            final String token =
+                    intent.getStringExtra(AbstractNetworkRequestService.EXTRA_STRING_TOKEN);
+
+            if (null == expectedToken) {
+                // A request without a token gets a new one so that its result can be found.
+                assertNotNull(token);
+            } else {
+                assertEquals(expectedToken, token);
+            }
+
+            final RequestResultRegistry.Result result =
+                    AbstractNetworkRequestService.getResult(intent);
+            assertNotNull(result);
+            assertEquals(expectedResponse, result.getResponse());
+            assertEquals(expectedStatus, result.isSuccessful());
             assertEquals(expectedStatus, intent.getBooleanExtra(
                     AbstractNetworkRequestService.EXTRA_BOOLEAN_IS_REQUEST_SUCCESSFUL,
                     !expectedStatus));
-            assertEquals(expectedToken,
-                    intent.getStringExtra(AbstractNetworkRequestService.EXTRA_STRING_TOKEN));
             latch.countDown();
         }
     }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.annotation.NonNull;
+import android.support.v4.content.LocalBroadcastManager;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.HttpMethod;
+import com.scvngr.levelup.core.net.LevelUpConnectionHelper;
+import com.scvngr.levelup.core.net.LevelUpRequest;
+import com.scvngr.levelup.core.net.LevelUpResponse;
+import com.scvngr.levelup.core.net.LevelUpStatus;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.service.AbstractParallelNetworkRequestService}.
+ */
+public final class AbstractParallelNetworkRequestServiceTest extends SupportAndroidTestCase {
+
+    /**
+     * Extra holding a request's name in {@link OrderRecordingService}.
+     */
+    private static final String EXTRA_NAME = "name";
+
+    /**
+     * Extra holding a request's serial key in {@link OrderRecordingService}.
+     */
+    private static final String EXTRA_KEY = "key";
+
+    /**
+     * Tests that a request is sent, handled and broadcast like in
+     * {@link AbstractNetworkRequestService}.
+     *
+     * @throws InterruptedException on interruption
+     */
+    @SmallTest
+    public void testSubmit() throws InterruptedException {
+        final Context context = getContext();
+        final String token = AbstractParallelNetworkRequestService.getToken();
+        final AtomicReference<Intent> broadcast = new AtomicReference<Intent>();
+        final AtomicReference<RequestResultRegistry.Result> result =
+                new AtomicReference<RequestResultRegistry.Result>();
+        final CountDownLatch broadcastLatch = new CountDownLatch(1);
+        final BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(final Context receiverContext, final Intent intent) {
+                broadcast.set(intent);
+                result.set(AbstractNetworkRequestService.getResult(intent));
+                broadcastLatch.countDown();
+            }
+        };
+        LocalBroadcastManager.getInstance(context).registerReceiver(receiver,
+                new IntentFilter(AbstractParallelNetworkRequestService.ACTION_REQUEST_FINISHED));
+
+        try {
+            final Intent intent = new Intent();
+            intent.putExtra(AbstractParallelNetworkRequestService.EXTRA_PARCELABLE_REQUEST,
+                    new LevelUpRequest(context, HttpMethod.GET,
+                            LevelUpRequest.API_VERSION_CODE_V14, "test", null, null));
+            intent.putExtra(AbstractParallelNetworkRequestService.EXTRA_STRING_TOKEN, token);
+            LevelUpConnectionHelper.setNextResponse(context, "", LevelUpStatus.OK);
+
+            final HandlingService service = new HandlingService();
+            final CountDownLatch finishedLatch = new CountDownLatch(1);
+            service.submit(context, intent, new CountDownRunnable(finishedLatch));
+
+            assertTrue(finishedLatch.await(2, TimeUnit.SECONDS));
+            assertTrue(service.mHandledLatch.await(0, TimeUnit.SECONDS));
+            assertTrue(broadcastLatch.await(2, TimeUnit.SECONDS));
+            assertEquals(token, broadcast.get().getStringExtra(
+                    AbstractParallelNetworkRequestService.EXTRA_STRING_TOKEN));
+            assertTrue(broadcast.get().getBooleanExtra(
+                    AbstractParallelNetworkRequestService.EXTRA_BOOLEAN_IS_REQUEST_SUCCESSFUL,
+                    false));
+            assertNotNull(result.get());
+        } finally {
+            LocalBroadcastManager.getInstance(context).unregisterReceiver(receiver);
+        }
+    }
+
+    /**
+     * Tests that requests without a serial key are sent in parallel.
+     *
+     * @throws InterruptedException on interruption
+     */
+    @SmallTest
+    public void testSubmit_parallel() throws InterruptedException {
+        final OrderRecordingService service = new OrderRecordingService();
+        final CountDownLatch finishedLatch = new CountDownLatch(2);
+
+        // The first request waits until the second has been sent.
+        service.mBlockedName = "first";
+        service.submit(getContext(), newIntent("first", null), new CountDownRunnable(
+                finishedLatch));
+        service.submit(getContext(), newIntent("second", null), new CountDownRunnable(
+                finishedLatch));
+
+        assertTrue(finishedLatch.await(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("second", "first"), service.mOrder);
+    }
+
+    /**
+     * Tests that requests with the same serial key are sent in order.
+     *
+     * @throws InterruptedException on interruption
+     */
+    @SmallTest
+    public void testSubmit_serialKey() throws InterruptedException {
+        final OrderRecordingService service = new OrderRecordingService();
+        final CountDownLatch finishedLatch = new CountDownLatch(3);
+
+        service.mBlockedName = "first";
+        service.submit(getContext(), newIntent("first", "key"), new CountDownRunnable(
+                finishedLatch));
+        service.submit(getContext(), newIntent("second", "key"), new CountDownRunnable(
+                finishedLatch));
+        service.submit(getContext(), newIntent("third", "key"), new CountDownRunnable(
+                finishedLatch));
+
+        // The first request can't finish, so nothing else with its key runs.
+        assertFalse(finishedLatch.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, service.mOrder.size());
+
+        service.mUnblockLatch.countDown();
+
+        assertTrue(finishedLatch.await(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first", "second", "third"), service.mOrder);
+    }
+
+    /**
+     * @param name the name of the request.
+     * @param key the serial key of the request, or null.
+     * @return an Intent for {@link OrderRecordingService}.
+     */
+    @NonNull
+    private static Intent newIntent(@NonNull final String name, final String key) {
+        final Intent intent = new Intent();
+        intent.putExtra(EXTRA_NAME, name);
+        intent.putExtra(EXTRA_KEY, key);
+
+        return intent;
+    }
+
+    /**
+     * Counts down a latch.
+     */
+    private static final class CountDownRunnable implements Runnable {
+
+        @NonNull
+        private final CountDownLatch mLatch;
+
+        /**
+         * @param latch the latch to count down.
+         */
+        public CountDownRunnable(@NonNull final CountDownLatch latch) {
+            mLatch = latch;
+        }
+
+        @Override
+        public void run() {
+            mLatch.countDown();
+        }
+    }
+
+    /**
+     * A service which counts calls to {@link #handleResponse(Context, LevelUpResponse)}.
+     */
+    private static final class HandlingService extends AbstractParallelNetworkRequestService {
+
+        final CountDownLatch mHandledLatch = new CountDownLatch(1);
+
+        @Override
+        protected boolean handleResponse(@NonNull final Context context,
+                @NonNull final LevelUpResponse response) {
+            mHandledLatch.countDown();
+            return true;
+        }
+    }
+
+    /**
+     * A service which records the order that requests finish in instead of sending them. The
+     * request named {@link #mBlockedName} waits for {@link #mUnblockLatch}, or for another request
+     * to finish.
+     */
+    private static final class OrderRecordingService extends AbstractParallelNetworkRequestService {
+
+        final List<String> mOrder = Collections.synchronizedList(new ArrayList<String>());
+
+        final CountDownLatch mUnblockLatch = new CountDownLatch(1);
+
+        volatile String mBlockedName;
+
+        @Override
+        protected boolean handleResponse(@NonNull final Context context,
+                @NonNull final LevelUpResponse response) {
+            return true;
+        }
+
+        @Override
+        protected String getSerialKey(@NonNull final Intent intent) {
+            return intent.getStringExtra(EXTRA_KEY);
+        }
+
+        @Override
+        /* package */void performRequest(@NonNull final Context context,
+                @NonNull final Intent intent) {
+            final String name = intent.getStringExtra(EXTRA_NAME);
+
+            if (name.equals(mBlockedName)) {
+                try {
+                    while (mOrder.isEmpty() && !mUnblockLatch.await(10, TimeUnit.MILLISECONDS)) {
+                        // Wait for another request to finish or the test to unblock this one.
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            mOrder.add(name);
+        }
+    }
+}
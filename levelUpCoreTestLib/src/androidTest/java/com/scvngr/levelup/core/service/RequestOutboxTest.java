@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.service;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.model.AccessToken;
+import com.scvngr.levelup.core.net.AbstractRequest;
+import com.scvngr.levelup.core.net.AbstractRequest.BadRequestException;
+import com.scvngr.levelup.core.net.AccessTokenRetriever;
+import com.scvngr.levelup.core.net.ByteArrayRequestBody;
+import com.scvngr.levelup.core.net.HttpMethod;
+import com.scvngr.levelup.core.net.LevelUpRequest;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.service.RequestOutbox}.
+ */
+public final class RequestOutboxTest extends SupportAndroidTestCase {
+
+    @NonNull
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), RequestOutboxTest.class.getSimpleName());
+        deleteDirectory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    /**
+     * Tests that stored requests are read back in the order they were added.
+     */
+    @SmallTest
+    public void testAddPeekRemove() {
+        final RequestOutbox outbox = new RequestOutbox(mDirectory);
+        final LevelUpRequest first = newRequest("first");
+        final LevelUpRequest second = newRequest("second");
+
+        assertEquals(0, outbox.size());
+        assertTrue(outbox.peek(10).isEmpty());
+        assertTrue(outbox.add(getContext(), "token1", first));
+        assertTrue(outbox.add(getContext(), "token2", second));
+        assertEquals(2, outbox.size());
+
+        List<RequestOutbox.Entry> entries = outbox.peek(10);
+        assertEquals(2, entries.size());
+        assertEquals("token1", entries.get(0).getToken());
+        assertStored(first, entries.get(0).getRequest());
+        assertEquals("token2", entries.get(1).getToken());
+        assertStored(second, entries.get(1).getRequest());
+
+        entries = outbox.peek(1);
+        assertEquals(1, entries.size());
+        outbox.remove(entries.get(0));
+
+        entries = outbox.peek(10);
+        assertEquals(1, entries.size());
+        assertEquals("token2", entries.get(0).getToken());
+    }
+
+    /**
+     * Tests that stored requests survive a new outbox being created, as after a process restart.
+     */
+    @SmallTest
+    public void testPersistence() {
+        final LevelUpRequest request = newRequest("persisted");
+        assertTrue(new RequestOutbox(mDirectory).add(getContext(), "token", request));
+
+        final List<RequestOutbox.Entry> entries = new RequestOutbox(mDirectory).peek(10);
+        assertEquals(1, entries.size());
+        assertStored(request, entries.get(0).getRequest());
+    }
+
+    /**
+     * Tests that unreadable entries are dropped.
+     *
+     * @throws IOException if the test fails.
+     */
+    @SmallTest
+    public void testPeek_corruptEntry() throws IOException {
+        final RequestOutbox outbox = new RequestOutbox(mDirectory);
+        assertTrue(outbox.add(getContext(), "token", newRequest("valid")));
+
+        final FileOutputStream out =
+                new FileOutputStream(new File(mDirectory, "0000000000000000000-0000000000"));
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+        assertEquals(2, outbox.size());
+
+        final List<RequestOutbox.Entry> entries = outbox.peek(10);
+        assertEquals(1, entries.size());
+        assertEquals("token", entries.get(0).getToken());
+        assertEquals(1, outbox.size());
+    }
+
+    /**
+     * Tests that an entry whose stored body length is larger than the file is dropped rather than
+     * allocated.
+     *
+     * @throws IOException if the test fails.
+     */
+    @SmallTest
+    public void testPeek_badLength() throws IOException {
+        final RequestOutbox outbox = new RequestOutbox(mDirectory);
+        assertTrue(outbox.add(getContext(), "token", newRequest("valid")));
+
+        final DataOutputStream out =
+                new DataOutputStream(new FileOutputStream(new File(mDirectory,
+                        "0000000000000000000-0000000000")));
+        out.writeInt(3);
+        out.writeInt(0);
+        out.writeUTF("bad");
+        out.writeUTF(HttpMethod.POST.name());
+        out.writeUTF("http://example.com");
+        out.writeInt(0);
+        out.writeInt(Integer.MAX_VALUE);
+        out.close();
+
+        final List<RequestOutbox.Entry> entries = outbox.peek(10);
+        assertEquals(1, entries.size());
+        assertEquals("token", entries.get(0).getToken());
+    }
+
+    /**
+     * Tests that a request with a body that is too large isn't stored.
+     */
+    @SmallTest
+    public void testAdd_bodyTooLarge() {
+        final LevelUpRequest request =
+                new LevelUpRequest(getContext(), HttpMethod.POST,
+                        LevelUpRequest.API_VERSION_CODE_V14, "large", null,
+                        new ByteArrayRequestBody(new byte[RequestOutbox.MAX_BODY_LENGTH + 1],
+                                "application/octet-stream"));
+
+        assertFalse(new RequestOutbox(mDirectory).add(getContext(), "token", request));
+        assertEquals(0, new RequestOutbox(mDirectory).size());
+    }
+
+    /**
+     * Tests that the access token isn't written to disk, but is added from the request's retriever
+     * when the stored request is read back.
+     *
+     * @throws IOException if the stored entry can't be read.
+     */
+    @SmallTest
+    public void testAdd_accessTokenNotStored() throws IOException {
+        final LevelUpRequest request =
+                new LevelUpRequest(getContext(), HttpMethod.POST,
+                        LevelUpRequest.API_VERSION_CODE_V14, "authenticated", null, null,
+                        new StorageTokenRetriever());
+        assertTrue(request.getRequestHeaders(getContext()).containsKey(
+                LevelUpRequest.HEADER_AUTHORIZATION));
+        assertTrue(new RequestOutbox(mDirectory).add(getContext(), "token", request));
+
+        final File[] files = mDirectory.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+
+        final byte[] contents = new byte[(int) files[0].length()];
+        final FileInputStream in = new FileInputStream(files[0]);
+
+        try {
+            assertEquals(contents.length, in.read(contents));
+        } finally {
+            in.close();
+        }
+
+        assertFalse(new String(contents, "ISO-8859-1").contains(
+                StorageTokenRetriever.ACCESS_TOKEN));
+
+        final List<RequestOutbox.Entry> entries = new RequestOutbox(mDirectory).peek(10);
+        assertEquals(1, entries.size());
+        assertStored(request, entries.get(0).getRequest());
+    }
+
+    /**
+     * Tests that {@link RequestOutbox#clear()} deletes every stored request.
+     */
+    @SmallTest
+    public void testClear() {
+        final RequestOutbox outbox = new RequestOutbox(mDirectory);
+        assertTrue(outbox.add(getContext(), "token1", newRequest("first")));
+        assertTrue(outbox.add(getContext(), "token2", newRequest("second")));
+
+        outbox.clear();
+        assertEquals(0, outbox.size());
+        assertTrue(outbox.peek(10).isEmpty());
+    }
+
+    /**
+     * Tests that failed attempts are counted across reads.
+     */
+    @SmallTest
+    public void testRecordFailure() {
+        final RequestOutbox outbox = new RequestOutbox(mDirectory);
+        assertTrue(outbox.add(getContext(), "token", newRequest("failing")));
+        assertEquals(0, outbox.peek(1).get(0).getAttemptCount());
+
+        assertEquals(1, outbox.recordFailure(outbox.peek(1).get(0)));
+        assertEquals(2, outbox.recordFailure(outbox.peek(1).get(0)));
+
+        final RequestOutbox.Entry entry = new RequestOutbox(mDirectory).peek(1).get(0);
+        assertEquals(2, entry.getAttemptCount());
+        assertStored(newRequest("failing"), entry.getRequest());
+    }
+
+    /**
+     * Asserts that a request read from the outbox is sent the same as the request that was
+     * stored.
+     *
+     * @param expected the request that was stored.
+     * @param actual the request read back.
+     */
+    private void assertStored(@NonNull final AbstractRequest expected,
+            @NonNull final AbstractRequest actual) {
+        try {
+            assertEquals(expected.getMethod(), actual.getMethod());
+            assertEquals(expected.getUrl(getContext()), actual.getUrl(getContext()));
+        } catch (final BadRequestException e) {
+            throw new AssertionError(e);
+        }
+
+        assertEquals(expected.getRequestHeaders(getContext()),
+                actual.getRequestHeaders(getContext()));
+        assertEquals(expected.getBodyLength(getContext()), actual.getBodyLength(getContext()));
+    }
+
+    /**
+     * @param endpoint the endpoint of the request.
+     * @return a new request.
+     */
+    @NonNull
+    private LevelUpRequest newRequest(@NonNull final String endpoint) {
+        return new LevelUpRequest(getContext(), HttpMethod.POST,
+                LevelUpRequest.API_VERSION_CODE_V14, endpoint, null, null);
+    }
+
+    /**
+     * A retriever that reads the token from "storage" rather than parceling it, like an app's
+     * retriever would.
+     */
+    private static final class StorageTokenRetriever implements AccessTokenRetriever {
+
+        /**
+         * Implements the {@link android.os.Parcelable} interface.
+         */
+        @NonNull
+        public static final Creator<StorageTokenRetriever> CREATOR =
+                new Creator<StorageTokenRetriever>() {
+
+                    @Override
+                    public StorageTokenRetriever createFromParcel(final Parcel in) {
+                        return new StorageTokenRetriever();
+                    }
+
+                    @Override
+                    public StorageTokenRetriever[] newArray(final int size) {
+                        return new StorageTokenRetriever[size];
+                    }
+                };
+
+        /**
+         * The token in "storage".
+         */
+        @NonNull
+        /* package */static final String ACCESS_TOKEN = "stored_access_token";
+
+        @Override
+        @Nullable
+        public AccessToken getAccessToken(@NonNull final Context context) {
+            return new AccessToken(ACCESS_TOKEN, 1L);
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(final Parcel dest, final int flags) {
+            // The token is read from storage.
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof StorageTokenRetriever;
+        }
+
+        @Override
+        public int hashCode() {
+            return StorageTokenRetriever.class.hashCode();
+        }
+    }
+
+    /**
+     * Deletes the test's outbox directory.
+     */
+    private void deleteDirectory() {
+        final File[] files = mDirectory.listFiles();
+
+        if (null != files) {
+            for (final File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+
+        mDirectory.delete();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 SCVNGR, Inc. d/b/a LevelUp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.scvngr.levelup.core.service;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.scvngr.levelup.core.net.LevelUpResponse;
+import com.scvngr.levelup.core.net.LevelUpStatus;
+import com.scvngr.levelup.core.test.SupportAndroidTestCase;
+
+/**
+ * Tests {@link com.scvngr.levelup.core.service.RequestResultRegistry}.
+ */
+public final class RequestResultRegistryTest extends SupportAndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        RequestResultRegistry.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        RequestResultRegistry.clear();
+
+        super.tearDown();
+    }
+
+    /**
+     * Tests {@link RequestResultRegistry#get(String)} and
+     * {@link RequestResultRegistry#remove(String)}.
+     */
+    @SmallTest
+    public void testGetAndRemove() {
+        final RequestResultRegistry.Result result = newResult();
+        RequestResultRegistry.put("token", result);
+
+        assertSame(result, RequestResultRegistry.get("token"));
+        assertSame(result, RequestResultRegistry.get("token"));
+        assertNull(RequestResultRegistry.get("other"));
+        assertSame(result, RequestResultRegistry.remove("token"));
+        assertNull(RequestResultRegistry.get("token"));
+        assertNull(RequestResultRegistry.remove("token"));
+    }
+
+    /**
+     * Tests that results aren't dropped however many are waiting to be delivered.
+     */
+    @SmallTest
+    public void testPut_keepsAll() {
+        for (int i = 0; i < 100; i++) {
+            RequestResultRegistry.put(String.valueOf(i), newResult());
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(RequestResultRegistry.get(String.valueOf(i)));
+        }
+    }
+
+    /**
+     * Tests {@link RequestResultRegistry.Result#getModel(Class)}.
+     */
+    @SmallTest
+    public void testResult_getModel() {
+        final RequestResultRegistry.Result result =
+                new RequestResultRegistry.Result(new LevelUpResponse("", LevelUpStatus.OK),
+                        "model", true);
+
+        assertEquals("model", result.getModel(String.class));
+        assertEquals("model", result.getModel(Object.class));
+        assertTrue(result.isSuccessful());
+
+        try {
+            result.getModel(Integer.class);
+            fail("ClassCastException expected");
+        } catch (final ClassCastException e) {
+            // Expected exception.
+        }
+
+        assertNull(newResult().getModel(String.class));
+    }
+
+    /**
+     * @return a result without a model.
+     */
+    private static RequestResultRegistry.Result newResult() {
+        return new RequestResultRegistry.Result(new LevelUpResponse("", LevelUpStatus.OK), null,
+                false);
+    }
+}
@@ -23,13 +23,28 @@ import com.scvngr.levelup.core.net.LevelUpConnection;
 import com.scvngr.levelup.core.net.LevelUpConnectionHelper;
 import com.scvngr.levelup.core.net.LevelUpRequest;
 import com.scvngr.levelup.core.net.LevelUpStatus;
+import com.scvngr.levelup.core.net.RequestPriority;
 import com.scvngr.levelup.core.test.SupportAndroidTestCase;
 
+import java.util.List;
+
 /**
  * Tests {@link com.scvngr.levelup.core.service.SilentNetworkRequestService}.
  */
 public final class SilentNetworkRequestServiceTest extends SupportAndroidTestCase {
 
+    @Override
+    protected void tearDown() throws Exception {
+        final RequestOutbox outbox = RequestOutbox.getInstance(getContext());
+
+        for (final RequestOutbox.Entry entry : outbox.peek(Integer.MAX_VALUE)) {
+            outbox.remove(entry);
+        }
+
+        OutboxConnectivityReceiver.setEnabled(getContext(), false);
+        super.tearDown();
+    }
+
     /**
      * Tests {@link com.scvngr.levelup.core.service.SilentNetworkRequestService#performRequest(android.content.Context, android.content.Intent)}
      * with no request passed.
@@ -71,6 +86,75 @@ public final class SilentNetworkRequestServiceTest extends SupportAndroidTestCas
                 LevelUpConnectionHelper.getLastRequest(requestToSend.getUrl(getContext())
                         .toString(), connection);
         assertNotNull(requestSent);
-        assertEquals(requestToSend, requestSent);
+        assertEquals(requestToSend.getMethod(), requestSent.getMethod());
+        assertEquals(requestToSend.getUrl(getContext()), requestSent.getUrl(getContext()));
+        assertEquals(RequestPriority.BACKGROUND, connection.getPriority());
+        assertEquals(0, RequestOutbox.getInstance(getContext()).size());
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.service.SilentNetworkRequestService#performRequest(android.content.Context, android.content.Intent)}
+     * keeps a request that doesn't reach the server in the outbox, and drops it after
+     * {@link SilentNetworkRequestService#MAX_ATTEMPTS} attempts.
+     *
+     * @throws BadRequestException on bad request
+     */
+    @SmallTest
+    public void testSendRequest_withNetworkError() throws BadRequestException {
+        final LevelUpRequest requestToSend =
+                new LevelUpRequest(getContext(), HttpMethod.GET,
+                        LevelUpRequest.API_VERSION_CODE_V14, "test", null, null);
+        final Intent intent = new Intent(getContext(), SilentNetworkRequestService.class);
+        intent.putExtra(SilentNetworkRequestService.EXTRA_PARCELABLE_REQUEST, requestToSend);
+        intent.putExtra(SilentNetworkRequestService.EXTRA_STRING_TOKEN, getName());
+        LevelUpConnectionHelper.setNextResponse(getContext(), "", LevelUpStatus.ERROR_NETWORK);
+
+        final SilentNetworkRequestService service = new SilentNetworkRequestService();
+        service.performRequest(getContext(), intent);
+
+        final RequestOutbox outbox = RequestOutbox.getInstance(getContext());
+        final List<RequestOutbox.Entry> entries = outbox.peek(Integer.MAX_VALUE);
+        assertEquals(1, entries.size());
+        assertEquals(getName(), entries.get(0).getToken());
+        assertEquals(1, entries.get(0).getAttemptCount());
+        assertEquals(requestToSend.getUrl(getContext()),
+                entries.get(0).getRequest().getUrl(getContext()));
+
+        for (int i = 1; i < SilentNetworkRequestService.MAX_ATTEMPTS; i++) {
+            service.flush(getContext(), outbox);
+        }
+
+        assertEquals(0, outbox.size());
+    }
+
+    /**
+     * Tests that a request that isn't idempotent is dropped rather than sent again when it may
+     * have reached the server.
+     */
+    @SmallTest
+    public void testSendRequest_notIdempotent() {
+        final LevelUpRequest requestToSend =
+                new LevelUpRequest(getContext(), HttpMethod.POST,
+                        LevelUpRequest.API_VERSION_CODE_V14, "test", null, null);
+        final Intent intent = new Intent(getContext(), SilentNetworkRequestService.class);
+        intent.putExtra(SilentNetworkRequestService.EXTRA_PARCELABLE_REQUEST, requestToSend);
+        LevelUpConnectionHelper.setNextResponse(getContext(), "", LevelUpStatus.ERROR_NETWORK);
+
+        new SilentNetworkRequestService().performRequest(getContext(), intent);
+
+        assertEquals(0, RequestOutbox.getInstance(getContext()).size());
+    }
+
+    /**
+     * Tests {@link com.scvngr.levelup.core.service.SilentNetworkRequestService#getRetryDelayMillis(int)}.
+     */
+    @SmallTest
+    public void testGetRetryDelayMillis() {
+        final long first = SilentNetworkRequestService.getRetryDelayMillis(1);
+
+        assertTrue(0 < first);
+        assertEquals(2 * first, SilentNetworkRequestService.getRetryDelayMillis(2));
+        assertEquals(SilentNetworkRequestService.getRetryDelayMillis(Integer.MAX_VALUE),
+                SilentNetworkRequestService.getRetryDelayMillis(Integer.MAX_VALUE - 1));
     }
 }
@@ -23,7 +23,8 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * Helper to increase visibility to {@link LevelUpConnection} test-only methods.
+ * Helper to set up the {@link CannedResponseInterceptor} and {@link RequestRecordingInterceptor} of
+ * a {@link LevelUpConnection} from tests outside its package.
  */
 public final class LevelUpConnectionHelper {
 
@@ -52,7 +53,8 @@ public final class LevelUpConnectionHelper {
     public static LevelUpConnection setNextResponse(@NonNull final Context context,
             @NonNull final String data, @NonNull final LevelUpStatus status) {
         final LevelUpConnection connection = getTestLevelUpConnection(context);
-        connection.setNextResponse(null, new LevelUpResponse(data, status));
+        connection.getCannedResponseInterceptor().setResponse(null,
+                new LevelUpResponse(data, status));
 
         return connection;
     }
@@ -73,7 +75,8 @@ public final class LevelUpConnectionHelper {
             @NonNull final String data, @NonNull final LevelUpStatus status,
             @Nullable final Map<String, List<String>> headers) {
         final LevelUpConnection connection = getTestLevelUpConnection(context);
-        connection.setNextResponse(null, new LevelUpResponse(data, status, headers, null));
+        connection.getCannedResponseInterceptor().setResponse(null,
+                new LevelUpResponse(data, status, headers, null));
 
         return connection;
     }
@@ -95,7 +98,8 @@ public final class LevelUpConnectionHelper {
             @NonNull final String requestUrl, @NonNull final String data,
             @NonNull final LevelUpStatus status, @Nullable final Map<String, List<String>> headers) {
         final LevelUpConnection connection = getTestLevelUpConnection(context);
-        connection.setNextResponse(requestUrl, new LevelUpResponse(data, status, headers, null));
+        connection.getCannedResponseInterceptor().setResponse(requestUrl,
+                new LevelUpResponse(data, status, headers, null));
 
         return connection;
     }
@@ -117,8 +121,8 @@ public final class LevelUpConnectionHelper {
             @NonNull final String requestUrl, @NonNull final String data, final int statusCode,
             @Nullable final Map<String, List<String>> headers) {
         final LevelUpConnection connection = getTestLevelUpConnection(context);
-        connection
-                .setNextResponse(requestUrl, new LevelUpResponse(data, statusCode, headers, null));
+        connection.getCannedResponseInterceptor().setResponse(requestUrl,
+                new LevelUpResponse(data, statusCode, headers, null));
 
         return connection;
     }
@@ -139,7 +143,8 @@ public final class LevelUpConnectionHelper {
             @NonNull final String data, final int statusCode,
             @Nullable final Map<String, List<String>> headers) {
         final LevelUpConnection connection = getTestLevelUpConnection(context);
-        connection.setNextResponse(null, new LevelUpResponse(data, statusCode, headers, null));
+        connection.getCannedResponseInterceptor().setResponse(null,
+                new LevelUpResponse(data, statusCode, headers, null));
 
         return connection;
     }
@@ -162,7 +167,8 @@ public final class LevelUpConnectionHelper {
             @Nullable final String url, @NonNull final String data,
             @NonNull final LevelUpStatus status) {
         final LevelUpConnection connection = getTestLevelUpConnection(context);
-        connection.setNextResponse(url, new LevelUpResponse(data, status));
+        connection.getCannedResponseInterceptor().setResponse(url,
+                new LevelUpResponse(data, status));
 
         return connection;
     }
@@ -183,7 +189,8 @@ public final class LevelUpConnectionHelper {
     public static LevelUpConnection addResponse(@NonNull final LevelUpConnection connection,
             @Nullable final String url, @NonNull final String data,
             @NonNull final LevelUpStatus status, @NonNull final Map<String, List<String>> headers) {
-        connection.setNextResponse(url, new LevelUpResponse(data, status, headers, null));
+        connection.getCannedResponseInterceptor().setResponse(url,
+                new LevelUpResponse(data, status, headers, null));
         return connection;
     }
 
@@ -202,7 +209,8 @@ public final class LevelUpConnectionHelper {
     public static LevelUpConnection addResponse(@NonNull final LevelUpConnection connection,
             @Nullable final String url, @NonNull final String data,
             @NonNull final LevelUpStatus status) {
-        connection.setNextResponse(url, new LevelUpResponse(data, status));
+        connection.getCannedResponseInterceptor().setResponse(url,
+                new LevelUpResponse(data, status));
         return connection;
     }
 
@@ -215,7 +223,7 @@ public final class LevelUpConnectionHelper {
     @Nullable
     public static AbstractRequest getLastRequest(@NonNull final String requestUrl,
             @NonNull final LevelUpConnection connection) {
-        return connection.getLastRequest(requestUrl);
+        return connection.getRequestRecordingInterceptor().getLastRequest(requestUrl);
     }
 
     /**
@@ -225,7 +233,7 @@ public final class LevelUpConnectionHelper {
      */
     @Nullable
     public static AbstractRequest getLastRequest(@NonNull final LevelUpConnection connection) {
-        return connection.getLastRequest(null);
+        return connection.getRequestRecordingInterceptor().getLastRequest(null);
     }
 
     /**
@@ -237,7 +245,7 @@ public final class LevelUpConnectionHelper {
      */
     public static void clearLastRequest(@NonNull final LevelUpConnection connection,
             @NonNull final String url) {
-        connection.setLastRequest(url, null);
+        connection.getRequestRecordingInterceptor().setLastRequest(url, null);
     }
 
     /**
@@ -278,7 +286,7 @@ public final class LevelUpConnectionHelper {
         boolean result = true;
 
         while (true) {
-            if (null != connection.getLastRequest(requestUrl)) {
+            if (null != connection.getRequestRecordingInterceptor().getLastRequest(requestUrl)) {
                 break;
             }
 
@@ -16,6 +16,7 @@ package com.scvngr.levelup.core.net;
 import android.content.Context;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -77,6 +78,12 @@ public final class MockRequestBody implements RequestBody {
         return FIXTURE_CONTENT_TYPE;
     }
 
+    @Override
+    @Nullable
+    public String getContentEncoding() {
+        return null;
+    }
+
     @Override
     public int hashCode() {
         // This is a fixture, so this value is as good as any.